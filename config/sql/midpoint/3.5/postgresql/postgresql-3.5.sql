@@ -385,6 +385,7 @@ CREATE TABLE m_object (
   creatorRef_targetOid  VARCHAR(36),
   creatorRef_type       INT4,
   datesCount            INT2,
+  ext                   JSONB,
   fullObject            BYTEA,
   lifecycleState        VARCHAR(255),
   longsCount            INT2,
@@ -804,6 +805,8 @@ CREATE INDEX iObjectCreateTimestamp ON m_object (createTimestamp);
 
 CREATE INDEX iObjectLifecycleState ON m_object (lifecycleState);
 
+CREATE INDEX iObjectExt ON m_object USING GIN (ext jsonb_path_ops);
+
 CREATE INDEX iExtensionBoolean ON m_object_ext_boolean (ownerType, eName, booleanValue);
 
 CREATE INDEX iExtensionBooleanDef ON m_object_ext_boolean (owner_oid, ownerType);
@@ -1,3 +1,7 @@
 ALTER TABLE m_object ADD lifecycleState VARCHAR(255);
 
-CREATE INDEX iObjectLifecycleState ON m_object (lifecycleState);
\ No newline at end of file
+CREATE INDEX iObjectLifecycleState ON m_object (lifecycleState);
+
+ALTER TABLE m_object ADD ext JSONB;
+
+CREATE INDEX iObjectExt ON m_object USING GIN (ext jsonb_path_ops);
\ No newline at end of file
@@ -1027,7 +1027,7 @@ public class TaskDto extends Selectable implements InlineMenuable {
 	}
 
 	public boolean configuresWorkerThreads() {
-		return isReconciliation() || isImportAccounts() || isRecomputation() || isExecuteChanges() || isShadowIntegrityCheck() || isFocusValidityScanner() || isTriggerScanner();
+		return isLiveSync() || isReconciliation() || isImportAccounts() || isRecomputation() || isExecuteChanges() || isShadowIntegrityCheck() || isFocusValidityScanner() || isTriggerScanner();
 	}
 
 	public boolean configuresWorkToDo() {
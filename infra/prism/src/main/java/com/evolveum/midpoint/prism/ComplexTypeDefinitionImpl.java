@@ -51,6 +51,12 @@ public class ComplexTypeDefinitionImpl extends TypeDefinitionImpl implements Com
 
 	@NotNull private List<String> ignoredNamespaces = new ArrayList<>();
 
+	// Types with fewer items are searched sequentially; the index would not pay off.
+	private static final int ITEM_DEFINITION_INDEX_THRESHOLD = 8;
+
+	// Lazily built; dropped on any change of itemDefinitions.
+	private transient volatile ItemDefinitionIndex itemDefinitionIndex;
+
 	public ComplexTypeDefinitionImpl(@NotNull QName typeName, @NotNull PrismContext prismContext) {
 		super(typeName, prismContext);
 	}
@@ -76,6 +82,7 @@ public class ComplexTypeDefinitionImpl extends TypeDefinitionImpl implements Com
 	
 	public void add(ItemDefinition<?> definition) {
 		itemDefinitions.add(definition);
+		itemDefinitionIndex = null;
 	}
 
 	@Override
@@ -139,6 +146,7 @@ public class ComplexTypeDefinitionImpl extends TypeDefinitionImpl implements Com
 	public PrismPropertyDefinitionImpl createPropertyDefinition(QName name, QName typeName) {
 		PrismPropertyDefinitionImpl propDef = new PrismPropertyDefinitionImpl(name, typeName, prismContext);
 		itemDefinitions.add(propDef);
+		itemDefinitionIndex = null;
 		return propDef;
 	}
 	
@@ -148,6 +156,7 @@ public class ComplexTypeDefinitionImpl extends TypeDefinitionImpl implements Com
 	public PrismPropertyDefinition createPropertyDefinition(QName name) {
 		PrismPropertyDefinition propDef = new PrismPropertyDefinitionImpl(name, null, prismContext);
 		itemDefinitions.add(propDef);
+		itemDefinitionIndex = null;
 		return propDef;
 	}
 
@@ -168,7 +177,7 @@ public class ComplexTypeDefinitionImpl extends TypeDefinitionImpl implements Com
 	// TODO deduplicate w.r.t. findNamedItemDefinition
 	@Override
 	public <T extends ItemDefinition> T findItemDefinition(@NotNull QName name, @NotNull Class<T> clazz, boolean caseInsensitive) {
-		for (ItemDefinition def : getDefinitions()) {
+		for (ItemDefinition def : caseInsensitive ? itemDefinitions : getItemDefinitionCandidates(name)) {
 			if (def.isValidFor(name, clazz, caseInsensitive)) {
 				return (T) def;
 			}
@@ -208,7 +217,7 @@ public class ComplexTypeDefinitionImpl extends TypeDefinitionImpl implements Com
 	// path starts with NamedItemPathSegment
 	public <ID extends ItemDefinition> ID findNamedItemDefinition(@NotNull QName firstName, @NotNull ItemPath rest, @NotNull Class<ID> clazz) {
 		ID found = null;
-		for (ItemDefinition def : getDefinitions()) {
+		for (ItemDefinition def : getItemDefinitionCandidates(firstName)) {
 			if (def.isValidFor(firstName, clazz, false)) {
 				if (found != null) {
 					throw new IllegalStateException("More definitions found for " + firstName + "/" + rest + " in " + this);
@@ -221,6 +230,59 @@ public class ComplexTypeDefinitionImpl extends TypeDefinitionImpl implements Com
         }
 		return found;
 	}
+
+	/**
+	 * Returns definitions that could be valid for given name (case-sensitively), in their original order.
+	 */
+	private List<ItemDefinition> getItemDefinitionCandidates(QName name) {
+		if (itemDefinitions.size() < ITEM_DEFINITION_INDEX_THRESHOLD) {
+			return itemDefinitions;
+		}
+		ItemDefinitionIndex index = itemDefinitionIndex;
+		if (index == null) {
+			index = new ItemDefinitionIndex(itemDefinitions);
+			itemDefinitionIndex = index;
+		}
+		return index.get(name.getLocalPart());
+	}
+
+	/**
+	 * Item definitions grouped by local part of their names, as QNameUtil.match (used by isValidFor) never matches
+	 * different local names. Definitions that can be valid also for other names (references - because of composite
+	 * object element names - or definitions not derived from ItemDefinitionImpl) are put into each group.
+	 */
+	private static class ItemDefinitionIndex {
+
+		private final Map<String, List<ItemDefinition>> definitionsByLocalName = new HashMap<>();
+		private final List<ItemDefinition> otherDefinitions = new ArrayList<>();
+
+		ItemDefinitionIndex(List<ItemDefinition> itemDefinitions) {
+			for (ItemDefinition def : itemDefinitions) {
+				if (isIndexable(def)) {
+					definitionsByLocalName.computeIfAbsent(def.getName().getLocalPart(), k -> new ArrayList<>());
+				}
+			}
+			for (ItemDefinition def : itemDefinitions) {
+				if (isIndexable(def)) {
+					definitionsByLocalName.get(def.getName().getLocalPart()).add(def);
+				} else {
+					otherDefinitions.add(def);
+					for (List<ItemDefinition> group : definitionsByLocalName.values()) {
+						group.add(def);
+					}
+				}
+			}
+		}
+
+		private static boolean isIndexable(ItemDefinition def) {
+			return def instanceof ItemDefinitionImpl && !(def instanceof PrismReferenceDefinition) && def.getName() != null;
+		}
+
+		List<ItemDefinition> get(String localName) {
+			List<ItemDefinition> found = definitionsByLocalName.get(localName);
+			return found != null ? found : otherDefinitions;
+		}
+	}
 	//endregion
 
 	/**
@@ -278,6 +340,7 @@ public class ComplexTypeDefinitionImpl extends TypeDefinitionImpl implements Com
 		for (ItemDefinition itemDef: this.itemDefinitions) {
 			clone.itemDefinitions.add(itemDef.deepClone(ctdMap));
 		}
+		clone.itemDefinitionIndex = null;
 		return clone;
 	}
 	
@@ -290,6 +353,7 @@ public class ComplexTypeDefinitionImpl extends TypeDefinitionImpl implements Com
 		clone.defaultNamespace = this.defaultNamespace;
 		clone.ignoredNamespaces = this.ignoredNamespaces;
         clone.itemDefinitions.addAll(this.itemDefinitions);
+		clone.itemDefinitionIndex = null;
 	}
 
 	public void replaceDefinition(QName propertyName, ItemDefinition newDefinition) {
@@ -305,6 +369,7 @@ public class ComplexTypeDefinitionImpl extends TypeDefinitionImpl implements Com
 				}
 				// Make sure this is set, not add. set will keep correct ordering
 				itemDefinitions.set(i, newDefinition);
+				itemDefinitionIndex = null;
 				return;
 			}
 		}
@@ -135,6 +135,9 @@ public abstract class Item<V extends PrismValue, D extends ItemDefinition> imple
     public void setElementName(QName elementName) {
 		checkMutability();
         this.elementName = elementName;
+		if (parent instanceof PrismContainerValue) {
+			((PrismContainerValue<?>) parent).invalidateItemIndex();
+		}
     }
 
     /**
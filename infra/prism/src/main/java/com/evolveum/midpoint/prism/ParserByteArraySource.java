@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) 2010-2016 Evolveum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.evolveum.midpoint.prism;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+
+/**
+ * Source for data in the binary XNode format (see BinaryLexicalProcessor).
+ *
+ * @author mederly
+ */
+public class ParserByteArraySource implements ParserSource {
+
+	@NotNull private final byte[] data;
+
+	public ParserByteArraySource(@NotNull byte[] data) {
+		this.data = data;
+	}
+
+	@NotNull
+	public byte[] getData() {
+		return data;
+	}
+
+	@NotNull
+	@Override
+	public InputStream getInputStream() {
+		return new ByteArrayInputStream(data);
+	}
+
+	@Override
+	public boolean closeStreamAfterParsing() {
+		return true;
+	}
+
+	@Override
+	public boolean throwsIOException() {
+		return false;
+	}
+}
@@ -49,9 +49,16 @@ public class PrismContainerValue<C extends Containerable> extends PrismValue imp
 
     private static final Trace LOGGER = TraceManager.getTrace(PrismContainerValue.class);
 
+	// Values with fewer items are searched sequentially; the index would not pay off.
+	private static final int ITEM_INDEX_THRESHOLD = 8;
+
 	// This is list. We need to maintain the order internally to provide consistent
     // output in DOM and other ordering-sensitive representations
 	protected List<Item<?,?>> items = null;
+
+	// Lazily built index of items by local name (see findItemByQName). It is valid only for the list instance
+	// and its modification count it was built for; so any change of the list (even via getItems()) invalidates it.
+	private transient volatile ItemIndex itemIndex;
     private Long id;
     
 	private C containerable = null;
@@ -341,7 +348,7 @@ public class PrismContainerValue<C extends Containerable> extends PrismValue imp
         	item.applyDefinition((ID)determineItemDefinition(item.getElementName(), getComplexTypeDefinition()), false);
         }
         if (items == null) {
-        	items = new ArrayList<>();
+        	items = new ItemList();
         }
         return items.add(item);
     }
@@ -684,7 +691,7 @@ public class PrismContainerValue<C extends Containerable> extends PrismValue imp
             return null;
         }
         Item<IV,ID> matching = null;
-        for (Item<?,?> item : items) {
+        for (Item<?,?> item : getItemCandidates(subName)) {
             if (QNameUtil.match(subName, item.getElementName())) {
                 if (matching != null) {
                     String containerName = getParent() != null ? DebugUtil.formatElementName(getParent().getElementName()) : "";
@@ -697,8 +704,48 @@ public class PrismContainerValue<C extends Containerable> extends PrismValue imp
         return matching;
     }
 
+	/**
+	 * Returns items that could match given name (in their original order): either all items or, for larger values,
+	 * the ones having the same local name - as QNameUtil.match never matches items with different local names.
+	 */
+	private List<Item<?,?>> getItemCandidates(QName name) {
+		if (name == null || items.size() < ITEM_INDEX_THRESHOLD || !(items instanceof ItemList)) {
+			return items;
+		}
+		ItemList itemList = (ItemList) items;
+		ItemIndex index = itemIndex;
+		if (index == null || !index.isValidFor(itemList)) {
+			index = new ItemIndex(itemList);
+			itemIndex = index;
+		}
+		return index.get(name.getLocalPart());
+	}
+
+	// called when the name of contained item changes
+	void invalidateItemIndex() {
+		itemIndex = null;
+	}
+
 	private <IV extends PrismValue,ID extends ItemDefinition,I extends Item<IV,ID>> I createSubItem(QName name, Class<I> type, ID itemDefinition) throws SchemaException {
 		checkMutability();
+		I newItem = instantiateSubItem(name, type, itemDefinition);
+		add(newItem);
+		return newItem;
+	}
+
+	/**
+	 * Creates an (empty) item that could be a sub-item of this value, but does not add it here.
+	 * Used to provide empty items when reading immutable values e.g. via JAXB list getters.
+	 */
+	public <IV extends PrismValue,ID extends ItemDefinition,I extends Item<IV,ID>> I createDetachedSubItem(QName name, Class<I> type, ID itemDefinition, boolean immutable) throws SchemaException {
+		I newItem = instantiateSubItem(name, type, itemDefinition);
+		if (immutable) {
+			newItem.setImmutable(true);
+		}
+		return newItem;
+	}
+
+	private <IV extends PrismValue,ID extends ItemDefinition,I extends Item<IV,ID>> I instantiateSubItem(QName name, Class<I> type, ID itemDefinition) throws SchemaException {
     	// the item with specified name does not exist, create it now
 		I newItem = null;
 		
@@ -728,7 +775,6 @@ public class PrismContainerValue<C extends Containerable> extends PrismValue imp
 		}
 		
 		if (type.isAssignableFrom(newItem.getClass())) {
-			add(newItem);
 			return newItem;
     	} else {
 			throw new IllegalStateException("The " + type.getSimpleName() + " cannot be created because the item should be of type "
@@ -1223,7 +1269,7 @@ public class PrismContainerValue<C extends Containerable> extends PrismValue imp
 				Item<?,?> clonedItem = item.clone();
 				clonedItem.setParent(clone);
 				if (clone.items == null) {
-					clone.items = new ArrayList<>(this.items.size());
+					clone.items = new ItemList(this.items.size());
 				}
 				clone.items.add(clonedItem);
 			}
@@ -1518,4 +1564,54 @@ public class PrismContainerValue<C extends Containerable> extends PrismValue imp
 		pc.add(clone());
 		return pc;
 	}
+
+	/**
+	 * List of items that counts all its modifications (including set), so the item index can detect it is out of date.
+	 */
+	private static class ItemList extends ArrayList<Item<?,?>> {
+
+		ItemList() {
+		}
+
+		ItemList(int initialCapacity) {
+			super(initialCapacity);
+		}
+
+		@Override
+		public Item<?, ?> set(int index, Item<?, ?> element) {
+			modCount++;
+			return super.set(index, element);
+		}
+
+		int getModCount() {
+			return modCount;
+		}
+	}
+
+	private static class ItemIndex {
+
+		private final ItemList list;
+		private final int modCount;
+		private final Map<String, List<Item<?,?>>> itemsByLocalName = new HashMap<>();
+
+		ItemIndex(ItemList list) {
+			this.list = list;
+			this.modCount = list.getModCount();
+			for (Item<?,?> item : list) {
+				QName name = item.getElementName();
+				if (name != null) {
+					itemsByLocalName.computeIfAbsent(name.getLocalPart(), k -> new ArrayList<>(1)).add(item);
+				}
+			}
+		}
+
+		boolean isValidFor(ItemList list) {
+			return this.list == list && this.modCount == list.getModCount();
+		}
+
+		List<Item<?,?>> get(String localName) {
+			List<Item<?,?>> found = itemsByLocalName.get(localName);
+			return found != null ? found : Collections.<Item<?,?>>emptyList();
+		}
+	}
 }
@@ -109,6 +109,14 @@ public interface PrismContext {
 	@NotNull
 	PrismParserNoIO parserFor(@NotNull Element element);
 
+	/**
+	 * Creates a parser ready to process data in the compact binary format (as produced by binarySerializer).
+	 * @param data Binary data to be parsed.
+	 * @return Parser that can be invoked to retrieve the (parsed) content.
+	 */
+	@NotNull
+	PrismParserNoIO parserFor(@NotNull byte[] data);
+
 	default <T extends Objectable> PrismObject<T> parseObject(File file) throws SchemaException, IOException {
 		return parserFor(file).parse();
 	}
@@ -185,6 +193,14 @@ public interface PrismContext {
 	@NotNull
 	PrismSerializer<RootXNode> xnodeSerializer();
 
+	/**
+	 * Creates a serializer for the compact binary format. It is not meant to be human-readable;
+	 * its purpose is fast and space-efficient storage (e.g. in the repository).
+	 * @return The serializer.
+	 */
+	@NotNull
+	PrismSerializer<byte[]> binarySerializer();
+
 	@Deprecated // use serializerFor + serialize instead
 	<O extends Objectable> String serializeObjectToString(PrismObject<O> object, String language) throws SchemaException;
 
@@ -234,6 +234,12 @@ public class PrismContextImpl implements PrismContext {
 		return new PrismParserImplNoIO(new ParserStringSource(data), null, ParsingContext.createDefault(), this, null, null, null, null);
 	}
 
+	@NotNull
+	@Override
+	public PrismParserNoIO parserFor(@NotNull byte[] data) {
+		return new PrismParserImplNoIO(new ParserByteArraySource(data), null, ParsingContext.createDefault(), this, null, null, null, null);
+	}
+
 	@NotNull
 	@Override
 	public PrismParserNoIO parserFor(@NotNull RootXNode xnode) {
@@ -347,6 +353,12 @@ public class PrismContextImpl implements PrismContext {
 		return new PrismSerializerImpl<>(new SerializerXNodeTarget(this), null, null, null, this);
 	}
 
+	@NotNull
+	@Override
+	public PrismSerializer<byte[]> binarySerializer() {
+		return new PrismSerializerImpl<>(new SerializerBinaryTarget(this), null, null, null, this);
+	}
+
     @Override
 	public boolean canSerialize(Object value) {
         return prismMarshaller.canSerialize(value);
@@ -223,6 +223,26 @@ public interface PrismParser {
 	@NotNull
 	List<PrismObject<? extends Objectable>> parseObjects() throws SchemaException, IOException;
 
+	/**
+	 * Parses the input as a collection of prism objects, passing them to the handler one by one.
+	 * For XML, objects are read incrementally, so the whole collection need not fit into memory.
+	 * Processing stops when the handler returns false.
+	 */
+	void parseObjectsIteratively(@NotNull ObjectHandler handler) throws SchemaException, IOException;
+
+	interface ObjectHandler {
+		/**
+		 * @return true if processing should continue
+		 */
+		boolean handleData(PrismObject<? extends Objectable> object);
+
+		/**
+		 * Called when an object couldn't be parsed.
+		 * @return true if processing should continue
+		 */
+		boolean handleError(Throwable t);
+	}
+
 //	/**
 //	 * Parses the input as a single value of a prism container.
 //	 * @return Single-valued container.
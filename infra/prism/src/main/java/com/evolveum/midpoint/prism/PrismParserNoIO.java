@@ -71,5 +71,6 @@ public interface PrismParserNoIO extends PrismParser {
 	// auxiliary methods
 	@NotNull
 	List<PrismObject<? extends Objectable>> parseObjects() throws SchemaException;
+	void parseObjectsIteratively(@NotNull ObjectHandler handler) throws SchemaException;
 
 }
@@ -16,6 +16,8 @@
 
 package com.evolveum.midpoint.prism;
 
+import javax.xml.namespace.QName;
+
 /**
  * Everything we want to maintain during the serialization process.
  * (First of all, processing options.)
@@ -46,6 +48,10 @@ public class SerializationContext implements Cloneable {
         return ctx != null && SerializationOptions.isSerializeCompositeObjects(ctx.getOptions());
     }
 
+    public static boolean isSkipItem(SerializationContext ctx, QName itemName) {
+        return ctx != null && SerializationOptions.isSkipItem(ctx.getOptions(), itemName);
+    }
+
     public static SerializationContext forOptions(SerializationOptions options) {
         return new SerializationContext(options);
     }
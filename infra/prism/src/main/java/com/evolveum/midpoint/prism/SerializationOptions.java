@@ -16,6 +16,12 @@
 
 package com.evolveum.midpoint.prism;
 
+import javax.xml.namespace.QName;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
 /**
  * @author Pavol Mederly
  */
@@ -24,6 +30,11 @@ public class SerializationOptions implements Cloneable {
 	private boolean serializeCompositeObjects;
     private boolean serializeReferenceNames;
 	private ItemNameQualificationStrategy itemNameQualificationStrategy;
+	/**
+	 * Items of the top-level object value that should not be serialized at all.
+	 * (E.g. repository does not store photos, lookup table rows or certification cases in the full object.)
+	 */
+	private Set<QName> itemsToSkip;
 //	private NameQualificationStrategy itemTypeQualificationStrategy;
 //	private NameQualificationStrategy itemPathQualificationStrategy;
 //	private NameQualificationStrategy genericQualificationStrategy;
@@ -64,6 +75,24 @@ public class SerializationOptions implements Cloneable {
 		return options != null && options.isSerializeCompositeObjects();
 	}
 
+	public Set<QName> getItemsToSkip() {
+		return itemsToSkip;
+	}
+
+	public void setItemsToSkip(Collection<QName> itemsToSkip) {
+		this.itemsToSkip = itemsToSkip != null ? new HashSet<>(itemsToSkip) : null;
+	}
+
+	public static SerializationOptions createSkipItems(QName... itemsToSkip) {
+		SerializationOptions serializationOptions = new SerializationOptions();
+		serializationOptions.setItemsToSkip(Arrays.asList(itemsToSkip));
+		return serializationOptions;
+	}
+
+	public static boolean isSkipItem(SerializationOptions options, QName itemName) {
+		return options != null && options.itemsToSkip != null && options.itemsToSkip.contains(itemName);
+	}
+
 	//	public ItemNameQualificationStrategy getItemNameQualificationStrategy() {
 //		return itemNameQualificationStrategy;
 //	}
@@ -123,6 +152,7 @@ public class SerializationOptions implements Cloneable {
 		}
 		clone.serializeReferenceNames = this.serializeReferenceNames;
 		clone.itemNameQualificationStrategy = itemNameQualificationStrategy;
+		clone.itemsToSkip = itemsToSkip != null ? new HashSet<>(itemsToSkip) : null;
 		return clone;
 	}
 }
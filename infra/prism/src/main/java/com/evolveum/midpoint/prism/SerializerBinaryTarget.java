@@ -0,0 +1,37 @@
+/*
+ * Copyright (c) 2010-2016 Evolveum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.evolveum.midpoint.prism;
+
+import com.evolveum.midpoint.prism.xnode.RootXNode;
+import com.evolveum.midpoint.util.exception.SchemaException;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * @author mederly
+ */
+public class SerializerBinaryTarget extends SerializerTarget<byte[]> {
+
+    public SerializerBinaryTarget(@NotNull PrismContextImpl prismContext) {
+        super(prismContext);
+    }
+
+    @NotNull
+    @Override
+    public byte[] write(@NotNull RootXNode xroot, SerializationContext context) throws SchemaException {
+        return prismContext.getLexicalProcessorRegistry().binaryProcessor().write(xroot, context);
+    }
+}
@@ -45,6 +45,27 @@ public interface LexicalProcessor<T> {
 	@NotNull
 	List<RootXNode> readObjects(ParserSource source, ParsingContext parsingContext) throws SchemaException, IOException;
 
+	/**
+	 * Reads objects (root nodes) one by one, passing each of them to the handler. Processing stops when the handler
+	 * returns false. Default implementation reads all objects first; streaming processors read them incrementally.
+	 */
+	default void readObjectsIteratively(@NotNull ParserSource source, @NotNull ParsingContext parsingContext,
+			@NotNull RootXNodeHandler handler) throws SchemaException, IOException {
+		for (RootXNode node : readObjects(source, parsingContext)) {
+			if (!handler.handleData(node)) {
+				break;
+			}
+		}
+	}
+
+	@FunctionalInterface
+	interface RootXNodeHandler {
+		/**
+		 * @return true if processing should continue
+		 */
+		boolean handleData(RootXNode node) throws SchemaException;
+	}
+
 	/**
 	 * Checks if the processor can read from a given file. (Guessed by file extension, for now.)
 	 * Used for autodetection of language.
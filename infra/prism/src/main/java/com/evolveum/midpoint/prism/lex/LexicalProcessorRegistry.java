@@ -17,7 +17,9 @@
 package com.evolveum.midpoint.prism.lex;
 
 import com.evolveum.midpoint.prism.*;
+import com.evolveum.midpoint.prism.lex.binary.BinaryLexicalProcessor;
 import com.evolveum.midpoint.prism.lex.dom.DomLexicalProcessor;
+import com.evolveum.midpoint.prism.lex.dom.StaxLexicalProcessor;
 import com.evolveum.midpoint.prism.lex.json.JsonLexicalProcessor;
 import com.evolveum.midpoint.prism.lex.json.NullLexicalProcessor;
 import com.evolveum.midpoint.prism.lex.json.YamlLexicalProcessor;
@@ -43,14 +45,18 @@ public class LexicalProcessorRegistry {
 	private final Map<String, LexicalProcessor> parserMap;
 
 	private final DomLexicalProcessor domLexicalProcessor;
+	private final StaxLexicalProcessor staxLexicalProcessor;
 	private final NullLexicalProcessor nullLexicalProcessor;
+	private final BinaryLexicalProcessor binaryLexicalProcessor;
 
 	public LexicalProcessorRegistry(SchemaRegistry schemaRegistry) {
 		domLexicalProcessor = new DomLexicalProcessor(schemaRegistry);
+		staxLexicalProcessor = new StaxLexicalProcessor(domLexicalProcessor);
 		nullLexicalProcessor = new NullLexicalProcessor();
+		binaryLexicalProcessor = new BinaryLexicalProcessor(domLexicalProcessor);
 
 		parserMap = new HashMap<>();
-		parserMap.put(LANG_XML, domLexicalProcessor);
+		parserMap.put(LANG_XML, staxLexicalProcessor);          // XML is read by StAX; writing is delegated to DOM processor
 		parserMap.put(LANG_JSON, new JsonLexicalProcessor());
 		parserMap.put(LANG_YAML, new YamlLexicalProcessor());
 	}
@@ -82,6 +88,11 @@ public class LexicalProcessorRegistry {
 		return domLexicalProcessor;
 	}
 
+	@NotNull
+	public BinaryLexicalProcessor binaryProcessor() {
+		return binaryLexicalProcessor;
+	}
+
 	@NotNull
 	public <T> LexicalProcessor<T> processorFor(String language) {
 		LexicalProcessor<?> lexicalProcessor = parserMap.get(language);
@@ -95,6 +106,8 @@ public class LexicalProcessorRegistry {
 	public LexicalProcessor<?> findProcessor(@NotNull ParserSource source) throws IOException {
 		if (source instanceof ParserXNodeSource) {
 			return nullLexicalProcessor;
+		} else if (source instanceof ParserByteArraySource) {
+			return binaryLexicalProcessor;
 		} else if (source instanceof ParserElementSource) {
 			return processorFor(LANG_XML);
 		} else if (source instanceof ParserFileSource) {
@@ -0,0 +1,493 @@
+/*
+ * Copyright (c) 2010-2016 Evolveum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.evolveum.midpoint.prism.lex.binary;
+
+import com.evolveum.midpoint.prism.ParserByteArraySource;
+import com.evolveum.midpoint.prism.ParserSource;
+import com.evolveum.midpoint.prism.ParsingContext;
+import com.evolveum.midpoint.prism.SerializationContext;
+import com.evolveum.midpoint.prism.lex.LexicalProcessor;
+import com.evolveum.midpoint.prism.lex.LexicalUtils;
+import com.evolveum.midpoint.prism.lex.dom.DomLexicalProcessor;
+import com.evolveum.midpoint.prism.polystring.PolyString;
+import com.evolveum.midpoint.prism.xnode.ListXNode;
+import com.evolveum.midpoint.prism.xnode.MapXNode;
+import com.evolveum.midpoint.prism.xnode.PrimitiveXNode;
+import com.evolveum.midpoint.prism.xnode.RootXNode;
+import com.evolveum.midpoint.prism.xnode.SchemaXNode;
+import com.evolveum.midpoint.prism.xnode.XNode;
+import com.evolveum.midpoint.util.DOMUtil;
+import com.evolveum.midpoint.util.exception.SchemaException;
+import com.evolveum.midpoint.util.exception.SystemException;
+import com.evolveum.prism.xml.ns._public.types_3.ItemPathType;
+import org.apache.commons.io.IOUtils;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.w3c.dom.Element;
+
+import javax.xml.namespace.QName;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary representation of XNode trees. Intended for machine-to-machine storage (e.g. the repository
+ * full object column), not for human consumption.
+ *
+ * Format (version 1):
+ * - header: 'M' 'P' 'B' version
+ * - root element name (QName), root node
+ * - node: tag, flags, [type QName], content; maps and lists are prefixed by the number of their entries
+ * - QNames and namespaces are dictionary-coded: the first occurrence is written in full and gets the next
+ *   free index; subsequent occurrences are written as that index only
+ * - primitive values of common types (string, boolean, int, long, double, QName) are stored natively;
+ *   other parsed values in their formatted (XML text) form; unparsed values and item paths as embedded XML
+ *   fragments, so that the namespace context is preserved.
+ *
+ * Values are not parsed eagerly: primitives are created with {@link BinaryValueParser}, just like the
+ * other lexical processors do.
+ *
+ * @author mederly
+ */
+public class BinaryLexicalProcessor implements LexicalProcessor<byte[]> {
+
+	private static final byte[] MAGIC = { 'M', 'P', 'B' };
+	private static final byte VERSION = 1;
+
+	// node tags
+	private static final byte T_NULL = 0;
+	private static final byte T_MAP = 1;
+	private static final byte T_LIST = 2;
+	private static final byte T_PRIMITIVE = 3;
+	private static final byte T_SCHEMA = 4;
+
+	// node flags
+	private static final int F_HAS_TYPE = 1;
+	private static final int F_EXPLICIT_TYPE = 2;
+	private static final int F_ATTRIBUTE = 4;
+
+	// primitive value kinds
+	static final byte V_EMPTY = 0;
+	static final byte V_STRING = 1;
+	static final byte V_BOOLEAN = 2;
+	static final byte V_INT = 3;
+	static final byte V_LONG = 4;
+	static final byte V_DOUBLE = 5;
+	static final byte V_QNAME = 6;
+	static final byte V_FORMATTED = 7;
+	static final byte V_XML = 8;
+
+	private static final QName FRAGMENT_NAME = new QName("value");
+
+	@NotNull private final DomLexicalProcessor domLexicalProcessor;
+
+	public BinaryLexicalProcessor(@NotNull DomLexicalProcessor domLexicalProcessor) {
+		this.domLexicalProcessor = domLexicalProcessor;
+	}
+
+	/**
+	 * Quick check whether the data are (uncompressed) output of this processor.
+	 */
+	public static boolean isBinary(byte[] data) {
+		if (data == null || data.length < MAGIC.length + 1) {
+			return false;
+		}
+		for (int i = 0; i < MAGIC.length; i++) {
+			if (data[i] != MAGIC[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	//region Reading
+	@NotNull
+	@Override
+	public RootXNode read(@NotNull ParserSource source, @NotNull ParsingContext parsingContext) throws SchemaException, IOException {
+		if (source instanceof ParserByteArraySource) {
+			return read(((ParserByteArraySource) source).getData());
+		}
+		byte[] data;
+		try {
+			data = IOUtils.toByteArray(source.getInputStream());
+		} finally {
+			if (source.closeStreamAfterParsing()) {
+				IOUtils.closeQuietly(source.getInputStream());
+			}
+		}
+		return read(data);
+	}
+
+	@NotNull
+	public RootXNode read(@NotNull byte[] data) throws SchemaException {
+		if (!isBinary(data)) {
+			throw new SchemaException("Data are not in the binary XNode format");
+		}
+		if (data[MAGIC.length] != VERSION) {
+			throw new SchemaException("Unsupported version of the binary XNode format: " + data[MAGIC.length]);
+		}
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(data, MAGIC.length + 1, data.length - MAGIC.length - 1));
+		try {
+			return new Reader(in).readRoot();
+		} catch (IOException e) {
+			throw new SchemaException("Couldn't read binary XNode data: " + e.getMessage(), e);
+		}
+	}
+
+	@NotNull
+	@Override
+	public List<RootXNode> readObjects(ParserSource source, ParsingContext parsingContext) throws SchemaException, IOException {
+		return Collections.singletonList(read(source, parsingContext));
+	}
+
+	@Override
+	public boolean canRead(@NotNull File file) throws IOException {
+		return false;
+	}
+
+	@Override
+	public boolean canRead(@NotNull String dataString) {
+		return false;
+	}
+
+	private class Reader {
+
+		private final DataInputStream in;
+		private final List<String> namespaces = new ArrayList<>();
+		private final List<QName> qnames = new ArrayList<>();
+
+		private Reader(DataInputStream in) {
+			this.in = in;
+		}
+
+		private RootXNode readRoot() throws IOException, SchemaException {
+			QName rootElementName = readQName();
+			RootXNode root = new RootXNode(rootElementName);
+			root.setSubnode(readNode());
+			return root;
+		}
+
+		private XNode readNode() throws IOException, SchemaException {
+			byte tag = in.readByte();
+			if (tag == T_NULL) {
+				return null;
+			}
+			int flags = in.readByte();
+			QName typeName = (flags & F_HAS_TYPE) != 0 ? readQName() : null;
+			XNode node;
+			switch (tag) {
+				case T_MAP:
+					MapXNode xmap = new MapXNode();
+					int entries = readSize();
+					for (int i = 0; i < entries; i++) {
+						QName key = readQName();
+						xmap.put(key, readNode());
+					}
+					node = xmap;
+					break;
+				case T_LIST:
+					ListXNode xlist = new ListXNode();
+					int items = readSize();
+					for (int i = 0; i < items; i++) {
+						xlist.add(readNode());
+					}
+					node = xlist;
+					break;
+				case T_PRIMITIVE:
+					node = readPrimitive();
+					break;
+				case T_SCHEMA:
+					SchemaXNode xschema = new SchemaXNode();
+					String schema = readString();
+					if (schema != null) {
+						xschema.setSchemaElement(DOMUtil.parseDocument(schema).getDocumentElement());
+					}
+					node = xschema;
+					break;
+				default:
+					throw new SchemaException("Unknown node tag in binary XNode data: " + tag);
+			}
+			node.setTypeQName(typeName);
+			node.setExplicitTypeDeclaration((flags & F_EXPLICIT_TYPE) != 0);
+			if (node instanceof PrimitiveXNode) {
+				((PrimitiveXNode<?>) node).setAttribute((flags & F_ATTRIBUTE) != 0);
+			}
+			return node;
+		}
+
+		private XNode readPrimitive() throws IOException, SchemaException {
+			byte kind = in.readByte();
+			Object value;
+			switch (kind) {
+				case V_EMPTY: return new PrimitiveXNode<>();
+				case V_STRING: value = readString(); break;
+				case V_BOOLEAN: value = in.readBoolean(); break;
+				case V_INT: value = in.readInt(); break;
+				case V_LONG: value = in.readLong(); break;
+				case V_DOUBLE: value = in.readDouble(); break;
+				case V_QNAME: value = readQName(); break;
+				case V_FORMATTED:
+					PrimitiveXNode<Object> formatted = new PrimitiveXNode<>();
+					formatted.setValueParser(new BinaryValueParser<>(null, readString()));
+					return formatted;
+				case V_XML:
+					String xml = readString();
+					XNode fragment = domLexicalProcessor.read(DOMUtil.parseDocument(xml).getDocumentElement()).getSubnode();
+					return fragment != null ? fragment : new PrimitiveXNode<>();
+				default:
+					throw new SchemaException("Unknown primitive value kind in binary XNode data: " + kind);
+			}
+			PrimitiveXNode<Object> xprim = new PrimitiveXNode<>();
+			xprim.setValueParser(new BinaryValueParser<>(value, null));
+			return xprim;
+		}
+
+		private QName readQName() throws IOException {
+			int index = readSize();
+			if (index > 0) {
+				return qnames.get(index - 1);
+			}
+			String namespace = readNamespace();
+			String localPart = readString();
+			QName qname = new QName(namespace, localPart);
+			qnames.add(qname);
+			return qname;
+		}
+
+		private String readNamespace() throws IOException {
+			int index = readSize();
+			if (index > 0) {
+				return namespaces.get(index - 1);
+			}
+			String namespace = readString();
+			namespaces.add(namespace);
+			return namespace;
+		}
+
+		private String readString() throws IOException {
+			int length = readSize();
+			if (length == 0) {
+				return null;
+			}
+			byte[] bytes = new byte[length - 1];
+			in.readFully(bytes);
+			return new String(bytes, StandardCharsets.UTF_8);
+		}
+
+		private int readSize() throws IOException {
+			int value = 0;
+			int shift = 0;
+			int b;
+			do {
+				b = in.readUnsignedByte();
+				value |= (b & 0x7F) << shift;
+				shift += 7;
+			} while ((b & 0x80) != 0);
+			return value;
+		}
+	}
+	//endregion
+
+	//region Writing
+	@NotNull
+	@Override
+	public byte[] write(@NotNull RootXNode xnode, @Nullable SerializationContext serializationContext) throws SchemaException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		try {
+			out.write(MAGIC);
+			out.writeByte(VERSION);
+			new Writer(out).writeRoot(xnode);
+			out.close();
+		} catch (IOException e) {
+			throw new SystemException("Couldn't write binary XNode data: " + e.getMessage(), e);		// shouldn't occur
+		}
+		return bytes.toByteArray();
+	}
+
+	@NotNull
+	@Override
+	public byte[] write(@NotNull XNode xnode, @NotNull QName rootElementName, @Nullable SerializationContext serializationContext) throws SchemaException {
+		return write(LexicalUtils.createRootXNode(xnode, rootElementName), serializationContext);
+	}
+
+	private class Writer {
+
+		private final DataOutputStream out;
+		private final Map<String, Integer> namespaces = new HashMap<>();
+		private final Map<QName, Integer> qnames = new HashMap<>();
+
+		private Writer(DataOutputStream out) {
+			this.out = out;
+		}
+
+		private void writeRoot(RootXNode root) throws IOException, SchemaException {
+			writeQName(root.getRootElementName());
+			writeNode(root.getSubnode());
+		}
+
+		private void writeNode(XNode node) throws IOException, SchemaException {
+			if (node == null) {
+				out.writeByte(T_NULL);
+				return;
+			}
+			if (node instanceof RootXNode) {
+				throw new IllegalArgumentException("Nested root nodes are not supported: " + node);
+			}
+			byte tag;
+			if (node instanceof MapXNode) {
+				tag = T_MAP;
+			} else if (node instanceof ListXNode) {
+				tag = T_LIST;
+			} else if (node instanceof PrimitiveXNode) {
+				tag = T_PRIMITIVE;
+			} else if (node instanceof SchemaXNode) {
+				tag = T_SCHEMA;
+			} else {
+				throw new IllegalArgumentException("Unsupported node: " + node);
+			}
+			out.writeByte(tag);
+			int flags = 0;
+			if (node.getTypeQName() != null) {
+				flags |= F_HAS_TYPE;
+			}
+			if (node.isExplicitTypeDeclaration()) {
+				flags |= F_EXPLICIT_TYPE;
+			}
+			if (node instanceof PrimitiveXNode && ((PrimitiveXNode<?>) node).isAttribute()) {
+				flags |= F_ATTRIBUTE;
+			}
+			out.writeByte(flags);
+			if (node.getTypeQName() != null) {
+				writeQName(node.getTypeQName());
+			}
+			switch (tag) {
+				case T_MAP:
+					MapXNode xmap = (MapXNode) node;
+					writeSize(xmap.size());
+					for (Map.Entry<QName, XNode> entry : xmap.entrySet()) {
+						writeQName(entry.getKey());
+						writeNode(entry.getValue());
+					}
+					break;
+				case T_LIST:
+					ListXNode xlist = (ListXNode) node;
+					writeSize(xlist.size());
+					for (XNode item : xlist) {
+						writeNode(item);
+					}
+					break;
+				case T_PRIMITIVE:
+					writePrimitive((PrimitiveXNode<?>) node);
+					break;
+				case T_SCHEMA:
+					Element schemaElement = ((SchemaXNode) node).getSchemaElement();
+					writeString(schemaElement != null ? DOMUtil.serializeDOMToString(schemaElement) : null);
+					break;
+			}
+		}
+
+		private void writePrimitive(PrimitiveXNode<?> xprim) throws IOException, SchemaException {
+			if (!xprim.isParsed() || ItemPathType.COMPLEX_TYPE.equals(xprim.getTypeQName())
+					|| xprim.getValue() instanceof ItemPathType) {
+				out.writeByte(V_XML);
+				writeString(domLexicalProcessor.write(xprim, FRAGMENT_NAME, null));
+				return;
+			}
+			Object value = xprim.getValue();
+			if (value == null) {
+				out.writeByte(V_EMPTY);
+			} else if (value instanceof String) {
+				out.writeByte(V_STRING);
+				writeString((String) value);
+			} else if (value instanceof PolyString) {
+				out.writeByte(V_STRING);			// only orig is serialized, just like in XML
+				writeString(((PolyString) value).getOrig());
+			} else if (value instanceof Boolean) {
+				out.writeByte(V_BOOLEAN);
+				out.writeBoolean((Boolean) value);
+			} else if (value instanceof Integer) {
+				out.writeByte(V_INT);
+				out.writeInt((Integer) value);
+			} else if (value instanceof Long) {
+				out.writeByte(V_LONG);
+				out.writeLong((Long) value);
+			} else if (value instanceof Double) {
+				out.writeByte(V_DOUBLE);
+				out.writeDouble((Double) value);
+			} else if (value instanceof QName) {
+				out.writeByte(V_QNAME);
+				writeQName((QName) value);
+			} else {
+				out.writeByte(V_FORMATTED);
+				writeString(xprim.getFormattedValue());
+			}
+		}
+
+		private void writeQName(QName qname) throws IOException {
+			Integer index = qnames.get(qname);
+			if (index != null) {
+				writeSize(index);
+				return;
+			}
+			writeSize(0);
+			writeNamespace(qname.getNamespaceURI());
+			writeString(qname.getLocalPart());
+			qnames.put(qname, qnames.size() + 1);
+		}
+
+		private void writeNamespace(String namespace) throws IOException {
+			Integer index = namespaces.get(namespace);
+			if (index != null) {
+				writeSize(index);
+				return;
+			}
+			writeSize(0);
+			writeString(namespace);
+			namespaces.put(namespace, namespaces.size() + 1);
+		}
+
+		// null is encoded as 0, other strings as (length+1) followed by UTF-8 bytes
+		private void writeString(String string) throws IOException {
+			if (string == null) {
+				writeSize(0);
+				return;
+			}
+			byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+			writeSize(bytes.length + 1);
+			out.write(bytes);
+		}
+
+		private void writeSize(int value) throws IOException {
+			while ((value & ~0x7F) != 0) {
+				out.writeByte((value & 0x7F) | 0x80);
+				value >>>= 7;
+			}
+			out.writeByte(value);
+		}
+	}
+	//endregion
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2010-2016 Evolveum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.evolveum.midpoint.prism.lex.binary;
+
+import com.evolveum.midpoint.prism.marshaller.XNodeProcessorEvaluationMode;
+import com.evolveum.midpoint.prism.xml.XmlTypeConverter;
+import com.evolveum.midpoint.prism.xml.XsdTypeMapper;
+import com.evolveum.midpoint.prism.xnode.ValueParser;
+import com.evolveum.midpoint.util.DOMUtil;
+import com.evolveum.midpoint.util.QNameUtil;
+import com.evolveum.midpoint.util.exception.SchemaException;
+import com.evolveum.midpoint.util.logging.Trace;
+import com.evolveum.midpoint.util.logging.TraceManager;
+import org.apache.commons.lang.StringUtils;
+
+import javax.xml.namespace.QName;
+import java.io.Serializable;
+import java.util.Map;
+
+/**
+ * Value parser for primitive values read from the binary format. Holds either a natively stored value
+ * (string, boolean, number, QName) or the formatted (XML text) form of the value.
+ *
+ * The native value is returned as is if it fits the requested type; otherwise the value is converted
+ * from its text form, just like DOM parser would do it.
+ *
+ * @author mederly
+ */
+public class BinaryValueParser<T> implements ValueParser<T>, Serializable {
+
+	private static final Trace LOGGER = TraceManager.getTrace(BinaryValueParser.class);
+
+	private final Object value;
+	private String stringValue;
+
+	BinaryValueParser(Object value, String stringValue) {
+		this.value = value;
+		this.stringValue = stringValue;
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public T parse(QName typeName, XNodeProcessorEvaluationMode mode) throws SchemaException {
+		if (value != null) {
+			Class<?> expectedClass = XsdTypeMapper.getXsdToJavaMapping(typeName);
+			if (expectedClass != null && expectedClass.isAssignableFrom(value.getClass())) {
+				return (T) value;
+			}
+		}
+		String text = getStringValue();
+		try {
+			if (DOMUtil.XSD_QNAME.equals(typeName)) {
+				return (T) QNameUtil.uriToQName(text, true);
+			} else if (XmlTypeConverter.canConvert(typeName)) {
+				return (T) XmlTypeConverter.toJavaValue(text, typeName);
+			} else if (DOMUtil.XSD_ANYTYPE.equals(typeName)) {
+				return (T) text;
+			} else {
+				throw new SchemaException("Cannot convert value '" + text + "' to " + typeName);
+			}
+		} catch (IllegalArgumentException e) {
+			if (mode != XNodeProcessorEvaluationMode.COMPAT) {
+				throw e;
+			}
+			LOGGER.warn("Value of '{}' couldn't be parsed as '{}' -- interpreting as null because of COMPAT mode set", text, typeName, e);
+			return null;
+		}
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return StringUtils.isBlank(getStringValue());		// to be consistent with PrimitiveXNode.isEmpty for parsed values
+	}
+
+	@Override
+	public String getStringValue() {
+		if (stringValue == null && value != null) {
+			if (value instanceof QName) {
+				stringValue = QNameUtil.qNameToUri((QName) value);
+			} else if (value instanceof String) {
+				stringValue = (String) value;
+			} else {
+				stringValue = XmlTypeConverter.toXmlTextContent(value, null);
+			}
+		}
+		return stringValue;
+	}
+
+	@Override
+	public Map<String, String> getPotentiallyRelevantNamespaces() {
+		return null;			// QNames are stored with full URIs; values needing namespace context are stored as XML
+	}
+
+	@Override
+	public String toString() {
+		return "ValueParser(binary, " + (value != null ? value + " (" + value.getClass().getSimpleName() + ")" : stringValue) + ")";
+	}
+}
@@ -350,7 +350,7 @@ public class DomLexicalProcessor implements LexicalProcessor<String> {
 		}
 	}
 
-	private static <T> T processIllegalArgumentException(String value, QName typeName, IllegalArgumentException e, XNodeProcessorEvaluationMode mode) {
+	static <T> T processIllegalArgumentException(String value, QName typeName, IllegalArgumentException e, XNodeProcessorEvaluationMode mode) {
 		if (mode != XNodeProcessorEvaluationMode.COMPAT) {
 			throw e;
 		}
@@ -0,0 +1,459 @@
+/*
+ * Copyright (c) 2010-2016 Evolveum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.evolveum.midpoint.prism.lex.dom;
+
+import com.evolveum.midpoint.prism.ParserElementSource;
+import com.evolveum.midpoint.prism.ParserSource;
+import com.evolveum.midpoint.prism.ParsingContext;
+import com.evolveum.midpoint.prism.PrismConstants;
+import com.evolveum.midpoint.prism.SerializationContext;
+import com.evolveum.midpoint.prism.lex.LexicalProcessor;
+import com.evolveum.midpoint.prism.xnode.ListXNode;
+import com.evolveum.midpoint.prism.xnode.MapXNode;
+import com.evolveum.midpoint.prism.xnode.PrimitiveXNode;
+import com.evolveum.midpoint.prism.xnode.RootXNode;
+import com.evolveum.midpoint.prism.xnode.SchemaXNode;
+import com.evolveum.midpoint.prism.xnode.XNode;
+import com.evolveum.midpoint.util.DOMUtil;
+import com.evolveum.midpoint.util.exception.SchemaException;
+import com.evolveum.midpoint.util.logging.Trace;
+import com.evolveum.midpoint.util.logging.TraceManager;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+import org.jetbrains.annotations.NotNull;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import javax.xml.XMLConstants;
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLResolver;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads XML using StAX, creating XNode tree directly - i.e. without building the whole DOM tree first.
+ * The resulting XNodes are the same as the ones produced by {@link DomLexicalProcessor}; DOM is created
+ * only for embedded XSD schemas (SchemaXNode) and for values that are explicitly requested as DOM elements.
+ *
+ * Multiple objects (children of the root element) can be read one at a time, see {@link #readObjectsIteratively}.
+ *
+ * Serialization is delegated to {@link DomLexicalProcessor}.
+ *
+ * @author mederly
+ */
+public class StaxLexicalProcessor implements LexicalProcessor<String> {
+
+	private static final Trace LOGGER = TraceManager.getTrace(StaxLexicalProcessor.class);
+
+	@NotNull private final DomLexicalProcessor domLexicalProcessor;
+	@NotNull private final XMLInputFactory inputFactory;
+
+	public StaxLexicalProcessor(@NotNull DomLexicalProcessor domLexicalProcessor) {
+		this.domLexicalProcessor = domLexicalProcessor;
+		this.inputFactory = createInputFactory();
+	}
+
+	private static XMLInputFactory createInputFactory() {
+		XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+		factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+		factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+		// like DOMUtil.parse, we do not load external DTDs
+		factory.setXMLResolver(new XMLResolver() {
+			@Override
+			public Object resolveEntity(String publicID, String systemID, String baseURI, String namespace) {
+				return new ByteArrayInputStream(new byte[0]);
+			}
+		});
+		return factory;
+	}
+
+	@NotNull
+	@Override
+	public RootXNode read(@NotNull ParserSource source, @NotNull ParsingContext parsingContext) throws SchemaException, IOException {
+		if (source instanceof ParserElementSource) {
+			return domLexicalProcessor.read(source, parsingContext);
+		}
+		InputStream is = source.getInputStream();
+		XMLStreamReader reader = null;
+		try {
+			reader = inputFactory.createXMLStreamReader(is);
+			if (!moveToStartElement(reader)) {
+				throw new SchemaException("No root element in XML document");
+			}
+			Map<String, String> namespaces = getNamespaces(reader, Collections.<String, String>emptyMap());
+			return readRoot(reader, namespaces);
+		} catch (XMLStreamException e) {
+			throw new IllegalStateException("Error parsing XML document " + e.getMessage(), e);
+		} finally {
+			closeQuietly(reader);
+			if (source.closeStreamAfterParsing()) {
+				IOUtils.closeQuietly(is);
+			}
+		}
+	}
+
+	@NotNull
+	@Override
+	public List<RootXNode> readObjects(ParserSource source, ParsingContext parsingContext) throws SchemaException, IOException {
+		final List<RootXNode> nodes = new ArrayList<>();
+		readObjectsIteratively(source, parsingContext, new RootXNodeHandler() {
+			@Override
+			public boolean handleData(RootXNode node) {
+				nodes.add(node);
+				return true;
+			}
+		});
+		return nodes;
+	}
+
+	/**
+	 * Reads children of the root element one by one, passing each of them to the handler as soon as it's read.
+	 */
+	@Override
+	public void readObjectsIteratively(@NotNull ParserSource source, @NotNull ParsingContext parsingContext,
+			@NotNull RootXNodeHandler handler) throws SchemaException, IOException {
+		if (source instanceof ParserElementSource) {
+			domLexicalProcessor.readObjectsIteratively(source, parsingContext, handler);
+			return;
+		}
+		InputStream is = source.getInputStream();
+		XMLStreamReader reader = null;
+		try {
+			reader = inputFactory.createXMLStreamReader(is);
+			if (!moveToStartElement(reader)) {
+				throw new SchemaException("No root element in XML document");
+			}
+			// TODO: maybe some check if this is a collection of other objects???
+			Map<String, String> namespaces = getNamespaces(reader, Collections.<String, String>emptyMap());
+			while (reader.hasNext()) {
+				int event = reader.next();
+				if (event == XMLStreamConstants.START_ELEMENT) {
+					if (!handler.handleData(readRoot(reader, namespaces))) {
+						break;
+					}
+				} else if (event == XMLStreamConstants.END_ELEMENT) {
+					break;
+				}
+			}
+		} catch (XMLStreamException e) {
+			throw new IllegalStateException("Error parsing XML document " + e.getMessage(), e);
+		} finally {
+			closeQuietly(reader);
+			if (source.closeStreamAfterParsing()) {
+				IOUtils.closeQuietly(is);
+			}
+		}
+	}
+
+	private boolean moveToStartElement(XMLStreamReader reader) throws XMLStreamException {
+		while (reader.getEventType() != XMLStreamConstants.START_ELEMENT) {
+			if (!reader.hasNext()) {
+				return false;
+			}
+			reader.next();
+		}
+		return true;
+	}
+
+	private void closeQuietly(XMLStreamReader reader) {
+		if (reader != null) {
+			try {
+				reader.close();
+			} catch (XMLStreamException e) {
+				LOGGER.debug("Couldn't close XML stream reader: {}", e.getMessage(), e);
+			}
+		}
+	}
+
+	/**
+	 * Reads the current element (the reader is positioned at its START_ELEMENT) as a root node.
+	 */
+	private RootXNode readRoot(XMLStreamReader reader, Map<String, String> parentNamespaces) throws XMLStreamException, SchemaException {
+		ElementData element = readElement(reader, parentNamespaces);
+		RootXNode xroot = new RootXNode(element.name);
+		extractCommonMetadata(element, xroot);
+		xroot.setSubnode(element.toXNode());
+		return xroot;
+	}
+
+	/**
+	 * Reads the current element including its content. After return, the reader is positioned at its END_ELEMENT.
+	 */
+	private ElementData readElement(XMLStreamReader reader, Map<String, String> parentNamespaces) throws XMLStreamException, SchemaException {
+		ElementData element = new ElementData(reader.getName(), getNamespaces(reader, parentNamespaces));
+		for (int i = 0; i < reader.getAttributeCount(); i++) {
+			element.addAttribute(reader.getAttributeName(i), reader.getAttributeValue(i));
+		}
+		for (;;) {
+			int event = reader.next();
+			switch (event) {
+				case XMLStreamConstants.START_ELEMENT:
+					QName childName = reader.getName();
+					// We really want to have equals here, not match
+					// we want to be very explicit about namespace here
+					if (DOMUtil.XSD_SCHEMA_ELEMENT.equals(childName)) {
+						element.addChild(childName, readSchema(reader, element.namespaces));
+					} else {
+						element.addChild(childName, readElement(reader, element.namespaces).toXNode());
+					}
+					break;
+				case XMLStreamConstants.CHARACTERS:
+				case XMLStreamConstants.CDATA:
+				case XMLStreamConstants.SPACE:
+				case XMLStreamConstants.ENTITY_REFERENCE:
+					if (element.childNames.isEmpty()) {         // the text is not relevant for elements with children
+						element.text.append(reader.getText());
+					}
+					break;
+				case XMLStreamConstants.END_ELEMENT:
+					return element;
+				default:
+					// comments, processing instructions: ignored
+			}
+		}
+	}
+
+	private Map<String, String> getNamespaces(XMLStreamReader reader, Map<String, String> parentNamespaces) {
+		int count = reader.getNamespaceCount();
+		if (count == 0) {
+			return parentNamespaces;            // the maps are never modified, so they can be shared
+		}
+		Map<String, String> namespaces = new HashMap<>(parentNamespaces);
+		for (int i = 0; i < count; i++) {
+			namespaces.put(StringUtils.defaultIfEmpty(reader.getNamespacePrefix(i), null), reader.getNamespaceURI(i));
+		}
+		return namespaces;
+	}
+
+	private SchemaXNode readSchema(XMLStreamReader reader, Map<String, String> parentNamespaces) throws XMLStreamException {
+		Document document = DOMUtil.getDocument();
+		Element schemaElement = readDomElement(reader, document, parentNamespaces);
+		document.appendChild(schemaElement);
+		SchemaXNode xschema = new SchemaXNode();
+		xschema.setSchemaElement(schemaElement);
+		return xschema;
+	}
+
+	/**
+	 * Creates DOM element from the current element (and its content). Namespaces declared at the ancestors
+	 * (if provided) are declared at the new element, so that it's self-contained.
+	 */
+	private Element readDomElement(XMLStreamReader reader, Document document, Map<String, String> inheritedNamespaces) throws XMLStreamException {
+		Element element = DOMUtil.createElement(document, reader.getName());
+		if (inheritedNamespaces != null) {
+			DOMUtil.setNamespaceDeclarations(element, inheritedNamespaces);
+		}
+		for (int i = 0; i < reader.getNamespaceCount(); i++) {
+			DOMUtil.setNamespaceDeclaration(element, reader.getNamespacePrefix(i), reader.getNamespaceURI(i));
+		}
+		for (int i = 0; i < reader.getAttributeCount(); i++) {
+			QName attrName = reader.getAttributeName(i);
+			if (StringUtils.isEmpty(attrName.getNamespaceURI())) {
+				element.setAttribute(attrName.getLocalPart(), reader.getAttributeValue(i));
+			} else {
+				String qualifiedName = StringUtils.isEmpty(attrName.getPrefix()) ?
+						attrName.getLocalPart() : attrName.getPrefix() + ":" + attrName.getLocalPart();
+				element.setAttributeNS(attrName.getNamespaceURI(), qualifiedName, reader.getAttributeValue(i));
+			}
+		}
+		for (;;) {
+			int event = reader.next();
+			switch (event) {
+				case XMLStreamConstants.START_ELEMENT:
+					element.appendChild(readDomElement(reader, document, null));
+					break;
+				case XMLStreamConstants.CHARACTERS:
+				case XMLStreamConstants.SPACE:
+				case XMLStreamConstants.ENTITY_REFERENCE:
+					element.appendChild(document.createTextNode(reader.getText()));
+					break;
+				case XMLStreamConstants.CDATA:
+					element.appendChild(document.createCDATASection(reader.getText()));
+					break;
+				case XMLStreamConstants.COMMENT:
+					element.appendChild(document.createComment(reader.getText()));
+					break;
+				case XMLStreamConstants.END_ELEMENT:
+					return element;
+				default:
+					// processing instructions: ignored
+			}
+		}
+	}
+
+	private void extractCommonMetadata(ElementData element, XNode xnode) throws SchemaException {
+		// see DOMUtil.resolveXsiType
+		String xsiType = StringUtils.isNotEmpty(element.xsiType) ? element.xsiType : element.hackedXsiType;
+		if (StringUtils.isNotEmpty(xsiType)) {
+			xnode.setTypeQName(StaxValueParser.resolveQName(xsiType, element.namespaces));
+			xnode.setExplicitTypeDeclaration(true);
+		}
+		if (!StringUtils.isBlank(element.maxOccurs)) {
+			xnode.setMaxOccurs(parseMultiplicity(element.maxOccurs, element.name));
+		}
+	}
+
+	private int parseMultiplicity(String maxOccursString, QName elementName) throws SchemaException {
+		if (PrismConstants.MULTIPLICITY_UNBONUNDED.equals(maxOccursString)) {
+			return -1;
+		}
+		if (maxOccursString.startsWith("-")) {
+			return -1;
+		}
+		if (StringUtils.isNumeric(maxOccursString)) {
+			return Integer.valueOf(maxOccursString);
+		} else {
+			throw new SchemaException("Expecetd numeric value for " + PrismConstants.A_MAX_OCCURS.getLocalPart()
+					+ " attribute on " + elementName + " but got " + maxOccursString);
+		}
+	}
+
+	/**
+	 * What we need to know about an element in order to create its XNode (mirrors what DomLexicalProcessor takes from DOM).
+	 */
+	private class ElementData {
+
+		private final QName name;
+		private final Map<String, String> namespaces;
+		private final List<QName> attributeNames = new ArrayList<>();
+		private final List<String> attributeValues = new ArrayList<>();
+		private final List<QName> childNames = new ArrayList<>();
+		private final List<XNode> childNodes = new ArrayList<>();
+		private final StringBuilder text = new StringBuilder();
+		private String xsiType;
+		private String hackedXsiType;
+		private String nil;
+		private String maxOccurs;
+
+		private ElementData(QName name, Map<String, String> namespaces) {
+			this.name = name;
+			this.namespaces = namespaces;
+		}
+
+		private void addAttribute(QName attrName, String value) {
+			String namespace = attrName.getNamespaceURI();
+			if (XMLConstants.W3C_XML_SCHEMA_INSTANCE_NS_URI.equals(namespace)) {
+				if (DOMUtil.XSI_TYPE.getLocalPart().equals(attrName.getLocalPart())) {
+					xsiType = value;
+				} else if (DOMUtil.XSI_NIL.getLocalPart().equals(attrName.getLocalPart())) {
+					nil = value;
+				}
+			} else if (StringUtils.isEmpty(namespace) && DOMUtil.HACKED_XSI_TYPE.equals(attrName.getLocalPart())) {
+				hackedXsiType = value;
+			} else if (!XMLConstants.XML_NS_URI.equals(namespace)) {
+				// application attribute (see DOMUtil.isApplicationAttribute)
+				if (PrismConstants.A_MAX_OCCURS.getNamespaceURI().equals(namespace)
+						&& PrismConstants.A_MAX_OCCURS.getLocalPart().equals(attrName.getLocalPart())) {
+					maxOccurs = value;
+				}
+				attributeNames.add(attrName);
+				attributeValues.add(value);
+			}
+		}
+
+		private void addChild(QName childName, XNode childNode) {
+			childNames.add(childName);
+			childNodes.add(childNode);
+		}
+
+		// see DomLexicalProcessor.parseElementContent
+		private XNode toXNode() throws SchemaException {
+			if (Boolean.parseBoolean(nil)) {
+				return null;
+			}
+			if (!childNames.isEmpty() || !attributeNames.isEmpty()) {
+				return toMapXNode();
+			}
+			PrimitiveXNode<Object> xprim = new PrimitiveXNode<>();
+			extractCommonMetadata(this, xprim);
+			xprim.setValueParser(new StaxValueParser<>(name, text.toString(), namespaces, false));
+			return xprim;
+		}
+
+		private MapXNode toMapXNode() throws SchemaException {
+			MapXNode xmap = new MapXNode();
+			extractCommonMetadata(this, xmap);
+
+			for (int i = 0; i < attributeNames.size(); i++) {
+				PrimitiveXNode<Object> xattr = new PrimitiveXNode<>();
+				xattr.setValueParser(new StaxValueParser<>(attributeNames.get(i), attributeValues.get(i), namespaces, true));
+				xattr.setAttribute(true);
+				xmap.put(attributeNames.get(i), xattr);
+			}
+
+			// subelements with the same name that follow each other are put into a list
+			int groupStart = 0;
+			for (int i = 1; i <= childNames.size(); i++) {
+				if (i == childNames.size() || !childNames.get(i).equals(childNames.get(groupStart))) {
+					addElementGroup(xmap, groupStart, i);
+					groupStart = i;
+				}
+			}
+			return xmap;
+		}
+
+		private void addElementGroup(MapXNode xmap, int from, int to) throws SchemaException {
+			QName elementName = childNames.get(from);
+			XNode xsub;
+			if (to - from == 1) {
+				xsub = childNodes.get(from);
+			} else if (DOMUtil.XSD_SCHEMA_ELEMENT.equals(elementName)) {
+				throw new SchemaException("Too many schema elements");
+			} else {
+				ListXNode xlist = new ListXNode();
+				for (int i = from; i < to; i++) {
+					xlist.add(childNodes.get(i));
+				}
+				xsub = xlist;
+			}
+			xmap.merge(elementName, xsub);
+		}
+	}
+
+	@Override
+	public boolean canRead(@NotNull File file) throws IOException {
+		return domLexicalProcessor.canRead(file);
+	}
+
+	@Override
+	public boolean canRead(@NotNull String dataString) {
+		return domLexicalProcessor.canRead(dataString);
+	}
+
+	@NotNull
+	@Override
+	public String write(@NotNull RootXNode xnode, SerializationContext serializationContext) throws SchemaException {
+		return domLexicalProcessor.write(xnode, serializationContext);
+	}
+
+	@NotNull
+	@Override
+	public String write(@NotNull XNode xnode, @NotNull QName rootElementName, SerializationContext serializationContext) throws SchemaException {
+		return domLexicalProcessor.write(xnode, rootElementName, serializationContext);
+	}
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright (c) 2010-2016 Evolveum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.evolveum.midpoint.prism.lex.dom;
+
+import com.evolveum.midpoint.prism.marshaller.XNodeProcessorEvaluationMode;
+import com.evolveum.midpoint.prism.marshaller.XPathHolder;
+import com.evolveum.midpoint.prism.polystring.PolyString;
+import com.evolveum.midpoint.prism.xml.XmlTypeConverter;
+import com.evolveum.midpoint.prism.xml.XsdTypeMapper;
+import com.evolveum.midpoint.prism.xnode.ValueParser;
+import com.evolveum.midpoint.util.DOMUtil;
+import com.evolveum.midpoint.util.PrettyPrinter;
+import com.evolveum.midpoint.util.QNameUtil;
+import com.evolveum.midpoint.util.exception.SchemaException;
+import com.evolveum.prism.xml.ns._public.types_3.ItemPathType;
+import org.apache.commons.lang.StringUtils;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import javax.xml.XMLConstants;
+import javax.xml.namespace.QName;
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Value parser for primitive elements and attributes read by {@link StaxLexicalProcessor}.
+ * It keeps the text content and the namespace declarations visible at the place of the value
+ * (prefix -> namespace, null prefix means default namespace), so it interprets the value the same way
+ * as the DOM-based parser does, without needing the DOM element.
+ *
+ * @author mederly
+ */
+class StaxValueParser<T> implements ValueParser<T>, Serializable {
+
+	private final QName name;
+	private final String text;
+	private final Map<String, String> namespaces;
+	private final boolean attribute;
+
+	StaxValueParser(QName name, String text, Map<String, String> namespaces, boolean attribute) {
+		this.name = name;
+		this.text = text;
+		this.namespaces = namespaces;
+		this.attribute = attribute;
+	}
+
+	@Override
+	public T parse(QName typeName, XNodeProcessorEvaluationMode mode) throws SchemaException {
+		return attribute ? parseAttributeValue(typeName, mode) : parseElementValue(typeName, mode);
+	}
+
+	// see DomLexicalProcessor.parsePrimitiveElementValue
+	@SuppressWarnings("unchecked")
+	private T parseElementValue(QName typeName, XNodeProcessorEvaluationMode mode) throws SchemaException {
+		try {
+			if (ItemPathType.COMPLEX_TYPE.equals(typeName)) {
+				return (T) new ItemPathType(new XPathHolder(text, namespaces).toItemPath());
+			} else if (DOMUtil.XSD_QNAME.equals(typeName)) {
+				return (T) resolveQName(text, namespaces);
+			} else if (XmlTypeConverter.canConvert(typeName)) {
+				return (T) convert(XsdTypeMapper.getXsdToJavaMapping(typeName));
+			} else if (DOMUtil.XSD_ANYTYPE.equals(typeName)) {
+				return (T) text;                // if parsing primitive as xsd:anyType, we can safely parse it as string
+			} else {
+				throw new SchemaException("Cannot convert element '" + name + "' to " + typeName);
+			}
+		} catch (IllegalArgumentException e) {
+			return DomLexicalProcessor.processIllegalArgumentException(text, typeName, e, mode);
+		}
+	}
+
+	// see XmlTypeConverter.toJavaValue(Element, Class)
+	private Object convert(Class<?> type) {
+		if (type.equals(Element.class)) {
+			return toElement();
+		} else if (type.equals(QName.class)) {
+			return resolveQName(text, namespaces);
+		} else if (PolyString.class.isAssignableFrom(type)) {
+			return new PolyString(text);            // primitive element has no orig/norm subelements
+		} else {
+			Object javaValue = XmlTypeConverter.toJavaValue(text, type);
+			if (javaValue == null) {
+				throw new IllegalArgumentException("Unknown type for conversion: " + type + "(element " + name + ")");
+			}
+			return javaValue;
+		}
+	}
+
+	// see DomLexicalProcessor.parsePrimitiveAttrValue
+	@SuppressWarnings("unchecked")
+	private T parseAttributeValue(QName typeName, XNodeProcessorEvaluationMode mode) throws SchemaException {
+		if (DOMUtil.XSD_QNAME.equals(typeName)) {
+			try {
+				return (T) resolveQName(text, namespaces);
+			} catch (IllegalArgumentException e) {
+				return DomLexicalProcessor.processIllegalArgumentException(text, typeName, e, mode);
+			}
+		}
+		if (XmlTypeConverter.canConvert(typeName)) {
+			try {
+				return XmlTypeConverter.toJavaValue(text, typeName);
+			} catch (IllegalArgumentException e) {
+				return DomLexicalProcessor.processIllegalArgumentException(text, typeName, e, mode);
+			}
+		} else {
+			throw new SchemaException("Cannot convert attribute '" + name + "' to " + typeName);
+		}
+	}
+
+	private Element toElement() {
+		Document document = DOMUtil.getDocument();
+		Element element = DOMUtil.createElement(document, name);
+		document.appendChild(element);
+		DOMUtil.setNamespaceDeclarations(element, namespaces);
+		element.setTextContent(text);
+		return element;
+	}
+
+	/**
+	 * Resolves a QName the same way as DOMUtil.resolveQName does (i.e. a QName without prefix has no namespace).
+	 */
+	static QName resolveQName(String qnameStringRepresentation, Map<String, String> namespaces) {
+		if (StringUtils.isBlank(qnameStringRepresentation)) {
+			return null;
+		}
+		String[] qnameArray = qnameStringRepresentation.split(":");
+		if (qnameArray.length > 2) {
+			throw new IllegalArgumentException("Unsupported format: more than one colon in Qname: "
+					+ qnameStringRepresentation);
+		}
+		if (qnameArray.length == 1 || qnameArray[1] == null || qnameArray[1].isEmpty()) {
+			return new QName(null, qnameArray[0]);
+		}
+		String namespacePrefix = qnameArray[0];
+		String namespace = XMLConstants.XML_NS_PREFIX.equals(namespacePrefix) ?
+				XMLConstants.XML_NS_URI : namespaces.get(namespacePrefix);
+		if (namespace == null) {
+			QNameUtil.reportUndeclaredNamespacePrefix(namespacePrefix, qnameStringRepresentation);
+			namespacePrefix = QNameUtil.markPrefixAsUndeclared(namespacePrefix);
+		}
+		return new QName(namespace, qnameArray[1], namespacePrefix);
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return attribute ? StringUtils.isEmpty(text) : StringUtils.isBlank(text);
+	}
+
+	@Override
+	public String getStringValue() {
+		return text;
+	}
+
+	@Override
+	public Map<String, String> getPotentiallyRelevantNamespaces() {
+		return new HashMap<>(namespaces);
+	}
+
+	@Override
+	public String toString() {
+		return "ValueParser(StAX" + (attribute ? "a" : "e") + ", " + PrettyPrinter.prettyPrint(name) + ": " + text + ")";
+	}
+}
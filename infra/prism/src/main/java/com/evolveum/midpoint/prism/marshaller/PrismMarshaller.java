@@ -259,6 +259,8 @@ public class PrismMarshaller {
             xmap.setExplicitTypeDeclaration(true);
         }
 
+		// Skipping items is applicable only to the top-level (object) value; nested containers are always serialized fully.
+		boolean checkSkippedItems = containerVal instanceof PrismObjectValue;
 		Collection<QName> marshaledItems = new ArrayList<>();
 		if (containerDefinition != null) {
 			// We have to serialize in the definition order. Some data formats (XML) are
@@ -266,6 +268,10 @@ public class PrismMarshaller {
 			// document won't pass schema validation
 			for (ItemDefinition itemDef: containerDefinition.getDefinitions()) {
 				QName elementName = itemDef.getName();
+				if (checkSkippedItems && SerializationContext.isSkipItem(ctx, elementName)) {
+					marshaledItems.add(elementName);
+					continue;
+				}
 				Item<?,?> item = containerVal.findItem(elementName);
 				if (item != null) {
 					XNode xsubnode = marshalItemContent(item, getItemDefinition(containerVal, item), ctx);
@@ -279,7 +285,8 @@ public class PrismMarshaller {
 		if (containerVal.getItems() != null){
 			for (Item<?,?> item : containerVal.getItems()) {
 				QName elementName = item.getElementName();
-				if (marshaledItems.contains(elementName)) {
+				if (marshaledItems.contains(elementName)
+						|| (checkSkippedItems && SerializationContext.isSkipItem(ctx, elementName))) {
 					continue;
 				}
 				XNode xsubnode = marshalItemContent(item, getItemDefinition(containerVal, item), ctx);
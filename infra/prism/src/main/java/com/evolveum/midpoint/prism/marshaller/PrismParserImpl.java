@@ -187,6 +187,18 @@ abstract class PrismParserImpl implements PrismParser {
 		return objects;
 	}
 
+	void doParseObjectsIteratively(ObjectHandler handler) throws IOException, SchemaException {
+		getLexicalProcessor().readObjectsIteratively(source, context, root -> {
+			PrismObject<? extends Objectable> object;
+			try {
+				object = prismContext.getPrismUnmarshaller().parseObject(root, null, null, null, null, context);
+			} catch (SchemaException|RuntimeException e) {
+				return handler.handleError(e);
+			}
+			return handler.handleData(object);
+		});
+	}
+
 	Object doParseItemOrRealValue() throws IOException, SchemaException {
 		RootXNode xnode = getLexicalProcessor().read(source, context);
 		if (itemDefinition != null || itemName != null || typeName != null || typeClass != null) {
@@ -14,9 +14,7 @@
  * limitations under the License.
  */
 
-package com.evolveum.midpoint.repo.sql;
-
-import com.evolveum.midpoint.prism.query.ObjectPaging;
+package com.evolveum.midpoint.prism.query;
 
 /**
  * @author Pavol
@@ -16,6 +16,7 @@
 
 package com.evolveum.midpoint.prism.schema;
 
+import java.io.Serializable;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -39,15 +40,15 @@ import com.evolveum.midpoint.util.exception.SchemaException;
  * @author Radovan Semancik
  * 
  */
-public class PrismSchemaImpl implements PrismSchema {
+public class PrismSchemaImpl implements PrismSchema, Serializable {
 
-	//private static final long serialVersionUID = 5068618465625931984L;
+	private static final long serialVersionUID = 5068618465625931984L;
 
 	//private static final Trace LOGGER = TraceManager.getTrace(PrismSchema.class);
 	
 	@NotNull protected final Collection<Definition> definitions = new ArrayList<>();
 	protected String namespace;
-	protected PrismContext prismContext;
+	protected transient PrismContext prismContext;
 
 	protected PrismSchemaImpl(PrismContext prismContext) {
 		this.prismContext = prismContext;
@@ -100,6 +101,19 @@ public class PrismSchemaImpl implements PrismSchema {
 	public PrismContext getPrismContext() {
 		return prismContext;
 	}
+
+	/**
+	 * Sets the prism context after deserialization (e.g. when loaded from a schema registry snapshot).
+	 */
+	public void revive(PrismContext prismContext) throws SchemaException {
+		if (this.prismContext != null) {
+			return;
+		}
+		this.prismContext = prismContext;
+		for (Definition definition : definitions) {
+			definition.revive(prismContext);
+		}
+	}
 	//endregion
 
 	//region XSD parsing and serialization
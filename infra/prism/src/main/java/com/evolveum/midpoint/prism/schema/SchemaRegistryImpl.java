@@ -94,6 +94,7 @@ public class SchemaRegistryImpl implements DebugDumpable, SchemaRegistry {
 	private boolean initialized = false;
 	private DynamicNamespacePrefixMapper namespacePrefixMapper;
 	private String defaultNamespace;
+	private File snapshotFile;															// null = no snapshot
 
 	private XmlEntityResolver entityResolver = new XmlEntityResolverImpl(this);
 
@@ -157,6 +158,19 @@ public class SchemaRegistryImpl implements DebugDumpable, SchemaRegistry {
 		this.defaultNamespace = defaultNamespace;
 	}
 
+	public File getSnapshotFile() {
+		return snapshotFile;
+	}
+
+	/**
+	 * File with the snapshot of parsed schemas (see {@link SchemaRegistrySnapshot}). If set, the registry loads the parsed
+	 * schemas from it, provided the registered schemas did not change; otherwise it parses them and (re)creates the snapshot.
+	 * Must be called before call to initialize()
+	 */
+	public void setSnapshotFile(File snapshotFile) {
+		this.snapshotFile = snapshotFile;
+	}
+
 	//region Registering resources and initialization
 	/**
 	 * Must be called before call to initialize()
@@ -347,9 +361,13 @@ public class SchemaRegistryImpl implements DebugDumpable, SchemaRegistry {
 		}
 		try {
 			initResolver();
-			parsePrismSchemas();
+			String contentHash = computeSnapshotContentHash();
+			if (!loadSnapshot(contentHash)) {
+				parsePrismSchemas();
+				compileCompileTimeClassList();
+				storeSnapshot(contentHash);
+			}
 			parseJavaxSchema();
-			compileCompileTimeClassList();
 			initialized = true;
 			
 		} catch (SAXException ex) {
@@ -361,6 +379,42 @@ public class SchemaRegistryImpl implements DebugDumpable, SchemaRegistry {
 		}
 	}
 
+	private String computeSnapshotContentHash() {
+		if (snapshotFile == null) {
+			return null;
+		}
+		try {
+			return SchemaRegistrySnapshot.computeContentHash(schemaDescriptions, entityResolver);
+		} catch (IOException | RuntimeException e) {
+			LOGGER.warn("Couldn't compute content hash of registered schemas, schema registry snapshot will not be used: {}",
+					e.getMessage(), e);
+			return null;
+		}
+	}
+
+	private boolean loadSnapshot(String contentHash) {
+		if (contentHash == null) {
+			return false;
+		}
+		SchemaRegistrySnapshot snapshot = SchemaRegistrySnapshot.load(snapshotFile, contentHash, schemaDescriptions);
+		try {
+			if (snapshot == null || !snapshot.applyTo(schemaDescriptions, extensionSchemas, prismContext)) {
+				return false;
+			}
+		} catch (SchemaException | RuntimeException e) {
+			LOGGER.warn("Couldn't use schema registry snapshot {}, schemas will be parsed: {}", snapshotFile, e.getMessage(), e);
+			return false;
+		}
+		LOGGER.info("Parsed schemas loaded from schema registry snapshot {}", snapshotFile);
+		return true;
+	}
+
+	private void storeSnapshot(String contentHash) {
+		if (contentHash != null) {
+			SchemaRegistrySnapshot.create(contentHash, schemaDescriptions, extensionSchemas).store(snapshotFile);
+		}
+	}
+
 	private void parseJavaxSchema() throws SAXException, IOException {
 		schemaFactory = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
 		Source[] sources = new Source[schemaDescriptions.size()];
@@ -0,0 +1,394 @@
+/*
+ * Copyright (c) 2010-2016 Evolveum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.evolveum.midpoint.prism.schema;
+
+import com.evolveum.midpoint.prism.ComplexTypeDefinition;
+import com.evolveum.midpoint.prism.ComplexTypeDefinitionImpl;
+import com.evolveum.midpoint.prism.PrismContainerDefinitionImpl;
+import com.evolveum.midpoint.prism.PrismContext;
+import com.evolveum.midpoint.prism.PrismObjectDefinitionImpl;
+import com.evolveum.midpoint.prism.PrismPropertyDefinitionImpl;
+import com.evolveum.midpoint.prism.PrismReferenceDefinitionImpl;
+import com.evolveum.midpoint.util.DOMUtil;
+import com.evolveum.midpoint.util.exception.SchemaException;
+import com.evolveum.midpoint.util.exception.SystemException;
+import com.evolveum.midpoint.util.logging.Trace;
+import com.evolveum.midpoint.util.logging.TraceManager;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.lang.StringUtils;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.w3c.dom.Element;
+import org.xml.sax.EntityResolver;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+import javax.xml.namespace.QName;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.Serializable;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.CodeSource;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Serialized state of the schema registry after parsing the prism schemas: parsed schemas, extension definitions
+ * and XSD type -> compile-time class maps. The registry can load it on start instead of parsing all the XSDs
+ * and scanning the classpath for compile-time classes.
+ *
+ * The snapshot is bound to a hash of the content of all registered schemas (including xsd:include-d parts)
+ * and of the prism code (the prism jar, or the definition classes when running from a class directory).
+ * If anything does not fit (missing file, different hash, deserialization problem)
+ * the snapshot is simply not used and the schemas are parsed as usual.
+ *
+ * @author mederly
+ */
+class SchemaRegistrySnapshot implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final Trace LOGGER = TraceManager.getTrace(SchemaRegistrySnapshot.class);
+
+	// Increment when the snapshot content or the serialized form of definitions changes incompatibly.
+	private static final int FORMAT_VERSION = 1;
+
+	@NotNull private final String contentHash;
+
+	// These two lists are aligned with the list of registered schema descriptions.
+	@NotNull private final List<PrismSchema> schemas;
+	@NotNull private final List<Map<QName, Class<?>>> xsdTypeMaps;
+
+	@NotNull private final Map<QName, ComplexTypeDefinition> extensionSchemas;
+
+	// Classes whose serialized form is part of the snapshot; used if prism is not loaded from a jar.
+	private static final List<Class<?>> DEFINITION_CLASSES = Arrays.asList(SchemaRegistrySnapshot.class,
+			PrismSchemaImpl.class, ComplexTypeDefinitionImpl.class, PrismContainerDefinitionImpl.class,
+			PrismObjectDefinitionImpl.class, PrismPropertyDefinitionImpl.class, PrismReferenceDefinitionImpl.class);
+
+	// Only these classes (and classes from compile-time packages of registered schemas) can be deserialized.
+	private static final List<String> ALLOWED_CLASS_PREFIXES = Arrays.asList("com.evolveum.midpoint.",
+			"com.evolveum.prism.", "java.lang.", "java.util.", "java.math.", "javax.xml.namespace.");
+
+	private SchemaRegistrySnapshot(@NotNull String contentHash, @NotNull List<PrismSchema> schemas,
+			@NotNull List<Map<QName, Class<?>>> xsdTypeMaps, @NotNull Map<QName, ComplexTypeDefinition> extensionSchemas) {
+		this.contentHash = contentHash;
+		this.schemas = schemas;
+		this.xsdTypeMaps = xsdTypeMaps;
+		this.extensionSchemas = extensionSchemas;
+	}
+
+	static SchemaRegistrySnapshot create(@NotNull String contentHash, @NotNull List<SchemaDescription> schemaDescriptions,
+			@NotNull Map<QName, ComplexTypeDefinition> extensionSchemas) {
+		List<PrismSchema> schemas = new ArrayList<>(schemaDescriptions.size());
+		List<Map<QName, Class<?>>> xsdTypeMaps = new ArrayList<>(schemaDescriptions.size());
+		for (SchemaDescription schemaDescription : schemaDescriptions) {
+			schemas.add(schemaDescription.getSchema());
+			xsdTypeMaps.add(schemaDescription.getXsdTypeTocompileTimeClassMap());
+		}
+		return new SchemaRegistrySnapshot(contentHash, schemas, xsdTypeMaps, new HashMap<>(extensionSchemas));
+	}
+
+	//region Content hash
+	/**
+	 * Computes hash of everything the parsed registry state depends on: the content of registered schemas
+	 * (with the included schema fragments), their compile-time packages and the prism code.
+	 */
+	static String computeContentHash(@NotNull List<SchemaDescription> schemaDescriptions, @NotNull EntityResolver resolver)
+			throws IOException {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new SystemException(e.getMessage(), e);
+		}
+		update(digest, "format:" + FORMAT_VERSION);
+		updateWithPrismCode(digest);
+		Set<String> visitedIncludes = new HashSet<>();
+		for (SchemaDescription schemaDescription : schemaDescriptions) {
+			Package pkg = schemaDescription.getCompileTimeClassesPackage();
+			update(digest, "schema:" + schemaDescription.getNamespace() + ":" + schemaDescription.isPrismSchema()
+					+ ":" + (pkg != null ? pkg.getName() : ""));
+			Element domElement = schemaDescription.getDomElement();
+			update(digest, DOMUtil.serializeDOMToString(domElement));
+			updateWithIncludes(digest, domElement, resolver, visitedIncludes);
+		}
+		return Hex.encodeHexString(digest.digest());
+	}
+
+	/**
+	 * The implementation version is not enough: it is missing when not running from a packaged jar, and it does not
+	 * change between builds of the same (snapshot) version. So we hash the prism jar itself; when prism classes
+	 * are loaded from a directory, we hash the serialVersionUIDs and the bytecode of the definition classes.
+	 */
+	private static void updateWithPrismCode(MessageDigest digest) throws IOException {
+		Package prismPackage = SchemaRegistrySnapshot.class.getPackage();
+		update(digest, "version:" + (prismPackage != null ? prismPackage.getImplementationVersion() : null));
+		File prismJar = getPrismJar();
+		if (prismJar != null) {
+			update(digest, "jar:");
+			try (InputStream is = new FileInputStream(prismJar)) {
+				digest.update(readAll(is));
+			}
+			return;
+		}
+		for (Class<?> definitionClass : DEFINITION_CLASSES) {
+			ObjectStreamClass streamClass = ObjectStreamClass.lookup(definitionClass);
+			update(digest, "class:" + definitionClass.getName() + ":" + (streamClass != null ? streamClass.getSerialVersionUID() : null));
+			String resourceName = definitionClass.getName().replace('.', '/') + ".class";
+			ClassLoader classLoader = definitionClass.getClassLoader();
+			URL resource = classLoader != null ? classLoader.getResource(resourceName) : null;
+			if (resource == null) {
+				throw new IOException("Couldn't find bytecode of " + definitionClass);
+			}
+			try (InputStream is = resource.openStream()) {
+				digest.update(readAll(is));
+			}
+		}
+	}
+
+	@Nullable
+	private static File getPrismJar() {
+		CodeSource codeSource = SchemaRegistrySnapshot.class.getProtectionDomain().getCodeSource();
+		if (codeSource == null || codeSource.getLocation() == null || !"file".equals(codeSource.getLocation().getProtocol())) {
+			return null;
+		}
+		try {
+			File file = new File(codeSource.getLocation().toURI());
+			return file.isFile() ? file : null;
+		} catch (URISyntaxException | IllegalArgumentException e) {
+			LOGGER.debug("Couldn't determine prism jar from {}: {}", codeSource.getLocation(), e.getMessage(), e);
+			return null;
+		}
+	}
+
+	private static void updateWithIncludes(MessageDigest digest, Element schemaElement, EntityResolver resolver,
+			Set<String> visitedIncludes) throws IOException {
+		for (Element include : DOMUtil.getChildElements(schemaElement, DOMUtil.XSD_INCLUDE_ELEMENT)) {
+			String schemaLocation = include.getAttribute("schemaLocation");
+			if (StringUtils.isEmpty(schemaLocation) || !visitedIncludes.add(schemaLocation)) {
+				continue;
+			}
+			byte[] content = readIncluded(schemaLocation, resolver);
+			update(digest, "include:" + schemaLocation);
+			digest.update(content);
+			Element includedSchema = DOMUtil.parse(new ByteArrayInputStream(content)).getDocumentElement();
+			updateWithIncludes(digest, includedSchema, resolver, visitedIncludes);
+		}
+	}
+
+	private static byte[] readIncluded(String schemaLocation, EntityResolver resolver) throws IOException {
+		InputSource inputSource;
+		try {
+			inputSource = resolver.resolveEntity(null, schemaLocation);
+		} catch (SAXException e) {
+			throw new IOException("Couldn't resolve included schema " + schemaLocation + ": " + e.getMessage(), e);
+		}
+		InputStream inputStream = inputSource != null ? inputSource.getByteStream() : null;
+		if (inputStream == null && inputSource != null && inputSource.getSystemId() != null) {
+			inputStream = new URL(inputSource.getSystemId()).openStream();
+		}
+		if (inputStream == null) {
+			throw new IOException("Couldn't resolve included schema " + schemaLocation);
+		}
+		try (InputStream is = inputStream) {
+			return readAll(is);
+		}
+	}
+
+	private static byte[] readAll(InputStream is) throws IOException {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		int read;
+		while ((read = is.read(buffer)) > 0) {
+			baos.write(buffer, 0, read);
+		}
+		return baos.toByteArray();
+	}
+
+	private static void update(MessageDigest digest, String text) {
+		digest.update(text.getBytes(StandardCharsets.UTF_8));
+		digest.update((byte) 0);
+	}
+	//endregion
+
+	//region Loading and storing
+	/**
+	 * Returns the snapshot stored in the file, or null if there's none or it does not match the content hash.
+	 */
+	@Nullable
+	static SchemaRegistrySnapshot load(@NotNull File file, @NotNull String expectedContentHash,
+			@NotNull List<SchemaDescription> schemaDescriptions) {
+		if (!file.isFile()) {
+			LOGGER.debug("Schema registry snapshot {} does not exist", file);
+			return null;
+		}
+		Set<String> compileTimePackages = new HashSet<>();
+		for (SchemaDescription schemaDescription : schemaDescriptions) {
+			if (schemaDescription.getCompileTimeClassesPackage() != null) {
+				compileTimePackages.add(schemaDescription.getCompileTimeClassesPackage().getName());
+			}
+		}
+		try (ObjectInputStream ois = new ContextClassLoaderObjectInputStream(
+				new BufferedInputStream(new FileInputStream(file)), compileTimePackages)) {
+			if (ois.readInt() != FORMAT_VERSION || !expectedContentHash.equals(ois.readUTF())) {
+				LOGGER.info("Schema registry snapshot {} is outdated, schemas will be parsed", file);
+				return null;
+			}
+			return (SchemaRegistrySnapshot) ois.readObject();
+		} catch (IOException | ClassNotFoundException | RuntimeException e) {
+			LOGGER.warn("Couldn't load schema registry snapshot {}, schemas will be parsed: {}", file, e.getMessage(), e);
+			return null;
+		}
+	}
+
+	/**
+	 * Stores the snapshot. It is written into a temporary file first, so concurrently starting nodes
+	 * never see a partially written snapshot. Failures are only logged.
+	 */
+	void store(@NotNull File file) {
+		File tempFile = null;
+		try {
+			File directory = file.getAbsoluteFile().getParentFile();
+			if (directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+				throw new IOException("Couldn't create directory " + directory);
+			}
+			tempFile = File.createTempFile(file.getName(), ".tmp", directory);
+			try (ObjectOutputStream oos = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+				// header is written separately, so outdated snapshots are detected without deserializing them
+				oos.writeInt(FORMAT_VERSION);
+				oos.writeUTF(contentHash);
+				oos.writeObject(this);
+			}
+			Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			LOGGER.info("Schema registry snapshot stored to {}", file);
+		} catch (IOException | RuntimeException e) {
+			LOGGER.warn("Couldn't store schema registry snapshot to {}: {}", file, e.getMessage(), e);
+			if (tempFile != null && tempFile.exists() && !tempFile.delete()) {
+				LOGGER.warn("Couldn't delete temporary file {}", tempFile);
+			}
+		}
+	}
+	//endregion
+
+	/**
+	 * Puts the snapshot content into the schema descriptions and the extension schema map.
+	 * Returns false if the snapshot does not fit the schema descriptions; nothing is changed in that case.
+	 */
+	boolean applyTo(@NotNull List<SchemaDescription> schemaDescriptions,
+			@NotNull Map<QName, ComplexTypeDefinition> extensionSchemasToFill, @NotNull PrismContext prismContext)
+			throws SchemaException {
+		if (schemas.size() != schemaDescriptions.size() || xsdTypeMaps.size() != schemaDescriptions.size()) {
+			return false;
+		}
+		for (PrismSchema schema : schemas) {
+			if (schema instanceof PrismSchemaImpl) {
+				((PrismSchemaImpl) schema).revive(prismContext);
+			}
+		}
+		for (ComplexTypeDefinition extensionCtd : extensionSchemas.values()) {
+			extensionCtd.revive(prismContext);
+		}
+		for (int i = 0; i < schemaDescriptions.size(); i++) {
+			SchemaDescription schemaDescription = schemaDescriptions.get(i);
+			if (schemaDescription.isPrismSchema()) {
+				schemaDescription.setSchema(schemas.get(i));
+			}
+			if (schemaDescription.getCompileTimeClassesPackage() != null) {
+				schemaDescription.setXsdTypeTocompileTimeClassMap(xsdTypeMaps.get(i));
+			}
+		}
+		extensionSchemasToFill.putAll(extensionSchemas);
+		return true;
+	}
+
+	/**
+	 * Compile-time classes (referenced by definitions) may come from a different class loader than prism itself.
+	 * The snapshot file is read before anything else, so only classes that can occur in definitions are accepted.
+	 */
+	private static class ContextClassLoaderObjectInputStream extends ObjectInputStream {
+
+		@NotNull private final Set<String> compileTimePackages;
+
+		ContextClassLoaderObjectInputStream(InputStream in, @NotNull Set<String> compileTimePackages) throws IOException {
+			super(in);
+			this.compileTimePackages = compileTimePackages;
+		}
+
+		@Override
+		protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+			if (!isAllowed(desc.getName())) {
+				throw new InvalidClassException(desc.getName(), "Class is not allowed in schema registry snapshot");
+			}
+			ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+			if (classLoader != null) {
+				try {
+					return Class.forName(desc.getName(), false, classLoader);
+				} catch (ClassNotFoundException e) {
+					// let's try the default way
+				}
+			}
+			return super.resolveClass(desc);
+		}
+
+		@Override
+		protected Class<?> resolveProxyClass(String[] interfaces) throws IOException, ClassNotFoundException {
+			throw new InvalidClassException("Proxy classes are not allowed in schema registry snapshot");
+		}
+
+		private boolean isAllowed(String className) {
+			String name = className;
+			while (name.startsWith("[")) {
+				name = name.substring(1);
+			}
+			if (name.length() == 1) {
+				return true;			// array of primitives
+			}
+			if (name.startsWith("L") && name.endsWith(";")) {
+				name = name.substring(1, name.length() - 1);
+			}
+			for (String prefix : ALLOWED_CLASS_PREFIXES) {
+				if (name.startsWith(prefix)) {
+					return true;
+				}
+			}
+			int lastDot = name.lastIndexOf('.');
+			return lastDot > 0 && compileTimePackages.contains(name.substring(0, lastDot));
+		}
+	}
+}
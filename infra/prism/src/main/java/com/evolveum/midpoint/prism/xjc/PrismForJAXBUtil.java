@@ -51,7 +51,11 @@ public final class PrismForJAXBUtil {
 
         PrismProperty property;
 		try {
-			property = container.findOrCreateProperty(name);
+			if (container.isImmutable()) {
+				property = findOrCreateDetachedItem(container.getValue(), name, PrismProperty.class);
+			} else {
+				property = container.findOrCreateProperty(name);
+			}
 		} catch (SchemaException e) {
 			// This should not happen. Code generator and compiler should take care of that.
 			throw new IllegalStateException("Internal schema error: "+e.getMessage(),e);
@@ -133,7 +137,11 @@ public final class PrismForJAXBUtil {
 
         PrismProperty property;
 		try {
-			property = container.findOrCreateProperty(name);
+			if (container.isImmutable()) {
+				property = findOrCreateDetachedItem(container, name, PrismProperty.class);
+			} else {
+				property = container.findOrCreateProperty(name);
+			}
 		} catch (SchemaException e) {
 			// This should not happen. Code generator and compiler should take care of that.
 			throw new IllegalStateException("Internal schema error: "+e.getMessage(),e);
@@ -141,6 +149,19 @@ public final class PrismForJAXBUtil {
         return new PropertyArrayList<T>(property);
     }
 
+    /**
+     * For immutable values we cannot create missing items, so an empty immutable item not attached
+     * to the parent is returned instead. Any attempt to modify it results in an exception, just as
+     * for the other items of the immutable value.
+     */
+    private static <I extends Item> I findOrCreateDetachedItem(PrismContainerValue<?> parentValue, QName name, Class<I> type) throws SchemaException {
+        I item = (I) parentValue.findItem(name, type);
+        if (item != null) {
+            return item;
+        }
+        return (I) parentValue.createDetachedSubItem(name, type, null, true);
+    }
+
     
     public static <T> void setPropertyValue(PrismContainerValue<?> container, QName name, T value) {
         Validate.notNull(container, "Container must not be null.");
@@ -197,6 +218,9 @@ public final class PrismForJAXBUtil {
         Validate.notNull(name, "QName must not be null.");
 
         try {
+            if (parentValue.isImmutable()) {
+                return (T) findOrCreateDetachedItem(parentValue, name, PrismContainer.class);
+            }
             return (T) parentValue.findOrCreateContainer(name);
         } catch (SchemaException ex) {
             throw new SystemException(ex.getMessage(),  ex);
@@ -208,6 +232,9 @@ public final class PrismForJAXBUtil {
         Validate.notNull(name, "QName must not be null.");
 
         try {
+            if (parent.isImmutable()) {
+                return (T) findOrCreateDetachedItem(parent.getValue(), name, PrismContainer.class);
+            }
             return (T) parent.findOrCreateContainer(name);
         } catch (SchemaException ex) {
             throw new SystemException(ex.getMessage(),  ex);
@@ -376,7 +403,11 @@ public final class PrismForJAXBUtil {
 
         PrismContainer container;
 		try {
-			container = parent.findOrCreateContainer(name);
+			if (parent.isImmutable()) {
+				container = findOrCreateDetachedItem(parent.getValue(), name, PrismContainer.class);
+			} else {
+				container = parent.findOrCreateContainer(name);
+			}
 		} catch (SchemaException e) {
 			// This should not happen. Code generator and compiler should take care of that.
 			throw new IllegalStateException("Internal schema error: "+e.getMessage(),e);
@@ -404,6 +435,9 @@ public final class PrismForJAXBUtil {
 
 	public static PrismReference getReference(PrismContainerValue parent, QName fieldName) {
 		try {
+			if (parent.isImmutable()) {
+				return findOrCreateDetachedItem(parent, fieldName, PrismReference.class);
+			}
 			return parent.findOrCreateReference(fieldName);
 		} catch (SchemaException e) {
 			// This should not happen. Code generator and compiler should take care of that.
@@ -45,6 +45,10 @@ public class PerfRecorder {
 		}
 	}
 
+	public String getName() {
+		return name;
+	}
+
 	public int getCount() {
 		return count;
 	}
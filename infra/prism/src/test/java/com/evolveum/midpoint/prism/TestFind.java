@@ -18,9 +18,14 @@ package com.evolveum.midpoint.prism;
 import static org.testng.AssertJUnit.assertTrue;
 import static com.evolveum.midpoint.prism.PrismInternalTestUtil.*;
 import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertNotNull;
+import static org.testng.AssertJUnit.assertNull;
+import static org.testng.AssertJUnit.assertSame;
 
 import java.io.IOException;
 
+import javax.xml.namespace.QName;
+
 import org.testng.annotations.BeforeSuite;
 import org.testng.annotations.Test;
 import org.xml.sax.SAXException;
@@ -33,6 +38,7 @@ import com.evolveum.midpoint.prism.path.ItemPath;
 import com.evolveum.midpoint.prism.path.NameItemPathSegment;
 import com.evolveum.midpoint.prism.polystring.PolyString;
 import com.evolveum.midpoint.prism.util.PrismTestUtil;
+import com.evolveum.midpoint.util.DOMUtil;
 import com.evolveum.midpoint.util.PrettyPrinter;
 import com.evolveum.midpoint.util.exception.SchemaException;
 
@@ -180,6 +186,98 @@ public class TestFind {
 		assertEquals("Wrong value2 description (path="+path+")", "Assignment 2", value2.findProperty(AssignmentType.F_DESCRIPTION).getRealValue());
 	}
 	
+	@Test
+	public void testFindItemAfterAddAndRemove() throws SchemaException, SAXException, IOException {
+		final String TEST_NAME = "testFindItemAfterAddAndRemove";
+		System.out.println("===[ "+TEST_NAME+" ]===");
+
+		// GIVEN
+		PrismObject<UserType> user = createUser();
+		PrismContainerValue<UserType> userValue = user.getValue();
+		assertNull("Locality present before adding", userValue.findItem(UserType.F_LOCALITY));
+		PrismProperty<String> locality = user.getDefinition().<String>findPropertyDefinition(UserType.F_LOCALITY).instantiate();
+
+		// WHEN
+		userValue.add(locality);
+
+		// THEN
+		assertSame("Added item not found", locality, userValue.findItem(UserType.F_LOCALITY));
+		assertSame("Added item not found by unqualified name", locality, userValue.findItem(new QName("locality")));
+
+		// WHEN
+		userValue.remove(locality);
+
+		// THEN
+		assertNull("Removed item found", userValue.findItem(UserType.F_LOCALITY));
+	}
+
+	@Test
+	public void testFindItemAfterItemsListSet() throws SchemaException, SAXException, IOException {
+		final String TEST_NAME = "testFindItemAfterItemsListSet";
+		System.out.println("===[ "+TEST_NAME+" ]===");
+
+		// GIVEN
+		PrismObject<UserType> user = createUser();
+		PrismContainerValue<UserType> userValue = user.getValue();
+		Item<?,?> description = userValue.findItem(UserType.F_DESCRIPTION);
+		assertNotNull("No description", description);
+		assertNull("Locality present before replacing", userValue.findItem(UserType.F_LOCALITY));
+		PrismProperty<String> locality = user.getDefinition().<String>findPropertyDefinition(UserType.F_LOCALITY).instantiate();
+
+		// WHEN
+		userValue.getItems().set(userValue.getItems().indexOf(description), locality);
+
+		// THEN
+		assertNull("Replaced item found", userValue.findItem(UserType.F_DESCRIPTION));
+		assertSame("Replacing item not found", locality, userValue.findItem(UserType.F_LOCALITY));
+	}
+
+	@Test
+	public void testFindItemAfterRename() throws SchemaException, SAXException, IOException {
+		final String TEST_NAME = "testFindItemAfterRename";
+		System.out.println("===[ "+TEST_NAME+" ]===");
+
+		// GIVEN
+		PrismObject<UserType> user = createUser();
+		PrismContainerValue<UserType> userValue = user.getValue();
+		Item<?,?> givenName = userValue.findItem(UserType.F_GIVEN_NAME);
+		assertNotNull("No given name", givenName);
+		assertNull("Locality present before renaming", userValue.findItem(UserType.F_LOCALITY));
+
+		// WHEN
+		givenName.setElementName(UserType.F_LOCALITY);
+
+		// THEN
+		assertNull("Item found by its old name", userValue.findItem(UserType.F_GIVEN_NAME));
+		assertSame("Item not found by its new name", givenName, userValue.findItem(UserType.F_LOCALITY));
+	}
+
+	@Test
+	public void testFindItemDefinitionAfterChange() throws SchemaException, SAXException, IOException {
+		final String TEST_NAME = "testFindItemDefinitionAfterChange";
+		System.out.println("===[ "+TEST_NAME+" ]===");
+
+		// GIVEN
+		PrismObject<UserType> user = createUser();
+		ComplexTypeDefinitionImpl userCtd = ((ComplexTypeDefinitionImpl) user.getDefinition().getComplexTypeDefinition()).clone();
+		QName newName = new QName(NS_FOO, "newProperty");
+		ItemDefinition<?> originalLocalityDef = userCtd.findItemDefinition(UserType.F_LOCALITY);
+		assertNotNull("No locality definition", originalLocalityDef);
+		assertNull("New property definition present before adding", userCtd.findItemDefinition(newName));
+		PrismPropertyDefinitionImpl<String> newLocalityDef = new PrismPropertyDefinitionImpl<>(UserType.F_LOCALITY,
+				DOMUtil.XSD_STRING, user.getPrismContext());
+
+		// WHEN
+		PrismPropertyDefinition<?> newPropertyDef = userCtd.createPropertyDefinition(newName, DOMUtil.XSD_STRING);
+		userCtd.replaceDefinition(UserType.F_LOCALITY, newLocalityDef);
+
+		// THEN
+		assertSame("Added definition not found", newPropertyDef, userCtd.findItemDefinition(newName));
+		assertSame("Added definition not found by unqualified name", newPropertyDef,
+				userCtd.findItemDefinition(new QName("newProperty")));
+		assertSame("Replacing definition not found", newLocalityDef, userCtd.findItemDefinition(UserType.F_LOCALITY));
+	}
+
 	private <T> T findUser(ItemPath path) throws SchemaException, SAXException, IOException {
 		PrismObject<UserType> user = createUser();
 		return find(user, path);
@@ -17,6 +17,12 @@ package com.evolveum.midpoint.prism;
 
 import static com.evolveum.midpoint.prism.PrismInternalTestUtil.*;
 
+import static org.testng.AssertJUnit.assertSame;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
 import javax.xml.namespace.QName;
 
 import org.testng.annotations.BeforeSuite;
@@ -25,6 +31,7 @@ import org.testng.annotations.Test;
 import com.evolveum.midpoint.prism.foo.AssignmentType;
 import com.evolveum.midpoint.prism.foo.UserType;
 import com.evolveum.midpoint.util.PrettyPrinter;
+import com.evolveum.midpoint.util.QNameUtil;
 
 /**
  * @author semancik
@@ -33,6 +40,7 @@ import com.evolveum.midpoint.util.PrettyPrinter;
 public class TestPerformance {
 	
 	private static final int ITERATIONS = 10000;
+	private static final double SLOWDOWN_TOLERANCE = 1.5D;
 	
 	
 	@BeforeSuite
@@ -96,6 +104,108 @@ public class TestPerformance {
 		
 		System.out.println("User:");
 		System.out.println(user.debugDump());
-	}	
+	}
+
+	/**
+	 * Looks up all items of (UserType-sized) user jack, by qualified and unqualified names, both in the object
+	 * and in its complex type definition. The (indexed) lookups are compared with the sequential search they replaced,
+	 * measured in the same iterations; absolute times depend too much on the machine.
+	 */
+	@Test
+	public void testPerfFindItem() throws Exception {
+		final String TEST_NAME = "testPerfFindItem";
+		PrismInternalTestUtil.displayTestTitle(TEST_NAME);
+
+		// GIVEN
+		PrismContext ctx = constructInitializedPrismContext();
+		PrismObject<UserType> user = ctx.parserFor(USER_JACK_FILE_XML).xml().parse();
+		PrismContainerValue<UserType> userValue = user.getValue();
+		ComplexTypeDefinition userCtd = user.getDefinition().getComplexTypeDefinition();
+		List<QName> names = new ArrayList<>();
+		for (Item<?,?> item : userValue.getItems()) {
+			names.add(item.getElementName());
+			names.add(new QName(item.getElementName().getLocalPart()));
+		}
+		names.add(new QName(NS_FOO, "nonexistent"));
+		System.out.println("Looking up " + names.size() + " names in user with " + userValue.getItems().size()
+				+ " items and definition with " + userCtd.getDefinitions().size() + " item definitions");
+
+		for (QName name : names) {
+			assertSame("Wrong item found for " + name, findItemSequentially(userValue, name), userValue.findItem(name));
+		}
+
+		PerfRecorder recorderFindItem = new PerfRecorder("findItem");
+		PerfRecorder recorderFindItemSequentially = new PerfRecorder("findItem (sequential)");
+		PerfRecorder recorderFindItemDefinition = new PerfRecorder("findItemDefinition");
+		PerfRecorder recorderFindItemDefinitionSequentially = new PerfRecorder("findItemDefinition (sequential)");
+
+		// WHEN
+		for (int i = 0; i < ITERATIONS; i++) {
+			long tsStart = System.nanoTime();
+
+			for (QName name : names) {
+				userValue.findItem(name);
+			}
+
+			long ts1 = System.nanoTime();
+
+			for (QName name : names) {
+				userCtd.findItemDefinition(name, ItemDefinition.class);
+			}
+
+			long ts2 = System.nanoTime();
+
+			for (QName name : names) {
+				findItemSequentially(userValue, name);
+			}
+
+			long ts3 = System.nanoTime();
+
+			for (QName name : names) {
+				findItemDefinitionSequentially(userCtd, name);
+			}
+
+			long tsEnd = System.nanoTime();
+
+			recorderFindItem.record(i, ((double) (ts1 - tsStart)) / 1000000);
+			recorderFindItemDefinition.record(i, ((double) (ts2 - ts1)) / 1000000);
+			recorderFindItemSequentially.record(i, ((double) (ts3 - ts2)) / 1000000);
+			recorderFindItemDefinitionSequentially.record(i, ((double) (tsEnd - ts3)) / 1000000);
+		}
+
+		// THEN
+		System.out.println(recorderFindItem.dump());
+		System.out.println(recorderFindItemSequentially.dump());
+		System.out.println(recorderFindItemDefinition.dump());
+		System.out.println(recorderFindItemDefinitionSequentially.dump());
+
+		assertNotSlower(recorderFindItem, recorderFindItemSequentially);
+		assertNotSlower(recorderFindItemDefinition, recorderFindItemDefinitionSequentially);
+	}
+
+	// some tolerance for timer resolution and GC/JIT noise
+	private void assertNotSlower(PerfRecorder indexed, PerfRecorder sequential) {
+		assertTrue(indexed.getName() + " is slower than " + sequential.getName() + ": " + indexed.getAverage()
+						+ " ms vs. " + sequential.getAverage() + " ms",
+				indexed.getAverage() <= sequential.getAverage() * SLOWDOWN_TOLERANCE);
+	}
+
+	private Item<?,?> findItemSequentially(PrismContainerValue<?> value, QName name) {
+		for (Item<?,?> item : value.getItems()) {
+			if (QNameUtil.match(name, item.getElementName())) {
+				return item;
+			}
+		}
+		return null;
+	}
+
+	private ItemDefinition findItemDefinitionSequentially(ComplexTypeDefinition ctd, QName name) {
+		for (ItemDefinition def : ctd.getDefinitions()) {
+			if (def.isValidFor(name, ItemDefinition.class, false)) {
+				return def;
+			}
+		}
+		return null;
+	}
 
 }
@@ -21,7 +21,16 @@ import static org.testng.AssertJUnit.assertTrue;
 import static com.evolveum.midpoint.prism.PrismInternalTestUtil.*;
 import static org.testng.AssertJUnit.assertNotNull;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
 import java.util.Map;
 
 import javax.xml.XMLConstants;
@@ -40,6 +49,7 @@ import com.evolveum.midpoint.prism.foo.UserType;
 import com.evolveum.midpoint.prism.schema.PrismSchema;
 import com.evolveum.midpoint.prism.schema.SchemaDescription;
 import com.evolveum.midpoint.prism.schema.SchemaRegistry;
+import com.evolveum.midpoint.prism.schema.SchemaRegistryImpl;
 import com.evolveum.midpoint.prism.util.PrismAsserts;
 import com.evolveum.midpoint.prism.xml.DynamicNamespacePrefixMapper;
 import com.evolveum.midpoint.util.DOMUtil;
@@ -265,6 +275,101 @@ public class TestPrismContext {
 		assertNotNull("No foo XSD DOM", fooXsd);
 	}
 
+	@Test
+	public void testSchemaRegistrySnapshot() throws Exception {
+		System.out.println("===[ testSchemaRegistrySnapshot ]===");
+
+		// GIVEN
+		File snapshotFile = File.createTempFile("schema-registry-snapshot", ".ser");
+		snapshotFile.delete();
+		snapshotFile.deleteOnExit();
+
+		PrismContextImpl parsingContext = constructPrismContext();
+		((SchemaRegistryImpl) parsingContext.getSchemaRegistry()).setSnapshotFile(snapshotFile);
+		parsingContext.initialize();
+		assertTrue("Snapshot was not created", snapshotFile.isFile());
+
+		// WHEN
+		PrismContextImpl prismContext = constructPrismContext();
+		((SchemaRegistryImpl) prismContext.getSchemaRegistry()).setSnapshotFile(snapshotFile);
+		prismContext.initialize();
+
+		// THEN
+		SchemaRegistry schemaRegistry = prismContext.getSchemaRegistry();
+		PrismObjectDefinition<UserType> userDefinition = schemaRegistry.findObjectDefinitionByCompileTimeClass(UserType.class);
+		assertNotNull("No user definition", userDefinition);
+		assertTrue("User definition is not bound to the prism context", userDefinition.getPrismContext() == prismContext);
+		assertEquals("Wrong user definition", parsingContext.getSchemaRegistry()
+				.findObjectDefinitionByCompileTimeClass(UserType.class), userDefinition);
+		assertEquals("Wrong compile-time class for account type", AccountType.class,
+				schemaRegistry.getCompileTimeClass(ACCOUNT_TYPE_QNAME));
+
+		PrismPropertyDefinition ignoredTypeDef = schemaRegistry.findPropertyDefinitionByElementName(EXTENSION_IGNORED_TYPE_ELEMENT);
+		PrismAsserts.assertDefinition(ignoredTypeDef, EXTENSION_IGNORED_TYPE_ELEMENT, DOMUtil.XSD_STRING, 0, -1);
+		assertTrue("Element "+EXTENSION_IGNORED_TYPE_ELEMENT+" is NOT ignored", ignoredTypeDef.isIgnored());
+
+		PrismObject<UserType> user = prismContext.parseObject(USER_JACK_FILE_XML);
+		assertNotNull("No user parsed", user);
+		user.checkConsistence();
+	}
+
+	/**
+	 * A snapshot with the right header but with an unexpected object in it must not be deserialized.
+	 */
+	@Test
+	public void testSchemaRegistrySnapshotForeignObject() throws Exception {
+		System.out.println("===[ testSchemaRegistrySnapshotForeignObject ]===");
+
+		// GIVEN
+		File snapshotFile = File.createTempFile("schema-registry-snapshot", ".ser");
+		snapshotFile.delete();
+		snapshotFile.deleteOnExit();
+
+		PrismContextImpl parsingContext = constructPrismContext();
+		((SchemaRegistryImpl) parsingContext.getSchemaRegistry()).setSnapshotFile(snapshotFile);
+		parsingContext.initialize();
+
+		int formatVersion;
+		String contentHash;
+		try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(snapshotFile))) {
+			formatVersion = ois.readInt();
+			contentHash = ois.readUTF();
+		}
+		try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(snapshotFile))) {
+			oos.writeInt(formatVersion);
+			oos.writeUTF(contentHash);
+			oos.writeObject(Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { Runnable.class },
+					new MarkingInvocationHandler()));
+		}
+		MarkingInvocationHandler.deserialized = false;
+
+		// WHEN
+		PrismContextImpl prismContext = constructPrismContext();
+		((SchemaRegistryImpl) prismContext.getSchemaRegistry()).setSnapshotFile(snapshotFile);
+		prismContext.initialize();
+
+		// THEN
+		assertFalse("Foreign object was deserialized", MarkingInvocationHandler.deserialized);
+		assertNotNull("No user definition", prismContext.getSchemaRegistry().findObjectDefinitionByCompileTimeClass(UserType.class));
+		PrismObject<UserType> user = prismContext.parseObject(USER_JACK_FILE_XML);
+		assertNotNull("No user parsed", user);
+	}
+
+	private static class MarkingInvocationHandler implements InvocationHandler, Serializable {
+
+		private static volatile boolean deserialized;
+
+		private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+			in.defaultReadObject();
+			deserialized = true;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			return null;
+		}
+	}
+
 	// This is not supposed to work with foo schema. It container ObjectReferenceType which does
 	// not survive roundtrip
 //	@Test
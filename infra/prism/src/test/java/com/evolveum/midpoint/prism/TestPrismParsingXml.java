@@ -2,6 +2,7 @@ package com.evolveum.midpoint.prism;
 
 import static com.evolveum.midpoint.prism.PrismInternalTestUtil.*;
 import static org.testng.AssertJUnit.assertNotNull;
+import static org.testng.AssertJUnit.assertTrue;
 
 import java.io.IOException;
 
@@ -10,6 +11,8 @@ import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.xml.sax.SAXException;
 
+import com.evolveum.midpoint.prism.delta.DiffUtil;
+import com.evolveum.midpoint.prism.delta.ObjectDelta;
 import com.evolveum.midpoint.prism.foo.UserType;
 import com.evolveum.midpoint.util.DOMUtil;
 
@@ -74,6 +77,31 @@ public class TestPrismParsingXml extends TestPrismParsing {
 		assertUserAdhoc(user, true);
 	}
 	
+	@Test
+	public void testRoundTripBinary() throws Exception {
+		final String TEST_NAME = "testRoundTripBinary";
+		PrismInternalTestUtil.displayTestTitle(TEST_NAME);
+
+		// GIVEN
+		PrismContext prismContext = constructInitializedPrismContext();
+		PrismObject<UserType> originalUser = prismContext.parseObject(getFile(USER_JACK_FILE_BASENAME));
+		assertUserJack(originalUser, true);
+
+		// WHEN
+		byte[] data = prismContext.binarySerializer().serialize(originalUser);
+		PrismObject<UserType> parsedUser = prismContext.parserFor(data).parse();
+
+		// THEN
+		System.out.println("Serialized user: " + data.length + " bytes");
+		System.out.println("Re-parsed user:");
+		System.out.println(parsedUser.debugDump());
+		assertUserJack(parsedUser, true);
+
+		ObjectDelta<UserType> diff = DiffUtil.diff(originalUser, parsedUser);
+		assertTrue("Diff: " + diff, diff.isEmpty());
+		assertTrue("Users not equal", originalUser.equals(parsedUser));
+	}
+
 	@Override
 	protected void validateXml(String xmlString, PrismContext prismContext) throws SAXException, IOException {
 //		Document xmlDocument = DOMUtil.parseDocument(xmlString);
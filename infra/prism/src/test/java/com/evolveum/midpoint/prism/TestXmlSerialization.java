@@ -31,6 +31,8 @@ import java.io.IOException;
 import static com.evolveum.midpoint.prism.PrismInternalTestUtil.DEFAULT_NAMESPACE_PREFIX;
 import static com.evolveum.midpoint.prism.PrismInternalTestUtil.displayTestTitle;
 import static org.testng.Assert.assertTrue;
+import static org.testng.AssertJUnit.assertNotNull;
+import static org.testng.AssertJUnit.assertNull;
 import static org.testng.AssertJUnit.assertEquals;
 
 /**
@@ -75,4 +77,27 @@ public class TestXmlSerialization {
             assertTrue(e.getMessage().contains("Invalid character"), "Didn't get expected error message");
         }
     }
+
+	@Test
+	public void testSkipItems() throws Exception {
+		final String TEST_NAME = "testSkipItems";
+		displayTestTitle(TEST_NAME);
+
+		// GIVEN
+		PrismContext prismContext = PrismTestUtil.getPrismContext();
+		PrismObject<Objectable> user = prismContext.parseObject(PrismInternalTestUtil.USER_JACK_FILE_XML);
+		assertNotNull("No fullName in jack", user.findProperty(PrismInternalTestUtil.USER_FULLNAME_QNAME));
+
+		// WHEN
+		String xml = prismContext.xmlSerializer()
+				.options(SerializationOptions.createSkipItems(PrismInternalTestUtil.USER_FULLNAME_QNAME))
+				.serialize(user);
+
+		// THEN
+		System.out.println("Serialized user:\n" + xml);
+		PrismObject<Objectable> reparsed = prismContext.parseObject(xml);
+		assertNull("fullName was not skipped", reparsed.findProperty(PrismInternalTestUtil.USER_FULLNAME_QNAME));
+		assertNotNull("name was skipped", reparsed.findProperty(PrismInternalTestUtil.USER_NAME_QNAME));
+		assertNotNull("fullName was removed from the original object", user.findProperty(PrismInternalTestUtil.USER_FULLNAME_QNAME));
+	}
 }
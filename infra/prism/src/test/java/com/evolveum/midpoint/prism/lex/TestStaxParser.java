@@ -0,0 +1,257 @@
+/*
+ * Copyright (c) 2010-2016 Evolveum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.evolveum.midpoint.prism.lex;
+
+import com.evolveum.midpoint.prism.Objectable;
+import com.evolveum.midpoint.prism.ParserFileSource;
+import com.evolveum.midpoint.prism.ParserStringSource;
+import com.evolveum.midpoint.prism.ParsingContext;
+import com.evolveum.midpoint.prism.PrismContext;
+import com.evolveum.midpoint.prism.PrismObject;
+import com.evolveum.midpoint.prism.PrismParser;
+import com.evolveum.midpoint.prism.foo.UserType;
+import com.evolveum.midpoint.prism.lex.dom.DomLexicalProcessor;
+import com.evolveum.midpoint.prism.lex.dom.StaxLexicalProcessor;
+import com.evolveum.midpoint.prism.util.PrismTestUtil;
+import com.evolveum.midpoint.prism.xnode.ListXNode;
+import com.evolveum.midpoint.prism.xnode.MapXNode;
+import com.evolveum.midpoint.prism.xnode.PrimitiveXNode;
+import com.evolveum.midpoint.prism.xnode.RootXNode;
+import com.evolveum.midpoint.prism.xnode.SchemaXNode;
+import com.evolveum.midpoint.prism.xnode.XNode;
+import com.evolveum.midpoint.util.DOMUtil;
+import com.evolveum.prism.xml.ns._public.types_3.ItemPathType;
+import org.apache.commons.io.FileUtils;
+import org.testng.annotations.Test;
+
+import javax.xml.namespace.QName;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import static com.evolveum.midpoint.prism.PrismInternalTestUtil.RESOURCE_RUM_FILE_BASENAME;
+import static com.evolveum.midpoint.prism.PrismInternalTestUtil.USER_JACK_ADHOC_BASENAME;
+import static com.evolveum.midpoint.prism.PrismInternalTestUtil.USER_JACK_FILE_BASENAME;
+import static com.evolveum.midpoint.prism.PrismInternalTestUtil.USER_JACK_NO_NS_BASENAME;
+import static com.evolveum.midpoint.prism.PrismInternalTestUtil.USER_JACK_OBJECT_BASENAME;
+import static com.evolveum.midpoint.prism.PrismInternalTestUtil.displayTestTitle;
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertNotNull;
+import static org.testng.AssertJUnit.assertTrue;
+
+/**
+ * @author mederly
+ */
+public class TestStaxParser extends AbstractLexicalProcessorTest {
+
+	private static final String[] USER_FILE_BASENAMES = { USER_JACK_FILE_BASENAME, "user-barbossa", "user-will",
+			"user-elisabeth", USER_JACK_ADHOC_BASENAME, USER_JACK_NO_NS_BASENAME, USER_JACK_OBJECT_BASENAME };
+
+	// resource with xsd:schema; role and task with xsi:type, QName and item path values in various namespace contexts
+	private static final String[] OTHER_FILE_BASENAMES = { RESOURCE_RUM_FILE_BASENAME, EVENT_HANDLER_FILE_BASENAME,
+			"role-captain", "task-rum-sync" };
+
+	private static final File QUERY_DIR = new File("src/test/resources/query");
+	private static final String[] QUERY_FILE_NAMES = { "filter-user-name.xml", "filter-user-and.xml",
+			"filter-not-in-oid.xml", "filter-type-user-none.xml" };
+
+	// values of these items are compared also as parsed QNames / item paths, as their meaning depends on namespace context
+	private static final List<String> QNAME_ITEMS = Arrays.asList("objectClass", "objectclass", "ref", "relation", "type");
+	private static final List<String> PATH_ITEMS = Arrays.asList("path");
+
+	@Override
+	protected String getSubdirName() {
+		return "xml";
+	}
+
+	@Override
+	protected String getFilenameSuffix() {
+		return "xml";
+	}
+
+	@Override
+	protected StaxLexicalProcessor createParser() {
+		return new StaxLexicalProcessor(new DomLexicalProcessor(PrismTestUtil.getSchemaRegistry()));
+	}
+
+	@Test
+	public void testParseUserToXNode() throws Exception {
+		final String TEST_NAME = "testParseUserToXNode";
+		displayTestTitle(TEST_NAME);
+
+		// GIVEN
+		StaxLexicalProcessor parser = createParser();
+
+		// WHEN
+		RootXNode root = parser.read(new ParserFileSource(getFile(USER_JACK_FILE_BASENAME)), ParsingContext.createDefault());
+
+		// THEN
+		System.out.println("Parsed XNode:");
+		System.out.println(root.debugDump());
+
+		MapXNode rootMap = getAssertXNode("root subnode", root.getSubnode(), MapXNode.class);
+		getAssertXMapSubnode("root map", rootMap, UserType.F_NAME, PrimitiveXNode.class);
+		ListXNode xass = getAssertXMapSubnode("root map", rootMap, UserType.F_ASSIGNMENT, ListXNode.class);
+		assertEquals("assignment size", 2, xass.size());
+		getAssertXMapSubnode("root map", rootMap, UserType.F_EXTENSION, MapXNode.class);
+	}
+
+	@Test
+	public void testCompareWithDom() throws Exception {
+		final String TEST_NAME = "testCompareWithDom";
+		displayTestTitle(TEST_NAME);
+
+		// GIVEN
+		StaxLexicalProcessor staxParser = createParser();
+		DomLexicalProcessor domParser = new DomLexicalProcessor(PrismTestUtil.getSchemaRegistry());
+
+		List<File> files = new ArrayList<>();
+		for (String basename : USER_FILE_BASENAMES) {
+			files.add(getFile(basename));
+		}
+		for (String basename : OTHER_FILE_BASENAMES) {
+			files.add(getFile(basename));
+		}
+		for (String name : QUERY_FILE_NAMES) {
+			files.add(new File(QUERY_DIR, name));
+		}
+
+		for (File file : files) {
+			System.out.println("Comparing " + file);
+
+			// WHEN
+			RootXNode staxRoot = staxParser.read(new ParserFileSource(file), ParsingContext.createDefault());
+			RootXNode domRoot = domParser.read(new ParserFileSource(file), ParsingContext.createDefault());
+
+			// THEN
+			assertEquals("XNode tree for " + file + " differs", domRoot, staxRoot);
+			assertXNodeEquals(file.getName(), domRoot, staxRoot);
+		}
+	}
+
+	/**
+	 * XNode.equals() ignores types, attribute flags and namespace context of unparsed values, so we check them here.
+	 */
+	private void assertXNodeEquals(String context, XNode dom, XNode stax) throws Exception {
+		if (dom == null) {
+			assertTrue("Unexpected StAX node at " + context + ": " + stax, stax == null);
+			return;
+		}
+		assertNotNull("Missing StAX node at " + context, stax);
+		assertEquals("Wrong node class at " + context, dom.getClass(), stax.getClass());
+		assertEquals("Wrong type at " + context, dom.getTypeQName(), stax.getTypeQName());
+		assertEquals("Wrong explicit type declaration flag at " + context, dom.isExplicitTypeDeclaration(), stax.isExplicitTypeDeclaration());
+		if (dom instanceof RootXNode) {
+			assertEquals("Wrong root element name at " + context, ((RootXNode) dom).getRootElementName(), ((RootXNode) stax).getRootElementName());
+			assertXNodeEquals(context, ((RootXNode) dom).getSubnode(), ((RootXNode) stax).getSubnode());
+		} else if (dom instanceof MapXNode) {
+			assertEquals("Wrong # of map entries at " + context, ((MapXNode) dom).size(), ((MapXNode) stax).size());
+			Iterator<Map.Entry<QName, XNode>> staxIterator = ((MapXNode) stax).entrySet().iterator();
+			for (Map.Entry<QName, XNode> domEntry : ((MapXNode) dom).entrySet()) {
+				Map.Entry<QName, XNode> staxEntry = staxIterator.next();
+				assertEquals("Wrong key at " + context, domEntry.getKey(), staxEntry.getKey());
+				assertXNodeEquals(context + "/" + domEntry.getKey().getLocalPart(), domEntry.getValue(), staxEntry.getValue());
+			}
+		} else if (dom instanceof ListXNode) {
+			assertEquals("Wrong # of list items at " + context, ((ListXNode) dom).size(), ((ListXNode) stax).size());
+			for (int i = 0; i < ((ListXNode) dom).size(); i++) {
+				assertXNodeEquals(context + "[" + i + "]", ((ListXNode) dom).get(i), ((ListXNode) stax).get(i));
+			}
+		} else if (dom instanceof SchemaXNode) {
+			assertEquals("Wrong schema at " + context, dom, stax);
+		} else if (dom instanceof PrimitiveXNode) {
+			assertPrimitiveEquals(context, (PrimitiveXNode<?>) dom, (PrimitiveXNode<?>) stax);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private void assertPrimitiveEquals(String context, PrimitiveXNode<?> dom, PrimitiveXNode<?> stax) throws Exception {
+		assertEquals("Wrong attribute flag at " + context, dom.isAttribute(), stax.isAttribute());
+		assertEquals("Wrong value at " + context, dom.getStringValue(), stax.getStringValue());
+		if (dom.isEmpty() || dom.isParsed() || stax.isParsed()) {
+			return;
+		}
+		assertEquals("Wrong namespace declarations at " + context, dom.getRelevantNamespaceDeclarations(),
+				stax.getRelevantNamespaceDeclarations());
+		String itemName = context.substring(context.lastIndexOf('/') + 1);
+		if (QNAME_ITEMS.contains(itemName) || DOMUtil.XSD_QNAME.equals(dom.getTypeQName())) {
+			assertEquals("Wrong QName value at " + context,
+					((PrimitiveXNode<QName>) dom).getParsedValue(DOMUtil.XSD_QNAME, QName.class),
+					((PrimitiveXNode<QName>) stax).getParsedValue(DOMUtil.XSD_QNAME, QName.class));
+		} else if (PATH_ITEMS.contains(itemName)) {
+			assertEquals("Wrong path value at " + context,
+					((PrimitiveXNode<ItemPathType>) dom).getParsedValue(ItemPathType.COMPLEX_TYPE, ItemPathType.class).getItemPath(),
+					((PrimitiveXNode<ItemPathType>) stax).getParsedValue(ItemPathType.COMPLEX_TYPE, ItemPathType.class).getItemPath());
+		}
+	}
+
+	@Test
+	public void testParseObjectsIteratively() throws Exception {
+		final String TEST_NAME = "testParseObjectsIteratively";
+		displayTestTitle(TEST_NAME);
+
+		// GIVEN
+		PrismContext prismContext = PrismTestUtil.getPrismContext();
+		StringBuilder sb = new StringBuilder("<objects>\n");
+		for (String basename : new String[] { USER_JACK_FILE_BASENAME, USER_JACK_OBJECT_BASENAME, USER_JACK_ADHOC_BASENAME }) {
+			String content = FileUtils.readFileToString(getFile(basename), "UTF-8");
+			sb.append(content.replaceFirst("^<\\?xml[^>]*\\?>", "")).append("\n");
+		}
+		sb.append("</objects>\n");
+		final List<PrismObject<? extends Objectable>> objects = new ArrayList<>();
+
+		// WHEN
+		prismContext.parserFor(sb.toString()).xml().parseObjectsIteratively(new PrismParser.ObjectHandler() {
+			@Override
+			public boolean handleData(PrismObject<? extends Objectable> object) {
+				objects.add(object);
+				return objects.size() < 2;
+			}
+
+			@Override
+			public boolean handleError(Throwable t) {
+				throw new AssertionError("Unexpected error: " + t.getMessage(), t);
+			}
+		});
+
+		// THEN
+		assertEquals("Wrong # of objects parsed", 2, objects.size());
+		assertEquals("Wrong first object", "jack", objects.get(0).asObjectable().getName().getOrig());
+	}
+
+	@Test
+	public void testReadObjects() throws Exception {
+		final String TEST_NAME = "testReadObjects";
+		displayTestTitle(TEST_NAME);
+
+		// GIVEN
+		StaxLexicalProcessor parser = createParser();
+		String data = "<objects>\n"
+				+ FileUtils.readFileToString(getFile(USER_JACK_FILE_BASENAME), "UTF-8").replaceFirst("^<\\?xml[^>]*\\?>", "")
+				+ FileUtils.readFileToString(getFile(USER_JACK_OBJECT_BASENAME), "UTF-8").replaceFirst("^<\\?xml[^>]*\\?>", "")
+				+ "</objects>";
+
+		// WHEN
+		List<RootXNode> roots = parser.readObjects(new ParserStringSource(data), ParsingContext.createDefault());
+
+		// THEN
+		assertEquals("Wrong # of objects", 2, roots.size());
+		assertEquals("Wrong root element", UserType.F_NAME.getNamespaceURI(), roots.get(0).getRootElementName().getNamespaceURI());
+	}
+}
@@ -49,6 +49,12 @@ public class MidPointPrismContextFactory implements PrismContextFactory {
 
 	private static final File TEST_EXTRA_SCHEMA_DIR = new File("src/test/resources/schema");
 
+	/**
+	 * System property pointing to the file with snapshot of parsed schemas (created on the first start,
+	 * used on the subsequent ones while the schemas are unchanged). See SchemaRegistryImpl.setSnapshotFile.
+	 */
+	public static final String SCHEMA_SNAPSHOT_FILE_PROPERTY = "midpoint.schemaSnapshotFile";
+
 	public static final MidPointPrismContextFactory FACTORY = new MidPointPrismContextFactory(TEST_EXTRA_SCHEMA_DIR);
 	
 	private File extraSchemaDir;
@@ -96,6 +102,10 @@ public class MidPointPrismContextFactory implements PrismContextFactory {
 		SchemaRegistryImpl schemaRegistry = new SchemaRegistryImpl();
 		schemaRegistry.setDefaultNamespace(SchemaConstantsGenerated.NS_COMMON);
 		schemaRegistry.setNamespacePrefixMapper(new GlobalDynamicNamespacePrefixMapper());
+		String snapshotFileName = System.getProperty(SCHEMA_SNAPSHOT_FILE_PROPERTY);
+		if (snapshotFileName != null && !snapshotFileName.isEmpty()) {
+			schemaRegistry.setSnapshotFile(new File(snapshotFileName));
+		}
 		registerBuiltinSchemas(schemaRegistry);
         registerExtensionSchemas(schemaRegistry);
 		return schemaRegistry;
@@ -267,6 +267,15 @@ public abstract class SchemaConstants {
 	public static final QName MODEL_EXTENSION_OBJECT_QUERY = new QName(NS_MODEL_EXTENSION, "objectQuery");
 	public static final QName MODEL_EXTENSION_OBJECT_DELTA = new QName(NS_MODEL_EXTENSION, "objectDelta");
 	public static final QName MODEL_EXTENSION_WORKER_THREADS = new QName(NS_MODEL_EXTENSION, "workerThreads");
+	public static final QName MODEL_EXTENSION_WORK_BUCKETS = new QName(NS_MODEL_EXTENSION, "workBuckets");
+	public static final QName MODEL_EXTENSION_WORK_BUCKET_WORKERS = new QName(NS_MODEL_EXTENSION, "workBucketWorkers");
+	public static final QName MODEL_EXTENSION_WORK_BUCKET_BOUNDARY = new QName(NS_MODEL_EXTENSION, "workBucketBoundary");
+	public static final QName MODEL_EXTENSION_WORK_BUCKET_DONE = new QName(NS_MODEL_EXTENSION, "workBucketDone");
+	public static final QName MODEL_EXTENSION_WORK_BUCKET_SEQUENCE = new QName(NS_MODEL_EXTENSION, "workBucketSequence");
+	public static final QName MODEL_EXTENSION_LIVE_SYNC_CHECKPOINT_CHANGES = new QName(NS_MODEL_EXTENSION, "liveSyncCheckpointChanges");
+	public static final QName MODEL_EXTENSION_LIVE_SYNC_CHECKPOINT_INTERVAL = new QName(NS_MODEL_EXTENSION, "liveSyncCheckpointInterval");
+	public static final QName MODEL_EXTENSION_LIGHTWEIGHT_OPERATION_RESULT = new QName(NS_MODEL_EXTENSION, "lightweightOperationResult");
+	public static final QName MODEL_EXTENSION_OPERATION_RESULT_SAMPLE_INTERVAL = new QName(NS_MODEL_EXTENSION, "operationResultSampleInterval");
 	public static final QName MODEL_EXTENSION_OPTION_RAW = new QName(NS_MODEL_EXTENSION, "optionRaw");
 
 	public static final QName MODEL_EXTENSION_DIAGNOSE = new QName(NS_MODEL_EXTENSION, "diagnose");
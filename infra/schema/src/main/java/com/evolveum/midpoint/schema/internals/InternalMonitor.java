@@ -243,7 +243,9 @@ public class InternalMonitor implements PrismMonitor {
 	@Override
 	public <O extends Objectable> void beforeObjectClone(PrismObject<O> orig) {
 		LOGGER.trace("MONITOR prism object clone start: {}", orig);
-		orig.setUserData(CLONE_START_TIMESTAMP_KEY, System.currentTimeMillis());
+		if (!orig.isImmutable()) {		// immutable objects (e.g. cached resources) are shared, so we must not touch them
+			orig.setUserData(CLONE_START_TIMESTAMP_KEY, System.currentTimeMillis());
+		}
 	}
 	
 	@Override
@@ -105,6 +105,33 @@ public class OperationResult implements Serializable, DebugDumpable, Cloneable {
 	private boolean summarizePartialErrors;
 	private boolean summarizeSuccesses;
 	private boolean minor = false;
+
+	/*
+	 * Lightweight mode: completed subresults are aggregated into one record per operation (and status)
+	 * instead of being kept with all their details. See subresultStatusChanged().
+	 */
+	private boolean lightweight;
+	private int lightweightSampleInterval;			// each N-th successful subresult is kept in full (0 = none)
+	private boolean aggregate;						// this is an aggregation record created in lightweight mode
+	private boolean sampled;						// this subresult was kept in full in lightweight mode
+	private boolean retainedFailure;				// this (not successful) subresult was kept in full in lightweight mode
+	private Map<String, Integer> lightweightSuccessCounters;
+	private int lightweightSamples;
+	private int lightweightRetainedFailures;
+	private transient Map<OperationStatusKey, OperationResult> lightweightAggregates;
+	private transient OperationResult lightweightParent;		// the result that aggregates this one
+	private transient OperationResult aggregatedInto;			// the aggregation record this result is counted in
+
+	/**
+	 * Maximum number of successful subresults kept in full as samples (per parent result) in lightweight mode.
+	 */
+	public static final int LIGHTWEIGHT_MAX_SAMPLES = 100;
+
+	/**
+	 * Maximum number of non-successful subresults kept in full (per parent result) in lightweight mode.
+	 * Further ones are aggregated just like successful ones.
+	 */
+	public static final int LIGHTWEIGHT_MAX_RETAINED_FAILURES = 100;
 	
 	private static final Trace LOGGER = TraceManager.getTrace(OperationResult.class);
 
@@ -188,6 +215,11 @@ public class OperationResult implements Serializable, DebugDumpable, Cloneable {
 
 	public OperationResult createSubresult(String operation) {
 		OperationResult subresult = new OperationResult(operation);
+		if (lightweight) {
+			subresult.lightweight = true;
+			subresult.lightweightSampleInterval = lightweightSampleInterval;
+			subresult.lightweightParent = this;
+		}
 		addSubresult(subresult);
 		return subresult;
 	}
@@ -258,6 +290,32 @@ public class OperationResult implements Serializable, DebugDumpable, Cloneable {
 		this.summarizeSuccesses = summarizeSuccesses;
 	}
 	
+	public boolean isLightweight() {
+		return lightweight;
+	}
+
+	/**
+	 * Switches on the lightweight mode, intended for results of bulk operations (e.g. tasks processing many objects).
+	 * Subresults created by this result inherit the mode. When a subresult completes, it is counted into one record
+	 * per operation and status and dropped; only the count is kept. Up to {@link #LIGHTWEIGHT_MAX_RETAINED_FAILURES}
+	 * non-success results (or successes with a message) are kept in full. See also {@link #setLightweightSampleInterval(int)}.
+	 */
+	public void setLightweight(boolean lightweight) {
+		this.lightweight = lightweight;
+	}
+
+	public int getLightweightSampleInterval() {
+		return lightweightSampleInterval;
+	}
+
+	/**
+	 * In lightweight mode, each N-th successful subresult of given operation is kept in full, as a sample
+	 * (up to {@link #LIGHTWEIGHT_MAX_SAMPLES} samples). Zero (the default) means no samples.
+	 */
+	public void setLightweightSampleInterval(int lightweightSampleInterval) {
+		this.lightweightSampleInterval = lightweightSampleInterval;
+	}
+
 	public boolean isEmpty() {
 		return (status == null || status == OperationResultStatus.UNKNOWN) &&
 				(subresults == null || subresults.isEmpty());
@@ -342,6 +400,7 @@ public class OperationResult implements Serializable, DebugDumpable, Cloneable {
 
 	public void setStatus(OperationResultStatus status) {
 		this.status = status;
+		statusChanged();
 	}
 
 	/**
@@ -432,7 +491,7 @@ public class OperationResult implements Serializable, DebugDumpable, Cloneable {
 		// computeStatus sets a message if none is set,
 		// therefore we need to check before calling computeStatus
 		boolean noMessage = StringUtils.isEmpty(message);
-		computeStatus();
+		computeStatusInternal();
 		
 		switch (status) {
 			case FATAL_ERROR:
@@ -453,12 +512,18 @@ public class OperationResult implements Serializable, DebugDumpable, Cloneable {
 				}
 				break;
 		}
+		statusChanged();
 	}
 
 	/**
 	 * Computes operation result status based on subtask status.
 	 */
 	public void computeStatus() {
+		computeStatusInternal();
+		statusChanged();
+	}
+
+	private void computeStatusInternal() {
 		if (getSubresults().isEmpty()) {
 			if (status == OperationResultStatus.UNKNOWN) {
 				status = OperationResultStatus.SUCCESS;
@@ -537,6 +602,11 @@ public class OperationResult implements Serializable, DebugDumpable, Cloneable {
 	 * result will be partial error. Handled error is considered a success.
 	 */
 	public void computeStatusComposite() {
+		computeStatusCompositeInternal();
+		statusChanged();
+	}
+
+	private void computeStatusCompositeInternal() {
 		if (getSubresults().isEmpty()) {
 			if (status == OperationResultStatus.UNKNOWN) {
 				status = OperationResultStatus.NOT_APPLICABLE;
@@ -619,7 +689,7 @@ public class OperationResult implements Serializable, DebugDumpable, Cloneable {
 	public OperationResultStatus getComputeStatus() {
 		OperationResultStatus origStatus = status;
 		String origMessage = message;
-		computeStatus();
+		computeStatusInternal();
 		OperationResultStatus computedStatus = status;
 		status = origStatus;
 		message = origMessage;
@@ -665,6 +735,7 @@ public class OperationResult implements Serializable, DebugDumpable, Cloneable {
 	public void recordNotApplicableIfUnknown() {
 		if (isUnknown()) {
 			status = OperationResultStatus.NOT_APPLICABLE;
+			statusChanged();
 		}
 	}
 
@@ -809,14 +880,17 @@ public class OperationResult implements Serializable, DebugDumpable, Cloneable {
 	public void recordSuccess() {
 		// Success, no message or other explanation is needed.
 		status = OperationResultStatus.SUCCESS;
+		statusChanged();
 	}
 
     public void recordInProgress() {
         status = OperationResultStatus.IN_PROGRESS;
+        statusChanged();
     }
 
     public void recordUnknown() {
         status = OperationResultStatus.UNKNOWN;
+        statusChanged();
     }
 
     public void recordFatalError(Throwable cause) {
@@ -830,6 +904,7 @@ public class OperationResult implements Serializable, DebugDumpable, Cloneable {
 	public void muteError() {
 		if (isError()) {
 			status = OperationResultStatus.HANDLED_ERROR;
+			statusChanged();
 		}
 	}
 	
@@ -854,6 +929,7 @@ public class OperationResult implements Serializable, DebugDumpable, Cloneable {
 		// No other message was given, so use message from the exception
 		// not really correct, but better than nothing.
 		message = cause.getMessage();
+		statusChanged();
 	}
 
 	public void recordFatalError(String message, Throwable cause) {
@@ -884,6 +960,7 @@ public class OperationResult implements Serializable, DebugDumpable, Cloneable {
 		this.status = status;
 		this.message = message;
 		this.cause = cause;
+		statusChanged();
 	}
 
 	public void recordFatalError(String message) {
@@ -914,6 +991,7 @@ public class OperationResult implements Serializable, DebugDumpable, Cloneable {
 	public void recordStatus(OperationResultStatus status, String message) {
 		this.status = status;
 		this.message = message;
+		statusChanged();
 	}
 
 	/**
@@ -1141,6 +1219,112 @@ public class OperationResult implements Serializable, DebugDumpable, Cloneable {
 		}
 	}
 
+	private void statusChanged() {
+		if (lightweightParent != null) {
+			lightweightParent.subresultStatusChanged(this);
+		}
+	}
+
+	/**
+	 * Called in lightweight mode each time the status of a subresult is set. A completed subresult is counted into
+	 * the aggregation record for its operation and status and removed from the tree right away, so its details
+	 * (params, context, subresults) can be garbage collected. Each subresult is processed only when its own status
+	 * changes; siblings are never rescanned. Samples and a limited number of non-success results are kept in full.
+	 * If the status of an already aggregated subresult changes later (e.g. an error is recorded after computeStatus),
+	 * it is taken out of the aggregation record and put back into the tree.
+	 */
+	private void subresultStatusChanged(OperationResult subresult) {
+		if (subresult.aggregatedInto != null) {
+			if (subresult.aggregatedInto.status == subresult.status && subresult.isCleanSuccess()) {
+				return;
+			}
+			subresult.aggregatedInto.count -= subresult.count;
+			subresult.aggregatedInto = null;
+			addSubresult(subresult);
+		}
+		if (subresult.aggregate || subresult.sampled || subresult.representsHiddenRecords()) {
+			return;
+		}
+		if (subresult.retainedFailure) {
+			if (subresult.isCompleted() && !subresult.isCleanSuccess()) {
+				return;
+			}
+			subresult.retainedFailure = false;
+			lightweightRetainedFailures--;
+		}
+		if (!subresult.isCompleted()) {
+			return;
+		}
+		if (subresult.isCleanSuccess()) {
+			if (lightweightSampleInterval > 0 && lightweightSamples < LIGHTWEIGHT_MAX_SAMPLES) {
+				if (lightweightSuccessCounters == null) {
+					lightweightSuccessCounters = new HashMap<>();
+				}
+				int seen = lightweightSuccessCounters.merge(subresult.operation, 1, Integer::sum);
+				if (seen % lightweightSampleInterval == 0) {
+					subresult.sampled = true;
+					lightweightSamples++;
+					return;
+				}
+			}
+		} else if (lightweightRetainedFailures < LIGHTWEIGHT_MAX_RETAINED_FAILURES) {
+			subresult.retainedFailure = true;
+			lightweightRetainedFailures++;
+			return;
+		}
+		if (!removeSubresult(subresult)) {
+			return;			// not our subresult any more
+		}
+		OperationResult aggregate = getLightweightAggregate(subresult);
+		aggregate.count += subresult.count;
+		aggregate.minor = aggregate.minor && subresult.minor;
+		subresult.aggregatedInto = aggregate;
+	}
+
+	// Usually the completed subresult is the last one, so we search from the end.
+	private boolean removeSubresult(OperationResult subresult) {
+		List<OperationResult> subresults = getSubresults();
+		for (int i = subresults.size() - 1; i >= 0; i--) {
+			if (subresults.get(i) == subresult) {
+				subresults.remove(i);
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private OperationResult getLightweightAggregate(OperationResult subresult) {
+		if (lightweightAggregates == null) {
+			// the map is not serialized; after deserialization we find the existing aggregation records (only once)
+			lightweightAggregates = new HashMap<>();
+			for (OperationResult sr : getSubresults()) {
+				if (sr.aggregate) {
+					lightweightAggregates.put(new OperationStatusKey(sr.operation, sr.status), sr);
+				}
+			}
+		}
+		OperationStatusKey key = new OperationStatusKey(subresult.operation, subresult.status);
+		OperationResult aggregate = lightweightAggregates.get(key);
+		if (aggregate == null) {
+			aggregate = new OperationResult(subresult.operation, subresult.status, subresult.message);
+			aggregate.aggregate = true;
+			aggregate.count = 0;
+			aggregate.minor = subresult.minor;
+			lightweightAggregates.put(key, aggregate);
+			addSubresult(aggregate);
+		}
+		return aggregate;
+	}
+
+	private boolean isCompleted() {
+		return status != OperationResultStatus.UNKNOWN && status != OperationResultStatus.IN_PROGRESS;
+	}
+
+	private boolean isCleanSuccess() {
+		return message == null
+				&& (status == OperationResultStatus.SUCCESS || status == OperationResultStatus.NOT_APPLICABLE);
+	}
+
 	private void merge(OperationResult target, OperationResult source) {
 		mergeMap(target.getParams(), source.getParams());
 		mergeMap(target.getContext(), source.getContext());
@@ -1461,6 +1645,14 @@ public class OperationResult implements Serializable, DebugDumpable, Cloneable {
         clone.summarizePartialErrors = summarizePartialErrors;
         clone.summarizeSuccesses = summarizeSuccesses;
         clone.minor = minor;
+        clone.lightweight = lightweight;
+        clone.lightweightSampleInterval = lightweightSampleInterval;
+        clone.aggregate = aggregate;
+        clone.sampled = sampled;
+        clone.retainedFailure = retainedFailure;
+        clone.lightweightSuccessCounters = lightweightSuccessCounters != null ? new HashMap<>(lightweightSuccessCounters) : null;
+        clone.lightweightSamples = lightweightSamples;
+        clone.lightweightRetainedFailures = lightweightRetainedFailures;
 
         return clone;
     }
@@ -52,4 +52,11 @@ public class SystemConfigurationTypeUtil {
         }
         return sysconfigObject.asObjectable().getInternals().getMaxModelClicks();
     }
+
+    public static Integer getProjectionThreads(PrismObject<SystemConfigurationType> sysconfigObject) {
+        if (sysconfigObject == null || sysconfigObject.asObjectable().getInternals() == null) {
+            return null;
+        }
+        return sysconfigObject.asObjectable().getInternals().getProjectionThreads();
+    }
 }
@@ -17,6 +17,7 @@
 package com.evolveum.midpoint.schema;
 
 import com.evolveum.midpoint.prism.*;
+import com.evolveum.midpoint.prism.path.ItemPath;
 import com.evolveum.midpoint.prism.util.PrismTestUtil;
 import com.evolveum.midpoint.prism.xml.XmlTypeConverter;
 import com.evolveum.midpoint.schema.constants.MidPointConstants;
@@ -236,4 +237,36 @@ public class TestImmutable {
 	}
 
 
+	@Test
+	public void test110ResourceMissingItems() throws Exception {
+		System.out.println("===[ test110ResourceMissingItems ]===");
+
+		// GIVEN
+		PrismContext prismContext = PrismTestUtil.getPrismContext();
+
+		PrismObject<ResourceType> resource = prismContext.createObject(ResourceType.class);
+		resource.setOid("oid1");
+		resource.asObjectable().setName(PolyStringType.fromOrig("resource1"));
+		resource.asObjectable().setSchemaHandling(new SchemaHandlingType(prismContext));
+
+		// WHEN
+		resource.setImmutable(true);
+
+		// THEN
+
+		// reading non-existing multivalued items must not fail
+		AssertJUnit.assertTrue("objectType list is not empty", resource.asObjectable().getSchemaHandling().getObjectType().isEmpty());
+		AssertJUnit.assertTrue("trigger list is not empty", resource.asObjectable().getTrigger().isEmpty());
+		AssertJUnit.assertNull("objectType container was created", resource.findContainer(
+				new ItemPath(ResourceType.F_SCHEMA_HANDLING, SchemaHandlingType.F_OBJECT_TYPE)));
+
+		// but they cannot be modified
+		try {
+			resource.asObjectable().getSchemaHandling().getObjectType().add(new ResourceObjectTypeDefinitionType(prismContext));
+			AssertJUnit.fail("schemaHandling/objectType was added when immutable!");
+		} catch (RuntimeException e) {
+			System.out.println("Got (expected) exception of " + e);
+		}
+	}
+
 }
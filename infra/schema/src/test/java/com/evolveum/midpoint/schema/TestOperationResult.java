@@ -26,10 +26,13 @@ import org.testng.annotations.BeforeSuite;
 import org.testng.annotations.Test;
 import org.xml.sax.SAXException;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.util.List;
 
 import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertTrue;
 
 /**
  * @author mederly
@@ -152,6 +155,121 @@ public class TestOperationResult {
 		checkResultConversion(root);
 	}
 
+	@Test
+	public void testLightweightResult() throws Exception {
+		System.out.println("===[ testLightweightResult ]===");
+
+		// GIVEN
+		OperationResult root = new OperationResult("dummy");
+		root.setLightweight(true);
+		root.setLightweightSampleInterval(10);
+
+		// WHEN
+		for (int i = 1; i <= 30; i++) {
+			OperationResult handle = root.createSubresult("handle");
+			handle.addParam("value", i);
+			OperationResult inner = handle.createSubresult("inner");
+			if (i % 7 == 0) {
+				inner.recordFatalError("Failure " + i);
+			} else {
+				inner.recordSuccess();
+			}
+			handle.computeStatus();
+			root.summarize();
+		}
+		root.computeStatus();
+
+		// THEN
+		System.out.println("After processing\n" + root.debugDump());
+		int failures = 0, samples = 0, aggregates = 0;
+		for (OperationResult subresult : root.getSubresults()) {
+			assertEquals("Wrong operation", "handle", subresult.getOperation());
+			if (subresult.isFatalError()) {
+				failures++;
+				assertEquals("Failure details not kept", 1, subresult.getSubresults().size());
+				assertEquals("Wrong count in failure", 1, subresult.getCount());
+			} else if (subresult.getCount() > 1) {
+				aggregates++;
+				assertEquals("Wrong count in aggregate", 24, subresult.getCount());
+				assertEquals("Aggregate should have no subresults", 0, subresult.getSubresults().size());
+				assertEquals("Aggregate should have no params", 0, subresult.getParams().size());
+			} else {
+				samples++;
+				assertEquals("Sample details not kept", 1, subresult.getSubresults().size());
+				assertEquals("Wrong status in sample", OperationResultStatus.SUCCESS, subresult.getStatus());
+			}
+		}
+		assertEquals("Wrong # of failures", 4, failures);
+		assertEquals("Wrong # of samples", 2, samples);
+		assertEquals("Wrong # of aggregates", 1, aggregates);
+		assertEquals("Wrong overall status", OperationResultStatus.FATAL_ERROR, root.getStatus());
+
+		checkResultConversion(root);
+	}
+
+	/**
+	 * The number of kept subresults (and so the memory) must not grow with the number of processed objects.
+	 */
+	@Test
+	public void testLightweightResultMany() throws Exception {
+		System.out.println("===[ testLightweightResultMany ]===");
+
+		// WHEN
+		OperationResult small = processLightweight(10000);
+		OperationResult large = processLightweight(200000);
+
+		// THEN
+		System.out.println("After processing (large)\n" + large.debugDump());
+		int maxChildren = OperationResult.LIGHTWEIGHT_MAX_SAMPLES + OperationResult.LIGHTWEIGHT_MAX_RETAINED_FAILURES + 2;
+		assertTrue("Too many subresults: " + large.getSubresults().size(), large.getSubresults().size() <= maxChildren);
+		int total = 0, samples = 0, failures = 0;
+		for (OperationResult subresult : large.getSubresults()) {
+			total += subresult.getCount();
+			if (subresult.getCount() == 1 && subresult.isSuccess()) {
+				samples++;
+			} else if (subresult.getCount() == 1 && subresult.isFatalError()) {
+				failures++;
+			}
+		}
+		assertEquals("Wrong total count", 200000, total);
+		assertEquals("Wrong # of samples", OperationResult.LIGHTWEIGHT_MAX_SAMPLES, samples);
+		assertEquals("Wrong # of failures kept", OperationResult.LIGHTWEIGHT_MAX_RETAINED_FAILURES, failures);
+		assertEquals("Wrong overall status", OperationResultStatus.FATAL_ERROR, large.getStatus());
+
+		int smallSize = getSerializedSize(small);
+		int largeSize = getSerializedSize(large);
+		System.out.println("Serialized size: " + smallSize + " (10000 objects), " + largeSize + " (200000 objects)");
+		assertTrue("Result size grows with the number of objects: " + smallSize + " -> " + largeSize,
+				largeSize < smallSize + smallSize / 10);
+	}
+
+	private OperationResult processLightweight(int objects) {
+		OperationResult root = new OperationResult("dummy");
+		root.setLightweight(true);
+		root.setLightweightSampleInterval(10);
+		for (int i = 1; i <= objects; i++) {
+			OperationResult handle = root.createSubresult("handle");
+			handle.addParam("value", "object number " + i);
+			OperationResult inner = handle.createSubresult("inner");
+			if (i % 7 == 0) {
+				inner.recordFatalError("Failure " + i);
+			} else {
+				inner.recordSuccess();
+			}
+			handle.computeStatus();
+		}
+		root.computeStatus();
+		return root;
+	}
+
+	private int getSerializedSize(OperationResult result) throws IOException {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		try (ObjectOutputStream oos = new ObjectOutputStream(baos)) {
+			oos.writeObject(result);
+		}
+		return baos.size();
+	}
+
 	@Test
 	public void testIncrementalSummarization() throws Exception {
 		System.out.println("===[ testIncrementalSummarization ]===");
@@ -22,6 +22,7 @@ import static javax.xml.XMLConstants.W3C_XML_SCHEMA_NS_URI;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -190,6 +191,28 @@ public class DOMUtil {
 		transformer.transform(input, output);
 	}
 
+	/**
+	 * Serializes the node directly into the output stream (UTF-8), using the same formatting as {@link #printDom(Node)}.
+	 * Avoids creating an intermediate String for large documents.
+	 */
+	public static void serializeDOMToStream(org.w3c.dom.Node node, OutputStream outputStream) {
+		Transformer trans;
+		try {
+			trans = TransformerFactory.newInstance().newTransformer();
+		} catch (TransformerConfigurationException e) {
+			throw new SystemException("Error in XML configuration: "+e.getMessage(),e);
+		}
+		trans.setOutputProperty(OutputKeys.INDENT, "yes");
+		trans.setOutputProperty("{http://xml.apache.org/xslt}indent-amount", "4");      // XALAN-specific
+		trans.setOutputProperty(OutputKeys.ENCODING, "utf-8");
+		trans.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
+		try {
+			trans.transform(new DOMSource(node), new StreamResult(outputStream));
+		} catch (TransformerException e) {
+			throw new SystemException("Error in XML transformation: "+e.getMessage(),e);
+		}
+	}
+
 	public static Document getDocument(Node node) {
 		if (node instanceof Document) {
 			return (Document) node;
@@ -16,12 +16,18 @@
 package com.evolveum.midpoint.model.common;
 
 import java.util.Collection;
+import java.util.Collections;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Component;
 
 import com.evolveum.midpoint.prism.PrismObject;
+import com.evolveum.midpoint.repo.api.CacheDispatcher;
+import com.evolveum.midpoint.repo.api.CacheListener;
 import com.evolveum.midpoint.repo.api.RepositoryService;
 import com.evolveum.midpoint.schema.GetOperationOptions;
 import com.evolveum.midpoint.schema.SelectorOptions;
@@ -30,6 +36,7 @@ import com.evolveum.midpoint.util.exception.ObjectNotFoundException;
 import com.evolveum.midpoint.util.exception.SchemaException;
 import com.evolveum.midpoint.util.logging.Trace;
 import com.evolveum.midpoint.util.logging.TraceManager;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ObjectType;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.SystemConfigurationType;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.SystemObjectsType;
 
@@ -44,6 +51,9 @@ import com.evolveum.midpoint.xml.ns._public.common.common_3.SystemObjectsType;
  * the number of getObject(SystemConfiguration) and the getVersion(SystemConfiguration)
  * calls.
  * 
+ * The cached object is also invalidated by the cache dispatcher, i.e. when system configuration
+ * is changed on this or (with a delay of one cluster manager cycle) on any other node.
+ * 
  * In the future: May be used for more objects that are often used and seldom
  * changed, e.g. object templates.
  * 
@@ -52,7 +62,7 @@ import com.evolveum.midpoint.xml.ns._public.common.common_3.SystemObjectsType;
  * @author semancik
  */
 @Component
-public class SystemObjectCache {
+public class SystemObjectCache implements CacheListener {
 	
 	private static final Trace LOGGER = TraceManager.getTrace(SystemObjectCache.class);
 	
@@ -60,6 +70,9 @@ public class SystemObjectCache {
 	@Qualifier("cacheRepositoryService")
 	private transient RepositoryService cacheRepositoryService;
 
+	@Autowired(required = true)
+	private transient CacheDispatcher cacheDispatcher;
+
 	private PrismObject<SystemConfigurationType> systemConfiguration;
 	private Long systemConfigurationCheckTimestamp;
 	
@@ -119,4 +132,30 @@ public class SystemObjectCache {
 	public synchronized void invalidateCaches() {
 		systemConfiguration = null;
 	}
+
+	@PostConstruct
+	public void registerCacheListener() {
+		cacheDispatcher.registerCacheListener(this);
+	}
+
+	@PreDestroy
+	public void unregisterCacheListener() {
+		cacheDispatcher.unregisterCacheListener(this);
+	}
+
+	@Override
+	public <O extends ObjectType> void invalidateCache(Class<O> type, String oid) {
+		if (SystemConfigurationType.class.equals(type)) {
+			LOGGER.trace("Invalidating cached system configuration");
+			invalidateCaches();
+		}
+	}
+
+	@Override
+	public synchronized <O extends ObjectType> Collection<String> getCachedOids(Class<O> type) {
+		if (SystemConfigurationType.class.equals(type) && systemConfiguration != null) {
+			return Collections.singleton(systemConfiguration.getOid());
+		}
+		return Collections.emptySet();
+	}
 }
@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2010-2016 Evolveum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.evolveum.midpoint.model.common.expression;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Size-bounded cache of parsed or compiled expressions (expressions, compiled scripts, templates, ...),
+ * shared among threads. When full, the least recently used entry is evicted.
+ *
+ * Values are created outside of the cache lock (parsing can be expensive or even call other components),
+ * so the same value can be occasionally created by more threads at once; the last one wins.
+ * Cached values must therefore be safe to use concurrently.
+ *
+ * @author mederly
+ */
+public class ExpressionCache<K, V> {
+
+	public static final int DEFAULT_MAX_SIZE = 1000;
+
+	private final String name;
+	private final int maxSize;
+	private final Map<K, V> entries;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+
+	public ExpressionCache(String name) {
+		this(name, DEFAULT_MAX_SIZE);
+	}
+
+	public ExpressionCache(String name, final int maxSize) {
+		this.name = name;
+		this.maxSize = maxSize;
+		// access-ordered map, so the least recently used entry is evicted first
+		this.entries = new LinkedHashMap<K, V>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+				if (size() > maxSize) {
+					evictions.incrementAndGet();
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	public boolean isEnabled() {
+		return maxSize > 0;
+	}
+
+	/**
+	 * Returns the cached value (or null), recording a hit or a miss.
+	 */
+	public V get(K key) {
+		if (!isEnabled()) {
+			return null;
+		}
+		V value;
+		synchronized (entries) {
+			value = entries.get(key);
+		}
+		if (value != null) {
+			hits.incrementAndGet();
+		} else {
+			misses.incrementAndGet();
+		}
+		return value;
+	}
+
+	public void put(K key, V value) {
+		if (!isEnabled() || key == null || value == null) {
+			return;
+		}
+		synchronized (entries) {
+			entries.put(key, value);
+		}
+	}
+
+	public void clear() {
+		synchronized (entries) {
+			entries.clear();
+		}
+	}
+
+	public int size() {
+		synchronized (entries) {
+			return entries.size();
+		}
+	}
+
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	public long getEvictions() {
+		return evictions.get();
+	}
+
+	public void resetStatistics() {
+		hits.set(0);
+		misses.set(0);
+		evictions.set(0);
+	}
+
+	public String description() {
+		return name + ": size: " + size() + "/" + maxSize + ", hits: " + hits.get() + ", misses: " + misses.get()
+				+ ", evictions: " + evictions.get();
+	}
+
+	@Override
+	public String toString() {
+		return "ExpressionCache(" + description() + ")";
+	}
+}
@@ -39,7 +39,7 @@ public class ExpressionFactory {
 	
 	private Map<QName,ExpressionEvaluatorFactory> evaluatorFactoriesMap = new HashMap<QName, ExpressionEvaluatorFactory>();
 	private ExpressionEvaluatorFactory defaultEvaluatorFactory;
-	private Map<ExpressionIdentifier, Expression<?,?>> cache = new HashMap<ExpressionIdentifier, Expression<?,?>>();
+	private final ExpressionCache<ExpressionIdentifier, Expression<?,?>> cache = new ExpressionCache<>("Parsed expressions");
 	private PrismContext prismContext;
 	private ObjectResolver objectResolver;
 	
@@ -71,6 +71,10 @@ public class ExpressionFactory {
 		return expression;
 	}
 
+	public ExpressionCache<?, ?> getCache() {
+		return cache;
+	}
+
 	private <V extends PrismValue,D extends ItemDefinition> Expression<V,D> createExpression(ExpressionType expressionType,
 																							 D outputDefinition, String shortDesc, Task task, OperationResult result)
 					throws SchemaException, ObjectNotFoundException {
@@ -18,8 +18,6 @@ package com.evolveum.midpoint.model.common.expression.script.jsr223;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 import javax.script.Bindings;
 import javax.script.Compilable;
@@ -29,6 +27,7 @@ import javax.script.ScriptEngineManager;
 import javax.script.ScriptException;
 import javax.xml.namespace.QName;
 
+import com.evolveum.midpoint.model.common.expression.ExpressionCache;
 import com.evolveum.midpoint.model.common.expression.ExpressionSyntaxException;
 import com.evolveum.midpoint.model.common.expression.ExpressionUtil;
 import com.evolveum.midpoint.model.common.expression.ExpressionVariables;
@@ -66,7 +65,7 @@ public class Jsr223ScriptEvaluator implements ScriptEvaluator {
 	private PrismContext prismContext;
 	private Protector protector;
 	
-	private Map<String, CompiledScript> scriptCache;
+	private final ExpressionCache<String, CompiledScript> scriptCache;
 	
 	public Jsr223ScriptEvaluator(String engineName, PrismContext prismContext, Protector protector) {
 		ScriptEngineManager scriptEngineManager = new ScriptEngineManager();
@@ -76,7 +75,7 @@ public class Jsr223ScriptEvaluator implements ScriptEvaluator {
 		}
 		this.prismContext = prismContext;
 		this.protector = protector;
-		this.scriptCache = new ConcurrentHashMap<String, CompiledScript>();
+		this.scriptCache = new ExpressionCache<>("Compiled " + engineName + " scripts");
 	}
 	
 	@Override
@@ -213,6 +212,10 @@ public class Jsr223ScriptEvaluator implements ScriptEvaluator {
 		return bindings;
 	}
 
+	public ExpressionCache<String, CompiledScript> getScriptCache() {
+		return scriptCache;
+	}
+
 	/* (non-Javadoc)
 	 * @see com.evolveum.midpoint.common.expression.ExpressionEvaluator#getLanguageName()
 	 */
@@ -15,6 +15,7 @@
  */
 package com.evolveum.midpoint.model.common.expression.script.velocity;
 
+import com.evolveum.midpoint.model.common.expression.ExpressionCache;
 import com.evolveum.midpoint.model.common.expression.ExpressionSyntaxException;
 import com.evolveum.midpoint.model.common.expression.ExpressionUtil;
 import com.evolveum.midpoint.model.common.expression.ExpressionVariables;
@@ -34,10 +35,15 @@ import com.evolveum.midpoint.util.exception.ExpressionEvaluationException;
 import com.evolveum.midpoint.util.exception.ObjectNotFoundException;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.ScriptExpressionEvaluatorType;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.ScriptExpressionReturnTypeType;
+import org.apache.velocity.Template;
 import org.apache.velocity.VelocityContext;
 import org.apache.velocity.app.Velocity;
+import org.apache.velocity.runtime.RuntimeServices;
+import org.apache.velocity.runtime.RuntimeSingleton;
+import org.apache.velocity.runtime.parser.ParseException;
 
 import javax.xml.namespace.QName;
+import java.io.StringReader;
 import java.io.StringWriter;
 import java.util.*;
 
@@ -54,6 +60,9 @@ public class VelocityScriptEvaluator implements ScriptEvaluator {
 	private PrismContext prismContext;
 	private Protector protector;
 
+	// parsed templates, keyed by the code
+	private final ExpressionCache<String, Template> templateCache = new ExpressionCache<>("Parsed velocity templates");
+
 	public VelocityScriptEvaluator(PrismContext prismContext, Protector protector) {
 		this.prismContext = prismContext;
 		this.protector = protector;
@@ -81,10 +90,12 @@ public class VelocityScriptEvaluator implements ScriptEvaluator {
 			allowEmptyValues = expressionType.isAllowEmptyValues();
 		}
 		
+		Template template = getTemplate(codeString, contextDescription);
+
 		StringWriter resultWriter = new StringWriter();
 		try {
 			InternalMonitor.recordScriptExecution();
-			Velocity.evaluate(context, resultWriter, "", codeString);
+			template.merge(context, resultWriter);
 		} catch (RuntimeException e) {
 			throw new ExpressionEvaluationException(e.getMessage() + " in " + contextDescription, e);
 		}
@@ -121,6 +132,31 @@ public class VelocityScriptEvaluator implements ScriptEvaluator {
 		return pvals;
 	}
 
+	// the same as Velocity.evaluate does, but the parsed template is reused
+	private Template getTemplate(String codeString, String contextDescription) throws ExpressionEvaluationException {
+		Template template = templateCache.get(codeString);
+		if (template != null) {
+			return template;
+		}
+		try {
+			InternalMonitor.recordScriptCompile();
+			RuntimeServices runtimeServices = RuntimeSingleton.getRuntimeServices();
+			template = new Template();
+			template.setName("");
+			template.setRuntimeServices(runtimeServices);
+			template.setData(runtimeServices.parse(new StringReader(codeString), ""));
+			template.initDocument();
+		} catch (ParseException|RuntimeException e) {
+			throw new ExpressionEvaluationException(e.getMessage() + " in " + contextDescription, e);
+		}
+		templateCache.put(codeString, template);
+		return template;
+	}
+
+	public ExpressionCache<String, Template> getTemplateCache() {
+		return templateCache;
+	}
+
 	private VelocityContext createVelocityContext(ExpressionVariables variables, ObjectResolver objectResolver,
 									   Collection<FunctionLibrary> functions,
 									   String contextDescription, Task task, OperationResult result) throws ExpressionSyntaxException, ObjectNotFoundException {
@@ -15,6 +15,7 @@
  */
 package com.evolveum.midpoint.model.common.expression.script.xpath;
 
+import com.evolveum.midpoint.model.common.expression.ExpressionCache;
 import com.evolveum.midpoint.model.common.expression.ExpressionSyntaxException;
 import com.evolveum.midpoint.model.common.expression.ExpressionVariables;
 import com.evolveum.midpoint.model.common.expression.functions.FunctionLibrary;
@@ -24,6 +25,7 @@ import com.evolveum.midpoint.prism.PrismConstants;
 import com.evolveum.midpoint.prism.PrismContext;
 import com.evolveum.midpoint.prism.PrismPropertyValue;
 import com.evolveum.midpoint.prism.PrismValue;
+import com.evolveum.midpoint.prism.marshaller.TrivialXPathParser;
 import com.evolveum.midpoint.prism.polystring.PolyString;
 import com.evolveum.midpoint.prism.util.PrismUtil;
 import com.evolveum.midpoint.prism.xml.XmlTypeConverter;
@@ -63,6 +65,10 @@ public class XPathScriptEvaluator implements ScriptEvaluator {
     
     private PrismContext prismContext;
 
+    // Code parsed into namespace declarations and pure XPath. Compiled XPathExpressions cannot be cached,
+    // as they are not thread-safe and are bound to the variable and function resolvers of the evaluation.
+    private final ExpressionCache<String, TrivialXPathParser> parsedCodeCache = new ExpressionCache<>("Parsed XPath expressions");
+
     public XPathScriptEvaluator(PrismContext prismContext) {
 		this.prismContext = prismContext;
 	}
@@ -143,19 +149,19 @@ public class XPathScriptEvaluator implements ScriptEvaluator {
     		String contextDescription, OperationResult result)
             throws ExpressionEvaluationException, ObjectNotFoundException, ExpressionSyntaxException {
 
-        XPathExpressionCodeHolder codeHolder = new XPathExpressionCodeHolder(code);
+        TrivialXPathParser parsedCode = parseCode(code);
         //System.out.println("code " + code);
         XPath xpath = factory.newXPath();
         XPathVariableResolver variableResolver = new LazyXPathVariableResolver(variables, objectResolver, 
         		contextDescription, prismContext, result);
         xpath.setXPathVariableResolver(variableResolver);
-        xpath.setNamespaceContext(new MidPointNamespaceContext(codeHolder.getNamespaceMap()));
+        xpath.setNamespaceContext(new MidPointNamespaceContext(parsedCode.getNamespaceMap()));
         xpath.setXPathFunctionResolver(getFunctionResolver(functions));
 
         XPathExpression expr;
         try {
 
-            expr = xpath.compile(codeHolder.getExpressionAsString());
+            expr = xpath.compile(parsedCode.getPureXPathString());
 
         } catch (Exception e) {
             Throwable originalException = ExceptionUtil.lookForTunneledException(e);
@@ -211,6 +217,20 @@ public class XPathScriptEvaluator implements ScriptEvaluator {
     }
 
 
+    // see XPathExpressionCodeHolder
+    private TrivialXPathParser parseCode(String code) {
+        TrivialXPathParser parsedCode = parsedCodeCache.get(code);
+        if (parsedCode == null) {
+            parsedCode = TrivialXPathParser.parse(code);
+            parsedCodeCache.put(code, parsedCode);
+        }
+        return parsedCode;
+    }
+
+    public ExpressionCache<String, TrivialXPathParser> getParsedCodeCache() {
+        return parsedCodeCache;
+    }
+
     private ExpressionEvaluationException createExpressionEvaluationException(Exception e, String contextDescription) {
         return new ExpressionEvaluationException(lookForMessage(e) + " in " + contextDescription, e);
     }
@@ -15,6 +15,7 @@
  */
 package com.evolveum.midpoint.model.common.expression.script;
 
+import com.evolveum.midpoint.model.common.expression.ExpressionCache;
 import com.evolveum.midpoint.model.common.expression.ExpressionUtil;
 import com.evolveum.midpoint.model.common.expression.ExpressionVariables;
 import com.evolveum.midpoint.model.common.expression.functions.FunctionLibrary;
@@ -125,6 +126,31 @@ public class TestScriptCaching {
     	assertScriptMonitor(2,6, "horatio2");
     	assertTrue("Even Horatio was wrong! "+horatio1Time+" -> "+horatio2Time, horatio2Time <= horatio1Time);
     }
+
+    @Test
+    public void testCacheEviction() throws Exception {
+    	final String TEST_NAME = "testCacheEviction";
+    	TestUtil.displayTestTile(TEST_NAME);
+
+    	// GIVEN
+    	ExpressionCache<String, String> cache = new ExpressionCache<>(TEST_NAME, 2);
+
+    	// WHEN
+    	cache.put("a", "A");
+    	cache.put("b", "B");
+    	assertEquals("Wrong value for a", "A", cache.get("a"));		// "b" is now the least recently used one
+    	cache.put("c", "C");
+
+    	// THEN
+    	System.out.println(cache.description());
+    	assertNull("b was not evicted", cache.get("b"));
+    	assertEquals("Wrong value for a", "A", cache.get("a"));
+    	assertEquals("Wrong value for c", "C", cache.get("c"));
+    	assertEquals("Wrong size", 2, cache.size());
+    	assertEquals("Wrong # of hits", 3, cache.getHits());
+    	assertEquals("Wrong # of misses", 1, cache.getMisses());
+    	assertEquals("Wrong # of evictions", 1, cache.getEvictions());
+    }
     	
     private void assertScriptMonitor(int expCompilations, int expExecutions, String desc) {
 		assertEquals("Unexpected number of script compilations after "+desc, expCompilations, InternalMonitor.getScriptCompileCount());
@@ -15,6 +15,7 @@
  */
 package com.evolveum.midpoint.model.impl.importer;
 
+import com.evolveum.midpoint.model.api.ModelService;
 import com.evolveum.midpoint.model.impl.ModelConstants;
 import com.evolveum.midpoint.prism.PrismContext;
 import com.evolveum.midpoint.prism.PrismProperty;
@@ -22,8 +23,10 @@ import com.evolveum.midpoint.prism.PrismPropertyDefinition;
 import com.evolveum.midpoint.prism.PrismPropertyDefinitionImpl;
 import com.evolveum.midpoint.provisioning.api.ChangeNotificationDispatcher;
 import com.evolveum.midpoint.provisioning.api.ResourceObjectChangeListener;
+import com.evolveum.midpoint.schema.constants.SchemaConstants;
 import com.evolveum.midpoint.schema.result.OperationConstants;
 import com.evolveum.midpoint.schema.result.OperationResult;
+import com.evolveum.midpoint.schema.util.MiscSchemaUtil;
 import com.evolveum.midpoint.task.api.*;
 import com.evolveum.midpoint.task.api.TaskRunResult.TaskRunResultStatus;
 import com.evolveum.midpoint.util.DOMUtil;
@@ -32,6 +35,7 @@ import com.evolveum.midpoint.util.exception.ObjectNotFoundException;
 import com.evolveum.midpoint.util.exception.SchemaException;
 import com.evolveum.midpoint.util.logging.Trace;
 import com.evolveum.midpoint.util.logging.TraceManager;
+import com.evolveum.midpoint.xml.ns._public.common.api_types_3.ImportOptionsType;
 import com.evolveum.prism.xml.ns._public.types_3.PolyStringType;
 
 import org.apache.commons.lang.NotImplementedException;
@@ -41,6 +45,7 @@ import org.springframework.stereotype.Component;
 import javax.annotation.PostConstruct;
 
 import java.io.File;
+import java.io.FileNotFoundException;
 import java.util.List;
 
 /**
@@ -68,6 +73,9 @@ public class ImportObjectsFromFileTaskHandler implements TaskHandler {
     
     @Autowired(required = true)
     private PrismContext prismContext;
+
+    @Autowired(required = true)
+    private ModelService modelService;
     
     //private Map<Task,ImportAccountsFromResourceResultHandler> handlers;
     private PrismPropertyDefinition filenamePropertyDefinition;
@@ -182,12 +190,23 @@ public class ImportObjectsFromFileTaskHandler implements TaskHandler {
 
         File input = new File(filename);
 
-        // TODO: test file existence, etc.
+        ImportOptionsType options = MiscSchemaUtil.getDefaultImportOptions();
+        PrismProperty<Integer> workerThreadsProperty = task.getExtensionProperty(SchemaConstants.MODEL_EXTENSION_WORKER_THREADS);
+        if (workerThreadsProperty != null && workerThreadsProperty.getRealValue() != null) {
+            options.setThreads(workerThreadsProperty.getRealValue());
+        }
 
-        // TODO: do import
+        try {
+            modelService.importObjectsFromFile(input, options, task, opResult);
+        } catch (FileNotFoundException e) {
+            LOGGER.error("Import: File {} was not found", input, e);
+            opResult.recordFatalError("File " + input + " was not found", e);
+            runResult.setRunResultStatus(TaskRunResultStatus.PERMANENT_ERROR);
+            return runResult;
+        }
 
         opResult.computeStatus("Errors during import");
-        // TODO: runResult.setProgress(progress);
+        runResult.setProgress(task.getProgress());
         runResult.setRunResultStatus(TaskRunResultStatus.FINISHED);
 
         LOGGER.debug("Import objects from file run finished (task {}, run result {})", task, runResult);
@@ -121,6 +121,20 @@ public class ObjectImporter {
 
     private void importObjectsInternal(InputStream input, final ImportOptionsType options, final boolean raw, final Task task, final OperationResult parentResult) {
 
+        int threads = options != null && options.getThreads() != null ? options.getThreads() : 1;
+        final ParallelImportDispatcher dispatcher;
+        if (threads > 1) {
+            long stopAfterErrors = options.getStopAfterErrors() != null ? options.getStopAfterErrors().longValue() : 0;
+            dispatcher = new ParallelImportDispatcher(taskManager, new ParallelImportDispatcher.ObjectProcessor() {
+                @Override
+                public <T extends Objectable> EventResult processObject(PrismObject<T> object, Element objectElement, Task workerTask, OperationResult objectResult) {
+                    return importParsedObject(object, objectElement, options, raw, workerTask, objectResult);
+                }
+            }, task, stopAfterErrors);
+        } else {
+            dispatcher = null;
+        }
+
         EventHandler handler = new EventHandler() {
 
             @Override
@@ -130,120 +144,10 @@ public class ObjectImporter {
 
             @Override
             public <T extends Objectable> EventResult postMarshall(PrismObject<T> prismObjectObjectable, Element objectElement, OperationResult objectResult) {
-                LOGGER.debug("Importing object {}", prismObjectObjectable);
-                
-                T objectable = prismObjectObjectable.asObjectable();
-                if (!(objectable instanceof ObjectType)) {
-                	String message = "Cannot process type "+objectable.getClass()+" as it is not a subtype of "+ObjectType.class;
-                	objectResult.recordFatalError(message);
-                    LOGGER.error("Import of object {} failed: {}",
-                            new Object[]{prismObjectObjectable, message});
-                    return EventResult.skipObject(message);
-                }
-                PrismObject<? extends ObjectType> object = (PrismObject<? extends ObjectType>) prismObjectObjectable;
-                
-                if (LOGGER.isTraceEnabled()) {
-                	LOGGER.trace("IMPORTING object:\n{}", object.debugDump());
-                }
-                
-                object = migrator.migrate(object);
-                
-                Utils.resolveReferences(object, repository, 
-                		(options == null || options.isReferentialIntegrity() == null) ? false : options.isReferentialIntegrity(),
-                        false, EvaluationTimeType.IMPORT, prismContext, objectResult);
-                
-                objectResult.computeStatus();
-                if (!objectResult.isAcceptable()) {
-                	return EventResult.skipObject(objectResult.getMessage());
-                }
-                
-                generateIdentifiers(object, repository,  objectResult);
-                
-                objectResult.computeStatus();
-                if (!objectResult.isAcceptable()) {
-                	return EventResult.skipObject(objectResult.getMessage());
-                }
-
-                if (options != null && BooleanUtils.isTrue(options.isValidateDynamicSchema())) {
-                    validateWithDynamicSchemas(object, objectElement, repository, objectResult);
-                }
-
-                objectResult.computeStatus();
-                if (!objectResult.isAcceptable()) {
-                	return EventResult.skipObject(objectResult.getMessage());
-                }
-                
-                if (options != null && BooleanUtils.isTrue(options.isEncryptProtectedValues())) {
-                	OperationResult opResult = objectResult.createMinorSubresult(ObjectImporter.class.getName()+".encryptValues");
-                    try {
-						CryptoUtil.encryptValues(protector, object);
-						opResult.recordSuccess();
-					} catch (EncryptionException e) {
-						opResult.recordFatalError(e);
-					}
-                }
-                
-                if (options == null || (options != null && !BooleanUtils.isTrue(options.isKeepMetadata()))) {
-                	MetadataType metaData = new MetadataType();
-            		String channel = SchemaConstants.CHANNEL_OBJECT_IMPORT_URI;
-            		metaData.setCreateChannel(channel);
-            		metaData.setCreateTimestamp(clock.currentTimeXMLGregorianCalendar());
-            		if (task.getOwner() != null) {
-            			metaData.setCreatorRef(ObjectTypeUtil.createObjectRef(task.getOwner()));
-            		}
-            		object.asObjectable().setMetadata(metaData);
-                }
-
-                objectResult.computeStatus();
-                if (!objectResult.isAcceptable()) {
-                	return EventResult.skipObject(objectResult.getMessage());
-                }
-                
-                try {
-
-                    importObjectToRepository(object, options, raw, task, objectResult);
-
-                    LOGGER.info("Imported object {}", object);
-
-                } catch (SchemaException e) {
-                    objectResult.recordFatalError("Schema violation: "+e.getMessage(), e);
-                    LOGGER.error("Import of object {} failed: Schema violation: {}",
-                            new Object[]{object, e.getMessage(), e});
-                } catch (ObjectAlreadyExistsException e) {
-                	objectResult.recordFatalError("Object already exists: "+e.getMessage(), e);
-                    LOGGER.error("Import of object {} failed: Object already exists: {}",
-                            new Object[]{object, e.getMessage(), e});
-                    LOGGER.error("Object already exists", e);
-                } catch (RuntimeException e) {
-                    objectResult.recordFatalError("Unexpected problem: "+e.getMessage(), e);
-                    LOGGER.error("Import of object {} failed: Unexpected problem: {}",
-                            new Object[]{object, e.getMessage(), e});
-                } catch (ObjectNotFoundException e) {
-                	LOGGER.error("Import of object {} failed: Object referred from this object was not found: {}",
-                            new Object[]{object, e.getMessage(), e});
-				} catch (ExpressionEvaluationException e) {
-					LOGGER.error("Import of object {} failed: Expression evaluation error: {}",
-                            new Object[]{object, e.getMessage(), e});
-				} catch (CommunicationException e) {
-					LOGGER.error("Import of object {} failed: Communication error: {}",
-                            new Object[]{object, e.getMessage(), e});
-				} catch (ConfigurationException e) {
-					LOGGER.error("Import of object {} failed: Configuration error: {}",
-                            new Object[]{object, e.getMessage(), e});
-				} catch (PolicyViolationException e) {
-					LOGGER.error("Import of object {} failed: Policy violation: {}",
-                            new Object[]{object, e.getMessage(), e});
-				} catch (SecurityViolationException e) {
-					LOGGER.error("Import of object {} failed: Security violation: {}",
-                            new Object[]{object, e.getMessage(), e});
-				}
-
-                objectResult.recordSuccessIfUnknown();
-                if (objectResult.isAcceptable()) {
-                    // Continue import
-                    return EventResult.cont();
+                if (dispatcher != null) {
+                    return dispatcher.submit(prismObjectObjectable, objectElement, objectResult);
                 } else {
-                    return EventResult.skipObject(objectResult.getMessage());
+                    return importParsedObject(prismObjectObjectable, objectElement, options, raw, task, objectResult);
                 }
             }
 
@@ -269,8 +173,135 @@ public class ObjectImporter {
 	        }
         }
 
-        validator.validate(input, parentResult, OperationConstants.IMPORT_OBJECT);
+        if (dispatcher != null) {
+            dispatcher.startWorkers(threads, parentResult);
+            try {
+                validator.validate(input, parentResult, OperationConstants.IMPORT_OBJECT);
+            } finally {
+                dispatcher.finish(parentResult);
+            }
+        } else {
+            validator.validate(input, parentResult, OperationConstants.IMPORT_OBJECT);
+        }
+    }
 
+    private <T extends Objectable> EventResult importParsedObject(PrismObject<T> prismObjectObjectable, Element objectElement,
+            ImportOptionsType options, boolean raw, Task task, OperationResult objectResult) {
+        LOGGER.debug("Importing object {}", prismObjectObjectable);
+        
+        T objectable = prismObjectObjectable.asObjectable();
+        if (!(objectable instanceof ObjectType)) {
+        	String message = "Cannot process type "+objectable.getClass()+" as it is not a subtype of "+ObjectType.class;
+        	objectResult.recordFatalError(message);
+            LOGGER.error("Import of object {} failed: {}",
+                    new Object[]{prismObjectObjectable, message});
+            return EventResult.skipObject(message);
+        }
+        PrismObject<? extends ObjectType> object = (PrismObject<? extends ObjectType>) prismObjectObjectable;
+        
+        if (LOGGER.isTraceEnabled()) {
+        	LOGGER.trace("IMPORTING object:\n{}", object.debugDump());
+        }
+        
+        object = migrator.migrate(object);
+        
+        Utils.resolveReferences(object, repository, 
+        		(options == null || options.isReferentialIntegrity() == null) ? false : options.isReferentialIntegrity(),
+                false, EvaluationTimeType.IMPORT, prismContext, objectResult);
+        
+        objectResult.computeStatus();
+        if (!objectResult.isAcceptable()) {
+        	return EventResult.skipObject(objectResult.getMessage());
+        }
+        
+        generateIdentifiers(object, repository,  objectResult);
+        
+        objectResult.computeStatus();
+        if (!objectResult.isAcceptable()) {
+        	return EventResult.skipObject(objectResult.getMessage());
+        }
+
+        if (options != null && BooleanUtils.isTrue(options.isValidateDynamicSchema())) {
+            validateWithDynamicSchemas(object, objectElement, repository, objectResult);
+        }
+
+        objectResult.computeStatus();
+        if (!objectResult.isAcceptable()) {
+        	return EventResult.skipObject(objectResult.getMessage());
+        }
+        
+        if (options != null && BooleanUtils.isTrue(options.isEncryptProtectedValues())) {
+        	OperationResult opResult = objectResult.createMinorSubresult(ObjectImporter.class.getName()+".encryptValues");
+            try {
+				CryptoUtil.encryptValues(protector, object);
+				opResult.recordSuccess();
+			} catch (EncryptionException e) {
+				opResult.recordFatalError(e);
+			}
+        }
+        
+        if (options == null || (options != null && !BooleanUtils.isTrue(options.isKeepMetadata()))) {
+        	MetadataType metaData = new MetadataType();
+    		String channel = SchemaConstants.CHANNEL_OBJECT_IMPORT_URI;
+    		metaData.setCreateChannel(channel);
+    		metaData.setCreateTimestamp(clock.currentTimeXMLGregorianCalendar());
+    		if (task.getOwner() != null) {
+    			metaData.setCreatorRef(ObjectTypeUtil.createObjectRef(task.getOwner()));
+    		}
+    		object.asObjectable().setMetadata(metaData);
+        }
+
+        objectResult.computeStatus();
+        if (!objectResult.isAcceptable()) {
+        	return EventResult.skipObject(objectResult.getMessage());
+        }
+        
+        try {
+
+            importObjectToRepository(object, options, raw, task, objectResult);
+
+            LOGGER.info("Imported object {}", object);
+
+        } catch (SchemaException e) {
+            objectResult.recordFatalError("Schema violation: "+e.getMessage(), e);
+            LOGGER.error("Import of object {} failed: Schema violation: {}",
+                    new Object[]{object, e.getMessage(), e});
+        } catch (ObjectAlreadyExistsException e) {
+        	objectResult.recordFatalError("Object already exists: "+e.getMessage(), e);
+            LOGGER.error("Import of object {} failed: Object already exists: {}",
+                    new Object[]{object, e.getMessage(), e});
+            LOGGER.error("Object already exists", e);
+        } catch (RuntimeException e) {
+            objectResult.recordFatalError("Unexpected problem: "+e.getMessage(), e);
+            LOGGER.error("Import of object {} failed: Unexpected problem: {}",
+                    new Object[]{object, e.getMessage(), e});
+        } catch (ObjectNotFoundException e) {
+        	LOGGER.error("Import of object {} failed: Object referred from this object was not found: {}",
+                    new Object[]{object, e.getMessage(), e});
+		} catch (ExpressionEvaluationException e) {
+			LOGGER.error("Import of object {} failed: Expression evaluation error: {}",
+                    new Object[]{object, e.getMessage(), e});
+		} catch (CommunicationException e) {
+			LOGGER.error("Import of object {} failed: Communication error: {}",
+                    new Object[]{object, e.getMessage(), e});
+		} catch (ConfigurationException e) {
+			LOGGER.error("Import of object {} failed: Configuration error: {}",
+                    new Object[]{object, e.getMessage(), e});
+		} catch (PolicyViolationException e) {
+			LOGGER.error("Import of object {} failed: Policy violation: {}",
+                    new Object[]{object, e.getMessage(), e});
+		} catch (SecurityViolationException e) {
+			LOGGER.error("Import of object {} failed: Security violation: {}",
+                    new Object[]{object, e.getMessage(), e});
+		}
+
+        objectResult.recordSuccessIfUnknown();
+        if (objectResult.isAcceptable()) {
+            // Continue import
+            return EventResult.cont();
+        } else {
+            return EventResult.skipObject(objectResult.getMessage());
+        }
     }
 
     private <T extends ObjectType> void importObjectToRepository(PrismObject<T> object, ImportOptionsType options, boolean raw,
@@ -0,0 +1,281 @@
+/*
+ * Copyright (c) 2010-2016 Evolveum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.evolveum.midpoint.model.impl.importer;
+
+import com.evolveum.midpoint.common.validator.EventResult;
+import com.evolveum.midpoint.prism.Objectable;
+import com.evolveum.midpoint.prism.PrismObject;
+import com.evolveum.midpoint.prism.polystring.PolyString;
+import com.evolveum.midpoint.schema.result.OperationConstants;
+import com.evolveum.midpoint.schema.result.OperationResult;
+import com.evolveum.midpoint.schema.result.OperationResultStatus;
+import com.evolveum.midpoint.task.api.LightweightTaskHandler;
+import com.evolveum.midpoint.task.api.Task;
+import com.evolveum.midpoint.task.api.TaskManager;
+import com.evolveum.midpoint.util.exception.SystemException;
+import com.evolveum.midpoint.util.logging.LoggingUtils;
+import com.evolveum.midpoint.util.logging.Trace;
+import com.evolveum.midpoint.util.logging.TraceManager;
+import org.w3c.dom.Element;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Imports objects using worker threads (lightweight subtasks of the importing task).
+ *
+ * Objects are parsed by the validator in the calling thread and submitted into a bounded queue,
+ * so only a limited number of parsed objects is held in memory at any time. Each worker records
+ * per-object results into its own operation result; these are put under the parent result when
+ * the import finishes.
+ *
+ * @author mederly
+ */
+class ParallelImportDispatcher {
+
+    private static final Trace LOGGER = TraceManager.getTrace(ParallelImportDispatcher.class);
+
+    private static final int QUEUE_SIZE_PER_WORKER = 20;
+    private static final long OFFER_TIMEOUT = 500L;
+    private static final long POLL_TIMEOUT = 500L;
+    private static final long PROGRESS_UPDATE_INTERVAL = 3000L;
+
+    interface ObjectProcessor {
+        <T extends Objectable> EventResult processObject(PrismObject<T> object, Element objectElement, Task workerTask, OperationResult objectResult);
+    }
+
+    private final TaskManager taskManager;
+    private final ObjectProcessor objectProcessor;
+    private final Task coordinatorTask;
+    private final long stopAfterErrors;
+
+    private BlockingQueue<ImportRequest> queue;
+    private OperationResult validatorResult;
+    private final List<OperationResult> workerResults = new ArrayList<>();
+    private volatile boolean allObjectsSubmitted;
+    private volatile String stopReason;
+
+    private final AtomicInteger processed = new AtomicInteger();
+    private final AtomicInteger errors = new AtomicInteger();
+    private final AtomicLong progressLastUpdated = new AtomicLong();
+    private long startTime;
+
+    ParallelImportDispatcher(TaskManager taskManager, ObjectProcessor objectProcessor, Task coordinatorTask, long stopAfterErrors) {
+        this.taskManager = taskManager;
+        this.objectProcessor = objectProcessor;
+        this.coordinatorTask = coordinatorTask;
+        this.stopAfterErrors = stopAfterErrors;
+    }
+
+    void startWorkers(int threads, OperationResult parentResult) {
+        LOGGER.debug("Starting {} import worker thread(s) for {}", threads, coordinatorTask);
+        startTime = System.currentTimeMillis();
+        queue = new ArrayBlockingQueue<>(threads * QUEUE_SIZE_PER_WORKER);
+        validatorResult = parentResult;
+        for (int i = 0; i < threads; i++) {
+            // worker results are put under the parent result only after the workers finish
+            OperationResult workerResult = new OperationResult(ParallelImportDispatcher.class.getName() + ".importObjects");
+            workerResult.addContext("subtask", i);
+            workerResult.setSummarizeErrors(parentResult.isSummarizeErrors());
+            workerResult.setSummarizeSuccesses(parentResult.isSummarizeSuccesses());
+            workerResults.add(workerResult);
+
+            Task subtask = coordinatorTask.createSubtask(new Worker(workerResult));
+            subtask.setCategory(coordinatorTask.getCategory());
+            subtask.setResult(new OperationResult(ParallelImportDispatcher.class.getName() + ".executeWorker",
+                    OperationResultStatus.IN_PROGRESS, null));
+            subtask.setName("Import worker thread " + (i+1) + " of " + threads);
+            subtask.startLightweightHandler();
+        }
+    }
+
+    /**
+     * Puts the object into the queue, waiting if it's full. Returns "stop" if the processing should not continue.
+     *
+     * The object will get its result from the worker that imports it. So the result the validator has created
+     * for it is dropped, unless it contains something (e.g. validation warnings).
+     */
+    <T extends Objectable> EventResult submit(PrismObject<T> object, Element objectElement, OperationResult objectResult) {
+        ImportRequest request = new ImportRequest(object, objectElement);
+        try {
+            while (!queue.offer(request, OFFER_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                if (shouldStop()) {
+                    return EventResult.stop(stopReason);
+                }
+            }
+        } catch (InterruptedException e) {
+            LOGGER.debug("Interrupted while submitting object {}", object);
+            return EventResult.stop("Interrupted");
+        }
+        if (objectResult.isUnknown() && objectResult.getSubresults().isEmpty()) {
+            objectResult.recordSuccess();
+            removeSubresult(validatorResult, objectResult);
+        }
+        return shouldStop() ? EventResult.stop(stopReason) : EventResult.cont();
+    }
+
+    // the result is usually the last one, so we search from the end (and by identity)
+    private void removeSubresult(OperationResult parent, OperationResult subresult) {
+        List<OperationResult> subresults = parent.getSubresults();
+        for (int i = subresults.size() - 1; i >= 0; i--) {
+            if (subresults.get(i) == subresult) {
+                subresults.remove(i);
+                return;
+            }
+        }
+    }
+
+    private boolean shouldStop() {
+        if (stopReason == null && !coordinatorTask.canRun()) {
+            stopReason = "Task was suspended";
+        }
+        return stopReason != null;
+    }
+
+    /**
+     * Waits until the workers finish and puts their results under the parent result.
+     */
+    void finish(OperationResult parentResult) {
+        allObjectsSubmitted = true;
+        taskManager.waitForTransientChildren(coordinatorTask, parentResult);
+        for (OperationResult workerResult : workerResults) {
+            workerResult.computeStatus();
+            workerResult.summarize();
+            parentResult.addSubresult(workerResult);
+        }
+        long duration = System.currentTimeMillis() - startTime;
+        int count = processed.get();
+        LOGGER.info("Imported {} object(s) ({} error(s)) in {} ms using {} thread(s): {} objects per second",
+                count, errors.get(), duration, workerResults.size(), duration > 0 ? count * 1000L / duration : count);
+        if (stopReason != null) {
+            parentResult.recordFatalError("Processing has been stopped: " + stopReason);
+        } else if (!parentResult.isFatalError()) {          // e.g. XML parsing error reported by the validator
+            parentResult.computeStatus(errors.get() + " errors, " + (count - errors.get()) + " passed");
+        }
+        if (coordinatorTask.isPersistent()) {
+            coordinatorTask.storeOperationStats();
+        }
+    }
+
+    int getProcessed() {
+        return processed.get();
+    }
+
+    int getErrors() {
+        return errors.get();
+    }
+
+    private void processRequest(ImportRequest request, Task workerTask, OperationResult workerResult) {
+        PrismObject<? extends Objectable> object = request.object;
+        String objectName = PolyString.getOrig(object.getName());
+        OperationResult objectResult = workerResult.createSubresult(OperationConstants.IMPORT_OBJECT);
+        long started = System.currentTimeMillis();
+        workerTask.recordIterativeOperationStart(objectName, objectName, null, object.getOid());
+        Throwable exception = null;
+        EventResult cont;
+        try {
+            cont = objectProcessor.processObject(object, request.objectElement, workerTask, objectResult);
+        } catch (RuntimeException e) {
+            LoggingUtils.logUnexpectedException(LOGGER, "Couldn't import object {}", e, object);
+            objectResult.recordFatalError("Unexpected problem: " + e.getMessage(), e);
+            exception = e;
+            cont = EventResult.skipObject(e.getMessage());
+        }
+        objectResult.computeStatusIfUnknown();
+        int progress = processed.incrementAndGet();
+        objectResult.addContext(OperationResult.CONTEXT_PROGRESS, progress);
+        if (objectResult.isError()) {
+            int errorCount = errors.incrementAndGet();
+            if (exception == null) {
+                exception = objectResult.getCause() != null ? objectResult.getCause() : new SystemException(objectResult.getMessage());
+            }
+            if (stopAfterErrors > 0 && errorCount >= stopAfterErrors) {
+                stopReason = "Too many errors (" + errorCount + ")";
+            }
+        }
+        if (cont.isStop() && stopReason == null) {
+            stopReason = cont.getReason() != null ? cont.getReason() : "Stopped by import of " + object;
+        }
+        workerTask.recordIterativeOperationEnd(objectName, objectName, null, object.getOid(), started, exception);
+        objectResult.cleanupResult();
+        workerResult.summarize();
+
+        synchronized (coordinatorTask) {
+            coordinatorTask.setProgress(progress);
+            workerTask.setProgress(workerTask.getProgress() + 1);
+            if (coordinatorTask.isPersistent() && shouldReportProgress()) {
+                coordinatorTask.storeOperationStats();
+            }
+        }
+    }
+
+    private boolean shouldReportProgress() {
+        long curr = System.currentTimeMillis();
+        if (curr >= progressLastUpdated.get() + PROGRESS_UPDATE_INTERVAL) {
+            progressLastUpdated.set(curr);
+            return true;
+        } else {
+            return false;
+        }
+    }
+
+    private static class ImportRequest {
+        private final PrismObject<? extends Objectable> object;
+        private final Element objectElement;
+
+        ImportRequest(PrismObject<? extends Objectable> object, Element objectElement) {
+            this.object = object;
+            this.objectElement = objectElement;
+        }
+    }
+
+    private class Worker implements LightweightTaskHandler {
+
+        private final OperationResult workerResult;
+
+        Worker(OperationResult workerResult) {
+            this.workerResult = workerResult;
+        }
+
+        @Override
+        public void run(Task workerTask) {
+            while (workerTask.canRun() && stopReason == null) {
+                // The flag has to be read before polling: if it was set, everything has been already put into
+                // the queue, so an empty poll means there's really nothing more to do. (Reading it after
+                // an unsuccessful poll could miss objects submitted in the meantime.)
+                boolean lastRound = allObjectsSubmitted;
+                ImportRequest request;
+                try {
+                    request = queue.poll(POLL_TIMEOUT, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    LOGGER.trace("Interrupted when waiting for next object", e);
+                    return;
+                }
+                if (request != null) {
+                    processRequest(request, workerTask, workerResult);
+                } else if (lastRound) {
+                    LOGGER.trace("Queue is empty and nothing more is expected - exiting");
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -81,8 +81,10 @@ import org.springframework.stereotype.Component;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 import javax.annotation.PostConstruct;
 import javax.xml.bind.JAXBElement;
@@ -100,6 +102,7 @@ public class ChangeExecutor {
 	private static final String OPERATION_EXECUTE = ChangeExecutor.class.getName() + ".execute";
 	private static final String OPERATION_EXECUTE_FOCUS = OPERATION_EXECUTE + ".focus";
 	private static final String OPERATION_EXECUTE_PROJECTION = OPERATION_EXECUTE + ".projection";
+	private static final String OPERATION_EXECUTE_PROJECTION_DELTA_IN_PARALLEL = ChangeExecutor.class.getName() + ".executeProjectionDeltaInParallel";
 	private static final String OPERATION_LINK_ACCOUNT = ChangeExecutor.class.getName() + ".linkShadow";
 	private static final String OPERATION_UNLINK_ACCOUNT = ChangeExecutor.class.getName() + ".unlinkShadow";
 	private static final String OPERATION_UPDATE_SITUATION_ACCOUNT = ChangeExecutor.class.getName()
@@ -134,6 +137,9 @@ public class ChangeExecutor {
 	@Autowired(required = true)
 	private ModelObjectResolver objectResolver;
 
+	@Autowired(required = true)
+	private ParallelProjectionExecutor parallelProjectionExecutor;
+
 	private PrismObjectDefinition<UserType> userDefinition = null;
 	private PrismObjectDefinition<ShadowType> shadowDefinition = null;
 
@@ -217,6 +223,9 @@ public class ChangeExecutor {
 
 		boolean restartRequested = false;
 
+		Map<LensProjectionContext, ParallelProjectionExecutor.Outcome<Void>> executedInParallel =
+				executeProjectionDeltasInParallel(syncContext, task, result);
+
 		for (LensProjectionContext accCtx : syncContext.getProjectionContexts()) {
 			if (accCtx.getWave() != syncContext.getExecutionWave()) {
 				continue;
@@ -240,71 +249,83 @@ public class ChangeExecutor {
 			}
 			try {
 
-				syncContext.checkAbortRequested();
-
-				syncContext.reportProgress(new ProgressInformation(RESOURCE_OBJECT_OPERATION,
-						accCtx.getResourceShadowDiscriminator(), ENTERING));
+				// for contexts executed in parallel, this was done before the execution
+				ParallelProjectionExecutor.Outcome<Void> parallelOutcome = executedInParallel.remove(accCtx);
+				if (parallelOutcome == null || parallelOutcome.isSkipped()) {
+					syncContext.checkAbortRequested();
+				}
+				if (parallelOutcome == null) {
+					syncContext.reportProgress(new ProgressInformation(RESOURCE_OBJECT_OPERATION,
+							accCtx.getResourceShadowDiscriminator(), ENTERING));
+				}
 
 				executeReconciliationScript(accCtx, syncContext, BeforeAfterType.BEFORE, task, subResult);
 
-				ObjectDelta<ShadowType> accDelta = accCtx.getExecutableDelta();
+				if (parallelOutcome != null && !parallelOutcome.isSkipped()) {
+					// the delta was already executed, see executeProjectionDeltasInParallel
+					subResult.addSubresult(parallelOutcome.getResult());
+					throwProjectionExecutionException(parallelOutcome.getException());
+				} else {
 
-				if (shouldBeDeleted(accDelta, accCtx)) {
-					accDelta = ObjectDelta.createDeleteDelta(accCtx.getObjectTypeClass(), accCtx.getOid(),
-							prismContext);
-				}
+					ObjectDelta<ShadowType> accDelta = accCtx.getExecutableDelta();
 
-				if (accCtx.getSynchronizationPolicyDecision() == SynchronizationPolicyDecision.BROKEN) {
-					if (syncContext.getFocusContext() != null
-							&& syncContext.getFocusContext().getDelta() != null
-							&& syncContext.getFocusContext().getDelta().isDelete()
-							&& syncContext.getOptions() != null
-							&& ModelExecuteOptions.isForce(syncContext.getOptions())) {
-						if (accDelta == null) {
-							accDelta = ObjectDelta.createDeleteDelta(accCtx.getObjectTypeClass(),
-									accCtx.getOid(), prismContext);
-						}
+					if (shouldBeDeleted(accDelta, accCtx)) {
+						accDelta = ObjectDelta.createDeleteDelta(accCtx.getObjectTypeClass(), accCtx.getOid(),
+								prismContext);
 					}
-					if (accDelta != null && accDelta.isDelete()) {
 
-						executeDelta(accDelta, accCtx, syncContext, null, accCtx.getResource(), task,
-								subResult);
+					if (accCtx.getSynchronizationPolicyDecision() == SynchronizationPolicyDecision.BROKEN) {
+						if (syncContext.getFocusContext() != null
+								&& syncContext.getFocusContext().getDelta() != null
+								&& syncContext.getFocusContext().getDelta().isDelete()
+								&& syncContext.getOptions() != null
+								&& ModelExecuteOptions.isForce(syncContext.getOptions())) {
+							if (accDelta == null) {
+								accDelta = ObjectDelta.createDeleteDelta(accCtx.getObjectTypeClass(),
+										accCtx.getOid(), prismContext);
+							}
+						}
+						if (accDelta != null && accDelta.isDelete()) {
 
-					}
-				} else {
+							executeDelta(accDelta, accCtx, syncContext, null, accCtx.getResource(), task,
+									subResult);
 
-					if (accDelta == null || accDelta.isEmpty()) {
-						if (LOGGER.isTraceEnabled()) {
-							LOGGER.trace("No change for " + accCtx.getResourceShadowDiscriminator());
-						}
-						if (focusContext != null) {
-							updateLinks(focusContext, accCtx, task, subResult);
 						}
+					} else {
 
-						// Make sure post-reconcile delta is always executed,
-						// even if there is no change
-						executeReconciliationScript(accCtx, syncContext, BeforeAfterType.AFTER, task,
-								subResult);
+						if (accDelta == null || accDelta.isEmpty()) {
+							if (LOGGER.isTraceEnabled()) {
+								LOGGER.trace("No change for " + accCtx.getResourceShadowDiscriminator());
+							}
+							if (focusContext != null) {
+								updateLinks(focusContext, accCtx, task, subResult);
+							}
 
-						subResult.computeStatus();
-						subResult.recordNotApplicableIfUnknown();
-						continue;
+							// Make sure post-reconcile delta is always executed,
+							// even if there is no change
+							executeReconciliationScript(accCtx, syncContext, BeforeAfterType.AFTER, task,
+									subResult);
 
-					} else if (accDelta.isDelete() && accCtx.getResourceShadowDiscriminator() != null
-							&& accCtx.getResourceShadowDiscriminator().getOrder() > 0) {
-						// HACK ... for higher-order context check if this was
-						// already deleted
-						LensProjectionContext lowerOrderContext = LensUtil.findLowerOrderContext(syncContext,
-								accCtx);
-						if (lowerOrderContext != null && lowerOrderContext.isDelete()) {
-							// We assume that this was already executed
-							subResult.setStatus(OperationResultStatus.NOT_APPLICABLE);
+							subResult.computeStatus();
+							subResult.recordNotApplicableIfUnknown();
 							continue;
+
+						} else if (accDelta.isDelete() && accCtx.getResourceShadowDiscriminator() != null
+								&& accCtx.getResourceShadowDiscriminator().getOrder() > 0) {
+							// HACK ... for higher-order context check if this was
+							// already deleted
+							LensProjectionContext lowerOrderContext = LensUtil.findLowerOrderContext(syncContext,
+									accCtx);
+							if (lowerOrderContext != null && lowerOrderContext.isDelete()) {
+								// We assume that this was already executed
+								subResult.setStatus(OperationResultStatus.NOT_APPLICABLE);
+								continue;
+							}
 						}
-					}
 
-					executeDelta(accDelta, accCtx, syncContext, null, accCtx.getResource(), task, subResult);
+						executeDelta(accDelta, accCtx, syncContext, null, accCtx.getResource(), task, subResult);
 
+					}
 				}
 
 				if (focusContext != null) {
@@ -376,12 +397,132 @@ public class ChangeExecutor {
 			}
 		}
 
+		// projections executed in parallel but not processed above because of the restart
+		for (Map.Entry<LensProjectionContext, ParallelProjectionExecutor.Outcome<Void>> entry : executedInParallel.entrySet()) {
+			if (entry.getValue().isSkipped()) {
+				continue;
+			}
+			result.addSubresult(entry.getValue().getResult());
+			syncContext.reportProgress(new ProgressInformation(RESOURCE_OBJECT_OPERATION,
+					entry.getKey().getResourceShadowDiscriminator(), entry.getValue().getResult()));
+		}
+
 		// Result computation here needs to be slightly different
 		result.computeStatusComposite();
 		return restartRequested;
 
 	}
 
+	/**
+	 * If configured, executes deltas of independent projections of the current wave concurrently. The rest of
+	 * the processing (results, exceptions, links) is done in executeChanges, sequentially and in the usual order.
+	 *
+	 * The jobs do not modify the context: OIDs and executed deltas are applied to it here, after the jobs finish.
+	 * After an ObjectAlreadyExistsException (that causes the wave to be restarted) no more jobs are started;
+	 * projections that were skipped are executed in executeChanges as usual.
+	 */
+	private <O extends ObjectType> Map<LensProjectionContext, ParallelProjectionExecutor.Outcome<Void>> executeProjectionDeltasInParallel(
+			final LensContext<O> syncContext, Task task, OperationResult result) throws SchemaException {
+		Map<LensProjectionContext, ParallelProjectionExecutor.Outcome<Void>> executed = new IdentityHashMap<>();
+		int threads = parallelProjectionExecutor.getThreads(result);
+		if (threads == 0) {
+			return executed;
+		}
+		List<LensProjectionContext> contexts = new ArrayList<>();
+		List<DeltaExecution<ShadowType>> executions = new ArrayList<>();
+		List<ParallelProjectionExecutor.Job<Void>> jobs = new ArrayList<>();
+		for (final LensProjectionContext accCtx : syncContext.getProjectionContexts()) {
+			if (!canBeExecutedInParallel(syncContext, accCtx)) {
+				continue;
+			}
+			final DeltaExecution<ShadowType> execution = new DeltaExecution<>();
+			contexts.add(accCtx);
+			executions.add(execution);
+			jobs.add((jobTask, jobResult) -> {
+				ModelExpressionThreadLocalHolder.pushLensContext(syncContext);
+				try {
+					ObjectDelta<ShadowType> accDelta = accCtx.getExecutableDelta();
+					if (shouldBeDeleted(accDelta, accCtx)) {
+						accDelta = ObjectDelta.createDeleteDelta(accCtx.getObjectTypeClass(), accCtx.getOid(),
+								prismContext);
+					}
+					executeDelta(accDelta, accCtx, syncContext, null, accCtx.getResource(), jobTask, jobResult,
+							execution);
+					return null;
+				} finally {
+					ModelExpressionThreadLocalHolder.popLensContext();
+					jobResult.computeStatus();
+				}
+			});
+		}
+		if (jobs.size() < 2) {
+			return executed;
+		}
+		for (LensProjectionContext accCtx : contexts) {
+			syncContext.reportProgress(new ProgressInformation(RESOURCE_OBJECT_OPERATION,
+					accCtx.getResourceShadowDiscriminator(), ENTERING));
+		}
+		syncContext.checkAbortRequested();
+		LOGGER.trace("Executing deltas of {} projections using {} threads", jobs.size(), threads);
+		List<ParallelProjectionExecutor.Outcome<Void>> outcomes = parallelProjectionExecutor.runAll(jobs, threads,
+				OPERATION_EXECUTE_PROJECTION_DELTA_IN_PARALLEL, e -> e instanceof ObjectAlreadyExistsException, task);
+		for (int i = 0; i < contexts.size(); i++) {
+			ParallelProjectionExecutor.Outcome<Void> outcome = outcomes.get(i);
+			if (!outcome.isSkipped()) {
+				applyDeltaExecution(executions.get(i), contexts.get(i), syncContext);
+			}
+			executed.put(contexts.get(i), outcome);
+		}
+		return executed;
+	}
+
+	// must correspond to the conditions in executeChanges
+	private <O extends ObjectType> boolean canBeExecutedInParallel(LensContext<O> syncContext, LensProjectionContext accCtx)
+			throws SchemaException {
+		if (accCtx.getWave() != syncContext.getExecutionWave() || !accCtx.isCanProject()) {
+			return false;
+		}
+		if (accCtx.getSynchronizationPolicyDecision() == SynchronizationPolicyDecision.IGNORE
+				|| accCtx.getSynchronizationPolicyDecision() == SynchronizationPolicyDecision.BROKEN) {
+			return false;
+		}
+		// higher-order contexts depend on lower-order ones
+		ResourceShadowDiscriminator discr = accCtx.getResourceShadowDiscriminator();
+		if (discr == null || discr.getOrder() > 0) {
+			return false;
+		}
+		// reconciliation scripts have to be executed before and after the delta
+		if (accCtx.isDoReconciliation() && accCtx.getResource() != null && accCtx.getResource().getScripts() != null) {
+			return false;
+		}
+		ObjectDelta<ShadowType> accDelta = accCtx.getExecutableDelta();
+		return shouldBeDeleted(accDelta, accCtx) || (accDelta != null && !accDelta.isEmpty());
+	}
+
+	private void throwProjectionExecutionException(Exception e) throws ObjectAlreadyExistsException, ObjectNotFoundException,
+			SchemaException, CommunicationException, ConfigurationException, SecurityViolationException,
+			ExpressionEvaluationException {
+		if (e == null) {
+			return;
+		} else if (e instanceof ObjectAlreadyExistsException) {
+			throw (ObjectAlreadyExistsException) e;
+		} else if (e instanceof ObjectNotFoundException) {
+			throw (ObjectNotFoundException) e;
+		} else if (e instanceof SchemaException) {
+			throw (SchemaException) e;
+		} else if (e instanceof CommunicationException) {
+			throw (CommunicationException) e;
+		} else if (e instanceof ConfigurationException) {
+			throw (ConfigurationException) e;
+		} else if (e instanceof SecurityViolationException) {
+			throw (SecurityViolationException) e;
+		} else if (e instanceof ExpressionEvaluationException) {
+			throw (ExpressionEvaluationException) e;
+		} else {
+			throw new SystemException(e.getMessage(), e);
+		}
+	}
+
 	private boolean shouldBeDeleted(ObjectDelta<ShadowType> accDelta, LensProjectionContext accCtx) {
 		return (accDelta == null || accDelta.isEmpty())
 		&& (accCtx.getSynchronizationPolicyDecision() == SynchronizationPolicyDecision.DELETE
@@ -744,6 +885,45 @@ public class ChangeExecutor {
 					throws ObjectAlreadyExistsException, ObjectNotFoundException, SchemaException,
 					CommunicationException, ConfigurationException, SecurityViolationException,
 					ExpressionEvaluationException {
+		DeltaExecution<T> execution = new DeltaExecution<>();
+		try {
+			executeDelta(objectDelta, objectContext, context, options, resource, task, parentResult, execution);
+		} finally {
+			applyDeltaExecution(execution, objectContext, context);
+		}
+	}
+
+	/**
+	 * What is to be recorded in the lens context after a delta execution. It is collected separately,
+	 * because deltas of projections can be executed in pool threads (that must not touch the context).
+	 */
+	private static class DeltaExecution<T extends ObjectType> {
+		private String oid;									// set if the execution succeeded
+		private LensObjectDeltaOperation<T> deltaOperation;	// set if the delta was executed (successfully or not)
+	}
+
+	// called from the clockwork thread only
+	private <T extends ObjectType, F extends ObjectType> void applyDeltaExecution(DeltaExecution<T> execution,
+			LensElementContext<T> objectContext, LensContext<F> context) {
+		if (execution.oid != null) {
+			// To make sure that the OID is set (e.g. after ADD operation)
+			LensUtil.setContextOid(context, objectContext, execution.oid);
+		}
+		if (execution.deltaOperation != null) {
+			objectContext.addToExecutedDeltas(execution.deltaOperation);
+		}
+	}
+
+	/**
+	 * Executes the delta without modifying the lens context; changes to be done in the context are stored
+	 * into the "execution" parameter.
+	 */
+	private <T extends ObjectType, F extends ObjectType> void executeDelta(ObjectDelta<T> objectDelta,
+			LensElementContext<T> objectContext, LensContext<F> context, ModelExecuteOptions options,
+			ResourceType resource, Task task, OperationResult parentResult, DeltaExecution<T> execution)
+					throws ObjectAlreadyExistsException, ObjectNotFoundException, SchemaException,
+					CommunicationException, ConfigurationException, SecurityViolationException,
+					ExpressionEvaluationException {
 
 		if (objectDelta == null) {
 			throw new IllegalArgumentException("Null change");
@@ -792,8 +972,7 @@ public class ChangeExecutor {
 				executeDeletion(objectDelta, context, objectContext, options, resource, task, result);
 			}
 
-			// To make sure that the OID is set (e.g. after ADD operation)
-			LensUtil.setContextOid(context, objectContext, objectDelta.getOid());
+			execution.oid = objectDelta.getOid();
 
 		} finally {
 
@@ -802,9 +981,8 @@ public class ChangeExecutor {
 				if (!objectDelta.hasCompleteDefinition()) {
 					throw new SchemaException("object delta does not have complete definition");
 				}
-				LensObjectDeltaOperation<T> objectDeltaOp = LensUtil.createObjectDeltaOperation(
+				execution.deltaOperation = LensUtil.createObjectDeltaOperation(
 						objectDelta.clone(), result, objectContext, null, resource);
-				objectContext.addToExecutedDeltas(objectDeltaOp);
 			}
 
 			if (LOGGER.isDebugEnabled()) {
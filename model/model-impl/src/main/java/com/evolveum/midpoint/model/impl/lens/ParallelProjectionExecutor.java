@@ -0,0 +1,247 @@
+/*
+ * Copyright (c) 2010-2016 Evolveum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.evolveum.midpoint.model.impl.lens;
+
+import com.evolveum.midpoint.model.common.SystemObjectCache;
+import com.evolveum.midpoint.schema.result.OperationResult;
+import com.evolveum.midpoint.schema.util.SystemConfigurationTypeUtil;
+import com.evolveum.midpoint.security.api.SecurityEnforcer;
+import com.evolveum.midpoint.task.api.Task;
+import com.evolveum.midpoint.util.exception.SchemaException;
+import com.evolveum.midpoint.util.exception.SystemException;
+import com.evolveum.midpoint.util.logging.LoggingUtils;
+import com.evolveum.midpoint.util.logging.Trace;
+import com.evolveum.midpoint.util.logging.TraceManager;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+/**
+ * Executes projection-related jobs (loading of shadows, execution of projection deltas) concurrently,
+ * using a bounded thread pool shared by all clockwork runs. The number of threads is taken from
+ * the system configuration (internals/projectionThreads); if it is not set, nothing is done in parallel.
+ *
+ * Each job gets its own (transient) subtask and operation result, so that they do not interfere with
+ * each other. Outcomes are returned in the order of the jobs, so the callers can process them
+ * deterministically. Jobs must not modify the lens context; they return what is to be applied to it
+ * and the caller applies it in its own thread.
+ *
+ * Code running in a pool thread (e.g. a clockwork run started by discovery) gets 0 from getThreads,
+ * so it processes projections sequentially. This avoids exhausting the pool by jobs waiting for other jobs.
+ *
+ * @author mederly
+ */
+@Component
+public class ParallelProjectionExecutor {
+
+	private static final Trace LOGGER = TraceManager.getTrace(ParallelProjectionExecutor.class);
+
+	private static final long KEEP_ALIVE_TIME = 60000L;
+
+	private static final ThreadLocal<Boolean> IN_POOL_THREAD = new ThreadLocal<>();
+
+	@Autowired(required = true)
+	private SystemObjectCache systemObjectCache;
+
+	@Autowired(required = true)
+	private SecurityEnforcer securityEnforcer;
+
+	// guarded by this
+	private ThreadPoolExecutor executor;
+
+	public interface Job<T> {
+		T run(Task jobTask, OperationResult jobResult) throws Exception;
+	}
+
+	public static class Outcome<T> {
+		private final OperationResult result;
+		private T value;
+		private Exception exception;
+		private boolean skipped;
+
+		Outcome(OperationResult result) {
+			this.result = result;
+		}
+
+		public OperationResult getResult() {
+			return result;
+		}
+
+		public T getValue() {
+			return value;
+		}
+
+		/**
+		 * Exception thrown by the job (if any). Runtime exceptions and errors are not caught here.
+		 */
+		public Exception getException() {
+			return exception;
+		}
+
+		/**
+		 * True if the job was not run at all, because an earlier job met the stop condition.
+		 */
+		public boolean isSkipped() {
+			return skipped;
+		}
+	}
+
+	/**
+	 * Returns the number of threads to be used for projections, or 0 if they should be processed sequentially.
+	 */
+	public int getThreads(OperationResult result) {
+		if (Boolean.TRUE.equals(IN_POOL_THREAD.get())) {
+			return 0;
+		}
+		Integer threads;
+		try {
+			threads = SystemConfigurationTypeUtil.getProjectionThreads(systemObjectCache.getSystemConfiguration(result));
+		} catch (SchemaException e) {
+			LoggingUtils.logUnexpectedException(LOGGER, "Couldn't get system configuration, projections will be processed sequentially", e);
+			return 0;
+		}
+		return threads != null && threads > 1 ? threads : 0;
+	}
+
+	/**
+	 * Runs the jobs and waits for all of them to finish. Runtime exceptions thrown by the jobs are rethrown here
+	 * (after all the jobs finish).
+	 */
+	public <T> List<Outcome<T>> runAll(List<Job<T>> jobs, int threads, String operation, Task task) {
+		return runAll(jobs, threads, operation, null, task);
+	}
+
+	/**
+	 * As above; moreover, if a job ends with an exception that meets the stop condition, no more jobs are submitted.
+	 * At most "threads" jobs are submitted at once, so the remaining ones can be really skipped.
+	 */
+	public <T> List<Outcome<T>> runAll(List<Job<T>> jobs, int threads, String operation,
+			final Predicate<Exception> stopCondition, Task task) {
+		ThreadPoolExecutor pool = getExecutor(threads);
+		final Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+		final Semaphore slots = new Semaphore(threads);
+		final AtomicBoolean stopped = new AtomicBoolean();
+		List<Outcome<T>> outcomes = new ArrayList<>(jobs.size());
+		List<Future<?>> futures = new ArrayList<>(jobs.size());
+		for (final Job<T> job : jobs) {
+			final Outcome<T> outcome = new Outcome<>(new OperationResult(operation));
+			outcomes.add(outcome);
+			try {
+				slots.acquire();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new SystemException("Interrupted while submitting projection jobs", e);
+			}
+			if (stopped.get()) {
+				outcome.skipped = true;
+				slots.release();
+				continue;
+			}
+			final Task jobTask = task.createSubtask();
+			futures.add(pool.submit(() -> {
+				IN_POOL_THREAD.set(true);
+				securityEnforcer.setupPreAuthenticatedSecurityContext(authentication);
+				try {
+					outcome.value = job.run(jobTask, outcome.result);
+				} catch (RuntimeException e) {
+					throw e;
+				} catch (Exception e) {
+					outcome.exception = e;
+					if (stopCondition != null && stopCondition.test(e)) {
+						stopped.set(true);
+					}
+				} finally {
+					SecurityContextHolder.clearContext();
+					IN_POOL_THREAD.remove();
+					slots.release();
+				}
+			}));
+		}
+		RuntimeException runtimeException = null;
+		for (Future<?> future : futures) {
+			try {
+				future.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new SystemException("Interrupted while waiting for projection jobs", e);
+			} catch (ExecutionException e) {
+				if (runtimeException == null) {
+					runtimeException = e.getCause() instanceof RuntimeException ?
+							(RuntimeException) e.getCause() : new SystemException(e.getCause().getMessage(), e.getCause());
+				}
+			}
+		}
+		if (runtimeException != null) {
+			throw runtimeException;
+		}
+		return outcomes;
+	}
+
+	private synchronized ThreadPoolExecutor getExecutor(int threads) {
+		if (executor == null) {
+			executor = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE_TIME, TimeUnit.MILLISECONDS,
+					new LinkedBlockingQueue<Runnable>(), new ProjectionThreadFactory());
+			executor.allowCoreThreadTimeOut(true);
+			LOGGER.info("Projection executor started with {} threads", threads);
+		} else if (executor.getMaximumPoolSize() != threads) {
+			LOGGER.info("Changing number of projection threads from {} to {}", executor.getMaximumPoolSize(), threads);
+			if (threads > executor.getMaximumPoolSize()) {
+				executor.setMaximumPoolSize(threads);
+				executor.setCorePoolSize(threads);
+			} else {
+				executor.setCorePoolSize(threads);
+				executor.setMaximumPoolSize(threads);
+			}
+		}
+		return executor;
+	}
+
+	@PreDestroy
+	public synchronized void shutdown() {
+		if (executor != null) {
+			executor.shutdownNow();
+			executor = null;
+		}
+	}
+
+	private static class ProjectionThreadFactory implements ThreadFactory {
+
+		private final AtomicInteger counter = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "ProjectionExecutor-" + counter.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
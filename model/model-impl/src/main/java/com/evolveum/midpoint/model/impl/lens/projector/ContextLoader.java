@@ -17,9 +17,12 @@ package com.evolveum.midpoint.model.impl.lens.projector;
 
 import static com.evolveum.midpoint.schema.internals.InternalsConfig.consistencyChecks;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 import com.evolveum.midpoint.schema.constants.SchemaConstants;
 import com.evolveum.midpoint.schema.internals.InternalsConfig;
@@ -42,6 +45,7 @@ import com.evolveum.midpoint.model.impl.lens.LensFocusContext;
 import com.evolveum.midpoint.model.impl.lens.LensObjectDeltaOperation;
 import com.evolveum.midpoint.model.impl.lens.LensProjectionContext;
 import com.evolveum.midpoint.model.impl.lens.LensUtil;
+import com.evolveum.midpoint.model.impl.lens.ParallelProjectionExecutor;
 import com.evolveum.midpoint.model.impl.lens.SynchronizationIntent;
 import com.evolveum.midpoint.prism.PrismContext;
 import com.evolveum.midpoint.prism.PrismObject;
@@ -98,8 +102,13 @@ public class ContextLoader {
 	
 	@Autowired(required = true)
 	private PrismContext prismContext;
+
+	@Autowired(required = true)
+	private ParallelProjectionExecutor parallelProjectionExecutor;
 	
 	private static final Trace LOGGER = TraceManager.getTrace(ContextLoader.class);
+
+	private static final String OPERATION_PREFETCH_PROJECTION = ContextLoader.class.getName() + ".prefetchProjection";
 	
 	public <F extends ObjectType> void load(LensContext<F> context, String activityDescription, 
 			Task task, OperationResult result) 
@@ -157,10 +166,13 @@ public class ContextLoader {
     	removeRottenContexts(context);
     	    	
     	if (consistencyChecks) context.checkConsistence();
+
+		Map<LensProjectionContext, ParallelProjectionExecutor.Outcome<PrismObject<ShadowType>>> prefetched =
+				prefetchProjectionObjects(context, task, result);
 		
     	for (LensProjectionContext projectionContext: context.getProjectionContexts()) {
             context.checkAbortRequested();
-    		finishLoadOfProjectionContext(context, projectionContext, task, result);
+    		finishLoadOfProjectionContext(context, projectionContext, prefetched.get(projectionContext), task, result);
 		}
         
         if (consistencyChecks) context.checkConsistence();
@@ -223,7 +235,99 @@ public class ContextLoader {
 	public <F extends ObjectType> void makeSureProjectionIsLoaded(LensContext<F> context,
 																  LensProjectionContext projectionContext, Task task, OperationResult result) throws ObjectNotFoundException, CommunicationException, SchemaException, ConfigurationException, SecurityViolationException {
 		preprocessProjectionContext(context, projectionContext, task, result);
-		finishLoadOfProjectionContext(context, projectionContext, task, result);
+		finishLoadOfProjectionContext(context, projectionContext, null, task, result);
+	}
+
+	/**
+	 * If configured, fetches the shadows that finishLoadOfProjectionContext would fetch from the resources
+	 * concurrently. The contexts themselves are updated later, sequentially and in their usual order.
+	 */
+	private <F extends ObjectType> Map<LensProjectionContext, ParallelProjectionExecutor.Outcome<PrismObject<ShadowType>>> prefetchProjectionObjects(
+			LensContext<F> context, Task task, OperationResult result) {
+		Map<LensProjectionContext, ParallelProjectionExecutor.Outcome<PrismObject<ShadowType>>> prefetched = new IdentityHashMap<>();
+		int threads = parallelProjectionExecutor.getThreads(result);
+		if (threads == 0) {
+			return prefetched;
+		}
+		List<LensProjectionContext> contextsToFetch = new ArrayList<>();
+		List<ParallelProjectionExecutor.Job<PrismObject<ShadowType>>> jobs = new ArrayList<>();
+		for (final LensProjectionContext projContext : context.getProjectionContexts()) {
+			if (!isFetchFromResourceNeeded(context, projContext)) {
+				continue;
+			}
+			final String oid = projContext.getOid();
+			final Collection<SelectorOptions<GetOperationOptions>> options = createProjectionLoadOptions(context, projContext);
+			contextsToFetch.add(projContext);
+			jobs.add((jobTask, jobResult) -> provisioningService.getObject(ShadowType.class, oid, options, jobTask, jobResult));
+		}
+		if (jobs.size() < 2) {
+			return prefetched;
+		}
+		LOGGER.trace("Prefetching {} projection objects using {} threads", jobs.size(), threads);
+		List<ParallelProjectionExecutor.Outcome<PrismObject<ShadowType>>> outcomes =
+				parallelProjectionExecutor.runAll(jobs, threads, OPERATION_PREFETCH_PROJECTION, task);
+		for (int i = 0; i < contextsToFetch.size(); i++) {
+			prefetched.put(contextsToFetch.get(i), outcomes.get(i));
+		}
+		return prefetched;
+	}
+
+	// must correspond to the conditions in finishLoadOfProjectionContext
+	private <F extends ObjectType> boolean isFetchFromResourceNeeded(LensContext<F> context, LensProjectionContext projContext) {
+		if (projContext.getSynchronizationPolicyDecision() == SynchronizationPolicyDecision.BROKEN) {
+			return false;
+		}
+		applyVolatility(projContext);
+		if (!projContext.isDoReconciliation() || projContext.isAdd() || projContext.getOid() == null) {
+			return false;
+		}
+		return projContext.getObjectCurrent() == null || !projContext.isFullShadow() || needToReload(context, projContext);
+	}
+
+	// MID-2436 (volatile objects) - as a quick but effective hack, we set reconciliation:=TRUE for volatile accounts
+	private void applyVolatility(LensProjectionContext projContext) {
+		ResourceObjectTypeDefinitionType objectDefinition = projContext.getResourceObjectTypeDefinitionType();
+		if (objectDefinition != null && objectDefinition.getVolatility() == ResourceObjectVolatilityType.UNPREDICTABLE && !projContext.isDoReconciliation()) {
+			LOGGER.trace("Resource object volatility is UNPREDICTABLE => setting doReconciliation to TRUE for {}", projContext.getResourceShadowDiscriminator());
+			projContext.setDoReconciliation(true);
+		}
+	}
+
+	private <F extends ObjectType> Collection<SelectorOptions<GetOperationOptions>> createProjectionLoadOptions(
+			LensContext<F> context, LensProjectionContext projContext) {
+		GetOperationOptions rootOptions = new GetOperationOptions();
+		if (projContext.isDoReconciliation()) {
+			if (SchemaConstants.CHANGE_CHANNEL_DISCOVERY_URI.equals(context.getChannel())) {
+				// Avoid discovery loops
+				rootOptions.setDoNotDiscovery(true);
+			}
+		} else { 
+			rootOptions.setNoFetch(true);
+		}
+		rootOptions.setAllowNotFound(true);
+		return SelectorOptions.createCollection(rootOptions);
+	}
+
+	private PrismObject<ShadowType> getPrefetchedObject(ParallelProjectionExecutor.Outcome<PrismObject<ShadowType>> prefetched,
+			OperationResult result) throws ObjectNotFoundException, CommunicationException, SchemaException,
+			ConfigurationException, SecurityViolationException {
+		result.addSubresult(prefetched.getResult());
+		Exception e = prefetched.getException();
+		if (e == null) {
+			return prefetched.getValue();
+		} else if (e instanceof ObjectNotFoundException) {
+			throw (ObjectNotFoundException) e;
+		} else if (e instanceof CommunicationException) {
+			throw (CommunicationException) e;
+		} else if (e instanceof SchemaException) {
+			throw (SchemaException) e;
+		} else if (e instanceof ConfigurationException) {
+			throw (ConfigurationException) e;
+		} else if (e instanceof SecurityViolationException) {
+			throw (SecurityViolationException) e;
+		} else {
+			throw new SystemException(e.getMessage(), e);
+		}
 	}
 	
 	/**
@@ -952,7 +1056,8 @@ public class ContextLoader {
      * variable if it's not set (from provisioning), load resource (if not set already), etc.
 	 */
 	private <F extends ObjectType> void finishLoadOfProjectionContext(LensContext<F> context, 
-			LensProjectionContext projContext, Task task, OperationResult result)
+			LensProjectionContext projContext, ParallelProjectionExecutor.Outcome<PrismObject<ShadowType>> prefetched,
+			Task task, OperationResult result)
 			throws ObjectNotFoundException, CommunicationException, SchemaException, ConfigurationException,
 			SecurityViolationException {
 		
@@ -962,12 +1067,7 @@ public class ContextLoader {
 			return;
 		}
 
-		// MID-2436 (volatile objects) - as a quick but effective hack, we set reconciliation:=TRUE for volatile accounts
-		ResourceObjectTypeDefinitionType objectDefinition = projContext.getResourceObjectTypeDefinitionType();
-		if (objectDefinition != null && objectDefinition.getVolatility() == ResourceObjectVolatilityType.UNPREDICTABLE && !projContext.isDoReconciliation()) {
-			LOGGER.trace("Resource object volatility is UNPREDICTABLE => setting doReconciliation to TRUE for {}", projContext.getResourceShadowDiscriminator());
-			projContext.setDoReconciliation(true);
-		}
+		applyVolatility(projContext);
 
 		// Remember OID before the object could be wiped
 		String projectionObjectOid = projContext.getOid();
@@ -994,24 +1094,20 @@ public class ContextLoader {
 					}
 				} else {
 					projContext.setExists(true);
-					GetOperationOptions rootOptions = new GetOperationOptions();
-					if (projContext.isDoReconciliation()) {
-						if (SchemaConstants.CHANGE_CHANNEL_DISCOVERY_URI.equals(context.getChannel())) {
-							// Avoid discovery loops
-							rootOptions.setDoNotDiscovery(true);
-						}
-					} else { 
-						rootOptions.setNoFetch(true);
-					}
-					rootOptions.setAllowNotFound(true);
-					Collection<SelectorOptions<GetOperationOptions>> options = SelectorOptions.createCollection(rootOptions);
+					Collection<SelectorOptions<GetOperationOptions>> options = createProjectionLoadOptions(context, projContext);
+					GetOperationOptions rootOptions = SelectorOptions.findRootOptions(options);
 					if (LOGGER.isTraceEnabled()) {
 						LOGGER.trace("Loading shadow {} for projection {}, options={}", projectionObjectOid, projectionHumanReadableName, options);
 					}
 					
 					try {
-						PrismObject<ShadowType> objectOld = provisioningService.getObject(
-								projContext.getObjectTypeClass(), projectionObjectOid, options, task, result);
+						PrismObject<ShadowType> objectOld;
+						if (prefetched != null) {
+							objectOld = getPrefetchedObject(prefetched, result);
+						} else {
+							objectOld = provisioningService.getObject(
+									projContext.getObjectTypeClass(), projectionObjectOid, options, task, result);
+						}
 						if (LOGGER.isTraceEnabled()) {
 							if (!GetOperationOptions.isNoFetch(rootOptions) && !GetOperationOptions.isRaw(rootOptions)) {
 								if (LOGGER.isTraceEnabled()) {
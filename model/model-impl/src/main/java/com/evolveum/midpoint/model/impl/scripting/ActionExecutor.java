@@ -35,4 +35,12 @@ public interface ActionExecutor {
      * @param parentResult
      */
     Data execute(ActionExpressionType command, Data input, ExecutionContext context, OperationResult parentResult) throws ScriptExecutionException;
+
+    /**
+     * Whether the action processes input items independently of each other, so that it can be executed
+     * for each object of a streamed search separately (with the same overall effect).
+     */
+    default boolean canBeStreamed(ActionExpressionType command) {
+        return false;
+    }
 }
\ No newline at end of file
@@ -53,6 +53,7 @@ import javax.xml.bind.JAXBElement;
 import javax.xml.namespace.QName;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -240,12 +241,45 @@ public class ScriptingExpressionEvaluator {
     }
 
     private Data executePipeline(ExpressionPipelineType pipeline, Data data, ExecutionContext context, OperationResult result) throws ScriptExecutionException {
-        for (ScriptingExpressionType expressionType : pipeline.getExpression()) {
-            data = evaluateExpression(expressionType, data, context, result);
+        return executePipelineStages(pipeline.getExpression(), data, context, result);
+    }
+
+    /**
+     * Executes given pipeline stages. If a search stage explicitly asks for streaming (see SearchEvaluator),
+     * the objects found are passed one by one through the directly following stages that can process items
+     * independently, so they are not all held in memory (e.g. search + recompute over all users). Stages that
+     * work with the input as a whole (and everything after them) get the collected output as usual.
+     */
+    public Data executePipelineStages(List<ScriptingExpressionType> stages, Data data, ExecutionContext context, OperationResult result) throws ScriptExecutionException {
+        int i = 0;
+        while (i < stages.size()) {
+            ScriptingExpressionType stage = stages.get(i);
+            int streamedEnd = i + 1;
+            if (stage instanceof SearchExpressionType && i < stages.size() - 1
+                    && searchEvaluator.isStreamingRequested((SearchExpressionType) stage, data, context, result)) {
+                while (streamedEnd < stages.size() && canBeStreamed(stages.get(streamedEnd))) {
+                    streamedEnd++;
+                }
+            }
+            if (streamedEnd > i + 1) {
+                LOGGER.trace("Streaming results of search stage #{} through {} stage(s)", i, streamedEnd - i - 1);
+                data = searchEvaluator.evaluate((SearchExpressionType) stage, stages.subList(i + 1, streamedEnd), data, context, result);
+            } else {
+                data = evaluateExpression(stage, data, context, result);
+            }
+            i = streamedEnd;
         }
         return data;
     }
 
+    private boolean canBeStreamed(ScriptingExpressionType stage) {
+        if (!(stage instanceof ActionExpressionType)) {
+            return false;
+        }
+        ActionExecutor executor = actionExecutors.get(((ActionExpressionType) stage).getType());
+        return executor != null && executor.canBeStreamed((ActionExpressionType) stage);
+    }
+
     private Data executeSequence(ExpressionSequenceType sequence, Data input, ExecutionContext context, OperationResult result) throws ScriptExecutionException {
         Data lastOutput = null;
         for (ScriptingExpressionType expressionType : sequence.getExpression()) {
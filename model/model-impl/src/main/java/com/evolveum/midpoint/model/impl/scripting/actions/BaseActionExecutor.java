@@ -61,6 +61,14 @@ public abstract class BaseActionExecutor implements ActionExecutor {
 	@Autowired
 	protected SecurityEnforcer securityEnforcer;
 
+    /**
+     * Actions usually iterate over input items and process each of them on its own.
+     */
+    @Override
+    public boolean canBeStreamed(ActionExpressionType expression) {
+        return true;
+    }
+
     // todo move to some helper?
     protected boolean getParamRaw(ActionExpressionType expression, Data input, ExecutionContext context, OperationResult result) throws ScriptExecutionException {
         return expressionHelper.getArgumentAsBoolean(expression.getParameter(), PARAM_RAW, input, context, false, PARAM_RAW, result);
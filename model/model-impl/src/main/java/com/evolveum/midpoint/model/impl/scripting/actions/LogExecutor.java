@@ -49,6 +49,12 @@ public class LogExecutor extends BaseActionExecutor {
         scriptingExpressionEvaluator.registerActionExecutor(NAME, this);
     }
 
+    // the whole input is logged at once
+    @Override
+    public boolean canBeStreamed(ActionExpressionType expression) {
+        return false;
+    }
+
     @Override
     public Data execute(ActionExpressionType expression, Data input, ExecutionContext context, OperationResult parentResult) throws ScriptExecutionException {
 
@@ -32,6 +32,7 @@ import com.evolveum.midpoint.xml.ns._public.common.common_3.EventHandlerType;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.EventOperationType;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.EventStatusType;
 import com.evolveum.midpoint.xml.ns._public.model.scripting_3.ActionExpressionType;
+import com.evolveum.midpoint.xml.ns._public.model.scripting_3.ActionParameterValueType;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
@@ -63,6 +64,17 @@ public class NotifyExecutor extends BaseActionExecutor {
         scriptingExpressionEvaluator.registerActionExecutor(NAME, this);
     }
 
+    // forWholeInput produces a single event for all input items, so the input must not be split
+    @Override
+    public boolean canBeStreamed(ActionExpressionType expression) {
+        for (ActionParameterValueType parameter : expression.getParameter()) {
+            if (PARAM_FOR_WHOLE_INPUT.equals(parameter.getName())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     @Override
     public Data execute(ActionExpressionType expression, Data input, ExecutionContext context, OperationResult result) throws ScriptExecutionException {
 
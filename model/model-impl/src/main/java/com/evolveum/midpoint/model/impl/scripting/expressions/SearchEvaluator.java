@@ -29,12 +29,12 @@ import com.evolveum.midpoint.prism.query.QueryJaxbConvertor;
 import com.evolveum.midpoint.schema.ResultHandler;
 import com.evolveum.midpoint.schema.constants.ObjectTypes;
 import com.evolveum.midpoint.schema.result.OperationResult;
+import com.evolveum.midpoint.util.Holder;
 import com.evolveum.midpoint.util.exception.CommunicationException;
 import com.evolveum.midpoint.util.exception.ConfigurationException;
 import com.evolveum.midpoint.util.exception.ObjectNotFoundException;
 import com.evolveum.midpoint.util.exception.SchemaException;
 import com.evolveum.midpoint.util.exception.SecurityViolationException;
-import com.evolveum.midpoint.util.exception.SystemException;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.ObjectType;
 import com.evolveum.midpoint.xml.ns._public.model.scripting_3.ScriptingExpressionType;
 import com.evolveum.midpoint.xml.ns._public.model.scripting_3.SearchExpressionType;
@@ -45,6 +45,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import javax.xml.bind.JAXBElement;
+import java.util.List;
 
 /**
  * @author mederly
@@ -59,8 +60,28 @@ public class SearchEvaluator extends BaseExpressionEvaluator {
     private OperationsHelper operationsHelper;
 
     private static final String PARAM_NO_FETCH = "noFetch";
+    private static final String PARAM_STREAM = "stream";
 
     public <T extends ObjectType> Data evaluate(final SearchExpressionType searchExpression, Data input, final ExecutionContext context, final OperationResult result) throws ScriptExecutionException {
+        return evaluate(searchExpression, null, input, context, result);
+    }
+
+    /**
+     * Whether objects found should be passed through the following pipeline stages one by one. This has to be
+     * requested explicitly by the "stream" parameter, because the stages then see one object at a time.
+     */
+    public boolean isStreamingRequested(SearchExpressionType searchExpression, Data input, ExecutionContext context, OperationResult result) throws ScriptExecutionException {
+        return expressionHelper.getArgumentAsBoolean(searchExpression.getParameter(), PARAM_STREAM, input, context, false, "search", result);
+    }
+
+    /**
+     * Searches for objects and passes each of them through the child expression (if any) and then through
+     * the downstream pipeline stages (if any). Only outputs of the last step are collected; objects themselves
+     * are not kept in memory unless they are the output. The search variable is bound only while the child
+     * expression runs. If nothing is found, downstream stages are executed once with empty input.
+     */
+    public <T extends ObjectType> Data evaluate(final SearchExpressionType searchExpression, final List<ScriptingExpressionType> downstreamStages,
+            Data input, final ExecutionContext context, final OperationResult result) throws ScriptExecutionException {
         Validate.notNull(searchExpression.getType());
 
         boolean noFetch = expressionHelper.getArgumentAsBoolean(searchExpression.getParameter(), PARAM_NO_FETCH, input, context, false, "search", result);
@@ -92,25 +113,39 @@ public class SearchEvaluator extends BaseExpressionEvaluator {
             oldVariableValue = context.getVariable(variableName);
         }
 
+        final Data finalOldVariableValue = oldVariableValue;
         final Data outputData = Data.createEmpty();
 
         final MutableBoolean atLeastOne = new MutableBoolean(false);
+        // the handler cannot throw checked exceptions; so it stops the search and the exception is rethrown below
+        final Holder<ScriptExecutionException> exceptionHolder = new Holder<>();
 
         ResultHandler<T> handler = new ResultHandler<T>() {
             @Override
             public boolean handle(PrismObject<T> object, OperationResult parentResult) {
                 atLeastOne.setValue(true);
-                if (searchExpression.getScriptingExpression() != null) {
+                if (searchExpression.getScriptingExpression() != null || downstreamStages != null) {
                     if (variableName != null) {
                         context.setVariable(variableName, object);
                     }
                     JAXBElement<?> childExpression = searchExpression.getScriptingExpression();
                     try {
-                        outputData.addAllFrom(scriptingExpressionEvaluator.evaluateExpression((ScriptingExpressionType) childExpression.getValue(), Data.create(object), context, result));
+                        Data objectOutput = Data.create(object);
+                        if (childExpression != null) {
+                            objectOutput = scriptingExpressionEvaluator.evaluateExpression((ScriptingExpressionType) childExpression.getValue(), objectOutput, context, result);
+                        }
+                        if (downstreamStages != null) {
+                            if (variableName != null) {
+                                context.setVariable(variableName, finalOldVariableValue);
+                            }
+                            objectOutput = scriptingExpressionEvaluator.executePipelineStages(downstreamStages, objectOutput, context, result);
+                        }
+                        outputData.addAllFrom(objectOutput);
                         result.setSummarizeSuccesses(true);
                         result.summarize();
                     } catch (ScriptExecutionException e) {
-                        throw new SystemException(e);           // todo think about this
+                        exceptionHolder.setValue(e);
+                        return false;
                     }
                 } else {
                     outputData.addItem(object);
@@ -124,6 +159,12 @@ public class SearchEvaluator extends BaseExpressionEvaluator {
         } catch (SchemaException | ObjectNotFoundException | SecurityViolationException | CommunicationException | ConfigurationException e) {
             throw new ScriptExecutionException("Couldn't execute searchObjects operation: " + e.getMessage(), e);
         }
+        if (!exceptionHolder.isEmpty()) {
+            if (variableName != null) {
+                context.setVariable(variableName, oldVariableValue);
+            }
+            throw exceptionHolder.getValue();
+        }
 
         if (atLeastOne.isFalse()) {
             String matching;
@@ -133,6 +174,9 @@ public class SearchEvaluator extends BaseExpressionEvaluator {
                 matching = "";
             }
             context.println("Warning: no " + matching + searchExpression.getType().getLocalPart() + " object found");          // temporary hack, this will be configurable
+            if (downstreamStages != null) {
+                outputData.addAllFrom(scriptingExpressionEvaluator.executePipelineStages(downstreamStages, Data.createEmpty(), context, result));
+            }
         }
 
         if (variableName != null) {
@@ -461,6 +461,7 @@ public class ReconciliationTaskHandler implements TaskHandler {
 
 			OperationResult searchResult = new OperationResult(OperationConstants.RECONCILIATION+".searchIterative");
 
+			handler.configureOperationResult(searchResult);
 			handler.createWorkerThreads(coordinatorTask, searchResult);
 			provisioningService.searchObjectsIterative(ShadowType.class, query, null, handler, coordinatorTask, searchResult);               // note that progress is incremented within the handler, as it extends AbstractSearchIterativeResultHandler
 			handler.completeProcessing(coordinatorTask, searchResult);
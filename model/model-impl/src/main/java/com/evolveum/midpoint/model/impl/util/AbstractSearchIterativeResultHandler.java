@@ -217,6 +217,10 @@ public abstract class AbstractSearchIterativeResultHandler<O extends ObjectType>
 		allItemsSubmitted = true;
 	}
 
+	public boolean isStopRequested() {
+		return stopRequestedByAnyWorker.get();
+	}
+
 	public Float getAverageTime() {
 		long count = getProgress();
 		if (count > 0) {
@@ -342,9 +346,10 @@ public abstract class AbstractSearchIterativeResultHandler<O extends ObjectType>
 					workerTask.recordIterativeOperationEnd(objectName, objectDisplayName,
 							null /* TODO */, object.getOid(), startTime, null);
 				}
-				if (result.isSuccess()) {
+				if (result.isSuccess() && !result.isLightweight()) {
 					// FIXME: hack. Hardcoded ugly summarization of successes. something like
 					// AbstractSummarizingResultHandler [lazyman]
+					// (In lightweight mode, successful results are aggregated by the parent result; except for samples.)
 					result.getSubresults().clear();
 				}
 			}
@@ -488,6 +493,22 @@ public abstract class AbstractSearchIterativeResultHandler<O extends ObjectType>
 		}
 	}
 
+	/**
+	 * Switches the (parent) operation result into lightweight mode, if requested in the coordinator task extension.
+	 * Should be called before worker threads are created, as worker-specific results take this setting from it.
+	 */
+	public void configureOperationResult(OperationResult opResult) {
+		PrismProperty<Boolean> lightweightProperty = coordinatorTask.getExtensionProperty(SchemaConstants.MODEL_EXTENSION_LIGHTWEIGHT_OPERATION_RESULT);
+		if (lightweightProperty == null || !Boolean.TRUE.equals(lightweightProperty.getRealValue())) {
+			return;
+		}
+		opResult.setLightweight(true);
+		PrismProperty<Integer> sampleIntervalProperty = coordinatorTask.getExtensionProperty(SchemaConstants.MODEL_EXTENSION_OPERATION_RESULT_SAMPLE_INTERVAL);
+		if (sampleIntervalProperty != null && sampleIntervalProperty.getRealValue() != null) {
+			opResult.setLightweightSampleInterval(sampleIntervalProperty.getRealValue());
+		}
+	}
+
 	public void createWorkerThreads(Task coordinatorTask, OperationResult opResult) {
 		Integer threadsCount = getWorkerThreadsCount(coordinatorTask);
 		if (threadsCount == null || threadsCount == 0) {
@@ -496,6 +517,7 @@ public abstract class AbstractSearchIterativeResultHandler<O extends ObjectType>
 
 		int queueSize = threadsCount*2;				// actually, size of threadsCount should be sufficient but it doesn't hurt if queue is larger
 		requestQueue = new ArrayBlockingQueue<>(queueSize);
+		allItemsSubmitted = false;					// worker threads can be created repeatedly (e.g. for each work bucket)
 
 		workerSpecificResults = new ArrayList<>(threadsCount);
 
@@ -504,6 +526,8 @@ public abstract class AbstractSearchIterativeResultHandler<O extends ObjectType>
 			// (because of concurrency issues - adding subresults vs e.g. putting main result into the task)
 			OperationResult workerSpecificResult = new OperationResult(taskOperationPrefix + ".handleAsynchronously");
 			workerSpecificResult.addContext("subtask", i);
+			workerSpecificResult.setLightweight(opResult.isLightweight());
+			workerSpecificResult.setLightweightSampleInterval(opResult.getLightweightSampleInterval());
 			workerSpecificResults.add(workerSpecificResult);
 
 			Task subtask = coordinatorTask.createSubtask(new WorkerHandler(workerSpecificResult));
@@ -102,6 +102,9 @@ public abstract class AbstractSearchIterativeTaskHandler<O extends ObjectType, H
 	@Autowired
 	protected SystemObjectCache systemObjectCache;
 
+	@Autowired
+	protected WorkBucketManager workBucketManager;
+
 	private static final transient Trace LOGGER = TraceManager.getTrace(AbstractSearchIterativeTaskHandler.class);
 	
 	protected AbstractSearchIterativeTaskHandler(String taskName, String taskOperationPrefix) {
@@ -249,11 +252,23 @@ public abstract class AbstractSearchIterativeTaskHandler<O extends ObjectType, H
             LOGGER.trace("{}: searching {} with options {}, using query:\n{}", taskName, type, queryOptions, query.debugDump());
         }
 
+        WorkBucketManager.Buckets buckets = null;
         try {
 
+            if (workBucketManager.isBucketingRequested(coordinatorTask)) {
+                if (!useRepository && ObjectTypes.isClassManagedByProvisioning(type)) {
+                    // the search goes through provisioning (possibly to the resource), which does not support OID-based paging
+                    LOGGER.warn("{}: work buckets are not supported when searching for {} via provisioning; processing all objects at once", taskName, type.getSimpleName());
+                } else if (query != null && query.getPaging() != null) {
+                    LOGGER.warn("{}: work buckets are not supported for queries with paging; processing all objects at once", taskName);
+                } else {
+                    buckets = workBucketManager.start(coordinatorTask, type, query, opResult);
+                }
+            }
+
             // counting objects can be within try-catch block, because the handling is similar to handling errors within searchIterative
             Long expectedTotal = null;
-            if (countObjectsOnStart) {
+            if (countObjectsOnStart && (buckets == null || !buckets.isWorker())) {
                 if (!useRepository) {
                     Integer expectedTotalInt = modelObjectResolver.countObjects(type, query, queryOptions, coordinatorTask, opResult);
                     if (expectedTotalInt != null) {
@@ -276,13 +291,23 @@ public abstract class AbstractSearchIterativeTaskHandler<O extends ObjectType, H
                 throw new IllegalStateException("Unexpected ObjectAlreadyExistsException when updating task progress/expectedTotal", e);
             }
 
-            resultHandler.createWorkerThreads(coordinatorTask, opResult);
-            if (!useRepository) {
-                modelObjectResolver.searchIterative((Class<O>) type, query, queryOptions, resultHandler, coordinatorTask, opResult);
-            } else {
-                repositoryService.searchObjectsIterative(type, query, (ResultHandler) resultHandler, null, false, opResult);    // TODO think about this
+            if (buckets == null) {
+                searchIterative(type, query, queryOptions, useRepository, resultHandler, coordinatorTask, opResult);
+            } else if (!processBuckets(buckets, type, query, queryOptions, resultHandler, coordinatorTask, opResult)) {
+                // work buckets were not finished; the next run will continue where this one stopped
+                handlers.remove(coordinatorTask);
+                runResult.setProgress(resultHandler.getProgress());
+                if (resultHandler.isStopRequested()) {
+                    opResult.recordStatus(OperationResultStatus.FATAL_ERROR, "Processing of work buckets was stopped because of an error");
+                    runResult.setRunResultStatus(TaskRunResultStatus.TEMPORARY_ERROR);
+                } else {
+                    opResult.recordStatus(OperationResultStatus.IN_PROGRESS, "Processing of work buckets was interrupted");
+                    runResult.setRunResultStatus(TaskRunResultStatus.INTERRUPTED);
+                }
+                return runResult;
+            } else if (opResult.isInProgress()) {
+                opResult.computeStatus();           // no bucket was processed by this task
             }
-            resultHandler.completeProcessing(coordinatorTask, opResult);
 
         } catch (ObjectNotFoundException e) {
             // This is bad. The resource does not exist. Permanent problem.
@@ -325,6 +350,11 @@ public abstract class AbstractSearchIterativeTaskHandler<O extends ObjectType, H
         runResult.setProgress(resultHandler.getProgress());
         runResult.setRunResultStatus(TaskRunResultStatus.FINISHED);
 
+        if (buckets != null && buckets.isWorker()) {
+            // task-level bookkeeping (e.g. last scan timestamp) is the business of the coordinator task
+            return runResult;
+        }
+
         if (logFinishInfo) {
 	        String finishMessage = "Finished " + taskName + " (" + coordinatorTask + "). ";
 	        String statistics = "Processed " + resultHandler.getProgress() + " objects in " + resultHandler.getWallTime()/1000 + " seconds, got " + resultHandler.getErrors() + " errors.";
@@ -352,6 +382,60 @@ public abstract class AbstractSearchIterativeTaskHandler<O extends ObjectType, H
 		
 	}
 
+	private void searchIterative(Class<? extends ObjectType> type, ObjectQuery query,
+			Collection<SelectorOptions<GetOperationOptions>> queryOptions, boolean useRepository, H resultHandler,
+			Task coordinatorTask, OperationResult opResult) throws SchemaException, ObjectNotFoundException,
+			CommunicationException, ConfigurationException, SecurityViolationException {
+		resultHandler.configureOperationResult(opResult);
+		resultHandler.createWorkerThreads(coordinatorTask, opResult);
+		if (!useRepository) {
+			modelObjectResolver.searchIterative((Class<O>) type, query, queryOptions, resultHandler, coordinatorTask, opResult);
+		} else {
+			repositoryService.searchObjectsIterative(type, query, (ResultHandler) resultHandler, null, false, opResult);    // TODO think about this
+		}
+		resultHandler.completeProcessing(coordinatorTask, opResult);
+	}
+
+	/**
+	 * Processes work buckets until there are none left. The coordinator then waits for its worker tasks
+	 * (and takes over the buckets they did not complete). Returns false if the processing was interrupted
+	 * or stopped because of an error (see resultHandler.isStopRequested); unfinished buckets are processed
+	 * in the next run.
+	 *
+	 * Objects are always read from the repository, as types managed by provisioning are not processed in buckets.
+	 */
+	private boolean processBuckets(WorkBucketManager.Buckets buckets, Class<? extends ObjectType> type, ObjectQuery query,
+			Collection<SelectorOptions<GetOperationOptions>> queryOptions, H resultHandler,
+			Task coordinatorTask, OperationResult opResult) throws SchemaException, ObjectNotFoundException {
+		for (;;) {
+			Integer bucket;
+			while (coordinatorTask.canRun() && (bucket = workBucketManager.claimBucket(buckets, opResult)) != null) {
+				LOGGER.trace("{}: processing work bucket {}", taskName, bucket);
+				resultHandler.configureOperationResult(opResult);
+				resultHandler.createWorkerThreads(coordinatorTask, opResult);
+				boolean finished = workBucketManager.searchBucket(buckets, bucket, type, query, queryOptions,
+						(ResultHandler) resultHandler, opResult);
+				resultHandler.completeProcessing(coordinatorTask, opResult);
+				if (!finished || !coordinatorTask.canRun() || resultHandler.isStopRequested()) {
+					return false;			// the bucket will be processed again in the next run
+				}
+				workBucketManager.markBucketDone(buckets, bucket, opResult);
+			}
+			if (!coordinatorTask.canRun()) {
+				return false;
+			}
+			if (buckets.isWorker()) {
+				return true;
+			}
+			Boolean complete = workBucketManager.waitForCompletion(buckets, opResult);
+			if (complete == null) {
+				return false;
+			} else if (complete) {
+				return true;
+			}
+		}
+	}
+
 	private TaskRunResult logErrorAndSetResult(TaskRunResult runResult, H resultHandler, String message, Throwable e,
 			OperationResultStatus opStatus, TaskRunResultStatus status) {
 		LOGGER.error("{}: {}: {}", taskName, message, e.getMessage(), e);
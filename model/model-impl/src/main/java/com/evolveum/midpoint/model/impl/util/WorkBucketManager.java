@@ -0,0 +1,450 @@
+/*
+ * Copyright (c) 2010-2016 Evolveum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.evolveum.midpoint.model.impl.util;
+
+import com.evolveum.midpoint.prism.Item;
+import com.evolveum.midpoint.prism.PrismContainer;
+import com.evolveum.midpoint.prism.PrismContext;
+import com.evolveum.midpoint.prism.PrismObject;
+import com.evolveum.midpoint.prism.PrismProperty;
+import com.evolveum.midpoint.prism.PrismPropertyDefinition;
+import com.evolveum.midpoint.prism.delta.ItemDelta;
+import com.evolveum.midpoint.prism.delta.builder.DeltaBuilder;
+import com.evolveum.midpoint.prism.path.ItemPath;
+import com.evolveum.midpoint.prism.query.ObjectPagingAfterOid;
+import com.evolveum.midpoint.prism.query.ObjectQuery;
+import com.evolveum.midpoint.repo.api.RepositoryService;
+import com.evolveum.midpoint.schema.GetOperationOptions;
+import com.evolveum.midpoint.schema.ResultHandler;
+import com.evolveum.midpoint.schema.SelectorOptions;
+import com.evolveum.midpoint.schema.constants.SchemaConstants;
+import com.evolveum.midpoint.schema.result.OperationResult;
+import com.evolveum.midpoint.task.api.Task;
+import com.evolveum.midpoint.task.api.TaskBinding;
+import com.evolveum.midpoint.task.api.TaskExecutionStatus;
+import com.evolveum.midpoint.task.api.TaskManager;
+import com.evolveum.midpoint.util.exception.ObjectAlreadyExistsException;
+import com.evolveum.midpoint.util.exception.ObjectNotFoundException;
+import com.evolveum.midpoint.util.exception.SchemaException;
+import com.evolveum.midpoint.util.exception.SystemException;
+import com.evolveum.midpoint.util.logging.LoggingUtils;
+import com.evolveum.midpoint.util.logging.Trace;
+import com.evolveum.midpoint.util.logging.TraceManager;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ObjectType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.SequenceType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.TaskType;
+import com.evolveum.prism.xml.ns._public.types_3.PolyStringType;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+
+import javax.xml.namespace.QName;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Splits the work of search-iterative tasks into buckets, so that it can be done by several tasks
+ * (possibly on different nodes) and resumed after an interruption.
+ *
+ * Buckets are intervals of OIDs. Their boundaries are determined when the processing starts and are stored
+ * in the coordinator task (workBucketBoundary extension property). Objects of a bucket are fetched in the order
+ * of OIDs, page by page (see {@link ObjectPagingAfterOid}), so no offset paging is needed. Buckets are handed out to the coordinator and its worker subtasks by
+ * a sequence object (unused values of the sequence are the buckets to be processed). Completed buckets are
+ * recorded in the coordinator task (workBucketDone); when all of them are completed, the bucket-related
+ * state is removed from the coordinator, so the next run (of a recurring task) starts from scratch.
+ *
+ * Each bucket is processed at least once; if a worker fails in the middle of a bucket, the bucket is processed
+ * again later, so handlers should be idempotent (as recompute or reindex are).
+ *
+ * @author mederly
+ */
+@Component
+public class WorkBucketManager {
+
+    private static final Trace LOGGER = TraceManager.getTrace(WorkBucketManager.class);
+
+    private static final long WORKERS_CHECK_INTERVAL = 5000L;
+    private static final long SLEEP_STEP = 500L;
+    private static final int SEARCH_BATCH_SIZE = 100;
+
+    @Autowired
+    private TaskManager taskManager;
+
+    @Autowired
+    @Qualifier("cacheRepositoryService")
+    private RepositoryService repositoryService;
+
+    @Autowired
+    private PrismContext prismContext;
+
+    /**
+     * Work bucket state as seen by a single (coordinator or worker) task run.
+     */
+    public static class Buckets {
+        private final Task coordinatorTask;
+        private final boolean worker;
+        private final String sequenceOid;
+        private final List<String> boundaries;
+
+        Buckets(Task coordinatorTask, boolean worker, String sequenceOid, List<String> boundaries) {
+            this.coordinatorTask = coordinatorTask;
+            this.worker = worker;
+            this.sequenceOid = sequenceOid;
+            this.boundaries = boundaries;
+        }
+
+        public boolean isWorker() {
+            return worker;
+        }
+
+        public int getCount() {
+            return boundaries.size() + 1;
+        }
+
+        @Override
+        public String toString() {
+            return "Buckets{coordinator=" + coordinatorTask + ", worker=" + worker + ", count=" + getCount()
+                    + ", sequence=" + sequenceOid + "}";
+        }
+    }
+
+    public boolean isBucketingRequested(Task task) {
+        Integer buckets = task.getExtensionPropertyRealValue(SchemaConstants.MODEL_EXTENSION_WORK_BUCKETS);
+        return buckets != null && buckets > 0;
+    }
+
+    /**
+     * Prepares the buckets for the current run: determines bucket boundaries, creates or resets the sequence,
+     * and starts the worker tasks. Worker tasks only fetch the state from their coordinator.
+     */
+    public <T extends ObjectType> Buckets start(Task task, Class<T> type, ObjectQuery query, OperationResult result)
+            throws SchemaException, ObjectNotFoundException {
+        Task coordinator = getCoordinator(task, result);
+        if (coordinator != null) {
+            Buckets buckets = new Buckets(coordinator, true, getSequenceOid(task), getBoundaries(coordinator));
+            LOGGER.debug("Starting as a bucket worker: {}", buckets);
+            return buckets;
+        }
+
+        String sequenceOid = getSequenceOid(task);
+        List<String> boundaries;
+        if (sequenceOid == null) {
+            deleteWorkers(task, result);            // closed ones from the previous pass
+            boundaries = computeBoundaries(type, query, getRequestedCount(task), result);
+            sequenceOid = createSequence(task, result);
+            replaceExtensionValues(task, SchemaConstants.MODEL_EXTENSION_WORK_BUCKET_BOUNDARY, boundaries, result);
+            replaceExtensionValues(task, SchemaConstants.MODEL_EXTENSION_WORK_BUCKET_DONE, Collections.emptyList(), result);
+            replaceExtensionValues(task, SchemaConstants.MODEL_EXTENSION_WORK_BUCKET_SEQUENCE, Collections.singletonList(sequenceOid), result);
+            LOGGER.info("Split the work of {} into {} bucket(s), boundaries: {}", task, boundaries.size() + 1, boundaries);
+        } else {
+            boundaries = getBoundaries(task);
+            LOGGER.info("Resuming processing of {} work bucket(s) for {}", boundaries.size() + 1, task);
+        }
+        Buckets buckets = new Buckets(task, false, sequenceOid, boundaries);
+        int liveWorkers = getLiveWorkers(task, result).size();
+        if (liveWorkers == 0) {
+            resetSequence(buckets, result);
+        }
+        startWorkers(task, getRequestedWorkers(task) - liveWorkers, sequenceOid, result);
+        return buckets;
+    }
+
+    /**
+     * Returns the number of the next bucket to be processed, or null if there is none.
+     */
+    public Integer claimBucket(Buckets buckets, OperationResult result) throws ObjectNotFoundException, SchemaException {
+        long value = repositoryService.advanceSequence(buckets.sequenceOid, result);
+        if (value >= buckets.getCount()) {
+            return null;
+        }
+        LOGGER.debug("Claimed work bucket {} of {}", value, buckets.getCount());
+        return (int) value;
+    }
+
+    /**
+     * Passes objects of the given bucket (matching the query) to the handler, in the order of their OIDs.
+     * Returns false if the handler requested to stop.
+     */
+    public <T extends ObjectType> boolean searchBucket(Buckets buckets, int bucket, Class<T> type, ObjectQuery query,
+            Collection<SelectorOptions<GetOperationOptions>> options, ResultHandler<T> handler, OperationResult result)
+            throws SchemaException {
+        String from = bucket > 0 ? buckets.boundaries.get(bucket - 1) : null;
+        String to = bucket < buckets.boundaries.size() ? buckets.boundaries.get(bucket) : null;
+        ObjectQuery pagedQuery = query != null ? query.clone() : new ObjectQuery();
+        ObjectPagingAfterOid paging = new ObjectPagingAfterOid();
+        pagedQuery.setPaging(paging);
+        String lastOid = from;
+        for (;;) {
+            paging.setOidGreaterThan(lastOid);
+            paging.setMaxSize(SEARCH_BATCH_SIZE);
+            List<PrismObject<T>> objects = repositoryService.searchObjects(type, pagedQuery, options, result);
+            for (PrismObject<T> object : objects) {
+                if (to != null && object.getOid().compareTo(to) > 0) {
+                    return true;
+                }
+                if (!handler.handle(object, result)) {
+                    return false;
+                }
+                lastOid = object.getOid();
+            }
+            if (objects.size() < SEARCH_BATCH_SIZE) {
+                return true;
+            }
+        }
+    }
+
+    public void markBucketDone(Buckets buckets, int bucket, OperationResult result) throws ObjectNotFoundException, SchemaException {
+        // adding a value is safe even if other workers do the same at the same time
+        List<ItemDelta<?, ?>> modifications = DeltaBuilder.deltaFor(TaskType.class, prismContext)
+                .item(extensionPath(SchemaConstants.MODEL_EXTENSION_WORK_BUCKET_DONE),
+                        extensionDefinition(SchemaConstants.MODEL_EXTENSION_WORK_BUCKET_DONE))
+                .add(bucket)
+                .asItemDeltas();
+        try {
+            repositoryService.modifyObject(TaskType.class, buckets.coordinatorTask.getOid(), modifications, result);
+        } catch (ObjectAlreadyExistsException e) {
+            throw new SystemException("Unexpected exception when marking work bucket as done: " + e.getMessage(), e);
+        }
+        LOGGER.debug("Work bucket {} of {} is done", bucket, buckets.getCount());
+    }
+
+    /**
+     * Called by the coordinator after it has no more buckets to process. Waits for the workers and checks whether
+     * all buckets are done. If some of them were not completed (e.g. because a worker was suspended), they are
+     * made available again and false is returned. Returns true when everything is done (and cleans up the state).
+     * Returns null if the waiting was interrupted.
+     */
+    public Boolean waitForCompletion(Buckets buckets, OperationResult result) throws ObjectNotFoundException, SchemaException {
+        Task task = buckets.coordinatorTask;
+        long lastCheck = 0;
+        while (task.canRun()) {
+            if (System.currentTimeMillis() - lastCheck >= WORKERS_CHECK_INTERVAL) {
+                lastCheck = System.currentTimeMillis();
+                if (getLiveWorkers(task, result).isEmpty()) {
+                    if (resetSequence(buckets, result) > 0) {
+                        return false;
+                    }
+                    finish(buckets, result);
+                    return true;
+                }
+            }
+            try {
+                Thread.sleep(SLEEP_STEP);
+            } catch (InterruptedException e) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    private void finish(Buckets buckets, OperationResult result) throws ObjectNotFoundException, SchemaException {
+        Task task = buckets.coordinatorTask;
+        LOGGER.info("All {} work bucket(s) of {} are done", buckets.getCount(), task);
+        replaceExtensionValues(task, SchemaConstants.MODEL_EXTENSION_WORK_BUCKET_SEQUENCE, Collections.emptyList(), result);
+        replaceExtensionValues(task, SchemaConstants.MODEL_EXTENSION_WORK_BUCKET_DONE, Collections.emptyList(), result);
+        replaceExtensionValues(task, SchemaConstants.MODEL_EXTENSION_WORK_BUCKET_BOUNDARY, Collections.emptyList(), result);
+        try {
+            repositoryService.deleteObject(SequenceType.class, buckets.sequenceOid, result);
+        } catch (ObjectNotFoundException | RuntimeException e) {
+            LoggingUtils.logUnexpectedException(LOGGER, "Couldn't delete work bucket sequence {}", e, buckets.sequenceOid);
+        }
+    }
+
+    //region Coordinator and workers
+    private Task getCoordinator(Task task, OperationResult result) throws SchemaException, ObjectNotFoundException {
+        String sequenceOid = getSequenceOid(task);
+        if (sequenceOid == null || task.getParent() == null) {
+            return null;
+        }
+        Task parent = task.getParentTask(result);
+        return parent != null && sequenceOid.equals(getSequenceOid(parent)) ? parent : null;
+    }
+
+    private List<Task> getLiveWorkers(Task coordinator, OperationResult result) throws SchemaException {
+        List<Task> rv = new ArrayList<>();
+        for (Task subtask : coordinator.listSubtasks(result)) {
+            if (isWorker(subtask) && (subtask.getExecutionStatus() == TaskExecutionStatus.RUNNABLE
+                    || subtask.getExecutionStatus() == TaskExecutionStatus.WAITING)) {
+                rv.add(subtask);
+            }
+        }
+        return rv;
+    }
+
+    private boolean isWorker(Task subtask) {
+        return getSequenceOid(subtask) != null;
+    }
+
+    private void deleteWorkers(Task coordinator, OperationResult result) throws SchemaException {
+        for (Task subtask : coordinator.listSubtasks(result)) {
+            if (isWorker(subtask) && subtask.isClosed()) {
+                try {
+                    taskManager.deleteTask(subtask.getOid(), result);
+                } catch (ObjectNotFoundException e) {
+                    LOGGER.trace("Worker task {} was already deleted", subtask);
+                }
+            }
+        }
+    }
+
+    private void startWorkers(Task coordinator, int count, String sequenceOid, OperationResult result) throws SchemaException {
+        PrismContainer<?> extension = coordinator.getExtension();
+        for (int i = 0; i < count; i++) {
+            Task worker = coordinator.createSubtask();
+            worker.setName(coordinator.getName().getOrig() + " (worker " + (i + 1) + ")");
+            worker.setHandlerUri(coordinator.getHandlerUri());
+            worker.setCategory(coordinator.getCategory());
+            if (coordinator.getObjectRef() != null) {
+                worker.setObjectRef(coordinator.getObjectRef().clone());
+            }
+            worker.setBinding(TaskBinding.LOOSE);
+            worker.setInitialExecutionStatus(TaskExecutionStatus.RUNNABLE);
+            worker.makeSingle();
+            if (extension != null && !extension.isEmpty()) {
+                for (Item<?, ?> item : extension.getValue().getItems()) {
+                    if (!isBucketStateItem(item.getElementName())) {
+                        worker.setExtensionItem(item.clone());
+                    }
+                }
+            }
+            worker.setExtensionPropertyValue(SchemaConstants.MODEL_EXTENSION_WORK_BUCKET_SEQUENCE, sequenceOid);
+            taskManager.switchToBackground(worker, result);
+            LOGGER.debug("Started work bucket worker {}", worker);
+        }
+    }
+
+    private boolean isBucketStateItem(QName name) {
+        return SchemaConstants.MODEL_EXTENSION_WORK_BUCKET_WORKERS.equals(name)
+                || SchemaConstants.MODEL_EXTENSION_WORK_BUCKET_BOUNDARY.equals(name)
+                || SchemaConstants.MODEL_EXTENSION_WORK_BUCKET_DONE.equals(name)
+                || SchemaConstants.MODEL_EXTENSION_WORK_BUCKET_SEQUENCE.equals(name);
+    }
+    //endregion
+
+    //region Boundaries and the sequence
+    /**
+     * Boundaries are OIDs of the first matching objects after evenly spaced points of the OID space, sorted
+     * and without duplicates. Each one is found by a single lookup by OID, so the cost does not depend on the number
+     * of objects. Buckets are of approximately the same size if OIDs are random UUIDs (as generated by midPoint).
+     */
+    private <T extends ObjectType> List<String> computeBoundaries(Class<T> type, ObjectQuery query, int count,
+            OperationResult result) throws SchemaException {
+        Set<String> boundaries = new TreeSet<>();
+        for (int i = 1; i < count; i++) {
+            ObjectQuery boundaryQuery = query != null ? query.clone() : new ObjectQuery();
+            ObjectPagingAfterOid paging = new ObjectPagingAfterOid();
+            paging.setOidGreaterThan(String.format("%08x", 0xFFFFFFFFL / count * i));
+            paging.setMaxSize(1);
+            boundaryQuery.setPaging(paging);
+            List<PrismObject<T>> objects = repositoryService.searchObjects(type, boundaryQuery, null, result);
+            if (objects.isEmpty()) {
+                break;          // nothing after this point, so there is no need for more buckets
+            }
+            boundaries.add(objects.get(0).getOid());
+        }
+        return new ArrayList<>(boundaries);
+    }
+
+    private String createSequence(Task task, OperationResult result) {
+        SequenceType sequence = new SequenceType(prismContext);
+        sequence.setName(new PolyStringType("Work buckets for " + task.getName().getOrig() + " (" + task.getOid() + ")"));
+        sequence.setCounter(0L);
+        try {
+            return repositoryService.addObject(sequence.asPrismObject(), null, result);
+        } catch (ObjectAlreadyExistsException | SchemaException e) {
+            throw new SystemException("Couldn't create work bucket sequence for " + task + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Makes all buckets that are not done available via the sequence. Must not be called while there are live workers.
+     * Returns the number of such buckets.
+     */
+    private int resetSequence(Buckets buckets, OperationResult result) throws ObjectNotFoundException, SchemaException {
+        Task coordinator = taskManager.getTask(buckets.coordinatorTask.getOid(), result);     // fresh information about done buckets
+        PrismProperty<Integer> doneProperty = coordinator.getExtensionProperty(SchemaConstants.MODEL_EXTENSION_WORK_BUCKET_DONE);
+        Collection<Integer> done = doneProperty != null ? doneProperty.getRealValues() : Collections.<Integer>emptySet();
+        List<Long> pending = new ArrayList<>();
+        for (int i = 0; i < buckets.getCount(); i++) {
+            if (!done.contains(i)) {
+                pending.add((long) i);
+            }
+        }
+        List<ItemDelta<?, ?>> modifications = DeltaBuilder.deltaFor(SequenceType.class, prismContext)
+                .item(SequenceType.F_COUNTER).replace((long) buckets.getCount())
+                .item(SequenceType.F_UNUSED_VALUES).replace(pending.toArray())
+                .asItemDeltas();
+        try {
+            repositoryService.modifyObject(SequenceType.class, buckets.sequenceOid, modifications, result);
+        } catch (ObjectAlreadyExistsException e) {
+            throw new SystemException("Unexpected exception when resetting work bucket sequence: " + e.getMessage(), e);
+        }
+        LOGGER.debug("Work buckets to be processed: {} (of {})", pending, buckets.getCount());
+        return pending.size();
+    }
+    //endregion
+
+    //region Task extension
+    private int getRequestedCount(Task task) {
+        Integer value = task.getExtensionPropertyRealValue(SchemaConstants.MODEL_EXTENSION_WORK_BUCKETS);
+        return value != null ? value : 0;
+    }
+
+    private int getRequestedWorkers(Task task) {
+        Integer value = task.getExtensionPropertyRealValue(SchemaConstants.MODEL_EXTENSION_WORK_BUCKET_WORKERS);
+        return value != null ? value : 0;
+    }
+
+    private String getSequenceOid(Task task) {
+        return task.getExtensionPropertyRealValue(SchemaConstants.MODEL_EXTENSION_WORK_BUCKET_SEQUENCE);
+    }
+
+    private List<String> getBoundaries(Task task) {
+        PrismProperty<String> property = task.getExtensionProperty(SchemaConstants.MODEL_EXTENSION_WORK_BUCKET_BOUNDARY);
+        List<String> boundaries = new ArrayList<>();
+        if (property != null) {
+            boundaries.addAll(property.getRealValues());
+        }
+        Collections.sort(boundaries);
+        return boundaries;
+    }
+
+    private void replaceExtensionValues(Task task, QName name, Collection<?> values, OperationResult result)
+            throws ObjectNotFoundException, SchemaException {
+        ItemDelta<?, ?> delta = DeltaBuilder.deltaFor(TaskType.class, prismContext)
+                .item(extensionPath(name), extensionDefinition(name)).replace(values.toArray())
+                .asItemDelta();
+        try {
+            task.addModificationImmediate(delta, result);
+        } catch (ObjectAlreadyExistsException e) {
+            throw new SystemException("Unexpected exception when updating task " + task + ": " + e.getMessage(), e);
+        }
+    }
+
+    private ItemPath extensionPath(QName name) {
+        return new ItemPath(TaskType.F_EXTENSION, name);
+    }
+
+    private PrismPropertyDefinition<?> extensionDefinition(QName name) {
+        return prismContext.getSchemaRegistry().findPropertyDefinitionByElementName(name);
+    }
+    //endregion
+}
@@ -0,0 +1,297 @@
+/*
+ * Copyright (c) 2010-2016 Evolveum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.evolveum.midpoint.model.impl.lens;
+
+import static com.evolveum.midpoint.model.api.ProgressInformation.ActivityType.RESOURCE_OBJECT_OPERATION;
+import static com.evolveum.midpoint.model.api.ProgressInformation.StateType.ENTERING;
+import static com.evolveum.midpoint.test.IntegrationTestTools.display;
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertNotNull;
+import static org.testng.AssertJUnit.assertNull;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.annotation.DirtiesContext.ClassMode;
+import org.springframework.test.context.ContextConfiguration;
+import org.testng.AssertJUnit;
+import org.testng.annotations.Test;
+
+import com.evolveum.midpoint.common.refinery.RefinedAttributeDefinition;
+import com.evolveum.midpoint.common.refinery.RefinedObjectClassDefinition;
+import com.evolveum.midpoint.common.refinery.RefinedResourceSchemaImpl;
+import com.evolveum.midpoint.model.api.ProgressInformation;
+import com.evolveum.midpoint.model.api.ProgressListener;
+import com.evolveum.midpoint.model.api.context.ModelContext;
+import com.evolveum.midpoint.prism.PrismObject;
+import com.evolveum.midpoint.prism.delta.ObjectDelta;
+import com.evolveum.midpoint.prism.path.ItemPath;
+import com.evolveum.midpoint.schema.ResourceShadowDiscriminator;
+import com.evolveum.midpoint.schema.processor.ResourceAttribute;
+import com.evolveum.midpoint.schema.result.OperationResult;
+import com.evolveum.midpoint.schema.util.ShadowUtil;
+import com.evolveum.midpoint.task.api.Task;
+import com.evolveum.midpoint.task.api.TaskManager;
+import com.evolveum.midpoint.test.util.TestUtil;
+import com.evolveum.midpoint.util.exception.ObjectAlreadyExistsException;
+import com.evolveum.midpoint.util.exception.SchemaException;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.InternalsConfigurationType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ShadowKindType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ShadowType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.SystemConfigurationType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.UserType;
+
+/**
+ * Tests parallel execution of projection deltas: the executor itself and its use in ChangeExecutor.
+ *
+ * @author mederly
+ */
+@ContextConfiguration(locations = {"classpath:ctx-model-test-main.xml"})
+@DirtiesContext(classMode = ClassMode.AFTER_CLASS)
+public class TestParallelProjectionExecutor extends AbstractLensTest {
+
+	private static final int THREADS = 3;
+
+	@Autowired(required = true)
+	private ParallelProjectionExecutor parallelProjectionExecutor;
+
+	@Autowired(required = true)
+	private ChangeExecutor changeExecutor;
+
+	@Autowired(required = true)
+	private TaskManager taskManager;
+
+	@Override
+	public void initSystem(Task initTask, OperationResult initResult) throws Exception {
+		super.initSystem(initTask, initResult);
+		ObjectDelta<SystemConfigurationType> delta = ObjectDelta.createModificationReplaceProperty(
+				SystemConfigurationType.class, SYSTEM_CONFIGURATION_OID,
+				new ItemPath(SystemConfigurationType.F_INTERNALS, InternalsConfigurationType.F_PROJECTION_THREADS),
+				prismContext, THREADS);
+		repositoryService.modifyObject(SystemConfigurationType.class, SYSTEM_CONFIGURATION_OID,
+				delta.getModifications(), initResult);
+	}
+
+	@Test
+	public void test010RunAllKeepsOrder() throws Exception {
+		final String TEST_NAME = "test010RunAllKeepsOrder";
+		TestUtil.displayTestTile(this, TEST_NAME);
+
+		// GIVEN
+		Task task = taskManager.createTaskInstance(TestParallelProjectionExecutor.class.getName() + "." + TEST_NAME);
+		OperationResult result = task.getResult();
+
+		assertEquals("Wrong number of threads", THREADS, parallelProjectionExecutor.getThreads(result));
+
+		final Random random = new Random();
+		List<ParallelProjectionExecutor.Job<Integer>> jobs = new ArrayList<>();
+		for (int i = 0; i < 10; i++) {
+			final int index = i;
+			jobs.add((jobTask, jobResult) -> {
+				Thread.sleep(random.nextInt(50));
+				return index;
+			});
+		}
+
+		// WHEN
+		List<ParallelProjectionExecutor.Outcome<Integer>> outcomes = parallelProjectionExecutor.runAll(jobs, THREADS,
+				TEST_NAME, task);
+
+		// THEN
+		assertEquals("Wrong number of outcomes", jobs.size(), outcomes.size());
+		for (int i = 0; i < outcomes.size(); i++) {
+			ParallelProjectionExecutor.Outcome<Integer> outcome = outcomes.get(i);
+			assertFalse("Outcome " + i + " skipped", outcome.isSkipped());
+			assertNull("Unexpected exception in outcome " + i, outcome.getException());
+			assertEquals("Wrong value in outcome " + i, (Integer) i, outcome.getValue());
+		}
+	}
+
+	@Test
+	public void test020RunAllStopsOnAlreadyExists() throws Exception {
+		final String TEST_NAME = "test020RunAllStopsOnAlreadyExists";
+		TestUtil.displayTestTile(this, TEST_NAME);
+
+		// GIVEN
+		Task task = taskManager.createTaskInstance(TestParallelProjectionExecutor.class.getName() + "." + TEST_NAME);
+
+		final List<Integer> started = Collections.synchronizedList(new ArrayList<Integer>());
+		List<ParallelProjectionExecutor.Job<Void>> jobs = new ArrayList<>();
+		for (int i = 0; i < 5; i++) {
+			final int index = i;
+			jobs.add((jobTask, jobResult) -> {
+				started.add(index);
+				if (index == 1) {
+					throw new ObjectAlreadyExistsException("Conflict in job " + index);
+				}
+				return null;
+			});
+		}
+
+		// WHEN
+		// one thread makes the outcome deterministic
+		List<ParallelProjectionExecutor.Outcome<Void>> outcomes = parallelProjectionExecutor.runAll(jobs, 1,
+				TEST_NAME, e -> e instanceof ObjectAlreadyExistsException, task);
+
+		// THEN
+		assertEquals("Wrong jobs started", 2, started.size());
+		assertFalse("Job 0 skipped", outcomes.get(0).isSkipped());
+		assertNull("Unexpected exception in job 0", outcomes.get(0).getException());
+		assertFalse("Job 1 skipped", outcomes.get(1).isSkipped());
+		assertTrue("Wrong exception in job 1", outcomes.get(1).getException() instanceof ObjectAlreadyExistsException);
+		for (int i = 2; i < outcomes.size(); i++) {
+			assertTrue("Job " + i + " not skipped", outcomes.get(i).isSkipped());
+		}
+	}
+
+	@Test
+	public void test100ExecuteProjectionsInParallel() throws Exception {
+		final String TEST_NAME = "test100ExecuteProjectionsInParallel";
+		TestUtil.displayTestTile(this, TEST_NAME);
+
+		// GIVEN
+		Task task = taskManager.createTaskInstance(TestParallelProjectionExecutor.class.getName() + "." + TEST_NAME);
+		OperationResult result = task.getResult();
+
+		LensContext<UserType> context = createUserAccountContext();
+		fillContextWithUser(context, USER_JACK_OID, result);
+		List<LensProjectionContext> projectionContexts = new ArrayList<>();
+		for (int i = 0; i < THREADS; i++) {
+			projectionContexts.add(addAccountProjection(context, TEST_NAME, i));
+		}
+		RecordingListener listener = new RecordingListener(TEST_NAME, false);
+		context.setProgressListeners(Collections.<ProgressListener>singletonList(listener));
+
+		// WHEN
+		changeExecutor.executeChanges(context, task, result);
+
+		// THEN
+		result.computeStatus();
+		TestUtil.assertSuccess(result);
+
+		assertEquals("Wrong number of ENTERING events", THREADS, listener.entering.size());
+		assertFalse("Account existed before ENTERING was reported", listener.accountExistedOnEntering);
+		for (int i = 0; i < THREADS; i++) {
+			LensProjectionContext projectionContext = projectionContexts.get(i);
+			assertNotNull("No OID in projection context " + i, projectionContext.getOid());
+			assertEquals("Wrong number of executed deltas in projection context " + i, 1,
+					projectionContext.getExecutedDeltas().size());
+			assertNotNull("No dummy account " + getAccountName(TEST_NAME, i),
+					dummyResource.getAccountByUsername(getAccountName(TEST_NAME, i)));
+		}
+	}
+
+	@Test
+	public void test110AbortBeforeParallelExecution() throws Exception {
+		final String TEST_NAME = "test110AbortBeforeParallelExecution";
+		TestUtil.displayTestTile(this, TEST_NAME);
+
+		// GIVEN
+		Task task = taskManager.createTaskInstance(TestParallelProjectionExecutor.class.getName() + "." + TEST_NAME);
+		OperationResult result = task.getResult();
+
+		LensContext<UserType> context = createUserAccountContext();
+		fillContextWithUser(context, USER_JACK_OID, result);
+		List<LensProjectionContext> projectionContexts = new ArrayList<>();
+		for (int i = 0; i < THREADS; i++) {
+			projectionContexts.add(addAccountProjection(context, TEST_NAME, i));
+		}
+		RecordingListener listener = new RecordingListener(TEST_NAME, true);
+		context.setProgressListeners(Collections.<ProgressListener>singletonList(listener));
+
+		// WHEN
+		try {
+			changeExecutor.executeChanges(context, task, result);
+			AssertJUnit.fail("Unexpected success");
+		} catch (RuntimeException e) {
+			// THEN
+			display("Expected exception", e);
+		}
+
+		assertFalse("No ENTERING event", listener.entering.isEmpty());
+		for (int i = 0; i < THREADS; i++) {
+			assertTrue("Unexpected executed deltas in projection context " + i,
+					projectionContexts.get(i).getExecutedDeltas().isEmpty());
+			assertNull("Unexpected dummy account " + getAccountName(TEST_NAME, i),
+					dummyResource.getAccountByUsername(getAccountName(TEST_NAME, i)));
+		}
+	}
+
+	private LensProjectionContext addAccountProjection(LensContext<UserType> context, String testName, int index)
+			throws SchemaException {
+		ResourceShadowDiscriminator discr = new ResourceShadowDiscriminator(RESOURCE_DUMMY_OID, ShadowKindType.ACCOUNT, null);
+		LensProjectionContext projectionContext = context.createProjectionContext(discr);
+		projectionContext.setWave(0);
+		projectionContext.setResource(resourceDummyType);
+		PrismObject<ShadowType> shadow = createShadow(resourceDummy, getAccountName(testName, index));
+		RefinedObjectClassDefinition accountDefinition = RefinedResourceSchemaImpl.getRefinedSchema(resourceDummy)
+				.getDefaultRefinedDefinition(ShadowKindType.ACCOUNT);
+		RefinedAttributeDefinition<String> fullnameDefinition = accountDefinition
+				.findAttributeDefinition(dummyResourceCtl.getAttributeFullnameQName());
+		ResourceAttribute<String> fullname = fullnameDefinition.instantiate();
+		fullname.setRealValue("Account " + index);
+		ShadowUtil.getAttributesContainer(shadow).add(fullname);
+		projectionContext.setPrimaryDelta(ObjectDelta.createAddDelta(shadow));
+		return projectionContext;
+	}
+
+	private String getAccountName(String testName, int index) {
+		return testName.substring(0, 7) + "-" + index;
+	}
+
+	private class RecordingListener implements ProgressListener {
+
+		private final String testName;
+		private final boolean abort;
+		private final List<ResourceShadowDiscriminator> entering = Collections.synchronizedList(
+				new ArrayList<ResourceShadowDiscriminator>());
+		private volatile boolean accountExistedOnEntering;
+
+		RecordingListener(String testName, boolean abort) {
+			this.testName = testName;
+			this.abort = abort;
+		}
+
+		@Override
+		public void onProgressAchieved(ModelContext modelContext, ProgressInformation progressInformation) {
+			if (progressInformation.getActivityType() != RESOURCE_OBJECT_OPERATION
+					|| progressInformation.getStateType() != ENTERING) {
+				return;
+			}
+			entering.add(progressInformation.getResourceShadowDiscriminator());
+			try {
+				for (int i = 0; i < THREADS; i++) {
+					if (dummyResource.getAccountByUsername(getAccountName(testName, i)) != null) {
+						accountExistedOnEntering = true;
+					}
+				}
+			} catch (Exception e) {
+				throw new IllegalStateException(e);
+			}
+		}
+
+		@Override
+		public boolean isAbortRequested() {
+			return abort && !entering.isEmpty();
+		}
+	}
+}
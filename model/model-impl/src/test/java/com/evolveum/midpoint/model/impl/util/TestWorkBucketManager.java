@@ -0,0 +1,364 @@
+/*
+ * Copyright (c) 2010-2016 Evolveum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.evolveum.midpoint.model.impl.util;
+
+import static com.evolveum.midpoint.test.IntegrationTestTools.display;
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertNotNull;
+import static org.testng.AssertJUnit.assertNull;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.annotation.DirtiesContext.ClassMode;
+import org.springframework.test.context.ContextConfiguration;
+import org.testng.annotations.Test;
+
+import com.evolveum.midpoint.model.impl.AbstractInternalModelIntegrationTest;
+import com.evolveum.midpoint.prism.PrismObject;
+import com.evolveum.midpoint.prism.query.ObjectQuery;
+import com.evolveum.midpoint.prism.util.PrismTestUtil;
+import com.evolveum.midpoint.schema.constants.SchemaConstants;
+import com.evolveum.midpoint.schema.result.OperationResult;
+import com.evolveum.midpoint.task.api.Task;
+import com.evolveum.midpoint.task.api.TaskExecutionStatus;
+import com.evolveum.midpoint.task.api.TaskRunResult;
+import com.evolveum.midpoint.task.api.TaskRunResult.TaskRunResultStatus;
+import com.evolveum.midpoint.test.Checker;
+import com.evolveum.midpoint.test.IntegrationTestTools;
+import com.evolveum.midpoint.test.util.TestUtil;
+import com.evolveum.midpoint.util.exception.CommonException;
+import com.evolveum.midpoint.util.exception.SystemException;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ObjectType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.UserType;
+
+/**
+ * Tests splitting the work of search-iterative tasks into work buckets (OID intervals).
+ *
+ * @author mederly
+ */
+@ContextConfiguration(locations = {"classpath:ctx-model-test-main.xml"})
+@DirtiesContext(classMode = ClassMode.AFTER_CLASS)
+public class TestWorkBucketManager extends AbstractInternalModelIntegrationTest {
+
+	private static final int USERS = 50;
+	private static final int BUCKETS = 4;
+	private static final int WORKERS = 2;
+	private static final int TIMEOUT = 60000;
+
+	private static final String PAUSING_HANDLER_URI = "http://midpoint.evolveum.com/xml/ns/public/model/test/pausing/handler-3";
+
+	@Autowired(required = true)
+	private WorkBucketManager workBucketManager;
+
+	@Override
+	public void initSystem(Task initTask, OperationResult initResult) throws Exception {
+		super.initSystem(initTask, initResult);
+		for (int i = 0; i < USERS; i++) {
+			PrismObject<UserType> user = prismContext.createObject(UserType.class);
+			user.asObjectable().setName(PrismTestUtil.createPolyStringType("bucket-user-" + i));
+			repositoryService.addObject(user, null, initResult);
+		}
+	}
+
+	@Test
+	public void test100SearchAllBuckets() throws Exception {
+		final String TEST_NAME = "test100SearchAllBuckets";
+		TestUtil.displayTestTile(this, TEST_NAME);
+
+		// GIVEN
+		Task task = createBucketTask(TEST_NAME, BUCKETS);
+		OperationResult result = task.getResult();
+
+		// WHEN
+		WorkBucketManager.Buckets buckets = workBucketManager.start(task, UserType.class, null, result);
+		List<List<String>> oidsInBuckets = new ArrayList<>();
+		for (int i = 0; i < buckets.getCount(); i++) {
+			oidsInBuckets.add(null);
+		}
+		Integer bucket;
+		while ((bucket = workBucketManager.claimBucket(buckets, result)) != null) {
+			List<String> oids = new ArrayList<>();
+			boolean complete = workBucketManager.searchBucket(buckets, bucket, UserType.class, null, null,
+					(object, parentResult) -> oids.add(object.getOid()), result);
+			assertTrue("Search in bucket " + bucket + " was not completed", complete);
+			oidsInBuckets.set(bucket, oids);
+		}
+
+		// THEN
+		display("Objects in buckets", oidsInBuckets);
+		assertTrue("Wrong # of buckets: " + buckets.getCount(), buckets.getCount() > 1 && buckets.getCount() <= BUCKETS);
+		Set<String> seen = new HashSet<>();
+		String lastOid = null;
+		for (int i = 0; i < oidsInBuckets.size(); i++) {
+			List<String> oids = oidsInBuckets.get(i);
+			assertNotNull("Bucket " + i + " was not claimed", oids);
+			for (String oid : oids) {
+				assertTrue("Object " + oid + " was processed more than once", seen.add(oid));
+				assertTrue("Objects are not ordered by OID: " + lastOid + ", " + oid, lastOid == null || lastOid.compareTo(oid) < 0);
+				lastOid = oid;
+			}
+		}
+		assertEquals("Wrong objects processed", getAllUserOids(result), seen);
+	}
+
+	@Test
+	public void test110SearchBucketStopsWhenRequested() throws Exception {
+		final String TEST_NAME = "test110SearchBucketStopsWhenRequested";
+		TestUtil.displayTestTile(this, TEST_NAME);
+
+		// GIVEN
+		Task task = createBucketTask(TEST_NAME, 1);
+		OperationResult result = task.getResult();
+		WorkBucketManager.Buckets buckets = workBucketManager.start(task, UserType.class, null, result);
+		List<String> oids = new ArrayList<>();
+
+		// WHEN
+		boolean complete = workBucketManager.searchBucket(buckets, 0, UserType.class, null, null,
+				(object, parentResult) -> {
+					oids.add(object.getOid());
+					return false;
+				}, result);
+
+		// THEN
+		assertEquals("Wrong # of buckets", 1, buckets.getCount());
+		assertFalse("Search was reported as completed", complete);
+		assertEquals("Wrong # of objects passed to the handler", 1, oids.size());
+	}
+
+	/**
+	 * An error in the result handler (with stop-on-error) must not be reported as a successful completion,
+	 * and the buckets must stay unfinished so that the next run continues with them.
+	 */
+	@Test
+	public void test200StopOnErrorIsNotSuccess() throws Exception {
+		final String TEST_NAME = "test200StopOnErrorIsNotSuccess";
+		TestUtil.displayTestTile(this, TEST_NAME);
+
+		// GIVEN
+		Task task = createBucketTask(TEST_NAME, BUCKETS);
+		OperationResult result = task.getResult();
+		FailingTaskHandler handler = new FailingTaskHandler();
+		applicationContext.getAutowireCapableBeanFactory().autowireBean(handler);
+
+		// WHEN
+		TaskRunResult runResult = handler.run(task);
+
+		// THEN
+		display("Run result", runResult);
+		assertEquals("Wrong run result status", TaskRunResultStatus.TEMPORARY_ERROR, runResult.getRunResultStatus());
+		assertTrue("Operation result is not an error: " + runResult.getOperationResult().getStatus(),
+				runResult.getOperationResult().isError());
+		Task taskAfter = taskManager.getTask(task.getOid(), result);
+		assertNotNull("Work bucket sequence was removed",
+				taskAfter.getExtensionPropertyRealValue(SchemaConstants.MODEL_EXTENSION_WORK_BUCKET_SEQUENCE));
+		assertNoBucketsDone(taskAfter);
+	}
+
+	/**
+	 * Coordinator and workers are suspended while each of them is in the middle of its bucket. No bucket may be
+	 * marked as done; after resuming, the interrupted buckets are processed again and all objects are processed.
+	 */
+	@Test
+	public void test300SuspendAndResumeInTheMiddleOfBucket() throws Exception {
+		final String TEST_NAME = "test300SuspendAndResumeInTheMiddleOfBucket";
+		TestUtil.displayTestTile(this, TEST_NAME);
+
+		// GIVEN
+		PausingTaskHandler handler = new PausingTaskHandler();
+		applicationContext.getAutowireCapableBeanFactory().autowireBean(handler);
+		taskManager.registerHandler(PAUSING_HANDLER_URI, handler);
+		handler.paused = true;
+
+		Task task = taskManager.createTaskInstance(TestWorkBucketManager.class.getName() + "." + TEST_NAME);
+		task.setName(TEST_NAME);
+		task.setOwner(userAdministrator);
+		task.setHandlerUri(PAUSING_HANDLER_URI);
+		task.makeSingle();
+		task.setInitialExecutionStatus(TaskExecutionStatus.RUNNABLE);
+		task.setExtensionPropertyValue(SchemaConstants.MODEL_EXTENSION_WORK_BUCKETS, 2 * BUCKETS);
+		task.setExtensionPropertyValue(SchemaConstants.MODEL_EXTENSION_WORK_BUCKET_WORKERS, WORKERS);
+		OperationResult result = task.getResult();
+		taskManager.switchToBackground(task, result);
+
+		// each of the tasks stops at the first object of its bucket
+		IntegrationTestTools.waitFor("Waiting for the tasks to start processing their buckets", new Checker() {
+			@Override
+			public boolean check() throws CommonException {
+				return handler.processed.size() >= WORKERS;
+			}
+			@Override
+			public void timeout() {
+				assert false : "Timeout while waiting for the tasks to start processing their buckets, processed: " + handler.processed;
+			}
+		}, TIMEOUT);
+		Set<String> interrupted = new HashSet<>(handler.processed);
+
+		// WHEN
+		List<String> oids = new ArrayList<>();
+		for (Task subtask : task.listSubtasks(result)) {
+			oids.add(subtask.getOid());
+		}
+		assertEquals("Wrong # of workers", WORKERS, oids.size());
+		oids.add(task.getOid());
+		assertTrue("Tasks were not suspended", taskManager.suspendTasks(oids, TIMEOUT, result));
+
+		// THEN
+		Task taskAfterSuspend = taskManager.getTask(task.getOid(), result);
+		display("Task after suspend", taskAfterSuspend);
+		assertNoBucketsDone(taskAfterSuspend);
+
+		// WHEN
+		handler.paused = false;
+		taskManager.resumeTasks(oids, result);			// workers first, then the coordinator
+		waitForTaskCloseOrSuspend(task.getOid(), TIMEOUT);
+
+		// THEN
+		Task taskAfter = taskManager.getTask(task.getOid(), result);
+		display("Task after resume", taskAfter);
+		assertEquals("Wrong execution status", TaskExecutionStatus.CLOSED, taskAfter.getExecutionStatus());
+		assertEquals("Wrong objects processed", getAllUserOids(result), new HashSet<>(handler.processed));
+		for (String oid : interrupted) {
+			assertTrue("Object " + oid + " from an interrupted bucket was not processed again",
+					Collections.frequency(handler.processed, oid) > 1);
+		}
+		assertNull("Work bucket sequence was not removed",
+				taskAfter.getExtensionPropertyRealValue(SchemaConstants.MODEL_EXTENSION_WORK_BUCKET_SEQUENCE));
+		assertNoBucketsDone(taskAfter);			// cleaned up after all buckets were done
+	}
+
+	private void assertNoBucketsDone(Task task) {
+		assertTrue("Some work buckets were marked as done",
+				task.getExtensionProperty(SchemaConstants.MODEL_EXTENSION_WORK_BUCKET_DONE) == null
+						|| task.getExtensionProperty(SchemaConstants.MODEL_EXTENSION_WORK_BUCKET_DONE).isEmpty());
+	}
+
+	private Task createBucketTask(String name, int buckets) throws Exception {
+		Task task = taskManager.createTaskInstance(TestWorkBucketManager.class.getName() + "." + name);
+		task.setName(name);
+		task.setOwner(userAdministrator);
+		task.setInitialExecutionStatus(TaskExecutionStatus.SUSPENDED);
+		task.setExtensionPropertyValue(SchemaConstants.MODEL_EXTENSION_WORK_BUCKETS, buckets);
+		OperationResult result = task.getResult();
+		taskManager.switchToBackground(task, result);
+		return taskManager.getTask(task.getOid(), result);
+	}
+
+	private Set<String> getAllUserOids(OperationResult result) throws Exception {
+		Set<String> oids = new HashSet<>();
+		for (PrismObject<UserType> user : repositoryService.searchObjects(UserType.class, null, null, result)) {
+			oids.add(user.getOid());
+		}
+		return oids;
+	}
+
+	private static class FailingTaskHandler extends UserTaskHandler {
+
+		FailingTaskHandler() {
+			super("Failing", FailingTaskHandler.class.getName());
+		}
+
+		@Override
+		protected AbstractSearchIterativeResultHandler<ObjectType> createHandler(TaskRunResult runResult,
+				Task coordinatorTask, OperationResult opResult) {
+			return new AbstractSearchIterativeResultHandler<ObjectType>(coordinatorTask,
+					FailingTaskHandler.class.getName(), "fail", "in test", taskManager) {
+				@Override
+				protected boolean handleObject(PrismObject<ObjectType> object, Task workerTask, OperationResult result) {
+					throw new SystemException("Simulated failure for " + object);
+				}
+			};
+		}
+	}
+
+	/**
+	 * Records processed objects. While paused, it waits at the first object until the task is suspended.
+	 */
+	private static class PausingTaskHandler extends UserTaskHandler {
+
+		private final List<String> processed = Collections.synchronizedList(new ArrayList<>());
+		private volatile boolean paused;
+
+		PausingTaskHandler() {
+			super("Pausing", PausingTaskHandler.class.getName());
+		}
+
+		@Override
+		protected AbstractSearchIterativeResultHandler<ObjectType> createHandler(TaskRunResult runResult,
+				Task coordinatorTask, OperationResult opResult) {
+			return new AbstractSearchIterativeResultHandler<ObjectType>(coordinatorTask,
+					PausingTaskHandler.class.getName(), "pause", "in test", taskManager) {
+				@Override
+				protected boolean handleObject(PrismObject<ObjectType> object, Task workerTask, OperationResult result) {
+					processed.add(object.getOid());
+					while (paused && workerTask.canRun()) {
+						try {
+							Thread.sleep(100);
+						} catch (InterruptedException e) {
+							break;
+						}
+					}
+					return true;
+				}
+			};
+		}
+	}
+
+	/**
+	 * Processes all users in the repository.
+	 */
+	private static abstract class UserTaskHandler
+			extends AbstractSearchIterativeTaskHandler<ObjectType, AbstractSearchIterativeResultHandler<ObjectType>> {
+
+		UserTaskHandler(String taskName, String taskOperationPrefix) {
+			super(taskName, taskOperationPrefix);
+		}
+
+		@Override
+		protected ObjectQuery createQuery(AbstractSearchIterativeResultHandler<ObjectType> handler,
+				TaskRunResult runResult, Task task, OperationResult opResult) {
+			return new ObjectQuery();
+		}
+
+		@Override
+		protected Class<? extends ObjectType> getType(Task task) {
+			return UserType.class;
+		}
+
+		@Override
+		protected boolean useRepositoryDirectly(AbstractSearchIterativeResultHandler<ObjectType> resultHandler,
+				TaskRunResult runResult, Task coordinatorTask, OperationResult opResult) {
+			return true;
+		}
+
+		@Override
+		public String getCategoryName(Task task) {
+			return null;
+		}
+
+		@Override
+		public List<String> getCategoryNames() {
+			return null;
+		}
+	}
+}
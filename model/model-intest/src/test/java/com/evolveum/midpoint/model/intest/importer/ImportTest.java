@@ -27,6 +27,7 @@ import com.evolveum.midpoint.prism.xnode.MapXNode;
 import com.evolveum.midpoint.schema.MidPointPrismContextFactory;
 import com.evolveum.midpoint.schema.constants.MidPointConstants;
 import com.evolveum.midpoint.schema.constants.SchemaConstants;
+import com.evolveum.midpoint.schema.result.OperationConstants;
 import com.evolveum.midpoint.schema.internals.InternalsConfig;
 import com.evolveum.midpoint.schema.result.OperationResult;
 import com.evolveum.midpoint.schema.util.ObjectQueryUtil;
@@ -56,10 +57,12 @@ import org.xml.sax.SAXException;
 import javax.xml.datatype.XMLGregorianCalendar;
 import javax.xml.namespace.QName;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 
 import static com.evolveum.midpoint.schema.util.MiscSchemaUtil.getDefaultImportOptions;
@@ -96,6 +99,9 @@ public class ImportTest extends AbstractConfiguredModelIntegrationTest {
 	private static final String TASK1_OWNER_OID = "c0c010c0-d34d-b33f-f00d-111111111111";
 	
 	private static final File RESOURCE_DUMMY_CHANGED_FILE = new File(TEST_FILE_DIRECTORY, "resource-dummy-changed.xml");;
+
+	private static final int PARALLEL_USERS = 200;
+	private static final int PARALLEL_THREADS = 4;
 	
 	private DummyResource dummyResource;
 	private DummyResourceContoller dummyResourceCtl;
@@ -691,6 +697,90 @@ public class ImportTest extends AbstractConfiguredModelIntegrationTest {
         dummyAuditService.assertExecutionSuccess();
 	}
 	
+	/**
+	 * Many small objects imported by several worker threads: none of them may be lost (e.g. when the queue
+	 * runs empty just before the last objects are submitted) and each gets exactly one result.
+	 */
+	@Test
+	public void test050ImportUsersParallel() throws Exception {
+		final String TEST_NAME = "test050ImportUsersParallel";
+		TestUtil.displayTestTile(this,TEST_NAME);
+		// GIVEN
+		Task task = taskManager.createTaskInstance();
+		OperationResult result = new OperationResult(ImportTest.class.getName() + "." + TEST_NAME);
+
+		ImportOptionsType importOptions = getDefaultImportOptions();
+		importOptions.setThreads(PARALLEL_THREADS);
+		importOptions.setSummarizeSucceses(false);			// we want to count the object results
+		importOptions.setSummarizeErrors(false);
+
+		// WHEN
+		modelService.importObjectsFromStream(createParallelUsersStream(), importOptions, task, result);
+
+		// THEN
+		result.computeStatus();
+		display("Result after parallel import", result);
+		TestUtil.assertSuccess("Import has failed (result)", result);
+
+		assertUsers(6 + PARALLEL_USERS);
+		for (int i = 0; i < PARALLEL_USERS; i++) {
+			ObjectQuery query = ObjectQueryUtil.createNameQuery(getParallelUserName(i), prismContext);
+			assertEquals("User " + getParallelUserName(i) + " was not imported", 1,
+					repositoryService.searchObjects(UserType.class, query, null, result).size());
+		}
+		assertEquals("Wrong number of object results", PARALLEL_USERS, countResults(result, OperationConstants.IMPORT_OBJECT));
+	}
+
+	/**
+	 * Importing the same objects again fails for each of them; the errors are counted and reported.
+	 */
+	@Test
+	public void test052DuplicateImportUsersParallel() throws Exception {
+		final String TEST_NAME = "test052DuplicateImportUsersParallel";
+		TestUtil.displayTestTile(this,TEST_NAME);
+		// GIVEN
+		Task task = taskManager.createTaskInstance();
+		OperationResult result = new OperationResult(ImportTest.class.getName() + "." + TEST_NAME);
+
+		ImportOptionsType importOptions = getDefaultImportOptions();
+		importOptions.setThreads(PARALLEL_THREADS);
+		importOptions.setSummarizeSucceses(false);			// we want to count the object results
+		importOptions.setSummarizeErrors(false);
+
+		// WHEN
+		modelService.importObjectsFromStream(createParallelUsersStream(), importOptions, task, result);
+
+		// THEN
+		result.computeStatus();
+		display("Result after duplicate parallel import", result);
+		assertFalse("Duplicate import has not failed", result.isSuccess());
+		assertEquals("Wrong number of object results", PARALLEL_USERS, countResults(result, OperationConstants.IMPORT_OBJECT));
+
+		assertUsers(6 + PARALLEL_USERS);
+	}
+
+	private ByteArrayInputStream createParallelUsersStream() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("<objects xmlns=\"").append(SchemaConstants.NS_C).append("\">\n");
+		for (int i = 0; i < PARALLEL_USERS; i++) {
+			sb.append("<user><name>").append(getParallelUserName(i)).append("</name></user>\n");
+		}
+		sb.append("</objects>\n");
+		return new ByteArrayInputStream(sb.toString().getBytes(StandardCharsets.UTF_8));
+	}
+
+	private String getParallelUserName(int i) {
+		return String.format("parallel-%03d", i);
+	}
+
+	private int countResults(OperationResult result, String operation) {
+		int count = operation.equals(result.getOperation()) ? 1 : 0;
+		for (OperationResult subresult : result.getSubresults()) {
+			count += countResults(subresult, operation);
+		}
+		return count;
+	}
+
 	private void assertDummyResource(PrismObject<ResourceType> resource, boolean fromRepo) {
 		PrismContainer<Containerable> configurationPropertiesContainer = assertResource(resource, "Dummy Resource", RESOURCE_DUMMY_NAMESPACE, 
 				dummyConnector.getOid(), fromRepo);
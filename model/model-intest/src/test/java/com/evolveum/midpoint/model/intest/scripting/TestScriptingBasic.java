@@ -16,6 +16,8 @@
 package com.evolveum.midpoint.model.intest.scripting;
 
 import com.evolveum.midpoint.common.LoggingConfigurationManager;
+import com.evolveum.midpoint.model.api.ScriptExecutionException;
+import com.evolveum.midpoint.model.impl.scripting.ActionExecutor;
 import com.evolveum.midpoint.model.impl.scripting.Data;
 import com.evolveum.midpoint.model.impl.scripting.ExecutionContext;
 import com.evolveum.midpoint.model.impl.scripting.ScriptingExpressionEvaluator;
@@ -31,6 +33,7 @@ import com.evolveum.midpoint.test.util.LogfileTestTailer;
 import com.evolveum.midpoint.test.util.TestUtil;
 import com.evolveum.midpoint.util.exception.SchemaException;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.ResourceType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.RoleType;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.ShadowType;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.UserType;
 import com.evolveum.midpoint.xml.ns._public.model.scripting_3.*;
@@ -43,12 +46,14 @@ import org.testng.collections.Sets;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
 import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertNull;
 import static org.testng.AssertJUnit.assertTrue;
 
 /**
@@ -82,6 +87,15 @@ public class TestScriptingBasic extends AbstractInitializedModelIntegrationTest
     private static final File NOTIFICATION_ABOUT_JACK_FILE = new File(TEST_DIR, "notification-about-jack.xml");
     private static final File NOTIFICATION_ABOUT_JACK_TYPE2_FILE = new File(TEST_DIR, "notification-about-jack-type2.xml");
 	private static final File SCRIPTING_USERS_FILE = new File(TEST_DIR, "scripting-users.xml");
+	private static final File STREAM_NOTIFY_WHOLE_INPUT_FILE = new File(TEST_DIR, "stream-notify-whole-input.xml");
+	private static final File STREAM_TWO_SEARCHES_FILE = new File(TEST_DIR, "stream-two-searches.xml");
+	private static final File STREAM_EMPTY_SEARCH_FILE = new File(TEST_DIR, "stream-empty-search.xml");
+	private static final File STREAM_SEARCH_VARIABLE_FILE = new File(TEST_DIR, "stream-search-variable.xml");
+	private static final File STREAM_ACTION_ERROR_FILE = new File(TEST_DIR, "stream-action-error.xml");
+	private static final File SEARCH_ACTION_ERROR_FILE = new File(TEST_DIR, "search-action-error.xml");
+
+	private static final String RECORD_INPUT_ACTION = "test-record-input";
+	private static final String FAIL_ACTION = "test-fail";
 
     @Autowired
     private ScriptingExpressionEvaluator scriptingExpressionEvaluator;
@@ -654,6 +668,168 @@ public class TestScriptingBasic extends AbstractInitializedModelIntegrationTest
 		result.computeStatus();
 	}
 
+	/**
+	 * Notification for the whole input must be produced once, even if the search is streamed.
+	 */
+	@Test
+	public void test600StreamedSearchNotifyForWholeInput() throws Exception {
+		final String TEST_NAME = "test600StreamedSearchNotifyForWholeInput";
+		TestUtil.displayTestTile(this, TEST_NAME);
+
+		// GIVEN
+		OperationResult result = new OperationResult(DOT_CLASS + TEST_NAME);
+		PrismProperty<ScriptingExpressionType> expression = parseAnyData(STREAM_NOTIFY_WHOLE_INPUT_FILE);
+		prepareNotifications();
+
+		// WHEN
+		ExecutionContext output = scriptingExpressionEvaluator.evaluateExpression(expression.getAnyValue().getValue(), result);
+
+		// THEN
+		IntegrationTestTools.display("stdout", output.getConsoleOutput());
+		result.computeStatus();
+		TestUtil.assertSuccess(result);
+		assertEquals("Produced 1 event(s)\n", output.getConsoleOutput());
+
+		IntegrationTestTools.display("Dummy transport", dummyTransport);
+		checkDummyTransportMessages("Custom", 1);
+	}
+
+	/**
+	 * A search following a streamed search does not depend on its input, so it must be executed only once.
+	 */
+	@Test
+	public void test610StreamedSearchFollowedBySearch() throws Exception {
+		final String TEST_NAME = "test610StreamedSearchFollowedBySearch";
+		TestUtil.displayTestTile(this, TEST_NAME);
+
+		// GIVEN
+		OperationResult result = new OperationResult(DOT_CLASS + TEST_NAME);
+		PrismProperty<ScriptingExpressionType> expression = parseAnyData(STREAM_TWO_SEARCHES_FILE);
+		int roles = repositoryService.countObjects(RoleType.class, null, result);
+
+		// WHEN
+		ExecutionContext output = scriptingExpressionEvaluator.evaluateExpression(expression.getAnyValue().getValue(), result);
+
+		// THEN
+		result.computeStatus();
+		TestUtil.assertSuccess(result);
+		assertEquals("Unexpected # of items in output", roles, output.getFinalOutput().getData().size());
+	}
+
+	/**
+	 * Downstream stages of a streamed search have to be executed (with empty input) even if nothing is found.
+	 */
+	@Test
+	public void test620StreamedSearchNothingFound() throws Exception {
+		final String TEST_NAME = "test620StreamedSearchNothingFound";
+		TestUtil.displayTestTile(this, TEST_NAME);
+
+		// GIVEN
+		OperationResult result = new OperationResult(DOT_CLASS + TEST_NAME);
+		PrismProperty<ScriptingExpressionType> expression = parseAnyData(STREAM_EMPTY_SEARCH_FILE);
+
+		// WHEN
+		ExecutionContext output = scriptingExpressionEvaluator.evaluateExpression(expression.getAnyValue().getValue(), result);
+
+		// THEN
+		IntegrationTestTools.display("stdout", output.getConsoleOutput());
+		result.computeStatus();
+		TestUtil.assertSuccess(result);
+		assertNoOutputData(output);
+		assertEquals("Warning: no matching UserType object found\nProduced 0 event(s)\n", output.getConsoleOutput());
+	}
+
+	/**
+	 * Objects are passed to the downstream stage one by one; the search variable is not visible there
+	 * (as it is not visible in a non-streamed pipeline).
+	 */
+	@Test
+	public void test630StreamedSearchVariable() throws Exception {
+		final String TEST_NAME = "test630StreamedSearchVariable";
+		TestUtil.displayTestTile(this, TEST_NAME);
+
+		// GIVEN
+		OperationResult result = new OperationResult(DOT_CLASS + TEST_NAME);
+		PrismProperty<ScriptingExpressionType> expression = parseAnyData(STREAM_SEARCH_VARIABLE_FILE);
+		final List<Integer> inputSizes = new ArrayList<>();
+		final List<Data> variableValues = new ArrayList<>();
+		scriptingExpressionEvaluator.registerActionExecutor(RECORD_INPUT_ACTION, new ActionExecutor() {
+			@Override
+			public Data execute(ActionExpressionType command, Data input, ExecutionContext context, OperationResult parentResult)
+					throws ScriptExecutionException {
+				inputSizes.add(input.getData().size());
+				variableValues.add(context.getVariable("user"));
+				return input;
+			}
+
+			@Override
+			public boolean canBeStreamed(ActionExpressionType command) {
+				return true;
+			}
+		});
+		int users = repositoryService.countObjects(UserType.class, null, result);
+
+		// WHEN
+		ExecutionContext output = scriptingExpressionEvaluator.evaluateExpression(expression.getAnyValue().getValue(), result);
+
+		// THEN
+		result.computeStatus();
+		TestUtil.assertSuccess(result);
+		assertEquals("Unexpected # of items in output", users, output.getFinalOutput().getData().size());
+		assertEquals("Unexpected # of action executions", users, inputSizes.size());
+		for (int i = 0; i < users; i++) {
+			assertEquals("Unexpected input size in execution #" + i, 1, (int) inputSizes.get(i));
+			assertNull("Search variable visible in execution #" + i, variableValues.get(i));
+		}
+	}
+
+	/**
+	 * An error in a downstream stage of a streamed search must be reported in the same way
+	 * as in the non-streamed pipeline, i.e. as ScriptExecutionException.
+	 */
+	@Test
+	public void test640StreamedSearchActionError() throws Exception {
+		final String TEST_NAME = "test640StreamedSearchActionError";
+		TestUtil.displayTestTile(this, TEST_NAME);
+
+		// GIVEN
+		final List<Integer> inputSizes = new ArrayList<>();
+		scriptingExpressionEvaluator.registerActionExecutor(FAIL_ACTION, new ActionExecutor() {
+			@Override
+			public Data execute(ActionExpressionType command, Data input, ExecutionContext context, OperationResult parentResult)
+					throws ScriptExecutionException {
+				inputSizes.add(input.getData().size());
+				throw new ScriptExecutionException("Simulated failure");
+			}
+
+			@Override
+			public boolean canBeStreamed(ActionExpressionType command) {
+				return true;
+			}
+		});
+		int users = repositoryService.countObjects(UserType.class, null, new OperationResult(DOT_CLASS + TEST_NAME));
+
+		// WHEN + THEN
+		ScriptExecutionException nonStreamed = evaluateExpectingError(SEARCH_ACTION_ERROR_FILE, TEST_NAME);
+		assertEquals("Unexpected action inputs (non-streamed)", Arrays.asList(users), inputSizes);
+
+		inputSizes.clear();
+		ScriptExecutionException streamed = evaluateExpectingError(STREAM_ACTION_ERROR_FILE, TEST_NAME);
+		assertEquals("Unexpected action inputs (streamed)", Arrays.asList(1), inputSizes);        // the search was stopped
+		assertEquals("Different error in streamed and non-streamed mode", nonStreamed.getMessage(), streamed.getMessage());
+	}
+
+	private ScriptExecutionException evaluateExpectingError(File file, String testName) throws Exception {
+		OperationResult result = new OperationResult(DOT_CLASS + testName);
+		PrismProperty<ScriptingExpressionType> expression = parseAnyData(file);
+		try {
+			scriptingExpressionEvaluator.evaluateExpression(expression.getAnyValue().getValue(), result);
+			throw new AssertionError("Unexpected success of " + file);
+		} catch (ScriptExecutionException e) {
+			IntegrationTestTools.display("Expected exception", e);
+			return e;
+		}
+	}
 
 	private void assertNoOutputData(ExecutionContext output) {
         assertTrue("Script returned unexpected data", output.getFinalOutput() == null || output.getFinalOutput().getData().isEmpty());
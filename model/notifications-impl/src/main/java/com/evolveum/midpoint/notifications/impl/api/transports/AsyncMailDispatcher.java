@@ -0,0 +1,291 @@
+/*
+ * Copyright (c) 2010-2016 Evolveum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.evolveum.midpoint.notifications.impl.api.transports;
+
+import com.evolveum.midpoint.notifications.api.transports.Message;
+import com.evolveum.midpoint.util.logging.LoggingUtils;
+import com.evolveum.midpoint.util.logging.Trace;
+import com.evolveum.midpoint.util.logging.TraceManager;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.MailConfigurationType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.MailDispatchConfigurationType;
+import org.apache.commons.lang.StringUtils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sends mail messages asynchronously, using a pool of worker threads fed by a bounded in-memory queue.
+ *
+ * - If the queue is full, the message is sent by the submitting thread (so we never lose a message
+ *   and the producers are slowed down to the speed of the mail server).
+ * - Failed messages are retried after retryInterval, 2*retryInterval, 4*retryInterval, ... until maxAttempts is reached.
+ * - If digestInterval is set, plain text messages for a single recipient are collected for the given time
+ *   and then sent as one message.
+ *
+ * Messages waiting in the queue (or for a retry) are not persisted. On shutdown, the queued messages
+ * (including collected digests) are sent, but scheduled retries are abandoned.
+ *
+ * @author mederly
+ */
+public class AsyncMailDispatcher {
+
+    private static final Trace LOGGER = TraceManager.getTrace(AsyncMailDispatcher.class);
+
+    private static final int DEFAULT_THREADS = 2;
+    private static final int DEFAULT_QUEUE_SIZE = 1000;
+    private static final int DEFAULT_MAX_ATTEMPTS = 3;
+    private static final long DEFAULT_RETRY_INTERVAL = 10000L;
+    private static final long MAX_RETRY_INTERVAL = 3600000L;
+    private static final long SHUTDOWN_WAIT_TIME = 30000L;
+
+    private final MailTransport mailTransport;
+
+    // all guarded by this
+    private ThreadPoolExecutor executor;
+    private ScheduledExecutorService scheduler;
+    private final Map<String, List<Message>> digests = new HashMap<>();
+    private final Map<String, MailConfigurationType> digestConfigurations = new HashMap<>();
+    private boolean stopped;
+
+    public AsyncMailDispatcher(MailTransport mailTransport) {
+        this.mailTransport = mailTransport;
+    }
+
+    /**
+     * Configuration is the mail configuration valid at the time of submission; it is used to send
+     * the message (and its retries).
+     */
+    public void submit(Message message, MailConfigurationType configuration) {
+        MailDispatchConfigurationType dispatchConfiguration = configuration.getAsynchronousDispatch();
+        SendJob job = null;
+        synchronized (this) {
+            if (!stopped) {
+                start(dispatchConfiguration);
+                long digestInterval = dispatchConfiguration.getDigestInterval() != null ? dispatchConfiguration.getDigestInterval() : 0;
+                if (digestInterval > 0 && isDigestable(message)) {
+                    addToDigest(message, configuration, digestInterval);
+                    return;
+                }
+            }
+            job = new SendJob(message, configuration);
+        }
+        execute(job);
+    }
+
+    private void start(MailDispatchConfigurationType dispatchConfiguration) {
+        int threads = getThreads(dispatchConfiguration);
+        if (executor == null) {
+            int queueSize = dispatchConfiguration.getQueueSize() != null && dispatchConfiguration.getQueueSize() > 0 ?
+                    dispatchConfiguration.getQueueSize() : DEFAULT_QUEUE_SIZE;
+            executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<Runnable>(queueSize), new DispatcherThreadFactory("MailDispatcher"),
+                    (job, pool) -> {
+                        // queue full or dispatcher stopped: let's send the message right now, in the caller's thread
+                        LOGGER.debug("Mail dispatcher queue is full or the dispatcher is stopped, sending the message synchronously");
+                        job.run();
+                    });
+            scheduler = Executors.newSingleThreadScheduledExecutor(new DispatcherThreadFactory("MailDispatcherScheduler"));
+            LOGGER.info("Asynchronous mail dispatcher started (threads: {}, queue size: {})", threads, queueSize);
+        } else if (executor.getMaximumPoolSize() != threads) {
+            LOGGER.info("Changing number of mail dispatcher threads from {} to {}", executor.getMaximumPoolSize(), threads);
+            if (threads > executor.getMaximumPoolSize()) {
+                executor.setMaximumPoolSize(threads);
+                executor.setCorePoolSize(threads);
+            } else {
+                executor.setCorePoolSize(threads);
+                executor.setMaximumPoolSize(threads);
+            }
+        }
+    }
+
+    private int getThreads(MailDispatchConfigurationType dispatchConfiguration) {
+        return dispatchConfiguration.getThreads() != null && dispatchConfiguration.getThreads() > 0 ?
+                dispatchConfiguration.getThreads() : DEFAULT_THREADS;
+    }
+
+    private void execute(SendJob job) {
+        ThreadPoolExecutor currentExecutor;
+        synchronized (this) {
+            currentExecutor = executor;
+        }
+        if (currentExecutor != null) {
+            currentExecutor.execute(job);       // the rejection handler runs the job if it cannot be queued
+        } else {
+            job.run();
+        }
+    }
+
+    //region Digests
+    private boolean isDigestable(Message message) {
+        return message.getTo() != null && message.getTo().size() == 1
+                && (StringUtils.isEmpty(message.getContentType()) || message.getContentType().startsWith("text/plain"));
+    }
+
+    private void addToDigest(Message message, MailConfigurationType configuration, long digestInterval) {
+        final String key = message.getTo().get(0) + "|" + StringUtils.defaultString(message.getContentType());
+        List<Message> messages = digests.get(key);
+        if (messages == null) {
+            messages = new ArrayList<>();
+            digests.put(key, messages);
+            digestConfigurations.put(key, configuration);
+            scheduler.schedule(() -> flushDigest(key), digestInterval, TimeUnit.MILLISECONDS);
+        }
+        messages.add(message);
+    }
+
+    private void flushDigest(String key) {
+        SendJob job;
+        synchronized (this) {
+            List<Message> messages = digests.remove(key);
+            MailConfigurationType configuration = digestConfigurations.remove(key);
+            if (messages == null || messages.isEmpty()) {
+                return;
+            }
+            job = new SendJob(createDigest(messages), configuration);
+        }
+        execute(job);
+    }
+
+    private Message createDigest(List<Message> messages) {
+        Message first = messages.get(0);
+        if (messages.size() == 1) {
+            return first;
+        }
+        StringBuilder body = new StringBuilder();
+        for (Message message : messages) {
+            body.append("==== ").append(message.getSubject()).append(" ====\n\n");
+            body.append(message.getBody()).append("\n\n");
+        }
+        Message digest = new Message();
+        digest.setTo(first.getTo());
+        digest.setContentType(first.getContentType());
+        digest.setSubject("[" + messages.size() + " notifications] " + first.getSubject());
+        digest.setBody(body.toString());
+        LOGGER.trace("Created digest of {} messages for {}", messages.size(), first.getTo());
+        return digest;
+    }
+    //endregion
+
+    private class SendJob implements Runnable {
+
+        private final Message message;
+        private final MailConfigurationType configuration;
+        private int attempt = 1;
+
+        SendJob(Message message, MailConfigurationType configuration) {
+            this.message = message;
+            this.configuration = configuration;
+        }
+
+        @Override
+        public void run() {
+            boolean success;
+            try {
+                success = mailTransport.sendQueuedMessage(message, configuration, attempt);
+            } catch (RuntimeException e) {
+                LoggingUtils.logUnexpectedException(LOGGER, "Couldn't send mail message to {}", e, message.getTo());
+                success = false;
+            }
+            if (!success) {
+                scheduleRetry();
+            }
+        }
+
+        private void scheduleRetry() {
+            MailDispatchConfigurationType dispatchConfiguration = configuration.getAsynchronousDispatch();
+            int maxAttempts = dispatchConfiguration.getMaxAttempts() != null ? dispatchConfiguration.getMaxAttempts() : DEFAULT_MAX_ATTEMPTS;
+            if (attempt >= maxAttempts) {
+                LOGGER.error("Mail message to {} could not be sent in {} attempt(s), giving up. Message:\n{}",
+                        message.getTo(), attempt, message.debugDump());
+                return;
+            }
+            long retryInterval = dispatchConfiguration.getRetryInterval() != null ? dispatchConfiguration.getRetryInterval() : DEFAULT_RETRY_INTERVAL;
+            long delay = Math.min(retryInterval << Math.min(attempt - 1, 20), MAX_RETRY_INTERVAL);
+            attempt++;
+            synchronized (AsyncMailDispatcher.this) {
+                if (stopped || scheduler == null) {
+                    LOGGER.warn("Mail dispatcher is stopped, mail message to {} will not be retried. Message:\n{}",
+                            message.getTo(), message.debugDump());
+                    return;
+                }
+                LOGGER.debug("Mail message to {} will be retried in {} ms (attempt {} of {})", message.getTo(), delay, attempt, maxAttempts);
+                scheduler.schedule(() -> execute(this), delay, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /**
+     * Sends all queued messages and collected digests, abandons scheduled retries and stops the threads.
+     */
+    public void shutdown() {
+        ThreadPoolExecutor executorToStop;
+        ScheduledExecutorService schedulerToStop;
+        List<String> digestKeys;
+        synchronized (this) {
+            if (stopped) {
+                return;
+            }
+            stopped = true;
+            executorToStop = executor;
+            schedulerToStop = scheduler;
+            digestKeys = new ArrayList<>(digests.keySet());
+        }
+        if (executorToStop == null) {
+            return;
+        }
+        schedulerToStop.shutdownNow();
+        for (String key : digestKeys) {
+            flushDigest(key);
+        }
+        LOGGER.info("Stopping asynchronous mail dispatcher, {} message(s) in the queue", executorToStop.getQueue().size());
+        executorToStop.shutdown();
+        try {
+            if (!executorToStop.awaitTermination(SHUTDOWN_WAIT_TIME, TimeUnit.MILLISECONDS)) {
+                LOGGER.warn("Mail dispatcher threads did not finish in {} ms, {} message(s) will not be sent",
+                        SHUTDOWN_WAIT_TIME, executorToStop.getQueue().size());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static class DispatcherThreadFactory implements ThreadFactory {
+
+        private final String prefix;
+        private final AtomicInteger counter = new AtomicInteger();
+
+        DispatcherThreadFactory(String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, prefix + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) 2010-2016 Evolveum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.evolveum.midpoint.notifications.impl.api.transports;
+
+import com.evolveum.midpoint.util.logging.Trace;
+import com.evolveum.midpoint.util.logging.TraceManager;
+import org.apache.commons.lang.StringUtils;
+
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.Session;
+import javax.mail.Transport;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps connected SMTP transports, so that consecutive messages sent to the same server
+ * do not have to open (and authenticate) a new connection each time.
+ *
+ * A transport is used by one thread at a time: it is acquired, used to send a message, and then released
+ * back to the pool (or closed if sending failed in any way). Idle connections are closed after MAX_IDLE_TIME,
+ * as mail servers usually drop them anyway.
+ *
+ * @author mederly
+ */
+public class MailConnectionPool {
+
+    private static final Trace LOGGER = TraceManager.getTrace(MailConnectionPool.class);
+
+    private static final long MAX_IDLE_TIME = 60000L;
+    private static final int MAX_IDLE_PER_SERVER = 5;
+
+    private static class PooledConnection {
+        final Transport transport;
+        final long releasedAt;
+
+        PooledConnection(Transport transport) {
+            this.transport = transport;
+            this.releasedAt = System.currentTimeMillis();
+        }
+    }
+
+    // key is the server identification (see MailTransport); guarded by this
+    private final Map<String, Deque<PooledConnection>> idleConnections = new HashMap<>();
+
+    /**
+     * Sends the message using a pooled (or newly opened) connection. The connection is returned to the pool only
+     * if the message was sent. After any failure, including runtime exceptions, it is closed, as its state is unknown.
+     */
+    public void send(String key, Session session, String username, String password, Message message) throws MessagingException {
+        Transport transport = acquire(key, session, username, password);
+        boolean sent = false;
+        try {
+            transport.sendMessage(message, message.getAllRecipients());
+            sent = true;
+        } finally {
+            if (sent) {
+                release(key, transport);
+            } else {
+                discard(transport);
+            }
+        }
+    }
+
+    public Transport acquire(String key, Session session, String username, String password) throws MessagingException {
+        PooledConnection pooled;
+        while ((pooled = pollIdle(key)) != null) {
+            if (System.currentTimeMillis() - pooled.releasedAt <= MAX_IDLE_TIME && pooled.transport.isConnected()) {
+                LOGGER.trace("Reusing SMTP connection for {}", key);
+                return pooled.transport;
+            }
+            close(pooled.transport);
+        }
+        LOGGER.trace("Opening new SMTP connection for {}", key);
+        Transport transport = session.getTransport("smtp");
+        if (StringUtils.isNotEmpty(username)) {
+            transport.connect(username, password);
+        } else {
+            transport.connect();
+        }
+        return transport;
+    }
+
+    public void release(String key, Transport transport) {
+        Transport surplus = null;
+        synchronized (this) {
+            Deque<PooledConnection> connections = idleConnections.get(key);
+            if (connections == null) {
+                connections = new ArrayDeque<>();
+                idleConnections.put(key, connections);
+            }
+            connections.addFirst(new PooledConnection(transport));
+            if (connections.size() > MAX_IDLE_PER_SERVER) {
+                surplus = connections.removeLast().transport;
+            }
+        }
+        if (surplus != null) {
+            close(surplus);
+        }
+    }
+
+    public void discard(Transport transport) {
+        if (transport != null) {
+            close(transport);
+        }
+    }
+
+    public void closeAll() {
+        List<PooledConnection> toClose = new ArrayList<>();
+        synchronized (this) {
+            for (Deque<PooledConnection> connections : idleConnections.values()) {
+                toClose.addAll(connections);
+            }
+            idleConnections.clear();
+        }
+        for (PooledConnection pooled : toClose) {
+            close(pooled.transport);
+        }
+    }
+
+    synchronized int getIdleCount(String key) {
+        Deque<PooledConnection> connections = idleConnections.get(key);
+        return connections != null ? connections.size() : 0;
+    }
+
+    private synchronized PooledConnection pollIdle(String key) {
+        Deque<PooledConnection> connections = idleConnections.get(key);
+        return connections != null ? connections.pollFirst() : null;
+    }
+
+    private void close(Transport transport) {
+        try {
+            transport.close();
+        } catch (MessagingException | RuntimeException e) {
+            LOGGER.debug("Couldn't close SMTP connection, ignoring it: {}", e.getMessage(), e);
+        }
+    }
+}
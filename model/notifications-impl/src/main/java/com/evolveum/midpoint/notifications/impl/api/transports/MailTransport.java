@@ -17,14 +17,21 @@
 package com.evolveum.midpoint.notifications.impl.api.transports;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Date;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.mail.MessagingException;
 import javax.mail.Session;
 import javax.mail.internet.InternetAddress;
 import javax.mail.internet.MimeMessage;
+import javax.xml.bind.DatatypeConverter;
 
 import org.apache.commons.lang.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -40,6 +47,8 @@ import com.evolveum.midpoint.prism.crypto.Protector;
 import com.evolveum.midpoint.repo.api.RepositoryService;
 import com.evolveum.midpoint.schema.result.OperationResult;
 import com.evolveum.midpoint.task.api.Task;
+import com.evolveum.midpoint.task.api.TaskManager;
+import com.evolveum.midpoint.util.exception.SystemException;
 import com.evolveum.midpoint.util.logging.LoggingUtils;
 import com.evolveum.midpoint.util.logging.Trace;
 import com.evolveum.midpoint.util.logging.TraceManager;
@@ -51,6 +60,9 @@ import com.evolveum.midpoint.xml.ns._public.common.common_3.UserType;
 import com.evolveum.prism.xml.ns._public.types_3.ProtectedStringType;
 
 /**
+ * Sends mail messages via SMTP. Connections to mail servers are reused (see {@link MailConnectionPool}).
+ * If asynchronous dispatch is configured, messages are sent by {@link AsyncMailDispatcher}.
+ *
  * @author mederly
  */
 @Component
@@ -72,11 +84,24 @@ public class MailTransport implements Transport {
     @Autowired
     private NotificationManager notificationManager;
 
+    @Autowired
+    private TaskManager taskManager;
+
+    private final MailConnectionPool connectionPool = new MailConnectionPool();
+    private final ConcurrentMap<String, Session> sessions = new ConcurrentHashMap<>();
+    private final AsyncMailDispatcher dispatcher = new AsyncMailDispatcher(this);
+
     @PostConstruct
     public void init() {
         notificationManager.registerTransport(NAME, this);
     }
 
+    @PreDestroy
+    public void shutdown() {
+        dispatcher.shutdown();
+        connectionPool.closeAll();
+    }
+
     @Override
     public void send(Message mailMessage, String transportName, Task task, OperationResult parentResult) {
 
@@ -133,6 +158,34 @@ public class MailTransport implements Transport {
             return;
         }
 
+        if (mailConfigurationType.getAsynchronousDispatch() != null) {
+            dispatcher.submit(mailMessage, mailConfigurationType);
+            task.recordState("Notification mail to " + mailMessage.getTo() + " queued for sending");
+            result.recordInProgress();
+            return;
+        }
+
+        if (!sendToServers(mailMessage, mailConfigurationType, task, result)) {
+            result.recordWarning("Mail notification to " + mailMessage.getTo() + " could not be sent.");
+        }
+    }
+
+    /**
+     * Called by the asynchronous dispatcher. Returns false if the message should be retried.
+     */
+    boolean sendQueuedMessage(Message mailMessage, MailConfigurationType mailConfigurationType, int attempt) {
+        Task task = taskManager.createTaskInstance(DOT_CLASS + "sendQueuedMessage");
+        OperationResult result = task.getResult();
+        result.addCollectionOfSerializablesAsParam("mailMessage recipient(s)", mailMessage.getTo());
+        result.addParam("mailMessage subject", mailMessage.getSubject());
+        result.addContext("attempt", attempt);
+        boolean success = sendToServers(mailMessage, mailConfigurationType, task, result);
+        result.computeStatusIfUnknown();
+        return success;
+    }
+
+    private boolean sendToServers(Message mailMessage, MailConfigurationType mailConfigurationType, Task task, OperationResult result) {
+
         long start = System.currentTimeMillis();
 
         String from = mailConfigurationType.getDefaultFrom() != null ? mailConfigurationType.getDefaultFrom() : "nobody@nowhere.org";
@@ -144,48 +197,25 @@ public class MailTransport implements Transport {
             resultForServer.addContext("server", host);
             resultForServer.addContext("port", mailServerConfigurationType.getPort());
 
-            Properties properties = System.getProperties();
-            properties.setProperty("mail.smtp.host", host);
-            if (mailServerConfigurationType.getPort() != null) {
-                properties.setProperty("mail.smtp.port", String.valueOf(mailServerConfigurationType.getPort()));
-            }
-            MailTransportSecurityType mailTransportSecurityType = mailServerConfigurationType.getTransportSecurity();
-
-            boolean sslEnabled = false, starttlsEnable = false, starttlsRequired = false;
-			if (mailTransportSecurityType != null) {
-				switch (mailTransportSecurityType) {
-					case STARTTLS_ENABLED:
-						starttlsEnable = true;
-						break;
-					case STARTTLS_REQUIRED:
-						starttlsEnable = true;
-						starttlsRequired = true;
-						break;
-					case SSL:
-						sslEnabled = true;
-						break;
-				}
-			}
-            properties.put("mail.smtp.ssl.enable", "" + sslEnabled);
-            properties.put("mail.smtp.starttls.enable", "" + starttlsEnable);
-            properties.put("mail.smtp.starttls.required", "" + starttlsRequired);
-            if (Boolean.TRUE.equals(mailConfigurationType.isDebug())) {
-                properties.put("mail.debug", "true");
-            }
+            task.recordState("Sending notification mail via " + host);
 
-            if (LOGGER.isDebugEnabled()) {
-                LOGGER.debug("Using mail properties: ");
-                for (Object key : properties.keySet()) {
-                    if (key instanceof String && ((String) key).startsWith("mail.")) {
-                        LOGGER.debug(" - " + key + " = " + properties.get(key));
+            String password = null;
+            if (StringUtils.isNotEmpty(mailServerConfigurationType.getUsername())) {
+                ProtectedStringType passwordProtected = mailServerConfigurationType.getPassword();
+                if (passwordProtected != null) {
+                    try {
+                        password = protector.decryptString(passwordProtected);
+                    } catch (EncryptionException e) {
+                        String msg = "Couldn't send mail message to " + mailMessage.getTo() + " via " + host + ", because the plaintext password value couldn't be obtained. Trying another mail server, if there is any.";
+                        LoggingUtils.logException(LOGGER, msg, e);
+                        resultForServer.recordFatalError(msg, e);
+                        continue;
                     }
                 }
             }
 
-            task.recordState("Sending notification mail via " + host);
-
-            Session session = Session.getInstance(properties);
-
+            String connectionKey = getConnectionKey(mailServerConfigurationType, mailConfigurationType, password);
+            Session session = getSession(connectionKey, mailServerConfigurationType, mailConfigurationType);
             try {
                 MimeMessage mimeMessage = new MimeMessage(session);
                 mimeMessage.setFrom(new InternetAddress(from));
@@ -198,32 +228,14 @@ public class MailTransport implements Transport {
                     contentType = "text/plain; charset=UTF-8";
                 }
                 mimeMessage.setContent(mailMessage.getBody(), contentType);
-                javax.mail.Transport t = session.getTransport("smtp");
-                if (StringUtils.isNotEmpty(mailServerConfigurationType.getUsername())) {
-                    ProtectedStringType passwordProtected = mailServerConfigurationType.getPassword();
-                    String password = null;
-                    if (passwordProtected != null) {
-                        try {
-                            password = protector.decryptString(passwordProtected);
-                        } catch (EncryptionException e) {
-                            String msg = "Couldn't send mail message to " + mailMessage.getTo() + " via " + host + ", because the plaintext password value couldn't be obtained. Trying another mail server, if there is any.";
-                            LoggingUtils.logException(LOGGER, msg, e);
-                            resultForServer.recordFatalError(msg, e);
-                            continue;
-                        }
-                    }
-                    t.connect(mailServerConfigurationType.getUsername(), password);
-                } else {
-                    t.connect();
-                }
-                t.sendMessage(mimeMessage, mimeMessage.getAllRecipients());
+                connectionPool.send(connectionKey, session, mailServerConfigurationType.getUsername(), password, mimeMessage);
                 LOGGER.info("Message sent successfully to " + mailMessage.getTo() + " via server " + host + ".");
                 resultForServer.recordSuccess();
                 result.recordSuccess();
                 long duration = System.currentTimeMillis() - start;
                 task.recordState("Notification mail sent successfully via " + host + ", in " + duration + " ms overall.");
                 task.recordNotificationOperation(NAME, true, duration);
-                return;
+                return true;
             } catch (MessagingException e) {
                 String msg = "Couldn't send mail message to " + mailMessage.getTo() + " via " + host + ", trying another mail server, if there is any";
                 LoggingUtils.logException(LOGGER, msg, e);
@@ -232,10 +244,81 @@ public class MailTransport implements Transport {
             }
         }
         LOGGER.warn("No more mail servers to try, mail notification to " + mailMessage.getTo() + " will not be sent.") ;
-        result.recordWarning("Mail notification to " + mailMessage.getTo() + " could not be sent.");
         task.recordNotificationOperation(NAME, false, System.currentTimeMillis() - start);
+        return false;
     }
 
+    // The password is included (as a digest only, as the key gets logged) so that a changed password is not ignored
+    // by reusing connections authenticated with the old one.
+    static String getConnectionKey(MailServerConfigurationType mailServerConfigurationType, MailConfigurationType mailConfigurationType,
+            String password) {
+        return mailServerConfigurationType.getHost() + ":" + mailServerConfigurationType.getPort() + ":"
+                + mailServerConfigurationType.getTransportSecurity() + ":" + mailServerConfigurationType.getUsername() + ":"
+                + digest(password) + ":" + Boolean.TRUE.equals(mailConfigurationType.isDebug());
+    }
+
+    private static String digest(String password) {
+        if (password == null) {
+            return null;
+        }
+        try {
+            MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
+            return DatatypeConverter.printHexBinary(messageDigest.digest(password.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new SystemException("Couldn't compute password digest: " + e.getMessage(), e);
+        }
+    }
+
+    // Sessions are cached along with the connections; they only depend on the properties that make up the connection key.
+    private Session getSession(String connectionKey, MailServerConfigurationType mailServerConfigurationType, MailConfigurationType mailConfigurationType) {
+        Session session = sessions.get(connectionKey);
+        if (session != null) {
+            return session;
+        }
+
+        Properties properties = new Properties();
+        properties.putAll(System.getProperties());
+        properties.setProperty("mail.smtp.host", mailServerConfigurationType.getHost());
+        if (mailServerConfigurationType.getPort() != null) {
+            properties.setProperty("mail.smtp.port", String.valueOf(mailServerConfigurationType.getPort()));
+        }
+        MailTransportSecurityType mailTransportSecurityType = mailServerConfigurationType.getTransportSecurity();
+
+        boolean sslEnabled = false, starttlsEnable = false, starttlsRequired = false;
+        if (mailTransportSecurityType != null) {
+            switch (mailTransportSecurityType) {
+                case STARTTLS_ENABLED:
+                    starttlsEnable = true;
+                    break;
+                case STARTTLS_REQUIRED:
+                    starttlsEnable = true;
+                    starttlsRequired = true;
+                    break;
+                case SSL:
+                    sslEnabled = true;
+                    break;
+            }
+        }
+        properties.put("mail.smtp.ssl.enable", "" + sslEnabled);
+        properties.put("mail.smtp.starttls.enable", "" + starttlsEnable);
+        properties.put("mail.smtp.starttls.required", "" + starttlsRequired);
+        if (Boolean.TRUE.equals(mailConfigurationType.isDebug())) {
+            properties.put("mail.debug", "true");
+        }
+
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("Using mail properties: ");
+            for (Object key : properties.keySet()) {
+                if (key instanceof String && ((String) key).startsWith("mail.")) {
+                    LOGGER.debug(" - " + key + " = " + properties.get(key));
+                }
+            }
+        }
+
+        session = Session.getInstance(properties);
+        Session existing = sessions.putIfAbsent(connectionKey, session);
+        return existing != null ? existing : session;
+    }
 
     private String formatToFile(Message mailMessage) {
         return "============================================ " + new Date() + "\n" + mailMessage.toString() + "\n\n";
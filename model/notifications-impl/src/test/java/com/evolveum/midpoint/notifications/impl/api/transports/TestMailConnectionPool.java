@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2010-2016 Evolveum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.evolveum.midpoint.notifications.impl.api.transports;
+
+import com.evolveum.midpoint.xml.ns._public.common.common_3.MailConfigurationType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.MailServerConfigurationType;
+import org.testng.annotations.Test;
+
+import javax.mail.Address;
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.Session;
+import javax.mail.Transport;
+import javax.mail.URLName;
+import javax.mail.internet.InternetAddress;
+import javax.mail.internet.MimeMessage;
+import java.util.Properties;
+
+import static org.testng.AssertJUnit.*;
+
+/**
+ * Tests reusing of SMTP connections. Connections are simulated, no mail server is needed.
+ *
+ * @author mederly
+ */
+public class TestMailConnectionPool {
+
+    private static final String KEY = "localhost:25:null:null:null:false";
+
+    private final Session session = Session.getInstance(new Properties());
+
+    @Test
+    public void test010ConnectionIsReused() throws Exception {
+        MailConnectionPool pool = new MailConnectionPool();
+        FakeTransport transport = new FakeTransport(session, null);
+        pool.release(KEY, transport);
+
+        pool.send(KEY, session, null, null, createMessage());
+
+        assertEquals("Wrong # of messages sent", 1, transport.sent);
+        assertFalse("Connection was closed", transport.closed);
+        assertEquals("Connection was not returned to the pool", 1, pool.getIdleCount(KEY));
+    }
+
+    @Test
+    public void test020ConnectionIsClosedAfterMessagingException() throws Exception {
+        MailConnectionPool pool = new MailConnectionPool();
+        FakeTransport transport = new FakeTransport(session, new MessagingException("Simulated failure"));
+        pool.release(KEY, transport);
+
+        try {
+            pool.send(KEY, session, null, null, createMessage());
+            fail("Unexpected success");
+        } catch (MessagingException e) {
+            System.out.println("Got expected exception: " + e);
+        }
+
+        assertTrue("Connection was not closed", transport.closed);
+        assertEquals("Connection was returned to the pool", 0, pool.getIdleCount(KEY));
+    }
+
+    @Test
+    public void test030ConnectionIsClosedAfterRuntimeException() throws Exception {
+        MailConnectionPool pool = new MailConnectionPool();
+        FakeTransport transport = new FakeTransport(session, new IllegalStateException("Simulated failure"));
+        pool.release(KEY, transport);
+
+        try {
+            pool.send(KEY, session, null, null, createMessage());
+            fail("Unexpected success");
+        } catch (IllegalStateException e) {
+            System.out.println("Got expected exception: " + e);
+        }
+
+        assertTrue("Connection was not closed", transport.closed);
+        assertEquals("Connection was returned to the pool", 0, pool.getIdleCount(KEY));
+    }
+
+    @Test
+    public void test040ConnectionKeyDependsOnPassword() throws Exception {
+        MailServerConfigurationType server = new MailServerConfigurationType();
+        server.setHost("localhost");
+        server.setUsername("midpoint");
+        MailConfigurationType mailConfiguration = new MailConfigurationType();
+
+        String key1 = MailTransport.getConnectionKey(server, mailConfiguration, "secret1");
+        String key2 = MailTransport.getConnectionKey(server, mailConfiguration, "secret2");
+
+        assertFalse("Connection keys for different passwords are equal", key1.equals(key2));
+        assertEquals("Connection keys for the same password differ", key1,
+                MailTransport.getConnectionKey(server, mailConfiguration, "secret1"));
+        assertFalse("Password is visible in the connection key", key1.contains("secret1"));
+    }
+
+    private MimeMessage createMessage() throws MessagingException {
+        MimeMessage message = new MimeMessage(session);
+        message.addRecipient(Message.RecipientType.TO, new InternetAddress("jack@example.com"));
+        message.setText("test");
+        return message;
+    }
+
+    private static class FakeTransport extends Transport {
+
+        private final Exception failure;
+        private int sent;
+        private boolean closed;
+
+        FakeTransport(Session session, Exception failure) {
+            super(session, new URLName("smtp://localhost"));
+            this.failure = failure;
+        }
+
+        @Override
+        public boolean isConnected() {
+            return !closed;
+        }
+
+        @Override
+        public void sendMessage(Message message, Address[] addresses) throws MessagingException {
+            if (failure instanceof MessagingException) {
+                throw (MessagingException) failure;
+            } else if (failure != null) {
+                throw (RuntimeException) failure;
+            }
+            sent++;
+        }
+
+        @Override
+        public synchronized void close() {
+            closed = true;
+        }
+    }
+}
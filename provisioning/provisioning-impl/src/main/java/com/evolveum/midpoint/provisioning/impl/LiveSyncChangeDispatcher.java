@@ -0,0 +1,337 @@
+/*
+ * Copyright (c) 2010-2016 Evolveum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.evolveum.midpoint.provisioning.impl;
+
+import com.evolveum.midpoint.prism.PrismProperty;
+import com.evolveum.midpoint.provisioning.ucf.api.Change;
+import com.evolveum.midpoint.schema.ResourceShadowDiscriminator;
+import com.evolveum.midpoint.schema.processor.ObjectClassComplexTypeDefinition;
+import com.evolveum.midpoint.schema.processor.ResourceAttribute;
+import com.evolveum.midpoint.schema.result.OperationResult;
+import com.evolveum.midpoint.schema.result.OperationResultStatus;
+import com.evolveum.midpoint.task.api.LightweightTaskHandler;
+import com.evolveum.midpoint.task.api.Task;
+import com.evolveum.midpoint.task.api.TaskManager;
+import com.evolveum.midpoint.util.exception.CommonException;
+import com.evolveum.midpoint.util.exception.CommunicationException;
+import com.evolveum.midpoint.util.exception.ConfigurationException;
+import com.evolveum.midpoint.util.exception.ObjectNotFoundException;
+import com.evolveum.midpoint.util.exception.SchemaException;
+import com.evolveum.midpoint.util.logging.LoggingUtils;
+import com.evolveum.midpoint.util.logging.Trace;
+import com.evolveum.midpoint.util.logging.TraceManager;
+
+import javax.xml.namespace.QName;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Distributes live sync changes among worker threads (lightweight subtasks of the live sync task).
+ *
+ * Changes are assigned to workers by the hash of their primary identifier(s) and each worker has its own queue,
+ * so changes of a single object are processed in the order in which they were fetched. If the primary identifier
+ * of an object class is its (mutable) name, all changes of that class go to a single queue, so that a rename
+ * does not separate changes of the same object (see isSerialized). Changes are numbered
+ * as they are submitted; the token can be advanced only to the last change of a contiguous sequence of
+ * completed changes (see getContiguousToken).
+ *
+ * Only the coordinator thread (the one that calls submit) is allowed to update the live sync task itself.
+ *
+ * @author mederly
+ */
+class LiveSyncChangeDispatcher {
+
+	private static final Trace LOGGER = TraceManager.getTrace(LiveSyncChangeDispatcher.class);
+
+	private static final int QUEUE_SIZE_PER_WORKER = 10;
+	private static final long OFFER_TIMEOUT = 500L;
+	private static final long POLL_TIMEOUT = 500L;
+
+	interface ChangeProcessor {
+		/**
+		 * Returns true if the change was processed, i.e. its token may be stored.
+		 */
+		boolean processChange(ProvisioningContext workerCtx, Change change, OperationResult result) throws CommonException;
+	}
+
+	private final TaskManager taskManager;
+	private final ChangeProcessor changeProcessor;
+	private final Task coordinatorTask;
+
+	private final List<BlockingQueue<ChangeRequest>> queues = new ArrayList<>();
+	private final List<OperationResult> workerResults = new ArrayList<>();
+	private volatile boolean allChangesSubmitted;
+	private volatile boolean stopRequested;
+
+	private long submitted;								// accessed by coordinator thread only
+	private final Set<QName> serializedObjectClasses = new HashSet<>();		// accessed by coordinator thread only
+	private final AtomicInteger processed = new AtomicInteger();
+
+	// guarded by this
+	private final Map<Long, ChangeRequest> completedOutOfOrder = new HashMap<>();
+	private long nextToComplete;
+	private PrismProperty<?> contiguousToken;
+	private Exception exception;
+
+	LiveSyncChangeDispatcher(TaskManager taskManager, ChangeProcessor changeProcessor, Task coordinatorTask) {
+		this.taskManager = taskManager;
+		this.changeProcessor = changeProcessor;
+		this.coordinatorTask = coordinatorTask;
+	}
+
+	void startWorkers(ProvisioningContextFactory ctxFactory, ResourceShadowDiscriminator coords, int threads,
+			OperationResult result) throws ObjectNotFoundException, SchemaException, CommunicationException, ConfigurationException {
+		LOGGER.debug("Starting {} live sync worker thread(s) for {}", threads, coordinatorTask);
+		for (int i = 0; i < threads; i++) {
+			BlockingQueue<ChangeRequest> queue = new ArrayBlockingQueue<>(QUEUE_SIZE_PER_WORKER);
+			queues.add(queue);
+			// worker results are put under the main result only after the workers finish
+			OperationResult workerResult = new OperationResult(LiveSyncChangeDispatcher.class.getName() + ".processChanges");
+			workerResult.addContext("subtask", i);
+			workerResults.add(workerResult);
+
+			Worker worker = new Worker(queue, workerResult);
+			Task subtask = coordinatorTask.createSubtask(worker);
+			// each worker has its own context, bound to its own task
+			worker.workerCtx = ctxFactory.create(coords, subtask, result);
+			subtask.setCategory(coordinatorTask.getCategory());
+			subtask.setResult(new OperationResult(LiveSyncChangeDispatcher.class.getName() + ".executeWorker",
+					OperationResultStatus.IN_PROGRESS, null));
+			subtask.setName("Live sync worker thread " + (i+1) + " of " + threads);
+			subtask.startLightweightHandler();
+		}
+	}
+
+	/**
+	 * Returns false if the processing should stop (because of an error in a worker or because the task was suspended).
+	 */
+	boolean submit(Change change) {
+		ChangeRequest request = new ChangeRequest(submitted, change);
+		int serializedBefore = serializedObjectClasses.size();
+		String routingKey = getRoutingKey(change);
+		if (serializedObjectClasses.size() > serializedBefore && !waitForSubmittedChanges()) {
+			return false;
+		}
+		BlockingQueue<ChangeRequest> queue = queues.get(Math.floorMod(routingKey.hashCode(), queues.size()));
+		try {
+			while (!queue.offer(request, OFFER_TIMEOUT, TimeUnit.MILLISECONDS)) {
+				if (shouldStop()) {
+					return false;
+				}
+			}
+		} catch (InterruptedException e) {
+			LOGGER.debug("Interrupted while submitting change {}", change);
+			return false;
+		}
+		submitted++;
+		return !shouldStop();
+	}
+
+	private boolean shouldStop() {
+		return stopRequested || !coordinatorTask.canRun();
+	}
+
+	// primary identifiers are usually stable for an object, so they are used (if known) to keep the changes of the object together
+	private String getRoutingKey(Change change) {
+		ObjectClassComplexTypeDefinition ocDef = change.getObjectClassDefinition();
+		if (ocDef != null && isSerialized(ocDef, change)) {
+			return "objectClass=" + ocDef.getTypeName();
+		}
+		StringBuilder sb = new StringBuilder();
+		if (change.getIdentifiers() != null) {
+			for (ResourceAttribute<?> identifier : change.getIdentifiers()) {
+				if (ocDef == null || ocDef.isPrimaryIdentifier(identifier.getElementName())) {
+					sb.append('|').append(identifier.getElementName()).append('=').append(identifier.getRealValues());
+				}
+			}
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * If a primary identifier value is the same as a secondary identifier value, the primary identifier is the name
+	 * of the object (e.g. ICF UID is the same as ICF NAME) and it changes when the object is renamed. Changes of such
+	 * an object class cannot be routed by the primary identifier, so they are all processed by a single worker.
+	 * The object class is remembered, as e.g. delete changes often carry the primary identifier only.
+	 */
+	private boolean isSerialized(ObjectClassComplexTypeDefinition ocDef, Change change) {
+		if (serializedObjectClasses.contains(ocDef.getTypeName())) {
+			return true;
+		}
+		if (change.getIdentifiers() == null) {
+			return false;
+		}
+		Set<Object> primaryValues = new HashSet<>();
+		Set<Object> secondaryValues = new HashSet<>();
+		for (ResourceAttribute<?> identifier : change.getIdentifiers()) {
+			if (ocDef.isPrimaryIdentifier(identifier.getElementName())) {
+				primaryValues.addAll(identifier.getRealValues());
+			} else if (ocDef.isSecondaryIdentifier(identifier.getElementName())) {
+				secondaryValues.addAll(identifier.getRealValues());
+			}
+		}
+		if (Collections.disjoint(primaryValues, secondaryValues)) {
+			return false;
+		}
+		LOGGER.debug("Primary identifier of {} is the object name, its changes will be processed by a single worker", ocDef.getTypeName());
+		serializedObjectClasses.add(ocDef.getTypeName());
+		return true;
+	}
+
+	/**
+	 * Changes of a newly serialized object class could have been already routed by their primary identifiers
+	 * to other workers. So all the changes submitted so far have to be completed before going on.
+	 * Returns false if the processing should stop.
+	 */
+	private synchronized boolean waitForSubmittedChanges() {
+		while (nextToComplete < submitted) {
+			if (shouldStop()) {
+				return false;
+			}
+			try {
+				wait(OFFER_TIMEOUT);
+			} catch (InterruptedException e) {
+				LOGGER.debug("Interrupted while waiting for submitted changes to complete");
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Waits until all submitted changes are processed (or the workers stop) and puts the workers' results
+	 * under the given result.
+	 */
+	void finish(OperationResult result) {
+		allChangesSubmitted = true;
+		taskManager.waitForTransientChildren(coordinatorTask, result);
+		for (OperationResult workerResult : workerResults) {
+			workerResult.computeStatus();
+			workerResult.summarize();
+			result.addSubresult(workerResult);
+		}
+	}
+
+	private synchronized void completed(ChangeRequest request) {
+		completedOutOfOrder.put(request.sequenceNumber, request);
+		ChangeRequest next;
+		while ((next = completedOutOfOrder.remove(nextToComplete)) != null) {
+			if (next.processed) {
+				contiguousToken = next.change.getToken();
+			}
+			nextToComplete++;
+		}
+		notifyAll();
+	}
+
+	private synchronized void failed(Exception e) {
+		if (exception == null) {
+			exception = e;
+		}
+		stopRequested = true;
+		notifyAll();
+	}
+
+	/**
+	 * Token of the last processed change such that all changes before it were completed (successfully
+	 * or not, just as in the single-threaded case). Null if there's no such change.
+	 */
+	synchronized PrismProperty<?> getContiguousToken() {
+		return contiguousToken;
+	}
+
+	synchronized boolean isEverythingCompleted() {
+		return exception == null && nextToComplete == submitted;
+	}
+
+	synchronized Exception getException() {
+		return exception;
+	}
+
+	int getProcessed() {
+		return processed.get();
+	}
+
+	long getSubmitted() {
+		return submitted;
+	}
+
+	private static class ChangeRequest {
+		private final long sequenceNumber;
+		private final Change change;
+		private boolean processed;
+
+		ChangeRequest(long sequenceNumber, Change change) {
+			this.sequenceNumber = sequenceNumber;
+			this.change = change;
+		}
+	}
+
+	private class Worker implements LightweightTaskHandler {
+
+		private final BlockingQueue<ChangeRequest> queue;
+		private final OperationResult workerResult;
+		private ProvisioningContext workerCtx;			// set before the worker is started
+
+		Worker(BlockingQueue<ChangeRequest> queue, OperationResult workerResult) {
+			this.queue = queue;
+			this.workerResult = workerResult;
+		}
+
+		@Override
+		public void run(Task workerTask) {
+			while (workerTask.canRun() && !stopRequested) {
+				// the flag has to be read before polling: if it was set, everything was already in the queue
+				boolean lastRound = allChangesSubmitted;
+				ChangeRequest request;
+				try {
+					request = queue.poll(POLL_TIMEOUT, TimeUnit.MILLISECONDS);
+				} catch (InterruptedException e) {
+					LOGGER.trace("Interrupted when waiting for next change", e);
+					return;
+				}
+				if (request == null) {
+					if (lastRound) {
+						LOGGER.trace("Queue is empty and nothing more is expected - exiting");
+						return;
+					}
+					continue;
+				}
+				try {
+					request.processed = changeProcessor.processChange(workerCtx, request.change, workerResult);
+					if (request.processed) {
+						processed.incrementAndGet();
+					}
+					completed(request);
+				} catch (CommonException | RuntimeException e) {
+					LoggingUtils.logUnexpectedException(LOGGER, "Couldn't process change {}", e, request.change);
+					failed(e);
+					return;
+				}
+			}
+		}
+	}
+}
@@ -316,7 +316,15 @@ public class ProvisioningServiceImpl implements ProvisioningService {
 		}
 		
 		result.computeStatus();
-		if (!GetOperationOptions.isRaw(rootOptions)) {
+		boolean storeFetchResult = !GetOperationOptions.isRaw(rootOptions);
+		if (resultingObject.isImmutable()) {
+			// Immutable snapshot from resource cache is shared with read-only callers. Other callers might modify it,
+			// so they get a clone. A failure has to be recorded in the object, so it is cloned in that case as well.
+			if (!GetOperationOptions.isReadOnly(rootOptions) || (storeFetchResult && !result.isSuccess())) {
+				resultingObject = resultingObject.clone();
+			}
+		}
+		if (storeFetchResult && !resultingObject.isImmutable()) {
 			resultingObject.asObjectable().setFetchResult(result.createOperationResultType());
 		}
 		result.cleanupResult();
@@ -576,6 +584,9 @@ public class ProvisioningServiceImpl implements ProvisioningService {
 				validateObject(completeResource);
                 objResult.computeStatusIfUnknown();
                 if (!objResult.isSuccess()) {
+                    if (completeResource.isImmutable()) {
+                        completeResource = completeResource.clone();
+                    }
                     completeResource.asObjectable().setFetchResult(objResult.createOperationResultType());      // necessary e.g. to skip validation for resources that had issues when checked
                     result.addSubresult(objResult);
                 }
@@ -647,6 +658,10 @@ public class ProvisioningServiceImpl implements ProvisioningService {
 
 				PrismObject<ResourceType> completeResource = resourceManager.getResource((PrismObject<ResourceType>) inObject, 
 						SelectorOptions.findRootOptions(options), result);
+				if (completeResource.isImmutable() && !GetOperationOptions.isReadOnly(SelectorOptions.findRootOptions(options))) {
+					// immutable snapshot from resource cache is given out only to read-only callers
+					completeResource = completeResource.clone();
+				}
 				return (PrismObject<T>) completeResource;
 		} else if (ShadowType.class.equals(type)) {
 			//TODO: applyDefinition??? 
@@ -1087,6 +1102,9 @@ public class ProvisioningServiceImpl implements ProvisioningService {
 		objResult.recordSuccessIfUnknown();
 		
 		if (!objResult.isSuccess()) {
+			if (completeObject.isImmutable()) {
+				completeObject = completeObject.clone();
+			}
 			OperationResultType resultType = objResult.createOperationResultType();
 			completeObject.asObjectable().setFetchResult(resultType);
 		}
@@ -15,36 +15,70 @@
  */
 package com.evolveum.midpoint.provisioning.impl;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import com.evolveum.midpoint.common.refinery.RefinedResourceSchemaImpl;
 import com.evolveum.midpoint.prism.PrismContext;
 import com.evolveum.midpoint.prism.PrismObject;
+import com.evolveum.midpoint.repo.api.CacheDispatcher;
+import com.evolveum.midpoint.repo.api.CacheListener;
 import com.evolveum.midpoint.schema.GetOperationOptions;
 import com.evolveum.midpoint.util.exception.SchemaException;
+import com.evolveum.midpoint.util.logging.Trace;
+import com.evolveum.midpoint.util.logging.TraceManager;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ObjectType;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.ResourceType;
 
 /**
  * Class for caching ResourceType instances with a parsed schemas.
  * 
+ * Cached resources are immutable snapshots: they are cloned once when put into the cache, their parsed
+ * and refined schemas are computed, and then they are frozen. Read-only clients share the snapshot
+ * without locking or cloning; other clients get a (mutable) clone. A snapshot is never updated in place,
+ * it is only replaced by a snapshot of a newer version.
+ * 
+ * Entries are evicted when the resource is changed or deleted on this or any other node
+ * (via the cache dispatcher).
+ * 
  * @author Radovan Semancik
  *
  */
 @Component
-public class ResourceCache {
+public class ResourceCache implements CacheListener {
+
+	private static final Trace LOGGER = TraceManager.getTrace(ResourceCache.class);
 
-	private Map<String,PrismObject<ResourceType>> cache;
+	private final ConcurrentMap<String,PrismObject<ResourceType>> cache = new ConcurrentHashMap<>();
     @Autowired(required = true)
 	private PrismContext prismContext;
 
+	@Autowired(required = true)
+	private CacheDispatcher cacheDispatcher;
+
     ResourceCache() {
-        cache = new HashMap<String, PrismObject<ResourceType>>();
     }
+
+	@PostConstruct
+	public void registerCacheListener() {
+		cacheDispatcher.registerCacheListener(this);
+	}
+
+	@PreDestroy
+	public void unregisterCacheListener() {
+		cacheDispatcher.unregisterCacheListener(this);
+	}
 	
-	public synchronized void put(PrismObject<ResourceType> resource) throws SchemaException {
+	public void put(PrismObject<ResourceType> resource) throws SchemaException {
 		String oid = resource.getOid();
 		if (oid == null) {
 			throw new SchemaException("Attempt to cache "+resource+" without an OID");
@@ -56,16 +90,28 @@ public class ResourceCache {
 		}
 		
 		PrismObject<ResourceType> cachedResource = cache.get(oid);
-		if (cachedResource == null) {
-			cache.put(oid, resource.clone());
-		} else {
-			if (compareVersion(resource.getVersion(), cachedResource.getVersion())) {
-				// We already have equivalent resource, nothing to do
-				return;
-			} else {
-				cache.put(oid, resource.clone());
-			}
+		if (cachedResource != null && isNotNewer(version, cachedResource.getVersion())) {
+			// We already have equivalent (or newer) resource, nothing to do
+			return;
 		}
+
+		final PrismObject<ResourceType> snapshot = createSnapshot(resource);
+		// If another thread has stored the same or a newer version in the meanwhile, we keep its snapshot.
+		// So all readers of the given version share the same instance and a slow thread cannot replace
+		// a newer snapshot with an older one.
+		cache.compute(oid, (key, existing) ->
+				existing != null && isNotNewer(snapshot.getVersion(), existing.getVersion()) ? existing : snapshot);
+	}
+
+	private PrismObject<ResourceType> createSnapshot(PrismObject<ResourceType> resource) throws SchemaException {
+		PrismObject<ResourceType> snapshot = resource.clone();
+		// Parsed schemas are stored in user data, so they have to be there before the snapshot is frozen.
+		// (User data are copied by clone, so the schemas are usually not parsed again here.)
+		RefinedResourceSchemaImpl.getResourceSchema(snapshot, prismContext);
+		RefinedResourceSchemaImpl.getRefinedSchema(snapshot, prismContext);
+		snapshot.asObjectable();
+		snapshot.setImmutable(true);
+		return snapshot;
 	}
 	
 	private boolean compareVersion(String version1, String version2) {
@@ -78,11 +124,29 @@ public class ResourceCache {
 		return version1.equals(version2);
 	}
 
-	public synchronized PrismObject<ResourceType> get(PrismObject<ResourceType> resource, GetOperationOptions options) throws SchemaException {
+	/**
+	 * Returns true if the version is the same as (or older than) the cached one. Versions are compared
+	 * numerically, as they are generated by the repository; versions that are not numbers can only be equal.
+	 */
+	private boolean isNotNewer(String version, String cachedVersion) {
+		if (compareVersion(version, cachedVersion)) {
+			return true;
+		}
+		if (version == null || cachedVersion == null) {
+			return false;
+		}
+		try {
+			return Long.parseLong(version) < Long.parseLong(cachedVersion);
+		} catch (NumberFormatException e) {
+			return false;
+		}
+	}
+
+	public PrismObject<ResourceType> get(PrismObject<ResourceType> resource, GetOperationOptions options) throws SchemaException {
 		return get(resource.getOid(), resource.getVersion(), options);
 	}
 	
-	public synchronized PrismObject<ResourceType> get(String oid, String version, GetOperationOptions options) throws SchemaException {
+	public PrismObject<ResourceType> get(String oid, String version, GetOperationOptions options) throws SchemaException {
 		if (oid == null) {
 			return null;
 		}
@@ -97,7 +161,6 @@ public class ResourceCache {
 		}
 		
 		if (GetOperationOptions.isReadOnly(options)) {
-			// TODO: make sure it is immutable
 			return cachedResource;
 		} else {
 			return cachedResource.clone();
@@ -122,4 +185,26 @@ public class ResourceCache {
 		cache.remove(oid);
 	}
 
+	@Override
+	public <O extends ObjectType> void invalidateCache(Class<O> type, String oid) {
+		if (!ResourceType.class.equals(type)) {
+			return;
+		}
+		if (oid != null) {
+			LOGGER.trace("Invalidating cached resource {}", oid);
+			cache.remove(oid);
+		} else {
+			LOGGER.trace("Invalidating all cached resources");
+			cache.clear();
+		}
+	}
+
+	@Override
+	public <O extends ObjectType> Collection<String> getCachedOids(Class<O> type) {
+		if (!ResourceType.class.equals(type)) {
+			return Collections.emptySet();
+		}
+		return new ArrayList<>(cache.keySet());
+	}
+
 }
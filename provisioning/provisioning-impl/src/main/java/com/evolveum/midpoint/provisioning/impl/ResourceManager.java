@@ -745,12 +745,16 @@ public class ResourceManager {
 						throw new SystemException(ex);
 					}
 				}
-				if (resourceType.getOperationalState() == null){
-					OperationalStateType operationalState = new OperationalStateType();
-					operationalState.setLastAvailabilityStatus(status);
-					resourceType.setOperationalState(operationalState);
-				} else{
-					resourceType.getOperationalState().setLastAvailabilityStatus(status);
+				// A shared snapshot from the resource cache is not updated in place: the repository modification
+				// above invalidates it, so the next retrieval gets the new status.
+				if (!resource.isImmutable()) {
+					if (resourceType.getOperationalState() == null){
+						OperationalStateType operationalState = new OperationalStateType();
+						operationalState.setLastAvailabilityStatus(status);
+						resourceType.setOperationalState(operationalState);
+					} else{
+						resourceType.getOperationalState().setLastAvailabilityStatus(status);
+					}
 				}
 			}
 		}
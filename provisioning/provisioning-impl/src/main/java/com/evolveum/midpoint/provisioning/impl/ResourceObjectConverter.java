@@ -1562,6 +1562,26 @@ public class ResourceObjectConverter {
 	public List<Change> fetchChanges(ProvisioningContext ctx, PrismProperty<?> lastToken,
 			OperationResult parentResult) throws SchemaException,
 			CommunicationException, ConfigurationException, SecurityViolationException, GenericFrameworkException, ObjectNotFoundException {
+		final List<Change> changes = new ArrayList<>();
+		PrismProperty<?> lastReceivedToken = fetchChanges(ctx, lastToken, new ChangeHandler() {
+			@Override
+			public boolean handleChange(Change change, OperationResult result) {
+				return changes.add(change);
+			}
+		}, parentResult);
+		if (lastReceivedToken != null) {
+			changes.add(new Change((ObjectDelta) null, lastReceivedToken));
+		}
+		return changes;
+	}
+
+	/**
+	 * Fetches changes from the resource, completes them (current shadow etc.) and passes them to the handler one by one.
+	 * Returns the final token, if provided by the connector and if the handler has not stopped the processing.
+	 */
+	public PrismProperty<?> fetchChanges(final ProvisioningContext ctx, PrismProperty<?> lastToken, final ChangeHandler handler,
+			final OperationResult parentResult) throws SchemaException,
+			CommunicationException, ConfigurationException, SecurityViolationException, GenericFrameworkException, ObjectNotFoundException {
 		Validate.notNull(parentResult, "Operation result must not be null.");
 
 		LOGGER.trace("START fetch changes, objectClass: {}", ctx.getObjectClassDefinition());
@@ -1569,86 +1589,125 @@ public class ResourceObjectConverter {
 		if (!ctx.isWildcard()) {
 			attrsToReturn = ProvisioningUtil.createAttributesToReturn(ctx);
 		}
-		
-		ConnectorInstance connector = ctx.getConnector(parentResult);
-		
+		final AttributesToReturn finalAttrsToReturn = attrsToReturn;
+
+		final ConnectorInstance connector = ctx.getConnector(parentResult);
+
 		// get changes from the connector
-		List<Change> changes = connector.fetchChanges(ctx.getObjectClassDefinition(), lastToken, attrsToReturn, ctx, parentResult);
+		final Holder<Exception> processingException = new Holder<>();
+		final Holder<Integer> changesCount = new Holder<>(0);
+		PrismProperty<?> lastReceivedToken = connector.fetchChanges(ctx.getObjectClassDefinition(), lastToken, attrsToReturn,
+				new ChangeHandler() {
+					@Override
+					public boolean handleChange(Change change, OperationResult result) {
+						try {
+							if (!processChange(ctx, change, connector, finalAttrsToReturn, parentResult)) {
+								return true;
+							}
+						} catch (SchemaException | CommunicationException | ConfigurationException | SecurityViolationException
+								| GenericFrameworkException | ObjectNotFoundException | RuntimeException e) {
+							processingException.setValue(e);
+							return false;
+						}
+						changesCount.setValue(changesCount.getValue() + 1);
+						return handler.handleChange(change, parentResult);
+					}
+				}, ctx, parentResult);
+
+		Exception e = processingException.getValue();
+		if (e instanceof SchemaException) {
+			throw (SchemaException) e;
+		} else if (e instanceof CommunicationException) {
+			throw (CommunicationException) e;
+		} else if (e instanceof ConfigurationException) {
+			throw (ConfigurationException) e;
+		} else if (e instanceof SecurityViolationException) {
+			throw (SecurityViolationException) e;
+		} else if (e instanceof GenericFrameworkException) {
+			throw (GenericFrameworkException) e;
+		} else if (e instanceof ObjectNotFoundException) {
+			throw (ObjectNotFoundException) e;
+		} else if (e != null) {
+			throw (RuntimeException) e;
+		}
 
-		Iterator<Change> iterator = changes.iterator();
-		while (iterator.hasNext()) {
-			Change change = iterator.next();
-			LOGGER.trace("Original change:\n{}", change.debugDump());
-			if (change.isTokenOnly()) {
-				continue;
-			}
-			ProvisioningContext shadowCtx = ctx;
-			AttributesToReturn shadowAttrsToReturn = attrsToReturn;
-			PrismObject<ShadowType> currentShadow = change.getCurrentShadow();
-			ObjectClassComplexTypeDefinition changeObjectClassDefinition = change.getObjectClassDefinition();
-			if (changeObjectClassDefinition == null) {
-				if (!ctx.isWildcard() || change.getObjectDelta() == null || !change.getObjectDelta().isDelete()) {
-					throw new SchemaException("No object class definition in change "+change);
-				}
+		computeResultStatus(parentResult);
+
+		LOGGER.trace("END fetch changes ({} changes)", changesCount.getValue());
+		return lastReceivedToken;
+	}
+
+	/**
+	 * Completes the change fetched from the connector. Returns false if the change should be skipped.
+	 */
+	private boolean processChange(ProvisioningContext ctx, Change change, ConnectorInstance connector,
+			AttributesToReturn attrsToReturn, OperationResult parentResult) throws SchemaException,
+			CommunicationException, ConfigurationException, SecurityViolationException, GenericFrameworkException, ObjectNotFoundException {
+		LOGGER.trace("Original change:\n{}", change.debugDump());
+		if (change.isTokenOnly()) {
+			return true;
+		}
+		ProvisioningContext shadowCtx = ctx;
+		AttributesToReturn shadowAttrsToReturn = attrsToReturn;
+		PrismObject<ShadowType> currentShadow = change.getCurrentShadow();
+		ObjectClassComplexTypeDefinition changeObjectClassDefinition = change.getObjectClassDefinition();
+		if (changeObjectClassDefinition == null) {
+			if (!ctx.isWildcard() || change.getObjectDelta() == null || !change.getObjectDelta().isDelete()) {
+				throw new SchemaException("No object class definition in change "+change);
 			}
-			if (ctx.isWildcard() && changeObjectClassDefinition != null) {
-				shadowCtx = ctx.spawn(changeObjectClassDefinition.getTypeName());
-				if (shadowCtx.isWildcard()) {
-					String message = "Unkown object class "+changeObjectClassDefinition.getTypeName()+" found in synchronization delta";
-					parentResult.recordFatalError(message);
-					throw new SchemaException(message);
-				}
-				change.setObjectClassDefinition(shadowCtx.getObjectClassDefinition());
-				
-				shadowAttrsToReturn = ProvisioningUtil.createAttributesToReturn(shadowCtx);
+		}
+		if (ctx.isWildcard() && changeObjectClassDefinition != null) {
+			shadowCtx = ctx.spawn(changeObjectClassDefinition.getTypeName());
+			if (shadowCtx.isWildcard()) {
+				String message = "Unkown object class "+changeObjectClassDefinition.getTypeName()+" found in synchronization delta";
+				parentResult.recordFatalError(message);
+				throw new SchemaException(message);
 			}
+			change.setObjectClassDefinition(shadowCtx.getObjectClassDefinition());
 			
-			if (change.getObjectDelta() == null || !change.getObjectDelta().isDelete()) {
-				if (currentShadow == null) {
-					// There is no current shadow in a change. Add it by fetching it explicitly.
-					try {
-						
-						LOGGER.trace("Re-fetching object {} because it is not in the change", change.getIdentifiers());
-						currentShadow = fetchResourceObject(shadowCtx, 
-								change.getIdentifiers(), shadowAttrsToReturn, true, parentResult);	// todo consider whether it is always necessary to fetch the entitlements
-						change.setCurrentShadow(currentShadow);
-						
-					} catch (ObjectNotFoundException ex) {
-						parentResult.recordHandledError(
-								"Object detected in change log no longer exist on the resource. Skipping processing this object.", ex);
-						LOGGER.warn("Object detected in change log no longer exist on the resource. Skipping processing this object "
-								+ ex.getMessage());
-						// TODO: Maybe change to DELETE instead of this?
-						iterator.remove();
-						continue;
-					}
-				} else {
-					if (ctx.isWildcard()) {
-						if (!MiscUtil.equals(shadowAttrsToReturn, attrsToReturn)) {
-							// re-fetch the shadow if necessary (if attributesToGet does not match)
-							ResourceObjectIdentification identification = ResourceObjectIdentification.create(shadowCtx.getObjectClassDefinition(), 
-									change.getIdentifiers());
-							identification.validatePrimaryIdenfiers();
-							LOGGER.trace("Re-fetching object {} because of attrsToReturn", identification);
-							currentShadow = connector.fetchObject(ShadowType.class, identification, shadowAttrsToReturn, ctx, parentResult);
-						}
-						
+			shadowAttrsToReturn = ProvisioningUtil.createAttributesToReturn(shadowCtx);
+		}
+		
+		if (change.getObjectDelta() == null || !change.getObjectDelta().isDelete()) {
+			if (currentShadow == null) {
+				// There is no current shadow in a change. Add it by fetching it explicitly.
+				try {
+					
+					LOGGER.trace("Re-fetching object {} because it is not in the change", change.getIdentifiers());
+					currentShadow = fetchResourceObject(shadowCtx, 
+							change.getIdentifiers(), shadowAttrsToReturn, true, parentResult);	// todo consider whether it is always necessary to fetch the entitlements
+					change.setCurrentShadow(currentShadow);
+					
+				} catch (ObjectNotFoundException ex) {
+					parentResult.recordHandledError(
+							"Object detected in change log no longer exist on the resource. Skipping processing this object.", ex);
+					LOGGER.warn("Object detected in change log no longer exist on the resource. Skipping processing this object "
+							+ ex.getMessage());
+					// TODO: Maybe change to DELETE instead of this?
+					return false;
+				}
+			} else {
+				if (ctx.isWildcard()) {
+					if (!MiscUtil.equals(shadowAttrsToReturn, attrsToReturn)) {
+						// re-fetch the shadow if necessary (if attributesToGet does not match)
+						ResourceObjectIdentification identification = ResourceObjectIdentification.create(shadowCtx.getObjectClassDefinition(), 
+								change.getIdentifiers());
+						identification.validatePrimaryIdenfiers();
+						LOGGER.trace("Re-fetching object {} because of attrsToReturn", identification);
+						currentShadow = connector.fetchObject(ShadowType.class, identification, shadowAttrsToReturn, ctx, parentResult);
 					}
-							
-					PrismObject<ShadowType> processedCurrentShadow = postProcessResourceObjectRead(shadowCtx,
-							currentShadow, true, parentResult);
-					change.setCurrentShadow(processedCurrentShadow);
+					
 				}
+						
+				PrismObject<ShadowType> processedCurrentShadow = postProcessResourceObjectRead(shadowCtx,
+						currentShadow, true, parentResult);
+				change.setCurrentShadow(processedCurrentShadow);
 			}
-			LOGGER.trace("Processed change\n:{}", change.debugDump());
 		}
-
-		computeResultStatus(parentResult);
-		
-		LOGGER.trace("END fetch changes ({} changes)", changes == null ? "null" : changes.size());
-		return changes;
+		LOGGER.trace("Processed change\n:{}", change.debugDump());
+		return true;
 	}
-	
+
 	/**
 	 * Process simulated activation, credentials and other properties that are added to the object by midPoint. 
 	 */
@@ -33,6 +33,7 @@ import com.evolveum.midpoint.provisioning.consistency.api.ErrorHandler;
 import com.evolveum.midpoint.provisioning.consistency.api.ErrorHandler.FailedOperation;
 import com.evolveum.midpoint.provisioning.consistency.impl.ErrorHandlerFactory;
 import com.evolveum.midpoint.provisioning.ucf.api.Change;
+import com.evolveum.midpoint.provisioning.ucf.api.ChangeHandler;
 import com.evolveum.midpoint.provisioning.ucf.api.ConnectorInstance;
 import com.evolveum.midpoint.provisioning.ucf.api.GenericFrameworkException;
 import com.evolveum.midpoint.provisioning.ucf.api.ResultHandler;
@@ -55,6 +56,7 @@ import com.evolveum.midpoint.util.DebugUtil;
 import com.evolveum.midpoint.util.Holder;
 import com.evolveum.midpoint.util.QNameUtil;
 import com.evolveum.midpoint.util.exception.*;
+import com.evolveum.midpoint.util.logging.LoggingUtils;
 import com.evolveum.midpoint.util.logging.Trace;
 import com.evolveum.midpoint.util.logging.TraceManager;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.*;
@@ -131,6 +133,11 @@ public abstract class ShadowCache {
 
 	private static final Trace LOGGER = TraceManager.getTrace(ShadowCache.class);
 
+	// live sync saves the token after this number of changes or this time (in millis), whichever comes first;
+	// can be overridden by liveSyncCheckpointChanges/liveSyncCheckpointInterval task extension properties
+	public static final int DEFAULT_LIVE_SYNC_CHECKPOINT_CHANGES = 100;
+	public static final long DEFAULT_LIVE_SYNC_CHECKPOINT_INTERVAL = 10000L;
+
 	public ShadowCache() {
 		repositoryService = null;
 	}
@@ -1224,8 +1231,16 @@ public abstract class ShadowCache {
 	// TODO: maybe split this to a separate class
 	///////////////////////////////////////////////////////////////////////////
 
+	/**
+	 * Changes are processed as they are fetched from the resource (they are not collected in memory first).
+	 * The token of each processed change is written to the task; the task is saved periodically, so an interrupted
+	 * synchronization continues from the last saved token.
+	 *
+	 * If the task has workerThreads extension property set, changes are processed in that number of threads.
+	 * See LiveSyncChangeDispatcher.
+	 */
 	public int synchronize(ResourceShadowDiscriminator shadowCoordinates, PrismProperty<?> lastToken,
-			Task task, OperationResult parentResult) throws ObjectNotFoundException, CommunicationException,
+			final Task task, final OperationResult parentResult) throws ObjectNotFoundException, CommunicationException,
 					GenericFrameworkException, SchemaException, ConfigurationException,
 					SecurityViolationException, ObjectAlreadyExistsException {
 
@@ -1233,96 +1248,153 @@ public abstract class ShadowCache {
 
 		final ProvisioningContext ctx = ctxFactory.create(shadowCoordinates, task, parentResult);
 
-		List<Change> changes = null;
+		int threads = getWorkerThreads(task);
+		if (threads > 0) {
+			return synchronizeInParallel(ctx, shadowCoordinates, lastToken, threads, task, parentResult);
+		}
+
+		final int checkpointChanges = getLiveSyncCheckpointChanges(task);
+		final long checkpointInterval = getLiveSyncCheckpointInterval(task);
+		final Holder<Exception> processingException = new Holder<>();
+		final Holder<Integer> fetchedChanges = new Holder<>(0);
+		final Holder<Integer> processedChanges = new Holder<>(0);
+		final Holder<Long> lastCheckpoint = new Holder<>(System.currentTimeMillis());
 		try {
 
-			changes = resouceObjectConverter.fetchChanges(ctx, lastToken, parentResult);
+			ChangeHandler changeHandler = new ChangeHandler() {
+				@Override
+				public boolean handleChange(Change change, OperationResult result) {
+					fetchedChanges.setValue(fetchedChanges.getValue() + 1);
+					try {
+						if (processSynchronizationChange(ctx, change, parentResult)) {
+							task.setExtensionProperty(change.getToken());
+							task.setProgress(task.getProgress() + 1);
+							processedChanges.setValue(processedChanges.getValue() + 1);
+						}
+						if (fetchedChanges.getValue() % checkpointChanges == 0
+								|| System.currentTimeMillis() - lastCheckpoint.getValue() >= checkpointInterval) {
+							LOGGER.trace("Saving the token after {} change(s)", fetchedChanges.getValue());
+							task.savePendingModifications(parentResult);
+							lastCheckpoint.setValue(System.currentTimeMillis());
+						}
+					} catch (ObjectNotFoundException | CommunicationException | SchemaException | ConfigurationException
+							| SecurityViolationException | ObjectAlreadyExistsException | RuntimeException e) {
+						processingException.setValue(e);
+						return false;
+					}
+					if (!task.canRun()) {
+						LOGGER.info("Synchronization of {} was interrupted after {} change(s)", ctx.getResource(), fetchedChanges.getValue());
+						return false;
+					}
+					return true;
+				}
+			};
 
-			LOGGER.trace("Found {} change(s). Start processing it (them).", changes.size());
+			PrismProperty<?> finalToken = resouceObjectConverter.fetchChanges(ctx, lastToken, changeHandler, parentResult);
 
-			int processedChanges = 0;
+			if (processingException.getValue() != null) {
+				// the tokens of the changes processed so far are kept
+				task.savePendingModifications(parentResult);
+				throwProcessingException(processingException.getValue());
+			}
 
-			for (Change change : changes) {
+			LOGGER.trace("Processed {} change(s) out of {} fetched.", processedChanges.getValue(), fetchedChanges.getValue());
 
-				if (change.isTokenOnly()) {
-					LOGGER.trace("Found token-only change: {}", change);
-					task.setExtensionProperty(change.getToken());
-					continue;
-				}
+			if (finalToken != null) {
+				LOGGER.trace("Found final token: {}", finalToken);
+				task.setExtensionProperty(finalToken);
+			} else if (fetchedChanges.getValue() == 0 && lastToken != null) {
+				// also if no changes was detected, update token
+				LOGGER.trace("No changes to synchronize on " + ctx.getResource());
+				task.setExtensionProperty(lastToken);
+			}
+			task.savePendingModifications(parentResult);
+			return processedChanges.getValue();
 
-				ObjectClassComplexTypeDefinition changeObjectClassDefinition = change
-						.getObjectClassDefinition();
-
-				ProvisioningContext shadowCtx;
-				PrismObject<ShadowType> oldShadow = null;
-				if (changeObjectClassDefinition == null) {
-					if (change.getObjectDelta() != null && change.getObjectDelta().isDelete()) {
-						oldShadow = change.getOldShadow();
-						if (oldShadow == null) {
-							oldShadow = shadowManager.findOrAddShadowFromChangeGlobalContext(ctx, change,
-									parentResult);
-						}
-						if (oldShadow == null) {
-							LOGGER.debug(
-									"No old shadow for delete synchronization event {}, we probably did not know about that object anyway, so well be ignoring this event",
-									change);
-							continue;
+		} catch (SchemaException ex) {
+			parentResult.recordFatalError("Schema error: " + ex.getMessage(), ex);
+			throw ex;
+		} catch (CommunicationException ex) {
+			parentResult.recordFatalError("Communication error: " + ex.getMessage(), ex);
+			throw ex;
+		} catch (GenericFrameworkException ex) {
+			parentResult.recordFatalError("Generic error: " + ex.getMessage(), ex);
+			throw ex;
+		} catch (ConfigurationException ex) {
+			parentResult.recordFatalError("Configuration error: " + ex.getMessage(), ex);
+			throw ex;
+		} catch (ObjectNotFoundException ex) {
+			parentResult.recordFatalError("Object not found error: " + ex.getMessage(), ex);
+			throw ex;
+		} catch (ObjectAlreadyExistsException ex) {
+			parentResult.recordFatalError("Already exists error: " + ex.getMessage(), ex);
+			throw ex;
+		}
+	}
+
+	private int synchronizeInParallel(final ProvisioningContext ctx, ResourceShadowDiscriminator shadowCoordinates,
+			PrismProperty<?> lastToken, int threads, final Task task, final OperationResult parentResult)
+			throws ObjectNotFoundException, CommunicationException, GenericFrameworkException, SchemaException,
+			ConfigurationException, SecurityViolationException, ObjectAlreadyExistsException {
+
+		final LiveSyncChangeDispatcher dispatcher = new LiveSyncChangeDispatcher(taskManager,
+				(workerCtx, change, result) -> processSynchronizationChange(workerCtx, change, result), task);
+		final long initialProgress = task.getProgress();
+		final int checkpointChanges = getLiveSyncCheckpointChanges(task);
+		final long checkpointInterval = getLiveSyncCheckpointInterval(task);
+		final Holder<Long> lastCheckpoint = new Holder<>(System.currentTimeMillis());
+		try {
+			ChangeHandler changeHandler = new ChangeHandler() {
+				@Override
+				public boolean handleChange(Change change, OperationResult result) {
+					if (!dispatcher.submit(change)) {
+						return false;
+					}
+					if (dispatcher.getSubmitted() % checkpointChanges == 0
+							|| System.currentTimeMillis() - lastCheckpoint.getValue() >= checkpointInterval) {
+						try {
+							saveContiguousToken(dispatcher, initialProgress, task, parentResult);
+						} catch (ObjectNotFoundException | SchemaException | ObjectAlreadyExistsException e) {
+							LoggingUtils.logUnexpectedException(LOGGER, "Couldn't save live sync token for {}", e, task);
 						}
-						shadowCtx = ctx.spawn(oldShadow);
-					} else {
-						throw new SchemaException("No object class definition in change " + change);
+						lastCheckpoint.setValue(System.currentTimeMillis());
 					}
-				} else {
-					shadowCtx = ctx.spawn(changeObjectClassDefinition.getTypeName());
+					return true;
 				}
+			};
 
-				processChange(shadowCtx, change, oldShadow, parentResult);
-
-				// this is the case,when we want to skip processing of change,
-				// because the shadow was not created or found to the resource
-				// object
-				// it may be caused with the fact, that the object which was
-				// created in the resource was deleted before the sync run
-				// such a change should be skipped to process consistent changes
-				if (change.getOldShadow() == null) {
-					PrismProperty<?> newToken = change.getToken();
-					task.setExtensionProperty(newToken);
-					processedChanges++;
-					task.setProgress(task.getProgress() + 1); // because
-																// processedChanges
-																// are reflected
-																// into task
-																// only at task
-																// run finish
-					LOGGER.debug(
-							"Skipping processing change. Can't find appropriate shadow (e.g. the object was deleted on the resource meantime).");
-					continue;
-				}
-				boolean isSuccess = processSynchronization(shadowCtx, change, parentResult);
-
-				if (isSuccess) {
-					// // get updated token from change,
-					// // create property modification from new token
-					// // and replace old token with the new one
-					PrismProperty<?> newToken = change.getToken();
-					task.setExtensionProperty(newToken);
-					processedChanges++;
-					task.setProgress(task.getProgress() + 1); // because
-																// processedChanges
-																// are reflected
-																// into task
-																// only at task
-																// run finish
+			PrismProperty<?> finalToken;
+			try {
+				dispatcher.startWorkers(ctxFactory, shadowCoordinates, threads, parentResult);
+				finalToken = resouceObjectConverter.fetchChanges(ctx, lastToken, changeHandler, parentResult);
+			} finally {
+				dispatcher.finish(parentResult);
+			}
+
+			LOGGER.trace("Processed {} change(s) out of {} fetched.", dispatcher.getProcessed(), dispatcher.getSubmitted());
+
+			if (dispatcher.getException() != null || !dispatcher.isEverythingCompleted()) {
+				// the token may advance only to the last change such that all changes before it were completed
+				saveContiguousToken(dispatcher, initialProgress, task, parentResult);
+				if (dispatcher.getException() != null) {
+					throwProcessingException(dispatcher.getException());
 				}
+				LOGGER.info("Synchronization of {} was interrupted after {} change(s)", ctx.getResource(), dispatcher.getSubmitted());
+				return dispatcher.getProcessed();
 			}
 
-			// also if no changes was detected, update token
-			if (changes.isEmpty() && lastToken != null) {
+			if (finalToken != null) {
+				LOGGER.trace("Found final token: {}", finalToken);
+				task.setExtensionProperty(finalToken);
+			} else if (dispatcher.getContiguousToken() != null) {
+				task.setExtensionProperty(dispatcher.getContiguousToken());
+			} else if (dispatcher.getSubmitted() == 0 && lastToken != null) {
 				LOGGER.trace("No changes to synchronize on " + ctx.getResource());
 				task.setExtensionProperty(lastToken);
 			}
+			task.setProgress(initialProgress + dispatcher.getProcessed());
 			task.savePendingModifications(parentResult);
-			return processedChanges;
+			return dispatcher.getProcessed();
 
 		} catch (SchemaException ex) {
 			parentResult.recordFatalError("Schema error: " + ex.getMessage(), ex);
@@ -1345,6 +1417,118 @@ public abstract class ShadowCache {
 		}
 	}
 
+	// called from the coordinator thread only
+	private void saveContiguousToken(LiveSyncChangeDispatcher dispatcher, long initialProgress, Task task,
+			OperationResult result) throws ObjectNotFoundException, SchemaException, ObjectAlreadyExistsException {
+		PrismProperty<?> token = dispatcher.getContiguousToken();
+		if (token != null) {
+			LOGGER.trace("Saving the token {}", token);
+			task.setExtensionProperty(token);
+		}
+		task.setProgress(initialProgress + dispatcher.getProcessed());
+		task.savePendingModifications(result);
+	}
+
+	private int getWorkerThreads(Task task) {
+		PrismProperty<Integer> workerThreadsProperty = task.getExtensionProperty(SchemaConstants.MODEL_EXTENSION_WORKER_THREADS);
+		if (workerThreadsProperty != null && workerThreadsProperty.getRealValue() != null) {
+			return workerThreadsProperty.getRealValue();
+		} else {
+			return 0;
+		}
+	}
+
+	private int getLiveSyncCheckpointChanges(Task task) {
+		PrismProperty<Integer> property = task.getExtensionProperty(SchemaConstants.MODEL_EXTENSION_LIVE_SYNC_CHECKPOINT_CHANGES);
+		if (property != null && property.getRealValue() != null && property.getRealValue() > 0) {
+			return property.getRealValue();
+		} else {
+			return DEFAULT_LIVE_SYNC_CHECKPOINT_CHANGES;
+		}
+	}
+
+	private long getLiveSyncCheckpointInterval(Task task) {
+		PrismProperty<Long> property = task.getExtensionProperty(SchemaConstants.MODEL_EXTENSION_LIVE_SYNC_CHECKPOINT_INTERVAL);
+		if (property != null && property.getRealValue() != null && property.getRealValue() >= 0) {
+			return property.getRealValue();
+		} else {
+			return DEFAULT_LIVE_SYNC_CHECKPOINT_INTERVAL;
+		}
+	}
+
+	private void throwProcessingException(Exception e) throws ObjectNotFoundException, CommunicationException,
+			SchemaException, ConfigurationException, SecurityViolationException, ObjectAlreadyExistsException {
+		if (e instanceof ObjectNotFoundException) {
+			throw (ObjectNotFoundException) e;
+		} else if (e instanceof CommunicationException) {
+			throw (CommunicationException) e;
+		} else if (e instanceof SchemaException) {
+			throw (SchemaException) e;
+		} else if (e instanceof ConfigurationException) {
+			throw (ConfigurationException) e;
+		} else if (e instanceof SecurityViolationException) {
+			throw (SecurityViolationException) e;
+		} else if (e instanceof ObjectAlreadyExistsException) {
+			throw (ObjectAlreadyExistsException) e;
+		} else if (e instanceof RuntimeException) {
+			throw (RuntimeException) e;
+		} else {
+			throw new SystemException(e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Processes a single change fetched by live sync. Returns true if the change was processed (so its token
+	 * can be stored in the task), false if it was skipped or its processing failed.
+	 *
+	 * Does not touch the task, as it can be called from worker threads.
+	 */
+	private boolean processSynchronizationChange(ProvisioningContext ctx, Change change,
+			OperationResult parentResult) throws ObjectNotFoundException, CommunicationException, SchemaException,
+			ConfigurationException, SecurityViolationException, ObjectAlreadyExistsException {
+
+		ObjectClassComplexTypeDefinition changeObjectClassDefinition = change
+				.getObjectClassDefinition();
+
+		ProvisioningContext shadowCtx;
+		PrismObject<ShadowType> oldShadow = null;
+		if (changeObjectClassDefinition == null) {
+			if (change.getObjectDelta() != null && change.getObjectDelta().isDelete()) {
+				oldShadow = change.getOldShadow();
+				if (oldShadow == null) {
+					oldShadow = shadowManager.findOrAddShadowFromChangeGlobalContext(ctx, change,
+							parentResult);
+				}
+				if (oldShadow == null) {
+					LOGGER.debug(
+							"No old shadow for delete synchronization event {}, we probably did not know about that object anyway, so well be ignoring this event",
+							change);
+					return false;
+				}
+				shadowCtx = ctx.spawn(oldShadow);
+			} else {
+				throw new SchemaException("No object class definition in change " + change);
+			}
+		} else {
+			shadowCtx = ctx.spawn(changeObjectClassDefinition.getTypeName());
+		}
+
+		processChange(shadowCtx, change, oldShadow, parentResult);
+
+		// this is the case,when we want to skip processing of change,
+		// because the shadow was not created or found to the resource
+		// object
+		// it may be caused with the fact, that the object which was
+		// created in the resource was deleted before the sync run
+		// such a change should be skipped to process consistent changes
+		if (change.getOldShadow() == null) {
+			LOGGER.debug(
+					"Skipping processing change. Can't find appropriate shadow (e.g. the object was deleted on the resource meantime).");
+			return true;
+		}
+		return processSynchronization(shadowCtx, change, parentResult);
+	}
+
 	@SuppressWarnings("rawtypes")
 	boolean processSynchronization(ProvisioningContext ctx, Change change, OperationResult result)
 			throws SchemaException, ObjectNotFoundException, ObjectAlreadyExistsException,
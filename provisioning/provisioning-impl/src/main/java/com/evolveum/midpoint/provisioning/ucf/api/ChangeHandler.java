@@ -0,0 +1,37 @@
+/*
+ * Copyright (c) 2010-2016 Evolveum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.evolveum.midpoint.provisioning.ucf.api;
+
+import com.evolveum.midpoint.schema.result.OperationResult;
+
+/**
+ * Processes changes fetched from the resource one by one, as they arrive from the connector.
+ *
+ * The handler is expected to deal with exceptions itself (e.g. to remember them and let the caller
+ * rethrow them after fetching is over).
+ *
+ * @author mederly
+ */
+public interface ChangeHandler {
+
+    /**
+     * Handle a single change.
+     * @param change Change to process. It is never a token-only change.
+     * @return true if fetching should proceed, false if it should stop
+     */
+    boolean handleChange(Change change, OperationResult parentResult);
+
+}
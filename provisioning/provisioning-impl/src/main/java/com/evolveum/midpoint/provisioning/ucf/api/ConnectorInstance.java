@@ -301,6 +301,19 @@ public interface ConnectorInstance {
 	 */
 	List<Change> fetchChanges(ObjectClassComplexTypeDefinition objectClass, PrismProperty<?> lastToken, AttributesToReturn attrsToReturn, StateReporter reporter,
 															   OperationResult parentResult) throws CommunicationException, GenericFrameworkException, SchemaException, ConfigurationException;
+
+	/**
+	 * Streaming variant of fetchChanges: each change is passed to the handler as soon as it is received
+	 * from the connector, so the changes need not be kept in memory.
+	 *
+	 * Token may be null. That means "from the beginning of history".
+	 *
+	 * @return The final token reported by the connector (covering all the changes fetched), or null if there is none
+	 * or if the handler stopped the fetching. In the latter case only tokens of the processed changes may be used.
+	 */
+	PrismProperty<?> fetchChanges(ObjectClassComplexTypeDefinition objectClass, PrismProperty<?> lastToken, AttributesToReturn attrsToReturn,
+			ChangeHandler handler, StateReporter reporter, OperationResult parentResult)
+			throws CommunicationException, GenericFrameworkException, SchemaException, ConfigurationException;
 	
 	//public ValidationResult validateConfiguration(ResourceConfiguration newConfiguration);
 	
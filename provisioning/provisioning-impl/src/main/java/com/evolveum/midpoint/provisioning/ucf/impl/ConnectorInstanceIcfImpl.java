@@ -111,6 +111,7 @@ import com.evolveum.midpoint.prism.xml.XmlTypeConverter;
 import com.evolveum.midpoint.prism.xml.XsdTypeMapper;
 import com.evolveum.midpoint.provisioning.ucf.api.AttributesToReturn;
 import com.evolveum.midpoint.provisioning.ucf.api.Change;
+import com.evolveum.midpoint.provisioning.ucf.api.ChangeHandler;
 import com.evolveum.midpoint.provisioning.ucf.api.ConnectorInstance;
 import com.evolveum.midpoint.provisioning.ucf.api.ExecuteProvisioningScriptOperation;
 import com.evolveum.midpoint.provisioning.ucf.api.ExecuteScriptArgument;
@@ -2119,11 +2120,33 @@ public class ConnectorInstanceIcfImpl implements ConnectorInstance {
 	}
 
 	@Override
-	public List<Change>  fetchChanges(ObjectClassComplexTypeDefinition objectClass, PrismProperty<?> lastToken, AttributesToReturn attrsToReturn, StateReporter reporter,
+	public List<Change> fetchChanges(ObjectClassComplexTypeDefinition objectClass, PrismProperty<?> lastToken, AttributesToReturn attrsToReturn, StateReporter reporter,
 																OperationResult parentResult) throws CommunicationException, GenericFrameworkException,
 			SchemaException, ConfigurationException {
 
-		OperationResult result = parentResult.createSubresult(ConnectorInstance.class.getName()
+		final List<Change> changeList = new ArrayList<>();
+		ChangeHandler collector = new ChangeHandler() {
+			@Override
+			public boolean handleChange(Change change, OperationResult result) {
+				return changeList.add(change);
+			}
+		};
+		PrismProperty<?> lastReceivedToken = fetchChanges(objectClass, lastToken, attrsToReturn, collector, reporter, parentResult);
+		if (lastReceivedToken != null) {
+			Change lastChange = new Change((ObjectDelta)null, lastReceivedToken);
+			LOGGER.trace("Adding last change: {}", lastChange);
+			changeList.add(lastChange);
+		}
+		return changeList;
+	}
+
+	@Override
+	public PrismProperty<?> fetchChanges(ObjectClassComplexTypeDefinition objectClass, PrismProperty<?> lastToken,
+			AttributesToReturn attrsToReturn, final ChangeHandler changeHandler, StateReporter reporter,
+			OperationResult parentResult) throws CommunicationException, GenericFrameworkException,
+			SchemaException, ConfigurationException {
+
+		final OperationResult result = parentResult.createSubresult(ConnectorInstance.class.getName()
 				+ ".fetchChanges");
 		result.addContext("objectClass", objectClass);
 		result.addParam("lastToken", lastToken);
@@ -2138,9 +2161,8 @@ public class ConnectorInstanceIcfImpl implements ConnectorInstance {
 			throw new SchemaException(ex.getMessage(), ex);
 		}
 
-		final List<SyncDelta> syncDeltas = new ArrayList<SyncDelta>();
 		// get icf object class
-		ObjectClass icfObjectClass;
+		final ObjectClass icfObjectClass;
 		if (objectClass == null) {
 			icfObjectClass = ObjectClass.ALL;
 		} else {
@@ -2152,12 +2174,32 @@ public class ConnectorInstanceIcfImpl implements ConnectorInstance {
 			convertToIcfAttrsToGet(objectClass, attrsToReturn, optionsBuilder);
 		}
 		OperationOptions options = optionsBuilder.build();
-		
+
+		final QName objectClassName = icfNameMapper.objectClassToQname(icfObjectClass, getSchemaNamespace(), legacySchema);
+		final ObjectClassComplexTypeDefinition objectClassDefinition = objectClassName != null ?
+				(ObjectClassComplexTypeDefinition) resourceSchema.findComplexTypeDefinition(objectClassName) : null;
+
+		// deltas are converted and handed over to the handler as they come; exceptions are rethrown after sync() returns
+		final Holder<Exception> handlerException = new Holder<>();
+		final Holder<Boolean> stoppedByHandler = new Holder<>(false);
+		final Holder<Integer> changesCount = new Holder<>(0);
 		SyncResultsHandler syncHandler = new SyncResultsHandler() {
 			@Override
 			public boolean handle(SyncDelta delta) {
 				LOGGER.trace("Detected sync delta: {}", delta);
-				return syncDeltas.add(delta);
+				boolean cont;
+				try {
+					Change change = createChangeFromSyncDelta(icfObjectClass, objectClassName, objectClassDefinition, delta);
+					changesCount.setValue(changesCount.getValue() + 1);
+					cont = changeHandler.handleChange(change, result);
+				} catch (SchemaException | GenericFrameworkException | RuntimeException e) {
+					handlerException.setValue(e);
+					cont = false;
+				}
+				if (!cont) {
+					stoppedByHandler.setValue(true);
+				}
+				return cont;
 			}
 		};
 
@@ -2175,7 +2217,7 @@ public class ConnectorInstanceIcfImpl implements ConnectorInstance {
 					options);
 			recordIcfOperationEnd(reporter, ProvisioningOperation.ICF_SYNC, objectClass);
 			connIdResult.recordSuccess();
-			connIdResult.addReturn(OperationResult.RETURN_COUNT, syncDeltas.size());
+			connIdResult.addReturn(OperationResult.RETURN_COUNT, changesCount.getValue());
 		} catch (Throwable ex) {
 			recordIcfOperationEnd(reporter, ProvisioningOperation.ICF_SYNC, objectClass, ex);
 			Throwable midpointEx = processIcfException(ex, this, connIdResult);
@@ -2196,24 +2238,27 @@ public class ConnectorInstanceIcfImpl implements ConnectorInstance {
 				throw new SystemException("Got unexpected exception: " + ex.getClass().getName() + ": " + ex.getMessage(), ex);
 			}
 		}
-		// convert changes from icf to midpoint Change
-		List<Change> changeList;
-		try {
-			changeList = getChangesFromSyncDeltas(icfObjectClass, syncDeltas, resourceSchema, result);
-		} catch (SchemaException ex) {
+
+		Exception ex = handlerException.getValue();
+		if (ex != null) {
 			result.recordFatalError(ex.getMessage(), ex);
-			throw new SchemaException(ex.getMessage(), ex);
-		}
-		
-		if (lastReceivedToken != null) {
-			Change lastChange = new Change((ObjectDelta)null, getToken(lastReceivedToken));
-			LOGGER.trace("Adding last change: {}", lastChange);
-			changeList.add(lastChange);
+			if (ex instanceof SchemaException) {
+				throw new SchemaException(ex.getMessage(), ex);
+			} else if (ex instanceof GenericFrameworkException) {
+				throw (GenericFrameworkException) ex;
+			} else {
+				throw (RuntimeException) ex;
+			}
 		}
 
 		result.recordSuccess();
-		result.addReturn(OperationResult.RETURN_COUNT, changeList == null ? 0 : changeList.size());
-		return changeList;
+		result.addReturn(OperationResult.RETURN_COUNT, changesCount.getValue());
+		if (stoppedByHandler.getValue()) {
+			// the final token covers also the changes that were not processed
+			LOGGER.trace("Fetching of changes was stopped by the handler after {} change(s)", changesCount.getValue());
+			return null;
+		}
+		return lastReceivedToken != null ? getToken(lastReceivedToken) : null;
 	}
 
 	@Override
@@ -2786,99 +2831,88 @@ public class ConnectorInstanceIcfImpl implements ConnectorInstance {
 		attributes.add(ab.build());
 	}
 
-	private List<Change> getChangesFromSyncDeltas(ObjectClass connIdObjClass, Collection<SyncDelta> connIdDeltas,
-			PrismSchema schema, OperationResult parentResult)
+	private Change createChangeFromSyncDelta(ObjectClass connIdObjClass, QName objectClass,
+			ObjectClassComplexTypeDefinition objClassDefinition, SyncDelta icfDelta)
 			throws SchemaException, GenericFrameworkException {
-		List<Change> changeList = new ArrayList<Change>();
 
-		QName objectClass = icfNameMapper.objectClassToQname(connIdObjClass, getSchemaNamespace(), legacySchema);
-		ObjectClassComplexTypeDefinition objClassDefinition = null;
-		if (objectClass != null) {
-			objClassDefinition = (ObjectClassComplexTypeDefinition) schema.findComplexTypeDefinition(objectClass);
+		Validate.notNull(icfDelta, "Sync delta must not be null.");
+
+		ObjectClass deltaIcfObjClass = connIdObjClass;
+		QName deltaObjectClass = objectClass;
+		ObjectClassComplexTypeDefinition deltaObjClassDefinition = objClassDefinition;
+		if (objectClass == null) {
+			deltaIcfObjClass = icfDelta.getObjectClass();
+			deltaObjectClass = icfNameMapper.objectClassToQname(deltaIcfObjClass, getSchemaNamespace(), legacySchema);
+			if (deltaIcfObjClass != null) {
+				deltaObjClassDefinition = (ObjectClassComplexTypeDefinition) resourceSchema.findComplexTypeDefinition(deltaObjectClass);
+			}
 		}
-		
-		Validate.notNull(connIdDeltas, "Sync result must not be null.");
-		for (SyncDelta icfDelta : connIdDeltas) {
-
-			ObjectClass deltaIcfObjClass = connIdObjClass;
-			QName deltaObjectClass = objectClass;
-			ObjectClassComplexTypeDefinition deltaObjClassDefinition = objClassDefinition;
-			if (objectClass == null) {
-				deltaIcfObjClass = icfDelta.getObjectClass();
-				deltaObjectClass = icfNameMapper.objectClassToQname(deltaIcfObjClass, getSchemaNamespace(), legacySchema);
-				if (deltaIcfObjClass != null) {
-					deltaObjClassDefinition = (ObjectClassComplexTypeDefinition) schema.findComplexTypeDefinition(deltaObjectClass);
-				}
+		if (deltaObjClassDefinition == null) {
+			if (icfDelta.getDeltaType() == SyncDeltaType.DELETE) {
+				// tolerate this. E.g. LDAP changelogs do not have objectclass in delete deltas.
+			} else {
+				throw new SchemaException("Got delta with object class "+deltaObjectClass+" ("+deltaIcfObjClass+") that has no definition in resource schema");
 			}
-			if (deltaObjClassDefinition == null) {
-				if (icfDelta.getDeltaType() == SyncDeltaType.DELETE) {
-					// tolerate this. E.g. LDAP changelogs do not have objectclass in delete deltas.
-				} else {
-					throw new SchemaException("Got delta with object class "+deltaObjectClass+" ("+deltaIcfObjClass+") that has no definition in resource schema");
-				}
+		}
+
+		SyncDeltaType icfDeltaType = icfDelta.getDeltaType();
+		if (SyncDeltaType.DELETE.equals(icfDeltaType)) {
+			LOGGER.trace("START creating delta of type DELETE");
+			ObjectDelta<ShadowType> objectDelta = new ObjectDelta<ShadowType>(
+					ShadowType.class, ChangeType.DELETE, prismContext);
+			Collection<ResourceAttribute<?>> identifiers = IcfUtil.convertToIdentifiers(icfDelta.getUid(),
+					deltaObjClassDefinition, resourceSchema);
+			Change change = new Change(identifiers, objectDelta, getToken(icfDelta.getToken()));
+			change.setObjectClassDefinition(deltaObjClassDefinition);
+			LOGGER.trace("END creating delta of type DELETE");
+			return change;
+
+		} else if (SyncDeltaType.CREATE.equals(icfDeltaType)) {
+			PrismObjectDefinition<ShadowType> objectDefinition = toShadowDefinition(deltaObjClassDefinition);
+			LOGGER.trace("Object definition: {}", objectDefinition);
+
+			LOGGER.trace("START creating delta of type CREATE");
+			PrismObject<ShadowType> currentShadow = icfConvertor.convertToResourceObject(icfDelta.getObject(),
+					objectDefinition, false, caseIgnoreAttributeNames, legacySchema);
+
+			if (LOGGER.isTraceEnabled()) {
+				LOGGER.trace("Got current shadow: {}", currentShadow.debugDump());
 			}
-			
-			SyncDeltaType icfDeltaType = icfDelta.getDeltaType();
-			if (SyncDeltaType.DELETE.equals(icfDeltaType)) {
-				LOGGER.trace("START creating delta of type DELETE");
-				ObjectDelta<ShadowType> objectDelta = new ObjectDelta<ShadowType>(
-						ShadowType.class, ChangeType.DELETE, prismContext);
-				Collection<ResourceAttribute<?>> identifiers = IcfUtil.convertToIdentifiers(icfDelta.getUid(), 
-						deltaObjClassDefinition, resourceSchema);
-				Change change = new Change(identifiers, objectDelta, getToken(icfDelta.getToken()));
-				change.setObjectClassDefinition(deltaObjClassDefinition);
-				changeList.add(change);
-				LOGGER.trace("END creating delta of type DELETE");
-
-			} else if (SyncDeltaType.CREATE.equals(icfDeltaType)) {
-				PrismObjectDefinition<ShadowType> objectDefinition = toShadowDefinition(deltaObjClassDefinition);
-				LOGGER.trace("Object definition: {}", objectDefinition);
-				
-				LOGGER.trace("START creating delta of type CREATE");
-				PrismObject<ShadowType> currentShadow = icfConvertor.convertToResourceObject(icfDelta.getObject(),
-						objectDefinition, false, caseIgnoreAttributeNames, legacySchema);
 
-				if (LOGGER.isTraceEnabled()) {
-					LOGGER.trace("Got current shadow: {}", currentShadow.debugDump());
-				}
+			Collection<ResourceAttribute<?>> identifiers = ShadowUtil.getAllIdentifiers(currentShadow);
 
-				Collection<ResourceAttribute<?>> identifiers = ShadowUtil.getAllIdentifiers(currentShadow);
-				
-				ObjectDelta<ShadowType> objectDelta = new ObjectDelta<ShadowType>(
-						ShadowType.class, ChangeType.ADD, prismContext);
-				objectDelta.setObjectToAdd(currentShadow);
-
-				Change change = new Change(identifiers, objectDelta, getToken(icfDelta.getToken()));
-				change.setObjectClassDefinition(deltaObjClassDefinition);
-				changeList.add(change);
-				LOGGER.trace("END creating delta of type CREATE");
-
-			} else if (SyncDeltaType.CREATE_OR_UPDATE.equals(icfDeltaType) || 
-					SyncDeltaType.UPDATE.equals(icfDeltaType)) {
-				PrismObjectDefinition<ShadowType> objectDefinition = toShadowDefinition(deltaObjClassDefinition);
-				LOGGER.trace("Object definition: {}", objectDefinition);
-				
-				LOGGER.trace("START creating delta of type {}", icfDeltaType);
-				PrismObject<ShadowType> currentShadow = icfConvertor.convertToResourceObject(icfDelta.getObject(),
-						objectDefinition, false, caseIgnoreAttributeNames, legacySchema);
+			ObjectDelta<ShadowType> objectDelta = new ObjectDelta<ShadowType>(
+					ShadowType.class, ChangeType.ADD, prismContext);
+			objectDelta.setObjectToAdd(currentShadow);
 
-				if (LOGGER.isTraceEnabled()) {
-					LOGGER.trace("Got current shadow: {}", currentShadow.debugDump());
-				}
+			Change change = new Change(identifiers, objectDelta, getToken(icfDelta.getToken()));
+			change.setObjectClassDefinition(deltaObjClassDefinition);
+			LOGGER.trace("END creating delta of type CREATE");
+			return change;
 
-				Collection<ResourceAttribute<?>> identifiers = ShadowUtil.getAllIdentifiers(currentShadow);
+		} else if (SyncDeltaType.CREATE_OR_UPDATE.equals(icfDeltaType) ||
+				SyncDeltaType.UPDATE.equals(icfDeltaType)) {
+			PrismObjectDefinition<ShadowType> objectDefinition = toShadowDefinition(deltaObjClassDefinition);
+			LOGGER.trace("Object definition: {}", objectDefinition);
 
-				Change change = new Change(identifiers, currentShadow, getToken(icfDelta.getToken()));
-				change.setObjectClassDefinition(deltaObjClassDefinition);
-				changeList.add(change);
-				LOGGER.trace("END creating delta of type {}:\n{}", icfDeltaType, change.debugDump());
-				
-			} else {
-				throw new GenericFrameworkException("Unexpected sync delta type " + icfDeltaType);
+			LOGGER.trace("START creating delta of type {}", icfDeltaType);
+			PrismObject<ShadowType> currentShadow = icfConvertor.convertToResourceObject(icfDelta.getObject(),
+					objectDefinition, false, caseIgnoreAttributeNames, legacySchema);
+
+			if (LOGGER.isTraceEnabled()) {
+				LOGGER.trace("Got current shadow: {}", currentShadow.debugDump());
 			}
 
+			Collection<ResourceAttribute<?>> identifiers = ShadowUtil.getAllIdentifiers(currentShadow);
+
+			Change change = new Change(identifiers, currentShadow, getToken(icfDelta.getToken()));
+			change.setObjectClassDefinition(deltaObjClassDefinition);
+			LOGGER.trace("END creating delta of type {}:\n{}", icfDeltaType, change.debugDump());
+			return change;
+
+		} else {
+			throw new GenericFrameworkException("Unexpected sync delta type " + icfDeltaType);
 		}
-		return changeList;
 	}
 
 	private SyncToken getSyncToken(PrismProperty tokenProperty) throws SchemaException {
@@ -30,10 +30,14 @@ import static org.testng.AssertJUnit.assertNull;
 import static org.testng.AssertJUnit.assertTrue;
 
 import java.io.File;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import javax.xml.datatype.XMLGregorianCalendar;
@@ -91,6 +95,7 @@ import com.evolveum.midpoint.prism.xml.XmlTypeConverter;
 import com.evolveum.midpoint.provisioning.api.ResourceObjectShadowChangeDescription;
 import com.evolveum.midpoint.provisioning.impl.ProvisioningContext;
 import com.evolveum.midpoint.provisioning.impl.ProvisioningTestUtil;
+import com.evolveum.midpoint.provisioning.impl.ShadowCache;
 import com.evolveum.midpoint.provisioning.impl.opendj.TestOpenDj;
 import com.evolveum.midpoint.provisioning.impl.ucf.TestUcfDummy;
 import com.evolveum.midpoint.provisioning.ucf.api.AttributesToReturn;
@@ -5470,6 +5475,410 @@ public class TestDummy extends AbstractDummyTest {
 		assertSteadyResource();
 	}
 
+	private static final int PARALLEL_ACCOUNTS = 30;
+	private static final int PARALLEL_ACCOUNTS_READDED = 10;
+	private static final String PARALLEL_RENAME_OLD_NAME = "parallel-rename";
+	private static final String PARALLEL_RENAME_NEW_NAME = "parallel-renamed";
+
+	static Task parallelSyncTask = null;
+	private static Map<String, String> parallelAccountIds = new HashMap<>();		// name -> ICF id
+
+	/**
+	 * Live sync in worker threads. Accounts are added and modified; one of them is renamed and a new account
+	 * takes its old name. (In the default UID mode the name is the primary identifier.)
+	 */
+	@Test
+	public void test892LiveSyncParallelAddModifyRename() throws Exception {
+		final String TEST_NAME = "test892LiveSyncParallelAddModifyRename";
+		TestUtil.displayTestTile(TEST_NAME);
+		// GIVEN
+		OperationResult result = new OperationResult(TestDummy.class.getName()
+				+ "." + TEST_NAME);
+
+		ResourceShadowDiscriminator coords = new ResourceShadowDiscriminator(RESOURCE_DUMMY_OID, 
+				ProvisioningTestUtil.getDefaultAccountObjectClass(resourceType));
+		parallelSyncTask = taskManager.createTaskInstance(TestDummy.class.getName() + ".parallelSyncTask");
+		parallelSyncTask.setExtensionPropertyValue(SchemaConstants.MODEL_EXTENSION_WORKER_THREADS, 4);
+		dummyResource.setSyncStyle(DummySyncStyle.DUMB);
+		// Dry run to remember the current sync token in the task instance.
+		provisioningService.synchronize(coords, parallelSyncTask, result);
+
+		syncServiceMock.reset();
+		int tokenBefore = dummyResource.getLatestSyncToken();
+		for (int i = 0; i < PARALLEL_ACCOUNTS; i++) {
+			String name = getParallelAccountName(i);
+			DummyAccount account = new DummyAccount(name);
+			account.addAttributeValues(DUMMY_ACCOUNT_ATTRIBUTE_FULLNAME_NAME, "Parallel pirate " + i);
+			account.setEnabled(true);
+			parallelAccountIds.put(name, dummyResource.addAccount(account));
+			if (i % 3 == 0) {
+				account.replaceAttributeValue(DUMMY_ACCOUNT_ATTRIBUTE_FULLNAME_NAME, "Modified parallel pirate " + i);
+			}
+		}
+		DummyAccount renamedAccount = new DummyAccount(PARALLEL_RENAME_OLD_NAME);
+		renamedAccount.addAttributeValues(DUMMY_ACCOUNT_ATTRIBUTE_FULLNAME_NAME, "Renamed pirate");
+		renamedAccount.setEnabled(true);
+		String renamedAccountId = dummyResource.addAccount(renamedAccount);
+		dummyResource.renameAccount(renamedAccountId, PARALLEL_RENAME_OLD_NAME, PARALLEL_RENAME_NEW_NAME);
+		renamedAccount.replaceAttributeValue(DUMMY_ACCOUNT_ATTRIBUTE_FULLNAME_NAME, "Renamed pirate (modified)");
+		parallelAccountIds.put(PARALLEL_RENAME_NEW_NAME, renamedAccountId);
+		DummyAccount newcomer = new DummyAccount(PARALLEL_RENAME_OLD_NAME);
+		newcomer.addAttributeValues(DUMMY_ACCOUNT_ATTRIBUTE_FULLNAME_NAME, "Newcomer pirate");
+		newcomer.setEnabled(true);
+		parallelAccountIds.put(PARALLEL_RENAME_OLD_NAME, dummyResource.addAccount(newcomer));
+		int expectedChanges = dummyResource.getLatestSyncToken() - tokenBefore;
+
+		// WHEN
+		TestUtil.displayWhen(TEST_NAME);
+		int processed = provisioningService.synchronize(coords, parallelSyncTask, result);
+
+		// THEN
+		TestUtil.displayThen(TEST_NAME);
+		result.computeStatus();
+		display("Synchronization result", result);
+		TestUtil.assertSuccess("Synchronization result is not OK", result);
+
+		assertEquals("Wrong number of processed changes", expectedChanges, processed);
+		assertEquals("Wrong number of notified changes", expectedChanges, syncServiceMock.getCallCount());
+		assertParallelSyncToken();
+
+		for (String name : parallelAccountIds.keySet()) {
+			assertNotNull("No shadow for " + name, findAccountShadowByUsername(name, resource, result));
+		}
+
+		checkAllShadows();
+		
+		assertSteadyResource();
+	}
+
+	/**
+	 * Accounts are deleted and then added again under the same name. The delete has to be processed
+	 * before the add, otherwise the shadow of the new account would be deleted.
+	 */
+	@Test
+	public void test894LiveSyncParallelDeleteAndAddAgain() throws Exception {
+		final String TEST_NAME = "test894LiveSyncParallelDeleteAndAddAgain";
+		TestUtil.displayTestTile(TEST_NAME);
+		// GIVEN
+		OperationResult result = new OperationResult(TestDummy.class.getName()
+				+ "." + TEST_NAME);
+
+		ResourceShadowDiscriminator coords = new ResourceShadowDiscriminator(RESOURCE_DUMMY_OID, 
+				ProvisioningTestUtil.getDefaultAccountObjectClass(resourceType));
+		syncServiceMock.reset();
+		dummyResource.setSyncStyle(DummySyncStyle.SMART);
+		int tokenBefore = dummyResource.getLatestSyncToken();
+		for (int i = 0; i < PARALLEL_ACCOUNTS_READDED; i++) {
+			String name = getParallelAccountName(i);
+			dummyResource.deleteAccountById(parallelAccountIds.get(name));
+			DummyAccount account = new DummyAccount(name);
+			account.addAttributeValues(DUMMY_ACCOUNT_ATTRIBUTE_FULLNAME_NAME, "Reincarnated pirate " + i);
+			account.setEnabled(true);
+			parallelAccountIds.put(name, dummyResource.addAccount(account));
+		}
+		int expectedChanges = dummyResource.getLatestSyncToken() - tokenBefore;
+
+		// WHEN
+		TestUtil.displayWhen(TEST_NAME);
+		int processed = provisioningService.synchronize(coords, parallelSyncTask, result);
+
+		// THEN
+		TestUtil.displayThen(TEST_NAME);
+		result.computeStatus();
+		display("Synchronization result", result);
+		TestUtil.assertSuccess("Synchronization result is not OK", result);
+
+		assertEquals("Wrong number of processed changes", expectedChanges, processed);
+		assertParallelSyncToken();
+
+		List<ResourceObjectShadowChangeDescription> changes = syncServiceMock.getChanges();
+		for (int i = 0; i < PARALLEL_ACCOUNTS_READDED; i++) {
+			String name = getParallelAccountName(i);
+			int deleteIndex = -1;
+			int addIndex = -1;
+			for (int j = 0; j < changes.size(); j++) {
+				ResourceObjectShadowChangeDescription change = changes.get(j);
+				if (change.getObjectDelta() != null && change.getObjectDelta().isDelete()) {
+					if (name.equals(getIcfName(change.getOldShadow()))) {
+						deleteIndex = j;
+					}
+				} else if (change.getCurrentShadow() != null && name.equals(getIcfName(change.getCurrentShadow()))) {
+					addIndex = j;
+				}
+			}
+			assertTrue("Delete of " + name + " was not notified", deleteIndex >= 0);
+			assertTrue("Add of " + name + " was not notified", addIndex >= 0);
+			assertTrue("Changes of " + name + " were processed out of order", deleteIndex < addIndex);
+			assertNotNull("No shadow for " + name, findAccountShadowByUsername(name, resource, result));
+		}
+
+		checkAllShadows();
+		
+		assertSteadyResource();
+	}
+
+	@Test
+	public void test896LiveSyncParallelDeleteAll() throws Exception {
+		final String TEST_NAME = "test896LiveSyncParallelDeleteAll";
+		TestUtil.displayTestTile(TEST_NAME);
+		// GIVEN
+		OperationResult result = new OperationResult(TestDummy.class.getName()
+				+ "." + TEST_NAME);
+
+		ResourceShadowDiscriminator coords = new ResourceShadowDiscriminator(RESOURCE_DUMMY_OID, 
+				ProvisioningTestUtil.getDefaultAccountObjectClass(resourceType));
+		syncServiceMock.reset();
+		dummyResource.setSyncStyle(DummySyncStyle.SMART);
+		for (String id : parallelAccountIds.values()) {
+			dummyResource.deleteAccountById(id);
+		}
+
+		// WHEN
+		TestUtil.displayWhen(TEST_NAME);
+		int processed = provisioningService.synchronize(coords, parallelSyncTask, result);
+
+		// THEN
+		TestUtil.displayThen(TEST_NAME);
+		result.computeStatus();
+		display("Synchronization result", result);
+		TestUtil.assertSuccess("Synchronization result is not OK", result);
+
+		assertEquals("Wrong number of processed changes", parallelAccountIds.size(), processed);
+		assertParallelSyncToken();
+
+		for (String name : parallelAccountIds.keySet()) {
+			assertNull("Shadow for " + name + " was not deleted", findAccountShadowByUsername(name, resource, result));
+		}
+
+		checkAllShadows();
+		
+		assertSteadyResource();
+	}
+
+	private String getParallelAccountName(int i) {
+		return String.format("parallel-%02d", i);
+	}
+
+	private void assertParallelSyncToken() {
+		assertSyncToken(parallelSyncTask, dummyResource.getLatestSyncToken());
+	}
+
+	private static final int STREAMED_ACCOUNTS = 250;
+	private static final long CHECKPOINT_INTERVAL = 500L;
+	private static final int RESUMED_ACCOUNTS = 20;
+	private static final int RESUMED_ACCOUNTS_FAILING = 10;
+
+	/**
+	 * Changes are processed while they are being fetched, and the token is saved after each
+	 * DEFAULT_LIVE_SYNC_CHECKPOINT_CHANGES changes (not only at the end).
+	 */
+	@Test
+	public void test897LiveSyncStreamingCheckpoints() throws Exception {
+		final String TEST_NAME = "test897LiveSyncStreamingCheckpoints";
+		TestUtil.displayTestTile(TEST_NAME);
+		// GIVEN
+		OperationResult result = new OperationResult(TestDummy.class.getName()
+				+ "." + TEST_NAME);
+
+		ResourceShadowDiscriminator coords = new ResourceShadowDiscriminator(RESOURCE_DUMMY_OID, 
+				ProvisioningTestUtil.getDefaultAccountObjectClass(resourceType));
+		Task syncTask = taskManager.createTaskInstance(TestDummy.class.getName() + "." + TEST_NAME);
+		dummyResource.setSyncStyle(DummySyncStyle.SMART);
+		provisioningService.synchronize(coords, syncTask, result);			// to remember the current token
+		syncServiceMock.reset();
+		int tokenBefore = dummyResource.getLatestSyncToken();
+		addSyncAccounts("stream-%03d", STREAMED_ACCOUNTS);
+		List<int[]> checkpoints = new ArrayList<>();
+
+		// WHEN
+		TestUtil.displayWhen(TEST_NAME);
+		int processed = provisioningService.synchronize(coords, createCheckpointRecordingTask(syncTask, checkpoints), result);
+
+		// THEN
+		TestUtil.displayThen(TEST_NAME);
+		result.computeStatus();
+		display("Synchronization result", result);
+		TestUtil.assertSuccess("Synchronization result is not OK", result);
+
+		assertEquals("Wrong number of processed changes", STREAMED_ACCOUNTS, processed);
+		assertEquals("Wrong number of notified changes", STREAMED_ACCOUNTS, syncServiceMock.getCallCount());
+		for (int changes = ShadowCache.DEFAULT_LIVE_SYNC_CHECKPOINT_CHANGES; changes < STREAMED_ACCOUNTS;
+				changes += ShadowCache.DEFAULT_LIVE_SYNC_CHECKPOINT_CHANGES) {
+			assertCheckpoint(checkpoints, changes, tokenBefore + changes);
+		}
+		assertSyncToken(syncTask, dummyResource.getLatestSyncToken());
+
+		assertSteadyResource();
+	}
+
+	/**
+	 * The token is saved also when the checkpoint interval passes, even if there were only a few changes.
+	 * The interval is shortened using liveSyncCheckpointInterval task extension property.
+	 */
+	@Test
+	public void test898LiveSyncTimeCheckpoint() throws Exception {
+		final String TEST_NAME = "test898LiveSyncTimeCheckpoint";
+		TestUtil.displayTestTile(TEST_NAME);
+		// GIVEN
+		OperationResult result = new OperationResult(TestDummy.class.getName()
+				+ "." + TEST_NAME);
+
+		ResourceShadowDiscriminator coords = new ResourceShadowDiscriminator(RESOURCE_DUMMY_OID, 
+				ProvisioningTestUtil.getDefaultAccountObjectClass(resourceType));
+		Task syncTask = taskManager.createTaskInstance(TestDummy.class.getName() + "." + TEST_NAME);
+		syncTask.setExtensionPropertyValue(SchemaConstants.MODEL_EXTENSION_LIVE_SYNC_CHECKPOINT_INTERVAL, CHECKPOINT_INTERVAL);
+		dummyResource.setSyncStyle(DummySyncStyle.SMART);
+		provisioningService.synchronize(coords, syncTask, result);			// to remember the current token
+		syncServiceMock.reset();
+		int tokenBefore = dummyResource.getLatestSyncToken();
+		addSyncAccounts("slow-%02d", 3);
+		List<int[]> checkpoints = new ArrayList<>();
+		syncServiceMock.setChangeChecker(new ObjectChecker<ResourceObjectShadowChangeDescription>() {
+			@Override
+			public void check(ResourceObjectShadowChangeDescription change) {
+				if (syncServiceMock.getCallCount() == 0) {
+					try {
+						Thread.sleep(CHECKPOINT_INTERVAL + 500L);
+					} catch (InterruptedException e) {
+						throw new IllegalStateException(e);
+					}
+				}
+			}
+		});
+
+		// WHEN
+		TestUtil.displayWhen(TEST_NAME);
+		int processed;
+		try {
+			processed = provisioningService.synchronize(coords, createCheckpointRecordingTask(syncTask, checkpoints), result);
+		} finally {
+			syncServiceMock.setChangeChecker(null);
+		}
+
+		// THEN
+		TestUtil.displayThen(TEST_NAME);
+		result.computeStatus();
+		TestUtil.assertSuccess("Synchronization result is not OK", result);
+
+		assertEquals("Wrong number of processed changes", 3, processed);
+		assertCheckpoint(checkpoints, 1, tokenBefore + 1);
+		assertSyncToken(syncTask, dummyResource.getLatestSyncToken());
+
+		assertSteadyResource();
+	}
+
+	/**
+	 * Processing of a change fails. The tokens of the changes processed before it are kept,
+	 * so the next run starts with the failed change.
+	 */
+	@Test
+	public void test899LiveSyncResumeFromCheckpoint() throws Exception {
+		final String TEST_NAME = "test899LiveSyncResumeFromCheckpoint";
+		TestUtil.displayTestTile(TEST_NAME);
+		// GIVEN
+		OperationResult result = new OperationResult(TestDummy.class.getName()
+				+ "." + TEST_NAME);
+
+		ResourceShadowDiscriminator coords = new ResourceShadowDiscriminator(RESOURCE_DUMMY_OID, 
+				ProvisioningTestUtil.getDefaultAccountObjectClass(resourceType));
+		Task syncTask = taskManager.createTaskInstance(TestDummy.class.getName() + "." + TEST_NAME);
+		dummyResource.setSyncStyle(DummySyncStyle.SMART);
+		provisioningService.synchronize(coords, syncTask, result);			// to remember the current token
+		syncServiceMock.reset();
+		int tokenBefore = dummyResource.getLatestSyncToken();
+		addSyncAccounts("resume-%02d", RESUMED_ACCOUNTS);
+		final String failingName = String.format("resume-%02d", RESUMED_ACCOUNTS_FAILING);
+		syncServiceMock.setChangeChecker(new ObjectChecker<ResourceObjectShadowChangeDescription>() {
+			@Override
+			public void check(ResourceObjectShadowChangeDescription change) {
+				if (change.getCurrentShadow() != null && failingName.equals(getIcfName(change.getCurrentShadow()))) {
+					throw new IllegalStateException("Simulated failure of " + failingName);
+				}
+			}
+		});
+		try {
+			provisioningService.synchronize(coords, syncTask, new OperationResult(TEST_NAME + ".failing"));
+			AssertJUnit.fail("Unexpected success of the synchronization");
+		} catch (RuntimeException e) {
+			display("Expected exception", e);
+		} finally {
+			syncServiceMock.setChangeChecker(null);
+		}
+		assertEquals("Wrong number of changes notified before the failure", RESUMED_ACCOUNTS_FAILING, syncServiceMock.getCallCount());
+		assertSyncToken(syncTask, tokenBefore + RESUMED_ACCOUNTS_FAILING);
+		syncServiceMock.reset();
+
+		// WHEN
+		TestUtil.displayWhen(TEST_NAME);
+		int processed = provisioningService.synchronize(coords, syncTask, result);
+
+		// THEN
+		TestUtil.displayThen(TEST_NAME);
+		result.computeStatus();
+		display("Synchronization result", result);
+		TestUtil.assertSuccess("Synchronization result is not OK", result);
+
+		assertEquals("Wrong number of processed changes", RESUMED_ACCOUNTS - RESUMED_ACCOUNTS_FAILING, processed);
+		assertEquals("Wrong first change after resume", failingName,
+				getIcfName(syncServiceMock.getChanges().get(0).getCurrentShadow()));
+		assertSyncToken(syncTask, dummyResource.getLatestSyncToken());
+
+		assertSteadyResource();
+	}
+
+	private void addSyncAccounts(String nameFormat, int count) throws Exception {
+		for (int i = 0; i < count; i++) {
+			DummyAccount account = new DummyAccount(String.format(nameFormat, i));
+			account.addAttributeValues(DUMMY_ACCOUNT_ATTRIBUTE_FULLNAME_NAME, "Synchronized pirate " + i);
+			account.setEnabled(true);
+			dummyResource.addAccount(account);
+		}
+	}
+
+	/**
+	 * Returns the task that records each save of the task: the number of changes notified so far
+	 * and the token being saved.
+	 */
+	private Task createCheckpointRecordingTask(final Task task, final List<int[]> checkpoints) {
+		return (Task) Proxy.newProxyInstance(Task.class.getClassLoader(), new Class<?>[] { Task.class },
+				(proxy, method, args) -> {
+					if ("savePendingModifications".equals(method.getName())) {
+						PrismProperty<Integer> token = task.getExtensionProperty(SchemaConstants.SYNC_TOKEN);
+						checkpoints.add(new int[] { syncServiceMock.getCallCount(),
+								token != null && token.getRealValue() != null ? token.getRealValue() : -1 });
+					}
+					try {
+						return method.invoke(task, args);
+					} catch (InvocationTargetException e) {
+						throw e.getCause();
+					}
+				});
+	}
+
+	private void assertCheckpoint(List<int[]> checkpoints, int changes, int token) {
+		for (int[] checkpoint : checkpoints) {
+			if (checkpoint[0] == changes) {
+				assertEquals("Wrong token saved after " + changes + " change(s)", token, checkpoint[1]);
+				return;
+			}
+		}
+		AssertJUnit.fail("The token was not saved after " + changes + " change(s); saved at: " + dumpCheckpoints(checkpoints));
+	}
+
+	private String dumpCheckpoints(List<int[]> checkpoints) {
+		List<String> rv = new ArrayList<>();
+		for (int[] checkpoint : checkpoints) {
+			rv.add(checkpoint[0] + " (token " + checkpoint[1] + ")");
+		}
+		return rv.toString();
+	}
+
+	private void assertSyncToken(Task task, int expected) {
+		PrismProperty<Integer> tokenProperty = task.getExtensionProperty(SchemaConstants.SYNC_TOKEN);
+		assertNotNull("No token in the live sync task", tokenProperty);
+		assertEquals("Wrong token in the live sync task", (Integer) expected, tokenProperty.getRealValue());
+	}
+
 	@Test
 	public void test901FailResourceNotFound() throws Exception {
 		final String TEST_NAME = "test901FailResourceNotFound";
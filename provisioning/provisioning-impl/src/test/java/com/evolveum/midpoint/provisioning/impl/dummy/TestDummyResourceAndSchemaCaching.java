@@ -31,6 +31,7 @@ import javax.xml.namespace.QName;
 import com.evolveum.midpoint.common.refinery.RefinedResourceSchemaImpl;
 import com.evolveum.midpoint.prism.*;
 import org.apache.commons.lang.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.test.annotation.DirtiesContext;
 import org.springframework.test.context.ContextConfiguration;
 import org.testng.AssertJUnit;
@@ -44,7 +45,10 @@ import com.evolveum.midpoint.prism.delta.ObjectDelta;
 import com.evolveum.midpoint.prism.delta.PropertyDelta;
 import com.evolveum.midpoint.prism.path.ItemPath;
 import com.evolveum.midpoint.prism.util.PrismTestUtil;
+import com.evolveum.midpoint.provisioning.impl.ResourceCache;
 import com.evolveum.midpoint.provisioning.ucf.impl.ConnectorFactoryIcfImpl;
+import com.evolveum.midpoint.schema.GetOperationOptions;
+import com.evolveum.midpoint.schema.SelectorOptions;
 import com.evolveum.midpoint.schema.internals.InternalMonitor;
 import com.evolveum.midpoint.schema.result.OperationResult;
 import com.evolveum.midpoint.schema.util.ResourceTypeUtil;
@@ -77,6 +81,9 @@ import com.evolveum.midpoint.xml.ns._public.common.common_3.ShadowType;
 public class TestDummyResourceAndSchemaCaching extends AbstractDummyTest {
 
 	private static final Trace LOGGER = TraceManager.getTrace(TestDummyResourceAndSchemaCaching.class);
+
+	@Autowired(required = true)
+	private ResourceCache resourceCache;
 	
 	
 	
@@ -490,6 +497,66 @@ public class TestDummyResourceAndSchemaCaching extends AbstractDummyTest {
 		assertConnectorConfigChanged();
 	}
 	
+	/**
+	 * A thread that has read an older version of the resource must not replace a newer cached snapshot.
+	 */
+	@Test
+	public void test040CacheKeepsNewerVersion() throws Exception {
+		final String TEST_NAME = "test040CacheKeepsNewerVersion";
+		TestUtil.displayTestTile(TEST_NAME);
+		// GIVEN
+		OperationResult result = new OperationResult(TestDummyResourceAndSchemaCaching.class.getName()
+				+ "." + TEST_NAME);
+		PrismObject<ResourceType> resourceOld = repositoryService.getObject(ResourceType.class, RESOURCE_DUMMY_OID, null, result);
+		String oldVersion = resourceOld.getVersion();
+		String newVersion = String.valueOf(Long.parseLong(oldVersion) + 1);
+		PrismObject<ResourceType> resourceNew = resourceOld.clone();
+		resourceNew.setVersion(newVersion);
+		resourceCache.remove(RESOURCE_DUMMY_OID);
+
+		try {
+			// WHEN
+			resourceCache.put(resourceNew);
+			resourceCache.put(resourceOld);
+
+			// THEN
+			AssertJUnit.assertEquals("Older version replaced the cached one", newVersion, resourceCache.getVersion(RESOURCE_DUMMY_OID));
+			AssertJUnit.assertNull("Older version was returned from the cache", resourceCache.get(RESOURCE_DUMMY_OID, oldVersion, null));
+			AssertJUnit.assertNotNull("Newer version is not in the cache", resourceCache.get(RESOURCE_DUMMY_OID, newVersion, null));
+		} finally {
+			resourceCache.remove(RESOURCE_DUMMY_OID);
+		}
+	}
+
+	/**
+	 * Read-only callers share the cached immutable snapshot; other callers get their own mutable clone.
+	 */
+	@Test
+	public void test050GetResourceReadOnly() throws Exception {
+		final String TEST_NAME = "test050GetResourceReadOnly";
+		TestUtil.displayTestTile(TEST_NAME);
+		// GIVEN
+		OperationResult result = new OperationResult(TestDummyResourceAndSchemaCaching.class.getName()
+				+ "." + TEST_NAME);
+		Collection<SelectorOptions<GetOperationOptions>> readOnly = SelectorOptions.createCollection(GetOperationOptions.createReadOnly());
+		provisioningService.getObject(ResourceType.class, RESOURCE_DUMMY_OID, null, null, result);
+
+		// WHEN
+		PrismObject<ResourceType> resourceReadOnly1 = provisioningService.getObject(ResourceType.class, RESOURCE_DUMMY_OID, readOnly, null, result);
+		PrismObject<ResourceType> resourceReadOnly2 = provisioningService.getObject(ResourceType.class, RESOURCE_DUMMY_OID, readOnly, null, result);
+		PrismObject<ResourceType> resourceMutable = provisioningService.getObject(ResourceType.class, RESOURCE_DUMMY_OID, null, null, result);
+
+		// THEN
+		result.computeStatus();
+		TestUtil.assertSuccess(result);
+
+		AssertJUnit.assertTrue("Read-only resource is not immutable", resourceReadOnly1.isImmutable());
+		AssertJUnit.assertSame("Read-only callers got different instances", resourceReadOnly1, resourceReadOnly2);
+		AssertJUnit.assertFalse("Resource for mutable caller is immutable", resourceMutable.isImmutable());
+		AssertJUnit.assertNotSame("Mutable caller got the shared instance", resourceReadOnly1, resourceMutable);
+		assertHasSchema(resourceReadOnly1, "read-only resource");
+	}
+
 	@Test
 	public void test900DeleteResource() throws Exception {
 		final String TEST_NAME = "test900DeleteResource";
@@ -21,6 +21,9 @@ import static org.testng.AssertJUnit.assertNotNull;
 import static org.testng.AssertJUnit.assertNull;
 import static org.testng.AssertJUnit.assertTrue;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
 
@@ -59,6 +62,7 @@ public class SynchornizationServiceMock implements ResourceObjectChangeListener,
 	private boolean wasFailure = false;
 	private boolean wasInProgress = false;
 	private ResourceObjectShadowChangeDescription lastChange = null;
+	private final List<ResourceObjectShadowChangeDescription> changes = new ArrayList<>();	// in the order of notification
 	private ResourceOperationDescription lastOperationDescription = null;
 	private ObjectChecker changeChecker;
 	private boolean supportActivation = true;
@@ -166,9 +170,12 @@ public class SynchornizationServiceMock implements ResourceObjectChangeListener,
 			changeChecker.check(change);
 		}
 
-		// remember ...
-		callCountNotifyChange++;
-		lastChange = change;
+		// remember ... (live sync may call us from more threads)
+		synchronized (this) {
+			callCountNotifyChange++;
+			lastChange = change;
+			changes.add(change);
+		}
 	}
 	
 	 private static boolean isDryRun(Task task){
@@ -305,10 +312,11 @@ public class SynchornizationServiceMock implements ResourceObjectChangeListener,
 		return (callCountNotifyChange > 0);
 	}
 
-	public void reset() {
+	public synchronized void reset() {
 		callCountNotifyChange = 0;
 		callCountNotifyOperation = 0;
 		lastChange = null;
+		changes.clear();
 		wasSuccess = false;
 		wasFailure = false;
 		wasInProgress = false;
@@ -322,7 +330,11 @@ public class SynchornizationServiceMock implements ResourceObjectChangeListener,
 		this.lastChange = lastChange;
 	}
 
-	public int getCallCount() {
+	public synchronized List<ResourceObjectShadowChangeDescription> getChanges() {
+		return new ArrayList<>(changes);
+	}
+
+	public synchronized int getCallCount() {
 		return callCountNotifyChange;
 	}
 
@@ -0,0 +1,42 @@
+/*
+ * Copyright (c) 2010-2016 Evolveum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.evolveum.midpoint.repo.api;
+
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ObjectType;
+
+import java.util.Set;
+
+/**
+ * Distributes cache invalidation events to registered cache listeners.
+ *
+ * Local changes are dispatched by the repository cache right after the modification. Changes
+ * made on other nodes are dispatched by the cluster manager when it finds them in the repository.
+ *
+ * @author mederly
+ */
+public interface CacheDispatcher {
+
+	void registerCacheListener(CacheListener cacheListener);
+
+	void unregisterCacheListener(CacheListener cacheListener);
+
+	<O extends ObjectType> void dispatch(Class<O> type, String oid);
+
+	/**
+	 * Returns OIDs of objects of given type cached by any of the registered listeners.
+	 */
+	<O extends ObjectType> Set<String> getCachedOids(Class<O> type);
+}
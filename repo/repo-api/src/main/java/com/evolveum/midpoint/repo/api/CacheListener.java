@@ -0,0 +1,46 @@
+/*
+ * Copyright (c) 2010-2016 Evolveum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.evolveum.midpoint.repo.api;
+
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ObjectType;
+
+import java.util.Collection;
+
+/**
+ * Component that caches repository objects and wants to be notified when they change,
+ * either on this node or (with some delay) on any other node in the cluster.
+ *
+ * @author mederly
+ */
+public interface CacheListener {
+
+	/**
+	 * Invalidates cached object(s).
+	 *
+	 * @param type Type of the changed object; never null.
+	 * @param oid OID of the changed object. Null means "any object of given type".
+	 */
+	<O extends ObjectType> void invalidateCache(Class<O> type, String oid);
+
+	/**
+	 * Returns OIDs of objects of given type that are currently cached. Only these objects are checked
+	 * for changes made on other nodes.
+	 *
+	 * @param type Type of the objects; never null.
+	 * @return OIDs of cached objects; never null.
+	 */
+	<O extends ObjectType> Collection<String> getCachedOids(Class<O> type);
+}
@@ -17,10 +17,12 @@ package com.evolveum.midpoint.repo.api;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 import com.evolveum.midpoint.prism.Containerable;
 import com.evolveum.midpoint.prism.PrismObject;
 import com.evolveum.midpoint.prism.delta.ItemDelta;
+import com.evolveum.midpoint.prism.delta.ObjectDelta;
 import com.evolveum.midpoint.prism.query.ObjectQuery;
 import com.evolveum.midpoint.schema.*;
 import com.evolveum.midpoint.schema.result.OperationResult;
@@ -122,6 +124,7 @@ public interface RepositoryService {
     @Deprecated
     String LIST_ACCOUNT_SHADOW = CLASS_NAME_WITH_DOT + "listAccountShadowOwner";
     String ADD_OBJECT = CLASS_NAME_WITH_DOT + "addObject";
+    String ADD_OBJECTS = CLASS_NAME_WITH_DOT + "addObjects";
     String DELETE_OBJECT = CLASS_NAME_WITH_DOT + "deleteObject";
     @Deprecated
     String CLAIM_TASK = CLASS_NAME_WITH_DOT + "claimTask";
@@ -131,8 +134,11 @@ public interface RepositoryService {
 	String SEARCH_CONTAINERS = CLASS_NAME_WITH_DOT + "searchContainers";
     String LIST_RESOURCE_OBJECT_SHADOWS = CLASS_NAME_WITH_DOT + "listResourceObjectShadows";
     String MODIFY_OBJECT = CLASS_NAME_WITH_DOT + "modifyObject";
+    String MODIFY_OBJECTS = CLASS_NAME_WITH_DOT + "modifyObjects";
     String COUNT_OBJECTS = CLASS_NAME_WITH_DOT + "countObjects";
     String GET_VERSION = CLASS_NAME_WITH_DOT + "getVersion";
+    String GET_VERSIONS = CLASS_NAME_WITH_DOT + "getVersions";
+    String GET_CHANGE_MARKER = CLASS_NAME_WITH_DOT + "getChangeMarker";
     String SEARCH_OBJECTS_ITERATIVE = CLASS_NAME_WITH_DOT + "searchObjectsIterative";
     String CLEANUP_TASKS = CLASS_NAME_WITH_DOT + "cleanupTasks";
     String SEARCH_SHADOW_OWNER = CLASS_NAME_WITH_DOT + "searchShadowOwner";
@@ -191,6 +197,34 @@ public interface RepositoryService {
 	<T extends ObjectType> String getVersion(Class<T> type,String oid, OperationResult parentResult)
 			throws ObjectNotFoundException, SchemaException;
 
+	/**
+	 * Returns current versions of given objects, indexed by OID. Objects that do not exist are not
+	 * present in the returned map. Only OIDs and versions are read, so this is much cheaper than
+	 * getting the objects. It is used to detect changes of cached objects.
+	 *
+	 * @param type
+	 *            (class) of the objects
+	 * @param oids
+	 *            OIDs of the objects
+	 * @param parentResult
+	 *            parent OperationResult (in/out)
+	 * @return map of OID to object version
+	 */
+	<T extends ObjectType> Map<String, String> getVersions(Class<T> type, Collection<String> oids, OperationResult parentResult);
+
+	/**
+	 * Returns a marker that changes whenever an object of given type is added, modified or deleted.
+	 * It is computed by a single aggregate query, so it is cheap even for large number of objects.
+	 * The marker has no meaning other than it can be compared to a previously obtained one.
+	 *
+	 * @param type
+	 *            (class) of the objects
+	 * @param parentResult
+	 *            parent OperationResult (in/out)
+	 * @return change marker
+	 */
+	<T extends ObjectType> String getChangeMarker(Class<T> type, OperationResult parentResult);
+
 	/**
 	 * <p>Add new object.</p>
 	 * <p>
@@ -231,6 +265,29 @@ public interface RepositoryService {
 	<T extends ObjectType> String addObject(PrismObject<T> object, RepoAddOptions options, OperationResult parentResult)
 			throws ObjectAlreadyExistsException, SchemaException;
 
+	/**
+	 * <p>Adds a set of new objects.</p>
+	 * <p>
+	 * Semantics for each object is the same as for addObject. However, the implementation may store
+	 * all the objects at once (e.g. in a single transaction, using batched statements), which is much
+	 * faster when importing or provisioning many objects. If that is not possible, objects are added
+	 * one by one.
+	 * </p><p>
+	 * Failures are reported per object: the method does not throw an exception if an object cannot be added.
+	 * OIDs of the added objects are set in the respective PrismObject instances.
+	 * </p>
+	 *
+	 * @param objects
+	 *            objects to create
+	 * @param options
+	 *            options applied to all objects (may be null)
+	 * @param parentResult
+	 *            parent OperationResult (in/out)
+	 * @return results of the individual add operations, in the order of the objects
+	 */
+	List<OperationResult> addObjects(List<PrismObject<? extends ObjectType>> objects, RepoAddOptions options,
+			OperationResult parentResult);
+
 
 	/**
 	 * <p>Search for objects in the repository.</p>
@@ -384,6 +441,27 @@ public interface RepositoryService {
 	<T extends ObjectType> void modifyObject(Class<T> type, String oid, Collection<? extends ItemDelta> modifications, RepoModifyOptions options, OperationResult parentResult)
 			throws ObjectNotFoundException, SchemaException, ObjectAlreadyExistsException;
 
+	/**
+	 * <p>Modifies a set of objects.</p>
+	 * <p>
+	 * Each delta must be a MODIFY delta with OID and object type set. Semantics for each delta is the same
+	 * as for modifyObject; the implementation may execute all the deltas at once (e.g. in a single transaction,
+	 * using batched statements) or one by one.
+	 * </p><p>
+	 * Failures are reported per object: the method does not throw an exception if an object cannot be modified.
+	 * </p>
+	 *
+	 * @param deltas
+	 *            modify deltas to execute
+	 * @param options
+	 *            options applied to all deltas (may be null)
+	 * @param parentResult
+	 *            parent OperationResult (in/out)
+	 * @return results of the individual modify operations, in the order of the deltas
+	 */
+	List<OperationResult> modifyObjects(List<ObjectDelta<? extends ObjectType>> deltas, RepoModifyOptions options,
+			OperationResult parentResult);
+
 	/**
 	 * <p>Deletes object with specified OID.</p>
 	 * <p>
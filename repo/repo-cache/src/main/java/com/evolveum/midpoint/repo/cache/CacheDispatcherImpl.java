@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2010-2016 Evolveum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.evolveum.midpoint.repo.cache;
+
+import com.evolveum.midpoint.repo.api.CacheDispatcher;
+import com.evolveum.midpoint.repo.api.CacheListener;
+import com.evolveum.midpoint.util.logging.LoggingUtils;
+import com.evolveum.midpoint.util.logging.Trace;
+import com.evolveum.midpoint.util.logging.TraceManager;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ObjectType;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * @author mederly
+ */
+public class CacheDispatcherImpl implements CacheDispatcher {
+
+    private static final Trace LOGGER = TraceManager.getTrace(CacheDispatcherImpl.class);
+
+    private final List<CacheListener> cacheListeners = new CopyOnWriteArrayList<>();
+
+    @Override
+    public void registerCacheListener(CacheListener cacheListener) {
+        if (!cacheListeners.contains(cacheListener)) {
+            cacheListeners.add(cacheListener);
+        }
+    }
+
+    @Override
+    public void unregisterCacheListener(CacheListener cacheListener) {
+        cacheListeners.remove(cacheListener);
+    }
+
+    @Override
+    public <O extends ObjectType> void dispatch(Class<O> type, String oid) {
+        LOGGER.trace("Dispatching cache invalidation for {} ({}) to {} listener(s)", oid, type, cacheListeners.size());
+        for (CacheListener listener : cacheListeners) {
+            try {
+                listener.invalidateCache(type, oid);
+            } catch (RuntimeException e) {
+                LoggingUtils.logUnexpectedException(LOGGER, "Cache listener {} failed to invalidate {} ({})", e, listener, oid, type);
+            }
+        }
+    }
+
+    @Override
+    public <O extends ObjectType> Set<String> getCachedOids(Class<O> type) {
+        Set<String> oids = new HashSet<>();
+        for (CacheListener listener : cacheListeners) {
+            oids.addAll(listener.getCachedOids(type));
+        }
+        return oids;
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright (c) 2010-2016 Evolveum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.evolveum.midpoint.repo.cache;
+
+import com.evolveum.midpoint.prism.PrismObject;
+import com.evolveum.midpoint.util.logging.Trace;
+import com.evolveum.midpoint.util.logging.TraceManager;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Node-wide (i.e. shared among threads) cache of selected, rarely changing objects, like roles, orgs,
+ * object templates or system configuration.
+ *
+ * Unlike thread-local {@link Cache}, entries here can live arbitrarily long. Therefore every entry is
+ * validated against the repository version before use (see RepositoryCache). Local modifications
+ * and deletions evict the entry immediately.
+ *
+ * Objects stored here are immutable. The client gets either a clone or (in read-only case) the stored
+ * instance itself.
+ *
+ * @author mederly
+ */
+public class GlobalCache {
+
+    private static final Trace LOGGER = TraceManager.getTrace(GlobalCache.class);
+
+    public static final int DEFAULT_MAX_SIZE = 10000;
+
+    private static final Set<Class<? extends ObjectType>> CACHEABLE_TYPES = Collections.unmodifiableSet(
+            new HashSet<Class<? extends ObjectType>>(Arrays.asList(
+                    RoleType.class, OrgType.class, ServiceType.class, ObjectTemplateType.class,
+                    SystemConfigurationType.class, SecurityPolicyType.class, ValuePolicyType.class)));
+
+    private final Map<String, PrismObject<? extends ObjectType>> objects;
+    private final int maxSize;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong stale = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public GlobalCache() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    public GlobalCache(final int maxSize) {
+        this.maxSize = maxSize;
+        // access-ordered map, so the least recently used entry is evicted first
+        this.objects = new LinkedHashMap<String, PrismObject<? extends ObjectType>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PrismObject<? extends ObjectType>> eldest) {
+                if (size() > maxSize) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public static boolean isCacheable(Class<?> type) {
+        return type != null && CACHEABLE_TYPES.contains(type);
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public boolean isEnabled() {
+        return maxSize > 0;
+    }
+
+    /**
+     * Returns cached object, if present and of the matching type. Version is NOT checked here.
+     */
+    public <T extends ObjectType> PrismObject<T> getObject(Class<T> type, String oid) {
+        PrismObject<? extends ObjectType> object;
+        synchronized (objects) {
+            object = objects.get(oid);
+        }
+        if (object == null || !type.isAssignableFrom(object.getCompileTimeClass())) {
+            return null;
+        }
+        return (PrismObject<T>) object;
+    }
+
+    /**
+     * Mutable objects are cloned and the clone is made immutable before being stored.
+     */
+    public void putObject(PrismObject<? extends ObjectType> object) {
+        if (!isEnabled() || object.getOid() == null || object.getVersion() == null) {
+            return;
+        }
+        if (!object.isImmutable()) {
+            object = object.clone();
+            object.setImmutable(true);
+        }
+        synchronized (objects) {
+            objects.put(object.getOid(), object);
+        }
+    }
+
+    /**
+     * Returns OIDs of cached objects of given type.
+     */
+    public List<String> getOids(Class<? extends ObjectType> type) {
+        List<String> oids = new ArrayList<>();
+        synchronized (objects) {
+            for (PrismObject<? extends ObjectType> object : objects.values()) {
+                if (type.equals(object.getCompileTimeClass())) {
+                    oids.add(object.getOid());
+                }
+            }
+        }
+        return oids;
+    }
+
+    public void removeObject(String oid) {
+        if (oid == null) {
+            return;
+        }
+        synchronized (objects) {
+            objects.remove(oid);
+        }
+    }
+
+    public void clear() {
+        synchronized (objects) {
+            objects.clear();
+        }
+        LOGGER.trace("Global cache cleared");
+    }
+
+    public int size() {
+        synchronized (objects) {
+            return objects.size();
+        }
+    }
+
+    void recordHit() {
+        hits.incrementAndGet();
+    }
+
+    void recordMiss() {
+        misses.incrementAndGet();
+    }
+
+    void recordStale() {
+        stale.incrementAndGet();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Misses include stale entries (i.e. found in cache but with outdated version).
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getStale() {
+        return stale.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    public void resetStatistics() {
+        hits.set(0);
+        misses.set(0);
+        stale.set(0);
+        evictions.set(0);
+    }
+
+    public String description() {
+        return "size: " + size() + "/" + maxSize + ", hits: " + hits.get() + ", misses: " + misses.get()
+                + " (stale: " + stale.get() + "), evictions: " + evictions.get();
+    }
+}
@@ -19,7 +19,10 @@ import com.evolveum.midpoint.prism.Containerable;
 import com.evolveum.midpoint.prism.PrismContext;
 import com.evolveum.midpoint.prism.PrismObject;
 import com.evolveum.midpoint.prism.delta.ItemDelta;
+import com.evolveum.midpoint.prism.delta.ObjectDelta;
 import com.evolveum.midpoint.prism.query.ObjectQuery;
+import com.evolveum.midpoint.repo.api.CacheDispatcher;
+import com.evolveum.midpoint.repo.api.CacheListener;
 import com.evolveum.midpoint.repo.api.RepoAddOptions;
 import com.evolveum.midpoint.repo.api.RepoModifyOptions;
 import com.evolveum.midpoint.repo.api.RepositoryService;
@@ -41,9 +44,13 @@ import org.apache.commons.lang.Validate;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Read-through write-through per-session repository cache.
+ *
+ * Besides the per-session (thread-local) cache there is a node-wide {@link GlobalCache} for selected
+ * object types. Its entries are validated by {@link RepositoryService#getVersion} before being used.
  * 
  * TODO doc
  * TODO logging perf measurements
@@ -62,8 +69,49 @@ public class RepositoryCache implements RepositoryService {
 
 	private PrismContext prismContext;
 
+	private static final String DETAILS_GLOBAL_CACHE = "repositoryCache.globalCache";
+
+	private final GlobalCache globalCache;
+
+	private CacheDispatcher cacheDispatcher;
+
+	// evicts global cache entries changed on this or (via cluster manager) on other nodes
+	private final CacheListener globalCacheListener = new CacheListener() {
+		@Override
+		public <O extends ObjectType> void invalidateCache(Class<O> type, String oid) {
+			if (!GlobalCache.isCacheable(type)) {
+				return;
+			}
+			if (oid != null) {
+				globalCache.removeObject(oid);
+			} else {
+				globalCache.clear();
+			}
+		}
+
+		@Override
+		public <O extends ObjectType> Collection<String> getCachedOids(Class<O> type) {
+			return globalCache.getOids(type);
+		}
+	};
+
 	public RepositoryCache() {
+		this(GlobalCache.DEFAULT_MAX_SIZE);
     }
+
+	public RepositoryCache(int globalCacheMaxSize) {
+		globalCache = new GlobalCache(globalCacheMaxSize);
+	}
+
+	public void setCacheDispatcher(CacheDispatcher cacheDispatcher) {
+		if (this.cacheDispatcher != null) {
+			this.cacheDispatcher.unregisterCacheListener(globalCacheListener);
+		}
+		this.cacheDispatcher = cacheDispatcher;
+		if (cacheDispatcher != null) {
+			cacheDispatcher.registerCacheListener(globalCacheListener);
+		}
+	}
 	
     public void setRepository(RepositoryService service, PrismContext prismContext) {
         Validate.notNull(service, "Repository service must not be null.");
@@ -99,6 +147,10 @@ public class RepositoryCache implements RepositoryService {
 		return Cache.debugDump(cacheInstance);
 	}
 
+	public GlobalCache getGlobalCache() {
+		return globalCache;
+	}
+
 	@Override
 	public <T extends ObjectType> PrismObject<T> getObject(Class<T> type, String oid,
 			Collection<SelectorOptions<GetOperationOptions>> options, OperationResult parentResult) throws ObjectNotFoundException, SchemaException {
@@ -124,11 +176,58 @@ public class RepositoryCache implements RepositoryService {
 			}
 			log("Cache: MISS {} ({})", oid, type.getSimpleName());
 		}
+		if (GlobalCache.isCacheable(type) && globalCache.isEnabled()) {
+			return getObjectUsingGlobalCache(type, oid, cache, readOnly, parentResult);
+		}
 		PrismObject<T> object = repository.getObject(type, oid, null, parentResult);
 		cacheObject(cache, object, readOnly);
 		return object;
 	}
 
+	private <T extends ObjectType> PrismObject<T> getObjectUsingGlobalCache(Class<T> type, String oid, Cache cache,
+			boolean readOnly, OperationResult parentResult) throws ObjectNotFoundException, SchemaException {
+		PrismObject<T> cached = globalCache.getObject(type, oid);
+		if (cached != null) {
+			String version;
+			try {
+				version = repository.getVersion(type, oid, parentResult);
+			} catch (ObjectNotFoundException e) {
+				globalCache.removeObject(oid);
+				throw e;
+			}
+			if (version != null && version.equals(cached.getVersion())) {
+				globalCache.recordHit();
+				// objects in global cache are immutable, so they can be shared with the local cache
+				if (cache != null) {
+					cache.putObject(oid, cached);
+				}
+				if (readOnly) {
+					log("Cache: GLOBAL HIT {} ({})", oid, type.getSimpleName());
+					return cached;
+				} else {
+					log("Cache: GLOBAL HIT(clone) {} ({})", oid, type.getSimpleName());
+					return cached.clone();
+				}
+			}
+			log("Cache: GLOBAL STALE {} ({}): cached version {}, current version {}", oid, type.getSimpleName(),
+					cached.getVersion(), version);
+			globalCache.recordStale();
+			globalCache.removeObject(oid);
+		} else {
+			log("Cache: GLOBAL MISS {} ({})", oid, type.getSimpleName());
+		}
+		globalCache.recordMiss();
+		PrismObject<T> object = repository.getObject(type, oid, null, parentResult);
+		// a single immutable copy is shared by local and global cache; read-only client can get it as well
+		PrismObject<T> immutableObject = object.clone();
+		immutableObject.setImmutable(true);
+		if (cache != null) {
+			cache.putObject(oid, immutableObject);
+		}
+		globalCache.putObject(immutableObject);
+		return readOnly ? immutableObject : object;
+	}
+
 	private boolean isCacheable(Class<?> type) {
 		if (type.equals(TaskType.class)) {
 			return false;
@@ -152,8 +251,22 @@ public class RepositoryCache implements RepositoryService {
 			cache.removeObject(oid);
 			cache.clearQueryResults(object.getCompileTimeClass());
 		}
+		dispatchInvalidation(object.getCompileTimeClass(), oid);
 		return oid;
 	}
+
+	@Override
+	public List<OperationResult> addObjects(List<PrismObject<? extends ObjectType>> objects, RepoAddOptions options,
+			OperationResult parentResult) {
+		List<OperationResult> results = repository.addObjects(objects, options, parentResult);
+		// as in addObject, the objects are not cached, only invalidated
+		for (PrismObject<? extends ObjectType> object : objects) {
+			if (object.getOid() != null) {
+				invalidateCacheEntry(object.getCompileTimeClass(), object.getOid());
+			}
+		}
+		return results;
+	}
 	
 	@Override
 	public <T extends ObjectType> SearchResultList<PrismObject<T>> searchObjects(Class<T> type, ObjectQuery query, 
@@ -242,12 +355,33 @@ public class RepositoryCache implements RepositoryService {
 		}
 	}
 
+	@Override
+	public List<OperationResult> modifyObjects(List<ObjectDelta<? extends ObjectType>> deltas, RepoModifyOptions options,
+			OperationResult parentResult) {
+		try {
+			return repository.modifyObjects(deltas, options, parentResult);
+		} finally {
+			for (ObjectDelta<? extends ObjectType> delta : deltas) {
+				invalidateCacheEntry(delta.getObjectTypeClass(), delta.getOid());
+			}
+		}
+	}
+
 	protected <T extends ObjectType> void invalidateCacheEntry(Class<T> type, String oid) {
 		Cache cache = getCache();
 		if (cache != null) {
 			cache.removeObject(oid);
 			cache.clearQueryResults(type);
 		}
+		dispatchInvalidation(type, oid);
+	}
+
+	private <T extends ObjectType> void dispatchInvalidation(Class<T> type, String oid) {
+		if (cacheDispatcher != null) {
+			cacheDispatcher.dispatch(type, oid);
+		} else {
+			globalCache.removeObject(oid);
+		}
 	}
 
 	@Override
@@ -329,12 +463,29 @@ public class RepositoryCache implements RepositoryService {
 		return version;
 	}
 
+	@Override
+	public <T extends ObjectType> Map<String, String> getVersions(Class<T> type, Collection<String> oids,
+			OperationResult parentResult) {
+		log("Cache: PASS getVersions ({})", type.getSimpleName());
+		return repository.getVersions(type, oids, parentResult);
+	}
+
+	@Override
+	public <T extends ObjectType> String getChangeMarker(Class<T> type, OperationResult parentResult) {
+		log("Cache: PASS getChangeMarker ({})", type.getSimpleName());
+		return repository.getChangeMarker(type, parentResult);
+	}
+
 	/* (non-Javadoc)
 	 * @see com.evolveum.midpoint.repo.api.RepositoryService#getRepositoryDiag()
 	 */
 	@Override
 	public RepositoryDiag getRepositoryDiag() {
-		return repository.getRepositoryDiag();
+		RepositoryDiag diag = repository.getRepositoryDiag();
+		if (diag != null && diag.getAdditionalDetails() != null) {
+			diag.getAdditionalDetails().add(new LabeledString(DETAILS_GLOBAL_CACHE, globalCache.description()));
+		}
+		return diag;
 	}
 
 	/* (non-Javadoc)
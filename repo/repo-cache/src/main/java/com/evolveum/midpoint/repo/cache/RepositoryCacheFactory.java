@@ -16,6 +16,7 @@
 
 package com.evolveum.midpoint.repo.cache;
 
+import com.evolveum.midpoint.repo.api.CacheDispatcher;
 import com.evolveum.midpoint.repo.api.RepositoryService;
 import com.evolveum.midpoint.repo.api.RepositoryServiceFactory;
 import com.evolveum.midpoint.repo.api.RepositoryServiceFactoryException;
@@ -26,12 +27,36 @@ import org.apache.commons.configuration.Configuration;
  */
 public class RepositoryCacheFactory implements RepositoryServiceFactory {
 
+    /**
+     * Maximal number of objects in the node-wide cache (see {@link GlobalCache}); 0 disables it.
+     */
+    public static final String PROPERTY_GLOBAL_CACHE_MAX_SIZE = "globalCacheMaxSize";
+
+    private CacheDispatcher cacheDispatcher;
+
+    private int globalCacheMaxSize = GlobalCache.DEFAULT_MAX_SIZE;
+
+    public CacheDispatcher getCacheDispatcher() {
+        return cacheDispatcher;
+    }
+
+    public void setCacheDispatcher(CacheDispatcher cacheDispatcher) {
+        this.cacheDispatcher = cacheDispatcher;
+    }
+
     @Override
     public void destroy() throws RepositoryServiceFactoryException {
     }
 
     @Override
     public void init(Configuration configuration) throws RepositoryServiceFactoryException {
+        if (configuration != null) {
+            globalCacheMaxSize = configuration.getInt(PROPERTY_GLOBAL_CACHE_MAX_SIZE, GlobalCache.DEFAULT_MAX_SIZE);
+        }
+    }
+
+    public int getGlobalCacheMaxSize() {
+        return globalCacheMaxSize;
     }
 
     @Override
@@ -47,6 +72,8 @@ public class RepositoryCacheFactory implements RepositoryServiceFactory {
     @Override
     public RepositoryService getRepositoryService() throws RepositoryServiceFactoryException {
         RepositoryCache.init();
-        return new RepositoryCache();
+        RepositoryCache repositoryCache = new RepositoryCache(globalCacheMaxSize);
+        repositoryCache.setCacheDispatcher(cacheDispatcher);
+        return repositoryCache;
     }
 }
@@ -0,0 +1,239 @@
+/*
+ * Copyright (c) 2010-2016 Evolveum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.evolveum.midpoint.repo.cache;
+
+import com.evolveum.midpoint.prism.PrismContext;
+import com.evolveum.midpoint.prism.PrismObject;
+import com.evolveum.midpoint.prism.util.PrismTestUtil;
+import com.evolveum.midpoint.repo.api.RepositoryService;
+import com.evolveum.midpoint.schema.MidPointPrismContextFactory;
+import com.evolveum.midpoint.schema.constants.MidPointConstants;
+import com.evolveum.midpoint.schema.result.OperationResult;
+import com.evolveum.midpoint.test.util.TestUtil;
+import com.evolveum.midpoint.util.PrettyPrinter;
+import com.evolveum.midpoint.util.exception.ObjectNotFoundException;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.RoleType;
+import org.apache.commons.configuration.BaseConfiguration;
+import org.testng.annotations.BeforeSuite;
+import org.testng.annotations.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.testng.AssertJUnit.*;
+
+/**
+ * Tests the node-wide part of the repository cache. The repository is replaced by a simple in-memory stub.
+ *
+ * @author mederly
+ */
+public class TestGlobalCache {
+
+    private static final String ROLE_OID = "00000000-8888-6666-0000-200000000001";
+
+    private final Map<String, PrismObject<RoleType>> repoObjects = new HashMap<>();
+    private int getObjectCount;
+    private int getVersionCount;
+
+    @BeforeSuite
+    public void setup() throws Exception {
+        PrettyPrinter.setDefaultNamespacePrefix(MidPointConstants.NS_MIDPOINT_PUBLIC_PREFIX);
+        PrismTestUtil.resetPrismContext(MidPointPrismContextFactory.FACTORY);
+    }
+
+    @Test
+    public void test010CachedObjectIsImmutable() throws Exception {
+        final String TEST_NAME = "test010CachedObjectIsImmutable";
+        TestUtil.displayTestTile(TEST_NAME);
+
+        // GIVEN
+        RepositoryCache repositoryCache = createRepositoryCache(GlobalCache.DEFAULT_MAX_SIZE);
+        storeRole("Pirate", "1");
+        OperationResult result = new OperationResult(TEST_NAME);
+
+        // WHEN
+        repositoryCache.getObject(RoleType.class, ROLE_OID, null, result);
+        repositoryCache.getObject(RoleType.class, ROLE_OID, null, result);
+
+        // THEN
+        assertEquals("Wrong # of getObject calls", 1, getObjectCount);
+        assertEquals("Wrong # of getVersion calls", 1, getVersionCount);
+        assertEquals("Wrong # of hits", 1, repositoryCache.getGlobalCache().getHits());
+        PrismObject<RoleType> cached = repositoryCache.getGlobalCache().getObject(RoleType.class, ROLE_OID);
+        assertTrue("Cached object is not immutable", cached.isImmutable());
+        try {
+            cached.asObjectable().setName(PrismTestUtil.createPolyStringType("Captain"));
+            fail("Cached object was modified");
+        } catch (IllegalStateException e) {
+            System.out.println("Got expected exception: " + e);
+        }
+        assertCachedName(repositoryCache, "Pirate");
+    }
+
+    @Test
+    public void test020ClientGetsMutableCopy() throws Exception {
+        final String TEST_NAME = "test020ClientGetsMutableCopy";
+        TestUtil.displayTestTile(TEST_NAME);
+
+        // GIVEN
+        RepositoryCache repositoryCache = createRepositoryCache(GlobalCache.DEFAULT_MAX_SIZE);
+        storeRole("Pirate", "1");
+        OperationResult result = new OperationResult(TEST_NAME);
+
+        // WHEN
+        PrismObject<RoleType> fromMiss = repositoryCache.getObject(RoleType.class, ROLE_OID, null, result);
+        fromMiss.asObjectable().setName(PrismTestUtil.createPolyStringType("Captain"));
+        PrismObject<RoleType> fromHit = repositoryCache.getObject(RoleType.class, ROLE_OID, null, result);
+        fromHit.asObjectable().setName(PrismTestUtil.createPolyStringType("Admiral"));
+
+        // THEN
+        assertFalse("Object from miss is immutable", fromMiss.isImmutable());
+        assertFalse("Object from hit is immutable", fromHit.isImmutable());
+        assertEquals("Wrong # of hits", 1, repositoryCache.getGlobalCache().getHits());
+        assertCachedName(repositoryCache, "Pirate");
+    }
+
+    @Test
+    public void test030StaleObjectIsReloaded() throws Exception {
+        final String TEST_NAME = "test030StaleObjectIsReloaded";
+        TestUtil.displayTestTile(TEST_NAME);
+
+        // GIVEN
+        RepositoryCache repositoryCache = createRepositoryCache(GlobalCache.DEFAULT_MAX_SIZE);
+        storeRole("Pirate", "1");
+        OperationResult result = new OperationResult(TEST_NAME);
+        repositoryCache.getObject(RoleType.class, ROLE_OID, null, result);
+
+        // WHEN
+        storeRole("Captain", "2");
+        PrismObject<RoleType> role = repositoryCache.getObject(RoleType.class, ROLE_OID, null, result);
+
+        // THEN
+        assertEquals("Wrong name", "Captain", role.asObjectable().getName().getOrig());
+        assertEquals("Wrong # of getObject calls", 2, getObjectCount);
+        assertEquals("Wrong # of stale entries", 1, repositoryCache.getGlobalCache().getStale());
+        assertCachedName(repositoryCache, "Captain");
+    }
+
+    @Test
+    public void test040MaxSizeFromConfiguration() throws Exception {
+        final String TEST_NAME = "test040MaxSizeFromConfiguration";
+        TestUtil.displayTestTile(TEST_NAME);
+
+        // GIVEN
+        RepositoryCacheFactory factory = new RepositoryCacheFactory();
+        BaseConfiguration configuration = new BaseConfiguration();
+        configuration.setProperty(RepositoryCacheFactory.PROPERTY_GLOBAL_CACHE_MAX_SIZE, "0");
+
+        // WHEN
+        factory.init(configuration);
+        RepositoryCache repositoryCache = (RepositoryCache) factory.getRepositoryService();
+        repositoryCache.setRepository(createRepositoryStub(), PrismTestUtil.getPrismContext());
+        storeRole("Pirate", "1");
+        OperationResult result = new OperationResult(TEST_NAME);
+        repositoryCache.getObject(RoleType.class, ROLE_OID, null, result);
+        repositoryCache.getObject(RoleType.class, ROLE_OID, null, result);
+
+        // THEN
+        assertEquals("Wrong max size", 0, repositoryCache.getGlobalCache().getMaxSize());
+        assertFalse("Global cache is enabled", repositoryCache.getGlobalCache().isEnabled());
+        assertEquals("Wrong # of getObject calls", 2, getObjectCount);
+        assertEquals("Wrong # of getVersion calls", 0, getVersionCount);
+    }
+
+    @Test
+    public void test050LeastRecentlyUsedObjectIsEvicted() throws Exception {
+        final String TEST_NAME = "test050LeastRecentlyUsedObjectIsEvicted";
+        TestUtil.displayTestTile(TEST_NAME);
+
+        // GIVEN
+        GlobalCache globalCache = new GlobalCache(2);
+        PrismObject<RoleType> role1 = createRole("00000000-8888-6666-0000-200000000011", "Role 1", "1");
+        PrismObject<RoleType> role2 = createRole("00000000-8888-6666-0000-200000000012", "Role 2", "1");
+        PrismObject<RoleType> role3 = createRole("00000000-8888-6666-0000-200000000013", "Role 3", "1");
+
+        // WHEN
+        globalCache.putObject(role1);
+        globalCache.putObject(role2);
+        globalCache.getObject(RoleType.class, role1.getOid());
+        globalCache.putObject(role3);
+
+        // THEN
+        assertEquals("Wrong size", 2, globalCache.size());
+        assertEquals("Wrong # of evictions", 1, globalCache.getEvictions());
+        assertNotNull("Role 1 was evicted", globalCache.getObject(RoleType.class, role1.getOid()));
+        assertNull("Role 2 was not evicted", globalCache.getObject(RoleType.class, role2.getOid()));
+        assertTrue("Stored object is not immutable", globalCache.getObject(RoleType.class, role3.getOid()).isImmutable());
+        assertFalse("Original object was made immutable", role3.isImmutable());
+    }
+
+    private RepositoryCache createRepositoryCache(int globalCacheMaxSize) {
+        RepositoryCache repositoryCache = new RepositoryCache(globalCacheMaxSize);
+        repositoryCache.setRepository(createRepositoryStub(), PrismTestUtil.getPrismContext());
+        return repositoryCache;
+    }
+
+    private void assertCachedName(RepositoryCache repositoryCache, String expected) {
+        PrismObject<RoleType> cached = repositoryCache.getGlobalCache().getObject(RoleType.class, ROLE_OID);
+        assertNotNull("Object is not cached", cached);
+        assertEquals("Wrong name of cached object", expected, cached.asObjectable().getName().getOrig());
+    }
+
+    private void storeRole(String name, String version) throws Exception {
+        repoObjects.put(ROLE_OID, createRole(ROLE_OID, name, version));
+    }
+
+    private PrismObject<RoleType> createRole(String oid, String name, String version) throws Exception {
+        PrismContext prismContext = PrismTestUtil.getPrismContext();
+        PrismObject<RoleType> role = prismContext.createObject(RoleType.class);
+        role.setOid(oid);
+        role.setVersion(version);
+        role.asObjectable().setName(PrismTestUtil.createPolyStringType(name));
+        return role;
+    }
+
+    /**
+     * Only getObject and getVersion are supported; the stub returns clones, as the real repository would.
+     */
+    private RepositoryService createRepositoryStub() {
+        repoObjects.clear();
+        getObjectCount = 0;
+        getVersionCount = 0;
+        return (RepositoryService) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] { RepositoryService.class }, (proxy, method, args) -> {
+                    PrismObject<RoleType> object;
+                    switch (method.getName()) {
+                        case "getObject":
+                            getObjectCount++;
+                            object = repoObjects.get((String) args[1]);
+                            if (object == null) {
+                                throw new ObjectNotFoundException("No object " + args[1]);
+                            }
+                            return object.clone();
+                        case "getVersion":
+                            getVersionCount++;
+                            object = repoObjects.get((String) args[1]);
+                            if (object == null) {
+                                throw new ObjectNotFoundException("No object " + args[1]);
+                            }
+                            return object.getVersion();
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+}
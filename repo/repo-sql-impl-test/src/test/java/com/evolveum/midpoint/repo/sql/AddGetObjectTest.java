@@ -631,6 +631,55 @@ public class AddGetObjectTest extends BaseSQLRepoTest {
         }
     }
 
+    @Test
+    public void test200AddObjectsInBatch() throws Exception {
+        OperationResult result = new OperationResult("test200AddObjectsInBatch");
+
+        List<PrismObject<? extends ObjectType>> objects = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            objects.add(createUser("batch-user-" + i));
+        }
+        List<OperationResult> results = repositoryService.addObjects(objects, null, result);
+        result.computeStatusIfUnknown();
+
+        AssertJUnit.assertEquals(objects.size(), results.size());
+        for (int i = 0; i < objects.size(); i++) {
+            TestUtil.assertSuccess(results.get(i));
+            String oid = objects.get(i).getOid();
+            AssertJUnit.assertNotNull("No OID for " + objects.get(i), oid);
+            PrismObject<UserType> user = repositoryService.getObject(UserType.class, oid, null, result);
+            AssertJUnit.assertEquals("batch-user-" + i, user.asObjectable().getName().getOrig());
+        }
+    }
+
+    @Test
+    public void test210AddObjectsInBatchWithConflict() throws Exception {
+        OperationResult result = new OperationResult("test210AddObjectsInBatchWithConflict");
+
+        repositoryService.addObject(createUser("batch-conflict-1"), null, result);
+
+        List<PrismObject<? extends ObjectType>> objects = new ArrayList<>();
+        objects.add(createUser("batch-conflict-0"));
+        objects.add(createUser("batch-conflict-1"));        // name already exists
+        objects.add(createUser("batch-conflict-2"));
+        List<OperationResult> results = repositoryService.addObjects(objects, null, result);
+
+        AssertJUnit.assertEquals(3, results.size());
+        TestUtil.assertSuccess(results.get(0));
+        AssertJUnit.assertTrue("Conflicting object was added", results.get(1).isFatalError());
+        TestUtil.assertSuccess(results.get(2));
+        AssertJUnit.assertNotNull(objects.get(0).getOid());
+        AssertJUnit.assertNull(objects.get(1).getOid());
+        AssertJUnit.assertNotNull(objects.get(2).getOid());
+    }
+
+    private PrismObject<UserType> createUser(String name) throws SchemaException {
+        UserType user = new UserType();
+        prismContext.adopt(user);
+        user.setName(new PolyStringType(name));
+        return user.asPrismObject();
+    }
+
     @Test
     public void test990AddResourceWithEmptyConnectorConfiguration() throws Exception {
         OperationResult result = new OperationResult("test990AddResourceWithEmptyConnectorConfiguration");
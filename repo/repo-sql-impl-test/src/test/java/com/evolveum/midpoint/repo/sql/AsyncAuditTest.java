@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2010-2016 Evolveum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.evolveum.midpoint.repo.sql;
+
+import com.evolveum.midpoint.audit.api.AuditEventRecord;
+import com.evolveum.midpoint.audit.api.AuditEventStage;
+import com.evolveum.midpoint.audit.api.AuditEventType;
+import com.evolveum.midpoint.repo.sql.data.audit.RAuditEventRecord;
+import com.evolveum.midpoint.repo.sql.util.SimpleTaskAdapter;
+import com.evolveum.midpoint.util.logging.Trace;
+import com.evolveum.midpoint.util.logging.TraceManager;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang.StringUtils;
+import org.hibernate.Query;
+import org.hibernate.Session;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ContextConfiguration;
+import org.testng.AssertJUnit;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * @author mederly
+ */
+@ContextConfiguration(locations = {"../../../../../ctx-test.xml"})
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_CLASS)
+public class AsyncAuditTest extends BaseSQLRepoTest {
+
+    private static final Trace LOGGER = TraceManager.getTrace(AsyncAuditTest.class);
+
+    private static final int RECORDS = 25;
+
+    @Autowired
+    private SqlAuditServiceFactory sqlAuditFactory;
+
+    @Test
+    public void test100AsyncAudit() throws Exception {
+        // GIVEN
+        SqlAuditServiceImpl service = new SqlAuditServiceImpl(sqlAuditFactory.getRepositoryFactory());
+        applicationContext.getAutowireCapableBeanFactory().autowireBean(service);
+
+        // small queue and batches, to exercise back-pressure and batching
+        AsyncAuditWriter writer = new AsyncAuditWriter(service, 5, 3, 100L, null);
+        service.setAsyncWriter(writer);
+        writer.start();
+
+        // WHEN
+        for (int i = 0; i < RECORDS; i++) {
+            AuditEventRecord record = new AuditEventRecord(AuditEventType.ADD_OBJECT, AuditEventStage.EXECUTION);
+            record.setEventIdentifier("async-" + i);
+            record.setTimestamp(System.currentTimeMillis());
+            service.audit(record, new SimpleTaskAdapter());
+        }
+        writer.shutdown();
+        LOGGER.info("Queue size after shutdown: {}", writer.getQueueSize());
+
+        // THEN
+        AssertJUnit.assertEquals("Queue is not empty after shutdown", 0, writer.getQueueSize());
+        assertStoredRecords("async-%", RECORDS);
+    }
+
+    /**
+     * A batch that fails is stored record by record; only the faulty record ends up in the fallback file.
+     */
+    @Test
+    public void test110FailedBatch() throws Exception {
+        // GIVEN
+        SqlAuditServiceImpl service = new SqlAuditServiceImpl(sqlAuditFactory.getRepositoryFactory());
+        applicationContext.getAutowireCapableBeanFactory().autowireBean(service);
+
+        File fallbackFile = new File("target/async-audit-fallback.txt");
+        fallbackFile.delete();
+        // long flush interval, so all three records get into one batch
+        AsyncAuditWriter writer = new AsyncAuditWriter(service, 10, 3, 5000L, fallbackFile.getPath());
+        service.setAsyncWriter(writer);
+        writer.start();
+
+        String badIdentifier = "failed-batch-bad-" + StringUtils.repeat("x", 300);     // too long for the column
+
+        // WHEN
+        service.audit(createRecord("failed-batch-ok-1"), new SimpleTaskAdapter());
+        service.audit(createRecord(badIdentifier), new SimpleTaskAdapter());
+        service.audit(createRecord("failed-batch-ok-2"), new SimpleTaskAdapter());
+        writer.shutdown();
+
+        // THEN
+        assertStoredRecords("failed-batch-ok-%", 2);
+        assertStoredRecords("failed-batch-bad-%", 0);
+        AssertJUnit.assertTrue("No fallback file", fallbackFile.exists());
+        String fallback = FileUtils.readFileToString(fallbackFile, StandardCharsets.UTF_8);
+        AssertJUnit.assertTrue("Faulty record is not in the fallback file", fallback.contains(badIdentifier));
+        AssertJUnit.assertFalse("Correct record is in the fallback file", fallback.contains("failed-batch-ok-"));
+    }
+
+    @Test
+    public void test120SubmitAfterShutdown() throws Exception {
+        // GIVEN
+        SqlAuditServiceImpl service = new SqlAuditServiceImpl(sqlAuditFactory.getRepositoryFactory());
+        applicationContext.getAutowireCapableBeanFactory().autowireBean(service);
+
+        AsyncAuditWriter writer = new AsyncAuditWriter(service, 5, 3, 100L, null);
+        service.setAsyncWriter(writer);
+        writer.start();
+        service.audit(createRecord("late-submit-1"), new SimpleTaskAdapter());
+        writer.shutdown();
+
+        // WHEN
+        service.audit(createRecord("late-submit-2"), new SimpleTaskAdapter());
+
+        // THEN
+        AssertJUnit.assertEquals("Queue is not empty", 0, writer.getQueueSize());
+        assertStoredRecords("late-submit-%", 2);
+    }
+
+    private AuditEventRecord createRecord(String eventIdentifier) {
+        AuditEventRecord record = new AuditEventRecord(AuditEventType.ADD_OBJECT, AuditEventStage.EXECUTION);
+        record.setEventIdentifier(eventIdentifier);
+        record.setTimestamp(System.currentTimeMillis());
+        return record;
+    }
+
+    private void assertStoredRecords(String eventIdentifierPattern, long expected) {
+        Session session = getFactory().openSession();
+        try {
+            session.beginTransaction();
+            Query query = session.createQuery("select count(*) from " + RAuditEventRecord.class.getSimpleName()
+                    + " r where r.eventIdentifier like :pattern");
+            query.setParameter("pattern", eventIdentifierPattern);
+            Long count = (Long) query.uniqueResult();
+            AssertJUnit.assertEquals("Wrong # of stored audit records like " + eventIdentifierPattern, expected, (long) count);
+            session.getTransaction().commit();
+        } finally {
+            session.close();
+        }
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2010-2016 Evolveum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.evolveum.midpoint.repo.sql;
+
+import com.evolveum.midpoint.prism.polystring.PolyString;
+import com.evolveum.midpoint.repo.sql.data.common.any.ExtensionJsonConverter;
+import com.evolveum.midpoint.repo.sql.data.common.any.RAnyValue;
+import com.evolveum.midpoint.repo.sql.data.common.any.ROExtLong;
+import com.evolveum.midpoint.repo.sql.data.common.any.ROExtPolyString;
+import com.evolveum.midpoint.repo.sql.data.common.any.ROExtString;
+import org.testng.AssertJUnit;
+import org.testng.annotations.Test;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * @author mederly
+ */
+public class ExtensionJsonConverterTest {
+
+    private static final String NS = "http://example.com/p#";
+
+    @Test
+    public void test100ValuesToJson() throws Exception {
+        List<RAnyValue> values = new ArrayList<>();
+        values.add(value(new ROExtString("a \"quoted\" value"), "weapon"));
+        values.add(value(new ROExtLong(42L), "badge"));
+        values.add(value(new ROExtLong(43L), "badge"));
+        values.add(value(new ROExtPolyString(new PolyString("Cierny", "cierny")), "nick"));
+
+        String json = ExtensionJsonConverter.toJson(values);
+
+        AssertJUnit.assertEquals("{\"" + NS + "badge\":[42,43],"
+                + "\"" + NS + "nick\":[{\"o\":\"Cierny\",\"n\":\"cierny\"}],"
+                + "\"" + NS + "weapon\":[\"a \\\"quoted\\\" value\"]}", json);
+    }
+
+    @Test
+    public void test110NoValues() throws Exception {
+        AssertJUnit.assertNull(ExtensionJsonConverter.toJson(Collections.<RAnyValue>emptyList()));
+    }
+
+    @Test
+    public void test200ContainmentJson() throws Exception {
+        AssertJUnit.assertEquals("{\"" + NS + "badge\":[42]}",
+                ExtensionJsonConverter.createContainmentJson(NS + "badge", ExtensionJsonConverter.scalarToJson(42L)));
+        AssertJUnit.assertEquals("{\"" + NS + "badge\":[]}",
+                ExtensionJsonConverter.createContainmentJson(NS + "badge", null));
+        AssertJUnit.assertEquals("{\"n\":\"cierny\"}", ExtensionJsonConverter.polyStringToJson(null, "cierny"));
+        AssertJUnit.assertEquals("\"1970-01-01T00:00:01.500Z\"", ExtensionJsonConverter.scalarToJson(new Timestamp(1500L)));
+    }
+
+    private RAnyValue value(RAnyValue value, String name) {
+        value.setName(NS + name);
+        return value;
+    }
+}
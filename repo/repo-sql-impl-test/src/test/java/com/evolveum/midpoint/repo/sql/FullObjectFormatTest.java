@@ -0,0 +1,256 @@
+/*
+ * Copyright (c) 2010-2016 Evolveum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.evolveum.midpoint.repo.sql;
+
+import com.evolveum.midpoint.prism.PrismObject;
+import com.evolveum.midpoint.prism.delta.ItemDelta;
+import com.evolveum.midpoint.prism.delta.ObjectDelta;
+import com.evolveum.midpoint.prism.delta.builder.DeltaBuilder;
+import com.evolveum.midpoint.prism.xml.XmlTypeConverter;
+import com.evolveum.midpoint.repo.sql.SqlRepositoryConfiguration.FullObjectFormat;
+import com.evolveum.midpoint.repo.sql.util.RUtil;
+import com.evolveum.midpoint.schema.GetOperationOptions;
+import com.evolveum.midpoint.schema.SelectorOptions;
+import com.evolveum.midpoint.schema.result.OperationResult;
+import com.evolveum.midpoint.test.util.TestUtil;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.LookupTableRowType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.LookupTableType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ObjectType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.UserType;
+import com.evolveum.prism.xml.ns._public.types_3.PolyStringType;
+import org.hibernate.Query;
+import org.hibernate.Session;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ContextConfiguration;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+import static com.evolveum.midpoint.schema.RetrieveOption.INCLUDE;
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertNotNull;
+import static org.testng.AssertJUnit.assertNull;
+import static org.testng.AssertJUnit.assertTrue;
+import static org.testng.AssertJUnit.fail;
+
+/**
+ * Stores, modifies and reads the same objects with fullObjectFormat = xml and fullObjectFormat = binary
+ * and checks that the results are the same. Items that are not stored in the full object (user photo,
+ * lookup table rows) are checked as well.
+ *
+ * @author mederly
+ */
+@ContextConfiguration(locations = {"../../../../../ctx-test.xml"})
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_CLASS)
+public class FullObjectFormatTest extends BaseSQLRepoTest {
+
+    private static final File USER_FILE = new File("src/test/resources/photo/user.xml");
+    private static final File TABLE_FILE = new File("src/test/resources/lookup/table-1.xml");
+
+    private static final String BINARY_DATA_PREFIX = "(binary data";
+
+    private FullObjectFormat originalFormat;
+
+    private String xmlUserOid;
+    private String binaryUserOid;
+    private String xmlTableOid;
+    private String binaryTableOid;
+
+    @Override
+    public void initSystem() throws Exception {
+        super.initSystem();
+        originalFormat = baseHelper.getConfiguration().getFullObjectFormat();
+    }
+
+    @AfterClass(alwaysRun = true)
+    public void restoreFullObjectFormat() {
+        if (originalFormat != null) {
+            setFullObjectFormat(originalFormat);
+        }
+    }
+
+    @Test
+    public void test100AddUserWithPhoto() throws Exception {
+        final String TEST_NAME = "test100AddUserWithPhoto";
+        TestUtil.displayTestTile(TEST_NAME);
+        OperationResult result = new OperationResult(TEST_NAME);
+
+        // WHEN
+        xmlUserOid = addObject(USER_FILE, FullObjectFormat.XML, result);
+        binaryUserOid = addObject(USER_FILE, FullObjectFormat.BINARY, result);
+
+        // THEN
+        assertStoredFormat(xmlUserOid, false);
+        assertStoredFormat(binaryUserOid, true);
+        assertFalse("Photo was stored in the XML full object", getStoredFullObject(xmlUserOid).contains("jpegPhoto"));
+        checkUsers(result);
+    }
+
+    @Test
+    public void test110ModifyUserWithPhoto() throws Exception {
+        final String TEST_NAME = "test110ModifyUserWithPhoto";
+        TestUtil.displayTestTile(TEST_NAME);
+        OperationResult result = new OperationResult(TEST_NAME);
+
+        List<ItemDelta<?, ?>> modifications = DeltaBuilder.deltaFor(UserType.class, prismContext)
+                .item(UserType.F_EMPLOYEE_TYPE).add("manager")
+                .item(UserType.F_JPEG_PHOTO).replace(new byte[] { 1, 2, 3 })
+                .asItemDeltas();
+
+        // WHEN
+        modifyObject(UserType.class, xmlUserOid, modifications, FullObjectFormat.XML, result);
+        modifyObject(UserType.class, binaryUserOid, modifications, FullObjectFormat.BINARY, result);
+
+        // THEN
+        assertStoredFormat(xmlUserOid, false);
+        assertStoredFormat(binaryUserOid, true);
+        checkUsers(result);
+    }
+
+    @Test
+    public void test200AddLookupTable() throws Exception {
+        final String TEST_NAME = "test200AddLookupTable";
+        TestUtil.displayTestTile(TEST_NAME);
+        OperationResult result = new OperationResult(TEST_NAME);
+
+        // WHEN
+        xmlTableOid = addObject(TABLE_FILE, FullObjectFormat.XML, result);
+        binaryTableOid = addObject(TABLE_FILE, FullObjectFormat.BINARY, result);
+
+        // THEN
+        assertStoredFormat(xmlTableOid, false);
+        assertStoredFormat(binaryTableOid, true);
+        assertFalse("Rows were stored in the XML full object", getStoredFullObject(xmlTableOid).contains("first key"));
+        checkTables(3, result);
+    }
+
+    @Test
+    public void test210ModifyLookupTable() throws Exception {
+        final String TEST_NAME = "test210ModifyLookupTable";
+        TestUtil.displayTestTile(TEST_NAME);
+        OperationResult result = new OperationResult(TEST_NAME);
+
+        LookupTableRowType row = new LookupTableRowType();
+        row.setKey("new key");
+        row.setValue("new value");
+        row.setLastChangeTimestamp(XmlTypeConverter.createXMLGregorianCalendar(new Date()));     // so that both tables get the same one
+        List<ItemDelta<?, ?>> modifications = DeltaBuilder.deltaFor(LookupTableType.class, prismContext)
+                .item(LookupTableType.F_DESCRIPTION).replace("modified description")
+                .item(LookupTableType.F_ROW).add(row)
+                .asItemDeltas();
+
+        // WHEN
+        modifyObject(LookupTableType.class, xmlTableOid, modifications, FullObjectFormat.XML, result);
+        modifyObject(LookupTableType.class, binaryTableOid, modifications, FullObjectFormat.BINARY, result);
+
+        // THEN
+        assertStoredFormat(xmlTableOid, false);
+        assertStoredFormat(binaryTableOid, true);
+        checkTables(4, result);
+    }
+
+    private <O extends ObjectType> String addObject(File file, FullObjectFormat format, OperationResult result) throws Exception {
+        PrismObject<O> object = prismContext.parseObject(file);
+        object.setOid(null);
+        object.asObjectable().setName(new PolyStringType(object.asObjectable().getName().getOrig() + "-" + format.name().toLowerCase()));
+        setFullObjectFormat(format);
+        return repositoryService.addObject(object, null, result);
+    }
+
+    private <O extends ObjectType> void modifyObject(Class<O> type, String oid, List<ItemDelta<?, ?>> modifications,
+            FullObjectFormat format, OperationResult result) throws Exception {
+        setFullObjectFormat(format);
+        repositoryService.modifyObject(type, oid, ItemDelta.cloneCollection(modifications), result);
+    }
+
+    private void checkUsers(OperationResult result) throws Exception {
+        Collection<SelectorOptions<GetOperationOptions>> withPhoto =
+                SelectorOptions.createCollection(UserType.F_JPEG_PHOTO, GetOperationOptions.createRetrieve(INCLUDE));
+
+        PrismObject<UserType> binaryUser = assertSameObjects(UserType.class, withPhoto, result);
+        assertNotNull("No photo in user stored in binary format", binaryUser.asObjectable().getJpegPhoto());
+
+        binaryUser = assertSameObjects(UserType.class, null, result);
+        assertNull("Photo was stored in the binary full object", binaryUser.asObjectable().getJpegPhoto());
+    }
+
+    private void checkTables(int expectedRows, OperationResult result) throws Exception {
+        Collection<SelectorOptions<GetOperationOptions>> withRows =
+                SelectorOptions.createCollection(LookupTableType.F_ROW, GetOperationOptions.createRetrieve(INCLUDE));
+
+        PrismObject<LookupTableType> binaryTable = assertSameObjects(LookupTableType.class, withRows, result);
+        assertEquals("Wrong # of rows in table stored in binary format", expectedRows, binaryTable.asObjectable().getRow().size());
+
+        binaryTable = assertSameObjects(LookupTableType.class, null, result);
+        assertTrue("Rows were stored in the binary full object", binaryTable.asObjectable().getRow().isEmpty());
+    }
+
+    /**
+     * Reads both objects (in both formats, as the repository must be able to read full objects
+     * regardless of the current setting) and checks they differ only in OID and name.
+     * Returns the object stored in binary format.
+     */
+    private <O extends ObjectType> PrismObject<O> assertSameObjects(Class<O> type,
+            Collection<SelectorOptions<GetOperationOptions>> options, OperationResult result) throws Exception {
+        boolean user = UserType.class.equals(type);
+        String xmlOid = user ? xmlUserOid : xmlTableOid;
+        String binaryOid = user ? binaryUserOid : binaryTableOid;
+
+        PrismObject<O> binaryObject = null;
+        for (FullObjectFormat format : FullObjectFormat.values()) {
+            setFullObjectFormat(format);
+            PrismObject<O> xmlObject = repositoryService.getObject(type, xmlOid, options, result);
+            binaryObject = repositoryService.getObject(type, binaryOid, options, result);
+
+            PrismObject<O> expected = xmlObject.clone();
+            expected.setOid(binaryOid);
+            expected.asObjectable().setName(binaryObject.asObjectable().getName());
+            ObjectDelta<O> delta = expected.diff(binaryObject);
+            if (!delta.isEmpty()) {
+                fail("Object stored in binary format differs from the one stored in XML (read with fullObjectFormat = "
+                        + format + ").\n*** XML:\n" + xmlObject.debugDump() + "\n*** Binary:\n" + binaryObject.debugDump()
+                        + "\n*** Delta:\n" + delta.debugDump());
+            }
+        }
+        return binaryObject;
+    }
+
+    private void assertStoredFormat(String oid, boolean binary) {
+        assertEquals("Wrong format of full object stored for " + oid, binary,
+                getStoredFullObject(oid).startsWith(BINARY_DATA_PREFIX));
+    }
+
+    private String getStoredFullObject(String oid) {
+        Session session = open();
+        try {
+            Query query = session.createQuery("select o.fullObject from RObject o where o.oid = :oid");
+            query.setString("oid", oid);
+            return RUtil.getFullObjectForDiagnostics((byte[]) query.uniqueResult());
+        } finally {
+            close(session);
+        }
+    }
+
+    private void setFullObjectFormat(FullObjectFormat format) {
+        baseHelper.getConfiguration().setFullObjectFormat(format.name());
+    }
+}
@@ -50,6 +50,8 @@ import com.evolveum.midpoint.xml.ns._public.common.api_types_3.ObjectModificatio
 import com.evolveum.midpoint.xml.ns._public.common.common_3.*;
 import com.evolveum.prism.xml.ns._public.types_3.ObjectDeltaType;
 import com.evolveum.prism.xml.ns._public.types_3.PolyStringType;
+import org.hibernate.Query;
+import org.hibernate.Session;
 import org.springframework.test.annotation.DirtiesContext;
 import org.springframework.test.context.ContextConfiguration;
 import org.testng.AssertJUnit;
@@ -63,7 +65,9 @@ import javax.xml.namespace.QName;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 
 import static org.testng.AssertJUnit.assertEquals;
@@ -641,6 +645,176 @@ public class ModifyTest extends BaseSQLRepoTest {
 		}
 	}
 
+    @Test
+    public void test160ModifyObjectsInBatch() throws Exception {
+        final String TEST_NAME = "test160ModifyObjectsInBatch";
+        TestUtil.displayTestTile(TEST_NAME);
+
+        OperationResult result = new OperationResult(TEST_NAME);
+
+        List<String> oids = new ArrayList<>();
+        List<ObjectDelta<? extends ObjectType>> deltas = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            UserType user = new UserType();
+            prismContext.adopt(user);
+            user.setName(new PolyStringType("batch-modify-" + i));
+            String oid = repositoryService.addObject(user.asPrismObject(), null, result);
+            oids.add(oid);
+            deltas.add(ObjectDelta.createModificationReplaceProperty(UserType.class, oid, UserType.F_EMPLOYEE_NUMBER,
+                    prismContext, "emp-" + i));
+        }
+
+        List<OperationResult> results = repositoryService.modifyObjects(deltas, getModifyOptions(), result);
+
+        assertEquals(deltas.size(), results.size());
+        for (int i = 0; i < oids.size(); i++) {
+            TestUtil.assertSuccess(results.get(i));
+            PrismObject<UserType> user = repositoryService.getObject(UserType.class, oids.get(i), null, result);
+            assertEquals("emp-" + i, user.asObjectable().getEmployeeNumber());
+            assertEquals("1", user.getVersion());
+        }
+    }
+
+    @Test
+    public void test170ModifyUserAssignmentsPartially() throws Exception {
+        final String TEST_NAME = "test170ModifyUserAssignmentsPartially";
+        TestUtil.displayTestTile(TEST_NAME);
+
+        OperationResult result = new OperationResult(TEST_NAME);
+
+        UserType user = new UserType();
+        prismContext.adopt(user);
+        user.setName(new PolyStringType("partial-modify"));
+        for (int i = 1; i <= 3; i++) {
+            user.getAssignment().add(new AssignmentType().id((long) i).description("a" + i));
+        }
+        String oid = repositoryService.addObject(user.asPrismObject(), null, result);
+
+        // one assignment added, one deleted, one modified, plus a property of the user itself
+        ObjectDelta<UserType> delta = ObjectDelta.createModificationAddContainer(UserType.class, oid,
+                UserType.F_ASSIGNMENT, prismContext, new AssignmentType().description("a4"));
+        delta.addModificationDeleteContainer(UserType.F_ASSIGNMENT, new AssignmentType().id(2L).asPrismContainerValue());
+        delta.addModificationReplaceProperty(new ItemPath(UserType.F_ASSIGNMENT, 3L, AssignmentType.F_DESCRIPTION), "a3-modified");
+        delta.addModificationReplaceProperty(UserType.F_EMPLOYEE_NUMBER, "emp-170");
+
+        repositoryService.modifyObject(UserType.class, oid, delta.getModifications(), getModifyOptions(), result);
+
+        PrismObject<UserType> readUser = repositoryService.getObject(UserType.class, oid, null, result);
+        result.recomputeStatus();
+        AssertJUnit.assertTrue(result.isSuccess());
+
+        assertEquals("emp-170", readUser.asObjectable().getEmployeeNumber());
+        List<String> descriptions = new ArrayList<>();
+        for (AssignmentType assignment : readUser.asObjectable().getAssignment()) {
+            descriptions.add(assignment.getDescription());
+        }
+        Collections.sort(descriptions);
+        assertEquals(Arrays.asList("a1", "a3-modified", "a4"), descriptions);
+
+        Session session = open();
+        try {
+            Query query = session.createSQLQuery("select count(*) from m_assignment where owner_oid=:oid");
+            query.setString("oid", oid);
+            assertEquals("Wrong number of assignment rows", 3, ((Number) query.uniqueResult()).intValue());
+        } finally {
+            close(session);
+        }
+    }
+
+    @Test
+    public void test180ReindexRebuildsStaleRows() throws Exception {
+        final String TEST_NAME = "test180ReindexRebuildsStaleRows";
+        TestUtil.displayTestTile(TEST_NAME);
+
+        OperationResult result = new OperationResult(TEST_NAME);
+
+        UserType user = new UserType();
+        prismContext.adopt(user);
+        user.setName(new PolyStringType("reindex-stale"));
+        user.getParentOrgRef().add(new ObjectReferenceType().oid("00000000-0000-0000-0000-000000000180").type(OrgType.COMPLEX_TYPE));
+        user.getParentOrgRef().add(new ObjectReferenceType().oid("00000000-0000-0000-0000-000000000181").type(OrgType.COMPLEX_TYPE));
+        String oid = repositoryService.addObject(user.asPrismObject(), null, result);
+        assertEquals("Wrong number of reference rows after add", 2, countReferenceRows(oid));
+
+        // make the reference rows stale
+        Session session = open();
+        try {
+            Query query = session.createSQLQuery("delete from m_reference where owner_oid=:oid");
+            query.setString("oid", oid);
+            query.executeUpdate();
+        } finally {
+            close(session);
+        }
+        assertEquals("Reference rows were not deleted", 0, countReferenceRows(oid));
+
+        // WHEN (this is what reindex does)
+        repositoryService.modifyObject(UserType.class, oid, new ArrayList<ItemDelta>(),
+                RepoModifyOptions.createExecuteIfNoChanges(), result);
+
+        // THEN
+        result.recomputeStatus();
+        AssertJUnit.assertTrue(result.isSuccess());
+        assertEquals("Reference rows were not rebuilt by reindex", 2, countReferenceRows(oid));
+
+        PrismObject<UserType> readUser = repositoryService.getObject(UserType.class, oid, null, result);
+        assertEquals("Wrong number of parentOrgRefs", 2, readUser.asObjectable().getParentOrgRef().size());
+    }
+
+    @Test
+    public void test190ReplaceMetadataWithApproverRefs() throws Exception {
+        final String TEST_NAME = "test190ReplaceMetadataWithApproverRefs";
+        TestUtil.displayTestTile(TEST_NAME);
+
+        OperationResult result = new OperationResult(TEST_NAME);
+
+        UserType user = new UserType();
+        prismContext.adopt(user);
+        user.setName(new PolyStringType("metadata-approvers"));
+        MetadataType metadata = new MetadataType();
+        metadata.getCreateApproverRef().add(new ObjectReferenceType().oid("00000000-0000-0000-0000-000000000190").type(UserType.COMPLEX_TYPE));
+        metadata.getCreateApproverRef().add(new ObjectReferenceType().oid("00000000-0000-0000-0000-000000000191").type(UserType.COMPLEX_TYPE));
+        user.setMetadata(metadata);
+        String oid = repositoryService.addObject(user.asPrismObject(), null, result);
+        assertEquals("Wrong number of reference rows after add", 2, countReferenceRows(oid));
+
+        // WHEN
+        MetadataType newMetadata = new MetadataType();
+        newMetadata.getModifyApproverRef().add(new ObjectReferenceType().oid("00000000-0000-0000-0000-000000000192").type(UserType.COMPLEX_TYPE));
+        ObjectDelta<UserType> delta = ObjectDelta.createModificationReplaceContainer(UserType.class, oid,
+                UserType.F_METADATA, prismContext, newMetadata);
+        repositoryService.modifyObject(UserType.class, oid, delta.getModifications(), getModifyOptions(), result);
+
+        // THEN
+        result.recomputeStatus();
+        AssertJUnit.assertTrue(result.isSuccess());
+        assertEquals("Approver reference rows were not updated", 1, countReferenceRows(oid));
+
+        PrismObject<UserType> readUser = repositoryService.getObject(UserType.class, oid, null, result);
+        MetadataType readMetadata = readUser.asObjectable().getMetadata();
+        assertEquals("Wrong number of createApproverRefs", 0, readMetadata.getCreateApproverRef().size());
+        assertEquals("Wrong number of modifyApproverRefs", 1, readMetadata.getModifyApproverRef().size());
+
+        ObjectQuery query = QueryBuilder.queryFor(UserType.class, prismContext)
+                .item(UserType.F_METADATA, MetadataType.F_MODIFY_APPROVER_REF).ref("00000000-0000-0000-0000-000000000192")
+                .build();
+        assertEquals("User not found by new modifyApproverRef", 1, repositoryService.countObjects(UserType.class, query, result));
+        query = QueryBuilder.queryFor(UserType.class, prismContext)
+                .item(UserType.F_METADATA, MetadataType.F_CREATE_APPROVER_REF).ref("00000000-0000-0000-0000-000000000190")
+                .build();
+        assertEquals("User found by removed createApproverRef", 0, repositoryService.countObjects(UserType.class, query, result));
+    }
+
+    private int countReferenceRows(String oid) {
+        Session session = open();
+        try {
+            Query query = session.createSQLQuery("select count(*) from m_reference where owner_oid=:oid");
+            query.setString("oid", oid);
+            return ((Number) query.uniqueResult()).intValue();
+        } finally {
+            close(session);
+        }
+    }
+
     private <T> void assertAttribute(PrismObject<ShadowType> shadow, String attrName, T... expectedValues) {
     	assertAttribute(shadow, new QName(MidPointConstants.NS_RI, attrName), expectedValues);
     }
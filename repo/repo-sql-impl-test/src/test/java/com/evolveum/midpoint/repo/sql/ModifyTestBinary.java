@@ -0,0 +1,48 @@
+/*
+ * Copyright (c) 2010-2016 Evolveum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.evolveum.midpoint.repo.sql;
+
+import com.evolveum.midpoint.repo.sql.SqlRepositoryConfiguration.FullObjectFormat;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ContextConfiguration;
+import org.testng.annotations.AfterClass;
+
+/**
+ * The same as ModifyTest but with fullObjectFormat = binary.
+ *
+ * @author mederly
+ */
+@ContextConfiguration(locations = {"../../../../../ctx-test.xml"})
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_CLASS)
+public class ModifyTestBinary extends ModifyTest {
+
+    private FullObjectFormat originalFormat;
+
+    @Override
+    public void initSystem() throws Exception {
+        originalFormat = baseHelper.getConfiguration().getFullObjectFormat();
+        baseHelper.getConfiguration().setFullObjectFormat(FullObjectFormat.BINARY.name());
+        super.initSystem();
+    }
+
+    @AfterClass(alwaysRun = true)
+    public void restoreFullObjectFormat() {
+        if (originalFormat != null) {
+            baseHelper.getConfiguration().setFullObjectFormat(originalFormat.name());
+        }
+    }
+}
@@ -18,6 +18,7 @@ package com.evolveum.midpoint.repo.sql;
 
 import com.evolveum.midpoint.prism.*;
 import com.evolveum.midpoint.prism.path.ItemPath;
+import com.evolveum.midpoint.prism.polystring.PolyString;
 import com.evolveum.midpoint.prism.query.*;
 import com.evolveum.midpoint.prism.query.builder.QueryBuilder;
 import com.evolveum.midpoint.prism.schema.SchemaRegistry;
@@ -27,6 +28,7 @@ import com.evolveum.midpoint.repo.sql.query.QueryException;
 import com.evolveum.midpoint.repo.sql.query.RQuery;
 import com.evolveum.midpoint.repo.sql.query2.QueryEngine2;
 import com.evolveum.midpoint.repo.sql.query2.RQueryImpl;
+import com.evolveum.midpoint.repo.sql.query2.hqm.QueryParameterValue;
 import com.evolveum.midpoint.repo.sql.query2.hqm.RootHibernateQuery;
 import com.evolveum.midpoint.repo.sql.type.XMLGregorianCalendarType;
 import com.evolveum.midpoint.schema.MidPointPrismContextFactory;
@@ -96,6 +98,9 @@ public class QueryInterpreter2Test extends BaseSQLRepoTest {
     private static final File TEST_DIR = new File("./src/test/resources/query");
 
     private static final QName SKIP_AUTOGENERATION = new QName("http://example.com/p", "skipAutogeneration");
+    private static final QName EXT_STRING_TYPE = new QName("http://example.com/p", "stringType");
+    private static final QName EXT_LONG_TYPE = new QName("http://example.com/p", "longType");
+    private static final QName EXT_POLY_TYPE = new QName("http://example.com/p", "polyType");
 
     @BeforeSuite
     public void setup() throws SchemaException, SAXException, IOException {
@@ -3490,6 +3495,290 @@ public class QueryInterpreter2Test extends BaseSQLRepoTest {
 		}
 	}
 
+	@Test
+	public void test950QueryExtensionStringJson() throws Exception {
+		Session session = open();
+		try {
+			ObjectQuery query = QueryBuilder.queryFor(GenericObjectType.class, prismContext)
+					.item(ObjectType.F_EXTENSION, EXT_STRING_TYPE).eq("asdf")
+					.build();
+			RQueryImpl realQuery = getInterpretedQuery2Json(session, GenericObjectType.class, query);
+			String expected = "select\n"
+					+ "  g.fullObject,\n"
+					+ "  g.stringsCount,\n"
+					+ "  g.longsCount,\n"
+					+ "  g.datesCount,\n"
+					+ "  g.referencesCount,\n"
+					+ "  g.polysCount,\n"
+					+ "  g.booleansCount\n"
+					+ "from\n"
+					+ "  RGenericObject g\n"
+					+ "where\n"
+					+ "  mp_ext_contains(g.oid, :ext) = true\n";
+			assertEqualsIgnoreWhitespace(expected, realQuery.getQuery().getQueryString());
+			assertParameter(realQuery, "ext", "{\"http://example.com/p#stringType\":[\"asdf\"]}");
+		} finally {
+			close(session);
+		}
+	}
+
+	@Test
+	public void test952QueryExtensionLongRangeJson() throws Exception {
+		Session session = open();
+		try {
+			ObjectQuery query = QueryBuilder.queryFor(GenericObjectType.class, prismContext)
+					.item(ObjectType.F_EXTENSION, EXT_LONG_TYPE).gt(100L)
+					.and().item(ObjectType.F_EXTENSION, EXT_LONG_TYPE).lt(200L)
+					.build();
+			RQueryImpl realQuery = getInterpretedQuery2Json(session, GenericObjectType.class, query);
+			String expected = "select\n"
+					+ "  g.fullObject,\n"
+					+ "  g.stringsCount,\n"
+					+ "  g.longsCount,\n"
+					+ "  g.datesCount,\n"
+					+ "  g.referencesCount,\n"
+					+ "  g.polysCount,\n"
+					+ "  g.booleansCount\n"
+					+ "from\n"
+					+ "  RGenericObject g\n"
+					+ "where\n"
+					+ "  (\n"
+					+ "    mp_ext_num_gt(g.oid, :ext, :ext2, :ext3) = true and\n"
+					+ "    mp_ext_num_lt(g.oid, :ext4, :ext5, :ext6) = true\n"
+					+ "  )\n";
+			assertEqualsIgnoreWhitespace(expected, realQuery.getQuery().getQueryString());
+			assertParameter(realQuery, "ext", "http://example.com/p#longType");
+			assertParameter(realQuery, "ext2", "{}");
+			assertParameter(realQuery, "ext3", 100L);
+			assertParameter(realQuery, "ext4", "http://example.com/p#longType");
+			assertParameter(realQuery, "ext5", "{}");
+			assertParameter(realQuery, "ext6", 200L);
+		} finally {
+			close(session);
+		}
+	}
+
+	@Test
+	public void test954QueryExtensionStringSubstringJson() throws Exception {
+		Session session = open();
+		try {
+			ObjectQuery query = QueryBuilder.queryFor(GenericObjectType.class, prismContext)
+					.item(ObjectType.F_EXTENSION, EXT_STRING_TYPE).contains("sd")
+					.build();
+			RQueryImpl realQuery = getInterpretedQuery2Json(session, GenericObjectType.class, query);
+			String expected = "select\n"
+					+ "  g.fullObject,\n"
+					+ "  g.stringsCount,\n"
+					+ "  g.longsCount,\n"
+					+ "  g.datesCount,\n"
+					+ "  g.referencesCount,\n"
+					+ "  g.polysCount,\n"
+					+ "  g.booleansCount\n"
+					+ "from\n"
+					+ "  RGenericObject g\n"
+					+ "where\n"
+					+ "  mp_ext_text_like(g.oid, :ext, :ext2, :ext3) = true\n";
+			assertEqualsIgnoreWhitespace(expected, realQuery.getQuery().getQueryString());
+			assertParameter(realQuery, "ext", "http://example.com/p#stringType");
+			assertParameter(realQuery, "ext2", "{}");
+			assertParameter(realQuery, "ext3", "%sd%");
+		} finally {
+			close(session);
+		}
+	}
+
+	@Test
+	public void test955QueryExtensionStringStartsWithIgnoreCaseJson() throws Exception {
+		Session session = open();
+		try {
+			ObjectQuery query = QueryBuilder.queryFor(GenericObjectType.class, prismContext)
+					.item(ObjectType.F_EXTENSION, EXT_STRING_TYPE).startsWith("AS").matchingCaseIgnore()
+					.build();
+			RQueryImpl realQuery = getInterpretedQuery2Json(session, GenericObjectType.class, query);
+			String expected = "select\n"
+					+ "  g.fullObject,\n"
+					+ "  g.stringsCount,\n"
+					+ "  g.longsCount,\n"
+					+ "  g.datesCount,\n"
+					+ "  g.referencesCount,\n"
+					+ "  g.polysCount,\n"
+					+ "  g.booleansCount\n"
+					+ "from\n"
+					+ "  RGenericObject g\n"
+					+ "where\n"
+					+ "  mp_ext_ci_like(g.oid, :ext, :ext2, :ext3) = true\n";
+			assertEqualsIgnoreWhitespace(expected, realQuery.getQuery().getQueryString());
+			assertParameter(realQuery, "ext3", "as%");
+		} finally {
+			close(session);
+		}
+	}
+
+	@Test
+	public void test956QueryExtensionPolyStringOrigJson() throws Exception {
+		Session session = open();
+		try {
+			ObjectQuery query = QueryBuilder.queryFor(GenericObjectType.class, prismContext)
+					.item(ObjectType.F_EXTENSION, EXT_POLY_TYPE).eqPoly("Ahoj", "ahoj").matchingOrig()
+					.build();
+			RQueryImpl realQuery = getInterpretedQuery2Json(session, GenericObjectType.class, query);
+			String expected = "select\n"
+					+ "  g.fullObject,\n"
+					+ "  g.stringsCount,\n"
+					+ "  g.longsCount,\n"
+					+ "  g.datesCount,\n"
+					+ "  g.referencesCount,\n"
+					+ "  g.polysCount,\n"
+					+ "  g.booleansCount\n"
+					+ "from\n"
+					+ "  RGenericObject g\n"
+					+ "where\n"
+					+ "  mp_ext_contains(g.oid, :ext) = true\n";
+			assertEqualsIgnoreWhitespace(expected, realQuery.getQuery().getQueryString());
+			assertParameter(realQuery, "ext", "{\"http://example.com/p#polyType\":[{\"o\":\"Ahoj\"}]}");
+		} finally {
+			close(session);
+		}
+	}
+
+	@Test
+	public void test957QueryExtensionPolyStringNormJson() throws Exception {
+		Session session = open();
+		try {
+			ObjectQuery query = QueryBuilder.queryFor(GenericObjectType.class, prismContext)
+					.item(ObjectType.F_EXTENSION, EXT_POLY_TYPE).eqPoly("Ahoj", "ahoj").matchingNorm()
+					.build();
+			RQueryImpl realQuery = getInterpretedQuery2Json(session, GenericObjectType.class, query);
+			String expected = "select\n"
+					+ "  g.fullObject,\n"
+					+ "  g.stringsCount,\n"
+					+ "  g.longsCount,\n"
+					+ "  g.datesCount,\n"
+					+ "  g.referencesCount,\n"
+					+ "  g.polysCount,\n"
+					+ "  g.booleansCount\n"
+					+ "from\n"
+					+ "  RGenericObject g\n"
+					+ "where\n"
+					+ "  mp_ext_contains(g.oid, :ext) = true\n";
+			assertEqualsIgnoreWhitespace(expected, realQuery.getQuery().getQueryString());
+			assertParameter(realQuery, "ext", "{\"http://example.com/p#polyType\":[{\"n\":\"ahoj\"}]}");
+		} finally {
+			close(session);
+		}
+	}
+
+	@Test
+	public void test958QueryExtensionPolyStringStrictJson() throws Exception {
+		Session session = open();
+		try {
+			ObjectQuery query = QueryBuilder.queryFor(GenericObjectType.class, prismContext)
+					.item(ObjectType.F_EXTENSION, EXT_POLY_TYPE).eqPoly("Ahoj", "ahoj")
+					.build();
+			RQueryImpl realQuery = getInterpretedQuery2Json(session, GenericObjectType.class, query);
+			String expected = "select\n"
+					+ "  g.fullObject,\n"
+					+ "  g.stringsCount,\n"
+					+ "  g.longsCount,\n"
+					+ "  g.datesCount,\n"
+					+ "  g.referencesCount,\n"
+					+ "  g.polysCount,\n"
+					+ "  g.booleansCount\n"
+					+ "from\n"
+					+ "  RGenericObject g\n"
+					+ "where\n"
+					+ "  mp_ext_contains(g.oid, :ext) = true\n";
+			assertEqualsIgnoreWhitespace(expected, realQuery.getQuery().getQueryString());
+			assertParameter(realQuery, "ext", "{\"http://example.com/p#polyType\":[{\"o\":\"Ahoj\",\"n\":\"ahoj\"}]}");
+		} finally {
+			close(session);
+		}
+	}
+
+	@Test
+	public void test959QueryExtensionPolyStringSubstringNormJson() throws Exception {
+		Session session = open();
+		try {
+			ObjectQuery query = QueryBuilder.queryFor(GenericObjectType.class, prismContext)
+					.item(ObjectType.F_EXTENSION, EXT_POLY_TYPE).contains(new PolyString("Ho", "ho")).matchingNorm()
+					.build();
+			RQueryImpl realQuery = getInterpretedQuery2Json(session, GenericObjectType.class, query);
+			String expected = "select\n"
+					+ "  g.fullObject,\n"
+					+ "  g.stringsCount,\n"
+					+ "  g.longsCount,\n"
+					+ "  g.datesCount,\n"
+					+ "  g.referencesCount,\n"
+					+ "  g.polysCount,\n"
+					+ "  g.booleansCount\n"
+					+ "from\n"
+					+ "  RGenericObject g\n"
+					+ "where\n"
+					+ "  mp_ext_text_like(g.oid, :ext, :ext2, :ext3) = true\n";
+			assertEqualsIgnoreWhitespace(expected, realQuery.getQuery().getQueryString());
+			assertParameter(realQuery, "ext2", "{n}");
+			assertParameter(realQuery, "ext3", "%ho%");
+		} finally {
+			close(session);
+		}
+	}
+
+	@Test
+	public void test960QueryExtensionPolyStringOrigIgnoreCaseJson() throws Exception {
+		Session session = open();
+		try {
+			ObjectQuery query = QueryBuilder.queryFor(GenericObjectType.class, prismContext)
+					.item(ObjectType.F_EXTENSION, EXT_POLY_TYPE).eqPoly("Ahoj", "ahoj")
+							.matching(new QName(PrismConstants.NS_MATCHING_RULE, "origIgnoreCase"))
+					.build();
+			RQueryImpl realQuery = getInterpretedQuery2Json(session, GenericObjectType.class, query);
+			String expected = "select\n"
+					+ "  g.fullObject,\n"
+					+ "  g.stringsCount,\n"
+					+ "  g.longsCount,\n"
+					+ "  g.datesCount,\n"
+					+ "  g.referencesCount,\n"
+					+ "  g.polysCount,\n"
+					+ "  g.booleansCount\n"
+					+ "from\n"
+					+ "  RGenericObject g\n"
+					+ "where\n"
+					+ "  mp_ext_ci_eq(g.oid, :ext, :ext2, :ext3) = true\n";
+			assertEqualsIgnoreWhitespace(expected, realQuery.getQuery().getQueryString());
+			assertParameter(realQuery, "ext2", "{o}");
+			assertParameter(realQuery, "ext3", "ahoj");
+		} finally {
+			close(session);
+		}
+	}
+
+	@Test
+	public void test962QueryExtensionIsNullJson() throws Exception {
+		Session session = open();
+		try {
+			ObjectQuery query = QueryBuilder.queryFor(GenericObjectType.class, prismContext)
+					.item(ObjectType.F_EXTENSION, EXT_STRING_TYPE).isNull()
+					.build();
+			RQueryImpl realQuery = getInterpretedQuery2Json(session, GenericObjectType.class, query);
+			String expected = "select\n"
+					+ "  g.fullObject,\n"
+					+ "  g.stringsCount,\n"
+					+ "  g.longsCount,\n"
+					+ "  g.datesCount,\n"
+					+ "  g.referencesCount,\n"
+					+ "  g.polysCount,\n"
+					+ "  g.booleansCount\n"
+					+ "from\n"
+					+ "  RGenericObject g\n"
+					+ "where\n"
+					+ "  mp_ext_contains(g.oid, :ext) = false\n";
+			assertEqualsIgnoreWhitespace(expected, realQuery.getQuery().getQueryString());
+			assertParameter(realQuery, "ext", "{\"http://example.com/p#stringType\":[]}");
+		} finally {
+			close(session);
+		}
+	}
+
 	//    @Test
 //    public void test930OrganizationEqualsCostCenter() throws Exception {
 //        Session session = open();
@@ -3575,6 +3864,29 @@ public class QueryInterpreter2Test extends BaseSQLRepoTest {
 		return rQuery;
 	}
 
+	/**
+	 * Interprets the query with extensions stored as JSONB. The query is not executed, because mp_ext_* functions
+	 * are registered only in MidPointPostgreSQLDialect.
+	 */
+	private <T extends Containerable> RQueryImpl getInterpretedQuery2Json(Session session, Class<T> type, ObjectQuery query)
+			throws QueryException {
+		SqlRepositoryConfiguration configuration = baseHelper.getConfiguration();
+		boolean useJsonbExtensions = configuration.isUseJsonbExtensions();
+		configuration.setUseJsonbExtensions(true);
+		try {
+			QueryEngine2 engine = new QueryEngine2(configuration, prismContext);
+			return (RQueryImpl) engine.interpret(query, type, null, false, session);
+		} finally {
+			configuration.setUseJsonbExtensions(useJsonbExtensions);
+		}
+	}
+
+	private void assertParameter(RQueryImpl realQuery, String name, Object expected) {
+		QueryParameterValue parameter = realQuery.getQuerySource().getParameters().get(name);
+		AssertJUnit.assertNotNull("No parameter '" + name + "'", parameter);
+		assertEquals("Wrong value of parameter '" + name + "'", expected, parameter.getValue());
+	}
+
 	private void assertEqualsIgnoreWhitespace(String expected, String real) {
         LOGGER.info("exp. query>\n{}\nreal query>\n{}", expected, real);
         String expNorm = StringUtils.normalizeSpace(expected);
@@ -44,6 +44,7 @@ import com.evolveum.midpoint.util.logging.Trace;
 import com.evolveum.midpoint.util.logging.TraceManager;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.*;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.test.annotation.DirtiesContext;
 import org.springframework.test.context.ContextConfiguration;
 import org.testng.annotations.BeforeClass;
@@ -66,6 +67,9 @@ public class SearchTest extends BaseSQLRepoTest {
 
     private static final Trace LOGGER = TraceManager.getTrace(SearchTest.class);
 
+    @Autowired
+    private SqlRepositoryFactory sqlRepositoryFactory;
+
     @BeforeClass
     public void beforeClass() throws Exception {
         super.beforeClass();
@@ -539,4 +543,30 @@ public class SearchTest extends BaseSQLRepoTest {
 		assertTrue(result.isSuccess());
 		assertEquals("Should find one object", 1, roles.size());
 	}
+
+	@Test
+	public void testQueryPlanCache() throws SchemaException {
+		SqlPerformanceMonitor monitor = sqlRepositoryFactory.getPerformanceMonitor();
+		long hitsBefore = monitor.getQueryPlanCacheHits();
+
+		// the first two searches are interpreted fully, the other ones differ only in values so they should be cached
+		assertRolesByName("Judge", 1);
+		assertRolesByName("Pirate", 1);
+		assertRolesByName("Judge", 1);
+		assertRolesByName("Nobody", 0);
+		assertRolesByName("Pirate", 1);
+
+		assertTrue("Query plan cache was not used", monitor.getQueryPlanCacheHits() - hitsBefore >= 3);
+	}
+
+	private void assertRolesByName(String name, int expected) throws SchemaException {
+		ObjectQuery query = QueryBuilder.queryFor(RoleType.class, prismContext)
+				.item(RoleType.F_NAME).eqPoly(name).matchingOrig()
+				.build();
+		OperationResult result = new OperationResult("search");
+		List<PrismObject<RoleType>> roles = repositoryService.searchObjects(RoleType.class, query, null, result);
+		result.recomputeStatus();
+		assertTrue(result.isSuccess());
+		assertEquals("Wrong number of roles named " + name, expected, roles.size());
+	}
 }
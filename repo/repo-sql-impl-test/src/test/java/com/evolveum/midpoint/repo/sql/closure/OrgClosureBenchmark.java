@@ -0,0 +1,191 @@
+/*
+ * Copyright (c) 2010-2016 Evolveum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.evolveum.midpoint.repo.sql.closure;
+
+import com.evolveum.midpoint.prism.delta.ItemDelta;
+import com.evolveum.midpoint.prism.delta.ReferenceDelta;
+import com.evolveum.midpoint.repo.sql.helpers.OrgClosureManager;
+import com.evolveum.midpoint.schema.result.OperationResult;
+import com.evolveum.midpoint.util.logging.Trace;
+import com.evolveum.midpoint.util.logging.TraceManager;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ObjectReferenceType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.OrgType;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ContextConfiguration;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Benchmark for org closure maintenance. Builds a synthetic org tree and measures the duration of
+ * link (parentOrgRef) changes - first sequentially, then concurrently in separate subtrees.
+ *
+ * Parameters are taken from system properties:
+ *  - orgClosureBenchmark.depth: number of levels (default 4)
+ *  - orgClosureBenchmark.fanOut: number of children of each org (default 4)
+ *  - orgClosureBenchmark.parents: number of parents of each non-root org (default 1, i.e. a tree)
+ *  - orgClosureBenchmark.threads: number of threads for concurrent test; this is also the number of roots (default 4)
+ *  - orgClosureBenchmark.rounds: number of link remove/add rounds per level or per thread (default 10)
+ *  - orgClosureBenchmark.locking: closure locking mode, "table" or "subtree" (default: as configured)
+ *
+ * E.g. -DorgClosureBenchmark.depth=6 -DorgClosureBenchmark.fanOut=7 gives about 20K orgs per root.
+ *
+ * @author mederly
+ */
+@ContextConfiguration(locations = {"../../../../../../ctx-test.xml"})
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_CLASS)
+public class OrgClosureBenchmark extends AbstractOrgClosureTest {
+
+    private static final Trace LOGGER = TraceManager.getTrace(OrgClosureBenchmark.class);
+
+    private static final String PREFIX = "orgClosureBenchmark.";
+
+    private final int depth = Integer.getInteger(PREFIX + "depth", 4);
+    private final int fanOut = Integer.getInteger(PREFIX + "fanOut", 4);
+    private final int parents = Integer.getInteger(PREFIX + "parents", 1);
+    private final int threads = Integer.getInteger(PREFIX + "threads", 4);
+    private final int rounds = Integer.getInteger(PREFIX + "rounds", 10);
+    private final String locking = System.getProperty(PREFIX + "locking");
+
+    private OrgClosureManager.LockingMode originalLocking;
+
+    private OrgClosureTestConfiguration configuration;
+
+    public OrgClosureBenchmark() {
+        int[] orgChildrenInLevel = new int[depth];
+        int[] parentsInLevel = new int[depth];
+        int[] linkRoundsForLevel = new int[depth];
+        int[] nodeRoundsForLevel = new int[depth];
+        for (int level = 0; level < depth; level++) {
+            orgChildrenInLevel[level] = level == 0 ? threads : fanOut;
+            parentsInLevel[level] = level == 0 ? 0 : parents;
+            linkRoundsForLevel[level] = level == 0 ? 0 : rounds;
+        }
+        configuration = new OrgClosureTestConfiguration();
+        configuration.setCheckChildrenSets(false);
+        configuration.setCheckClosureMatrix(false);
+        configuration.setDeletionsToClosureTest(Integer.MAX_VALUE);
+        configuration.setOrgChildrenInLevel(orgChildrenInLevel);
+        configuration.setUserChildrenInLevel(null);
+        configuration.setParentsInLevel(parentsInLevel);
+        configuration.setLinkRoundsForLevel(linkRoundsForLevel);
+        configuration.setNodeRoundsForLevel(nodeRoundsForLevel);
+    }
+
+    @Override
+    public OrgClosureTestConfiguration getConfiguration() {
+        return configuration;
+    }
+
+    @Test
+    public void test010SetLockingMode() throws Exception {
+        originalLocking = baseHelper.getConfiguration().getOrgClosureLocking();
+        if (locking != null) {
+            baseHelper.getConfiguration().setOrgClosureLocking(locking);
+        }
+        info("Org closure benchmark: depth = " + depth + ", fan-out = " + fanOut + ", parents = " + parents
+                + ", threads = " + threads + ", rounds = " + rounds + ", locking = " + baseHelper.getConfiguration().getOrgClosureLocking()
+                + ", database = " + baseHelper.getConfiguration().getHibernateDialect());
+    }
+
+    @Test public void test100LoadOrgStructure() throws Exception { _test100LoadOrgStructure(); }
+    @Test public void test200AddRemoveLinks() throws Exception { _test200AddRemoveLinks(); }
+
+    /**
+     * Each thread removes and re-adds parent links of random orgs in "its own" subtree.
+     * With subtree locking the threads should not block each other (unless parents > 1).
+     */
+    @Test
+    public void test300ConcurrentAddRemoveLinks() throws Exception {
+        final List<List<String>> orgsByRoot = new ArrayList<>();
+        for (String rootOid : rootOids) {
+            List<String> orgs = new ArrayList<>(getActualChildrenOf(rootOid));
+            orgs.remove(rootOid);
+            orgsByRoot.add(orgs);
+        }
+
+        final List<Throwable> exceptions = Collections.synchronizedList(new ArrayList<Throwable>());
+        final AtomicLong operations = new AtomicLong();
+        List<Thread> runners = new ArrayList<>();
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < orgsByRoot.size(); i++) {
+            final List<String> orgs = orgsByRoot.get(i);
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Random random = new Random();
+                    OperationResult result = new OperationResult(OrgClosureBenchmark.class.getName() + ".run");
+                    try {
+                        for (int round = 0; round < rounds && !orgs.isEmpty(); round++) {
+                            String oid = orgs.get(random.nextInt(orgs.size()));
+                            OrgType org = repositoryService.getObject(OrgType.class, oid, null, result).asObjectable();
+                            ObjectReferenceType parentOrgRef = org.getParentOrgRef().get(random.nextInt(org.getParentOrgRef().size()));
+                            modifyParent(oid, parentOrgRef, false, result);
+                            modifyParent(oid, parentOrgRef, true, result);
+                            operations.addAndGet(2);
+                        }
+                    } catch (Throwable t) {
+                        LOGGER.error("Exception in benchmark thread", t);
+                        exceptions.add(t);
+                    }
+                }
+            }, "OrgClosureBenchmark-" + i);
+            runners.add(thread);
+            thread.start();
+        }
+        for (Thread thread : runners) {
+            thread.join();
+        }
+        long duration = System.currentTimeMillis() - start;
+
+        if (!exceptions.isEmpty()) {
+            throw new AssertionError("Found exceptions: " + exceptions);
+        }
+        info("Concurrent link changes: " + operations.get() + " operations in " + duration + " ms using " + runners.size()
+                + " threads (" + (duration > 0 ? operations.get() * 1000L / duration : 0) + " ops/s, locking = "
+                + baseHelper.getConfiguration().getOrgClosureLocking() + ")");
+
+        // links were re-added, so the graph should be the same as before
+        checkClosureUnconditional(getVertices());
+    }
+
+    private void modifyParent(String oid, ObjectReferenceType parentOrgRef, boolean add, OperationResult result) throws Exception {
+        List<ItemDelta> modifications = new ArrayList<>();
+        if (add) {
+            modifications.add(ReferenceDelta.createModificationAdd(OrgType.class, OrgType.F_PARENT_ORG_REF, prismContext,
+                    parentOrgRef.asReferenceValue().clone()));
+        } else {
+            modifications.add(ReferenceDelta.createModificationDelete(OrgType.class, OrgType.F_PARENT_ORG_REF, prismContext,
+                    parentOrgRef.asReferenceValue().clone()));
+        }
+        repositoryService.modifyObject(OrgType.class, oid, modifications, result);
+    }
+
+    @Test public void test410RandomUnloadOrgStructure() throws Exception { _test410RandomUnloadOrgStructure(); }
+
+    @AfterClass(alwaysRun = true)
+    public void restoreLockingMode() {
+        if (originalLocking != null) {
+            baseHelper.getConfiguration().setOrgClosureLocking(originalLocking.toString());
+        }
+    }
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright (c) 2010-2016 Evolveum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.evolveum.midpoint.repo.sql.closure;
+
+import com.evolveum.midpoint.repo.sql.BaseSQLRepoTest;
+import com.evolveum.midpoint.repo.sql.helpers.OrgClosureManager;
+import com.evolveum.midpoint.schema.result.OperationResult;
+import com.evolveum.midpoint.schema.result.OperationResultStatus;
+import com.evolveum.midpoint.test.util.TestUtil;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ObjectReferenceType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.OrgType;
+import com.evolveum.prism.xml.ns._public.types_3.PolyStringType;
+import org.hibernate.Query;
+import org.hibernate.Session;
+import org.hibernate.type.IntegerType;
+import org.hibernate.type.StringType;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ContextConfiguration;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertTrue;
+
+/**
+ * Tests the parallel rebuild and check of the org closure table (orgClosureRebuildThreads > 0).
+ *
+ * The org graph has three roots; some orgs have parents in more trees, so the first two roots
+ * form a single component, and there are orgs reachable from a root by more than one path.
+ *
+ * @author mederly
+ */
+@ContextConfiguration(locations = {"../../../../../../ctx-test.xml"})
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_CLASS)
+public class OrgClosureRebuildTest extends BaseSQLRepoTest {
+
+    private static final String CLOSURE_TABLE_NAME = "m_org_closure";
+    private static final int THREADS = 4;
+
+    private static final String ROOT1 = "rebuild-root1";
+    private static final String ROOT2 = "rebuild-root2";
+    private static final String ROOT3 = "rebuild-root3";
+    private static final String A = "rebuild-a";
+    private static final String B = "rebuild-b";
+    private static final String C = "rebuild-c";
+    private static final String D = "rebuild-d";
+    private static final String E = "rebuild-e";
+    private static final String F = "rebuild-f";
+    private static final String G = "rebuild-g";
+
+    @Autowired
+    private OrgClosureManager closureManager;
+
+    private int originalThreads;
+
+    @Override
+    public void initSystem() throws Exception {
+        super.initSystem();
+        originalThreads = baseHelper.getConfiguration().getOrgClosureRebuildThreads();
+
+        OperationResult result = new OperationResult("initSystem");
+        addOrg(ROOT1, result);
+        addOrg(ROOT2, result);
+        addOrg(ROOT3, result);
+        addOrg(A, result, ROOT1);
+        addOrg(B, result, ROOT1, ROOT2);
+        addOrg(C, result, A, B);
+        addOrg(D, result, ROOT2);
+        addOrg(E, result, C, D);
+        addOrg(F, result, ROOT3);
+        addOrg(G, result, F);
+    }
+
+    @AfterClass
+    public void restoreConfiguration() {
+        baseHelper.getConfiguration().setOrgClosureRebuildThreads(originalThreads);
+    }
+
+    @Test
+    public void test100RebuildInParallelMatchesSequential() throws Exception {
+        final String TEST_NAME = "test100RebuildInParallelMatchesSequential";
+        TestUtil.displayTestTile(TEST_NAME);
+
+        OperationResult result = new OperationResult(TEST_NAME);
+        baseHelper.getConfiguration().setOrgClosureRebuildThreads(0);
+        closureManager.checkAndOrRebuild(false, true, true, false, result);
+        Set<List<Object>> sequential = readClosure();
+
+        // WHEN
+        baseHelper.getConfiguration().setOrgClosureRebuildThreads(THREADS);
+        closureManager.checkAndOrRebuild(false, true, true, false, result);
+
+        // THEN
+        result.computeStatus();
+        TestUtil.assertSuccess(result);
+        Set<List<Object>> parallel = readClosure();
+        assertEquals("Closure rebuilt in parallel differs from the sequential one", sequential, parallel);
+
+        assertRow(parallel, C, ROOT1, 2);       // via A and via B
+        assertRow(parallel, E, ROOT1, 2);
+        assertRow(parallel, E, ROOT2, 2);       // via B and via D
+        assertRow(parallel, E, E, 1);
+        assertRow(parallel, G, ROOT3, 1);
+        assertTrue("Orgs from different components are connected", !containsPair(parallel, G, ROOT1) && !containsPair(parallel, E, ROOT3));
+    }
+
+    @Test
+    public void test110CheckInParallelDetectsCorruptedRow() throws Exception {
+        final String TEST_NAME = "test110CheckInParallelDetectsCorruptedRow";
+        TestUtil.displayTestTile(TEST_NAME);
+
+        baseHelper.getConfiguration().setOrgClosureRebuildThreads(THREADS);
+        Set<List<Object>> correct = readClosure();
+
+        OperationResult result = new OperationResult(TEST_NAME);
+        closureManager.checkAndOrRebuild(true, false, false, false, result);
+        assertEquals("Check of a correct closure failed", OperationResultStatus.SUCCESS, result.getStatus());
+
+        // the number of rows stays the same, so only the content digest can reveal the problem
+        corruptRow(E, ROOT1, 3);
+
+        // WHEN
+        result = new OperationResult(TEST_NAME);
+        closureManager.checkAndOrRebuild(true, false, false, false, result);
+
+        // THEN
+        assertEquals("Corrupted closure row was not detected", OperationResultStatus.FATAL_ERROR, result.getStatus());
+        assertRow(readClosure(), E, ROOT1, 3);       // check only, nothing was changed
+
+        // WHEN
+        result = new OperationResult(TEST_NAME);
+        closureManager.checkAndOrRebuild(true, true, false, false, result);
+
+        // THEN
+        assertEquals("Corrupted closure row was not detected", OperationResultStatus.HANDLED_ERROR, result.getStatus());
+        assertEquals("Closure was not repaired", correct, readClosure());
+    }
+
+    private void addOrg(String oid, OperationResult result, String... parentOids) throws Exception {
+        OrgType org = new OrgType();
+        prismContext.adopt(org);
+        org.setOid(oid);
+        org.setName(new PolyStringType(oid));
+        for (String parentOid : parentOids) {
+            org.getParentOrgRef().add(new ObjectReferenceType().oid(parentOid).type(OrgType.COMPLEX_TYPE));
+        }
+        repositoryService.addObject(org.asPrismObject(), null, result);
+    }
+
+    private Set<List<Object>> readClosure() {
+        Session session = open();
+        try {
+            Query query = session.createSQLQuery("select descendant_oid, ancestor_oid, val from " + CLOSURE_TABLE_NAME)
+                    .addScalar("descendant_oid", StringType.INSTANCE)
+                    .addScalar("ancestor_oid", StringType.INSTANCE)
+                    .addScalar("val", IntegerType.INSTANCE);
+            Set<List<Object>> rows = new HashSet<>();
+            for (Object row : query.list()) {
+                rows.add(Arrays.asList((Object[]) row));
+            }
+            return rows;
+        } finally {
+            close(session);
+        }
+    }
+
+    private void corruptRow(String descendant, String ancestor, int val) {
+        Session session = open();
+        try {
+            Query query = session.createSQLQuery("update " + CLOSURE_TABLE_NAME
+                    + " set val = :val where descendant_oid = :descendant and ancestor_oid = :ancestor");
+            query.setInteger("val", val);
+            query.setString("descendant", descendant);
+            query.setString("ancestor", ancestor);
+            assertEquals("Closure row was not updated", 1, query.executeUpdate());
+        } finally {
+            close(session);
+        }
+    }
+
+    private void assertRow(Set<List<Object>> closure, String descendant, String ancestor, int val) {
+        assertTrue("Closure row " + descendant + " -> " + ancestor + " (" + val + ") is missing",
+                closure.contains(Arrays.<Object>asList(descendant, ancestor, val)));
+    }
+
+    private boolean containsPair(Set<List<Object>> closure, String descendant, String ancestor) {
+        for (List<Object> row : closure) {
+            if (descendant.equals(row.get(0)) && ancestor.equals(row.get(1))) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
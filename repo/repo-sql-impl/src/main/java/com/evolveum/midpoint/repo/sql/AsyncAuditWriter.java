@@ -0,0 +1,233 @@
+/*
+ * Copyright (c) 2010-2016 Evolveum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.evolveum.midpoint.repo.sql;
+
+import com.evolveum.midpoint.audit.api.AuditEventRecord;
+import com.evolveum.midpoint.util.logging.LoggingUtils;
+import com.evolveum.midpoint.util.logging.Trace;
+import com.evolveum.midpoint.util.logging.TraceManager;
+import org.apache.commons.lang.StringUtils;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes audit records to the database in a separate thread, in batches.
+ *
+ * Records are cloned in the caller's thread (so later changes of the original record cannot affect what
+ * is stored), then they are put into a bounded queue. If the queue is full, the caller waits (back-pressure).
+ * The writer thread stores the records in batches of at most batchSize records, waiting at most
+ * flushInterval milliseconds for a batch to fill up. Repository (Hibernate) entities are created anew for
+ * each attempt, so entities from a rolled-back batch are never reused.
+ *
+ * On shutdown, all queued records are written synchronously; records submitted during or after
+ * the shutdown are written synchronously as well. Records that cannot be stored at all are appended
+ * to the fallback file (if configured) or written to the log.
+ *
+ * @author mederly
+ */
+public class AsyncAuditWriter {
+
+    private static final Trace LOGGER = TraceManager.getTrace(AsyncAuditWriter.class);
+
+    private static final long SHUTDOWN_WAIT_TIME = 60000L;
+
+    private final SqlAuditServiceImpl auditService;
+    private final BlockingQueue<Entry> queue;
+    private final int batchSize;
+    private final long flushInterval;
+    private final String fallbackFile;
+
+    private volatile boolean running;
+    private Thread writerThread;
+
+    // entries are compared by identity (see submit)
+    static class Entry {
+        final AuditEventRecord record;
+
+        Entry(AuditEventRecord record) {
+            this.record = record;
+        }
+    }
+
+    public AsyncAuditWriter(SqlAuditServiceImpl auditService, int queueSize, int batchSize, long flushInterval,
+            String fallbackFile) {
+        this.auditService = auditService;
+        this.queue = new ArrayBlockingQueue<>(queueSize);
+        this.batchSize = batchSize;
+        this.flushInterval = flushInterval;
+        this.fallbackFile = fallbackFile;
+    }
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        writerThread = new Thread(this::run, "AsyncAuditWriter");
+        writerThread.setDaemon(true);
+        writerThread.start();
+        LOGGER.info("Asynchronous audit writer started (queue size: {}, batch size: {}, flush interval: {} ms)",
+                queue.remainingCapacity() + queue.size(), batchSize, flushInterval);
+    }
+
+    public void submit(AuditEventRecord record) {
+        Entry entry = new Entry(record.clone());
+        if (!running) {
+            // the writer is not running (yet or any more) - let's store the record directly
+            storeSynchronously(entry);
+            return;
+        }
+        try {
+            if (!queue.offer(entry)) {
+                LOGGER.debug("Audit queue is full, waiting for the writer");
+                queue.put(entry);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            storeSynchronously(entry);
+            return;
+        }
+        // If the shutdown started in the meantime, the writer thread and the final drain might have missed
+        // the entry. Whoever removes it from the queue stores it, so it cannot be lost nor stored twice.
+        if (!running && queue.remove(entry)) {
+            LOGGER.debug("Audit record submitted during shutdown, storing it synchronously");
+            storeSynchronously(entry);
+        }
+    }
+
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    private void run() {
+        List<Entry> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                collectBatch(batch);
+            } catch (InterruptedException e) {
+                LOGGER.trace("Asynchronous audit writer interrupted");
+            }
+            if (!batch.isEmpty()) {
+                storeBatch(batch);
+                batch.clear();
+            }
+        }
+        LOGGER.info("Asynchronous audit writer stopped");
+    }
+
+    private void collectBatch(List<Entry> batch) throws InterruptedException {
+        Entry first = queue.poll(flushInterval, TimeUnit.MILLISECONDS);
+        if (first == null) {
+            return;
+        }
+        batch.add(first);
+        long deadline = System.currentTimeMillis() + flushInterval;
+        while (batch.size() < batchSize) {
+            queue.drainTo(batch, batchSize - batch.size());
+            long remaining = deadline - System.currentTimeMillis();
+            if (batch.size() >= batchSize || remaining <= 0 || !running) {
+                return;
+            }
+            Entry next = queue.poll(remaining, TimeUnit.MILLISECONDS);
+            if (next == null) {
+                return;
+            }
+            batch.add(next);
+        }
+    }
+
+    private void storeBatch(List<Entry> batch) {
+        List<AuditEventRecord> records = new ArrayList<>(batch.size());
+        for (Entry entry : batch) {
+            records.add(entry.record);
+        }
+        try {
+            auditService.storeRecords(records);
+        } catch (RuntimeException e) {
+            LoggingUtils.logUnexpectedException(LOGGER, "Couldn't store a batch of {} audit records, trying them one by one", e, batch.size());
+            for (Entry entry : batch) {
+                storeSynchronously(entry);
+            }
+        }
+    }
+
+    private void storeSynchronously(Entry entry) {
+        try {
+            auditService.storeRecords(Collections.singletonList(entry.record));
+        } catch (RuntimeException e) {
+            LoggingUtils.logUnexpectedException(LOGGER, "Couldn't store audit record {}", e, entry.record);
+            writeToFallback(entry);
+        }
+    }
+
+    /**
+     * Stops the writer thread; records remaining in the queue are written before returning.
+     */
+    public void shutdown() {
+        Thread thread;
+        synchronized (this) {
+            if (!running) {
+                return;
+            }
+            running = false;
+            thread = writerThread;
+            writerThread = null;
+        }
+        LOGGER.info("Stopping asynchronous audit writer, {} record(s) in the queue", queue.size());
+        // not interrupting the thread, as some JDBC drivers close the connection on interrupt;
+        // the thread notices the shutdown within one flush interval
+        try {
+            thread.join(SHUTDOWN_WAIT_TIME);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // anything that is still there (e.g. when the writer thread did not finish in time, or a late submit)
+        List<Entry> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        if (!remaining.isEmpty()) {
+            LOGGER.warn("Storing {} remaining audit record(s) synchronously", remaining.size());
+            for (Entry entry : remaining) {
+                storeSynchronously(entry);
+            }
+        }
+    }
+
+    private synchronized void writeToFallback(Entry entry) {
+        if (StringUtils.isEmpty(fallbackFile)) {
+            LOGGER.error("Audit record was not stored and no fallback file is configured: {}", entry.record);
+            return;
+        }
+        try (PrintWriter writer = new PrintWriter(new OutputStreamWriter(
+                new FileOutputStream(fallbackFile, true), StandardCharsets.UTF_8))) {
+            writer.println("--- " + new Date() + " ---");
+            writer.println(entry.record.debugDump());
+        } catch (IOException | RuntimeException e) {
+            LoggingUtils.logUnexpectedException(LOGGER, "Couldn't write audit record to the fallback file {}: {}", e,
+                    fallbackFile, entry.record);
+        }
+    }
+}
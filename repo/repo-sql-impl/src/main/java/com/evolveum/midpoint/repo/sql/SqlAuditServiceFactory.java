@@ -24,14 +24,32 @@ import com.evolveum.midpoint.util.logging.Trace;
 import com.evolveum.midpoint.util.logging.TraceManager;
 import org.apache.commons.configuration.Configuration;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * @author lazyman
  */
 public class SqlAuditServiceFactory implements AuditServiceFactory {
 
     private static final Trace LOGGER = TraceManager.getTrace(SqlAuditServiceFactory.class);
+
+    public static final String PROPERTY_ASYNCHRONOUS = "asynchronous";
+    public static final String PROPERTY_ASYNC_QUEUE_SIZE = "asyncQueueSize";
+    public static final String PROPERTY_ASYNC_BATCH_SIZE = "asyncBatchSize";
+    public static final String PROPERTY_ASYNC_FLUSH_INTERVAL = "asyncFlushInterval";
+    public static final String PROPERTY_ASYNC_FALLBACK_FILE = "asyncFallbackFile";
+
     private SqlRepositoryFactory repositoryFactory;
 
+    private boolean asynchronous = false;
+    private int asyncQueueSize = 10000;
+    private int asyncBatchSize = 100;
+    private long asyncFlushInterval = 1000L;
+    private String asyncFallbackFile;
+
+    private final List<AsyncAuditWriter> asyncWriters = new ArrayList<>();
+
     public SqlRepositoryFactory getRepositoryFactory() {
         return repositoryFactory;
     }
@@ -43,6 +61,10 @@ public class SqlAuditServiceFactory implements AuditServiceFactory {
     @Override
     public synchronized void destroy() throws AuditServiceFactoryException {
         LOGGER.info("Destroying Sql audit service factory.");
+        for (AsyncAuditWriter writer : asyncWriters) {
+            writer.shutdown();
+        }
+        asyncWriters.clear();
         try {
             repositoryFactory.destroy();
         } catch (RepositoryServiceFactoryException ex) {
@@ -59,16 +81,39 @@ public class SqlAuditServiceFactory implements AuditServiceFactory {
         } catch (RepositoryServiceFactoryException ex) {
             throw new AuditServiceFactoryException(ex.getMessage(), ex);
         }
+        asynchronous = config.getBoolean(PROPERTY_ASYNCHRONOUS, asynchronous);
+        asyncQueueSize = config.getInt(PROPERTY_ASYNC_QUEUE_SIZE, asyncQueueSize);
+        asyncBatchSize = config.getInt(PROPERTY_ASYNC_BATCH_SIZE, asyncBatchSize);
+        asyncFlushInterval = config.getLong(PROPERTY_ASYNC_FLUSH_INTERVAL, asyncFlushInterval);
+        asyncFallbackFile = config.getString(PROPERTY_ASYNC_FALLBACK_FILE, asyncFallbackFile);
+        if (asynchronous && (asyncQueueSize <= 0 || asyncBatchSize <= 0 || asyncFlushInterval <= 0)) {
+            throw new AuditServiceFactoryException("Asynchronous audit queue size, batch size and flush interval must be positive");
+        }
         LOGGER.info("Sql audit service factory initialization complete.");
     }
 
     @Override
-    public void destroyService(AuditService service) throws AuditServiceFactoryException {
-        //we don't need destroying service objects, they will be GC correctly
+    public synchronized void destroyService(AuditService service) throws AuditServiceFactoryException {
+        //we don't need destroying service objects, they will be GC correctly; only the async writer has to be stopped
+        if (service instanceof SqlAuditServiceImpl) {
+            AsyncAuditWriter writer = ((SqlAuditServiceImpl) service).getAsyncWriter();
+            if (writer != null) {
+                writer.shutdown();
+                asyncWriters.remove(writer);
+            }
+        }
     }
 
     @Override
-    public AuditService getAuditService() throws AuditServiceFactoryException {
-        return new SqlAuditServiceImpl(repositoryFactory);
+    public synchronized AuditService getAuditService() throws AuditServiceFactoryException {
+        SqlAuditServiceImpl service = new SqlAuditServiceImpl(repositoryFactory);
+        if (asynchronous) {
+            AsyncAuditWriter writer = new AsyncAuditWriter(service, asyncQueueSize, asyncBatchSize, asyncFlushInterval,
+                    asyncFallbackFile);
+            service.setAsyncWriter(writer);
+            writer.start();
+            asyncWriters.add(writer);
+        }
+        return service;
     }
 }
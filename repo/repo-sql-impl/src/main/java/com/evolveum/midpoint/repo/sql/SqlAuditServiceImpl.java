@@ -77,15 +77,30 @@ public class SqlAuditServiceImpl extends SqlBaseService implements AuditService
     private static final Trace LOGGER = TraceManager.getTrace(SqlAuditServiceImpl.class);
     private static final Integer CLEANUP_AUDIT_BATCH_SIZE = 500;
 
+    private AsyncAuditWriter asyncWriter;
+
     public SqlAuditServiceImpl(SqlRepositoryFactory repositoryFactory) {
         super(repositoryFactory);
     }
 
+    public AsyncAuditWriter getAsyncWriter() {
+        return asyncWriter;
+    }
+
+    public void setAsyncWriter(AsyncAuditWriter asyncWriter) {
+        this.asyncWriter = asyncWriter;
+    }
+
     @Override
     public void audit(AuditEventRecord record, Task task) {
         Validate.notNull(record, "Audit event record must not be null.");
         Validate.notNull(task, "Task must not be null.");
 
+        if (asyncWriter != null) {
+            asyncWriter.submit(record);
+            return;
+        }
+
         final String operation = "audit";
         int attempt = 1;
 
@@ -207,8 +222,7 @@ public class SqlAuditServiceImpl extends SqlBaseService implements AuditService
 
         PrismObject result = null;
         if (object != null) {
-            String xml = RUtil.getXmlFromByteArray(object.getFullObject(), getConfiguration().isUseZip());
-            result = getPrismContext().parserFor(xml).compat().parse();
+            result = RUtil.createFullObjectParser(object.getFullObject(), getPrismContext()).compat().parse();
         }
 
         return result;
@@ -232,6 +246,42 @@ public class SqlAuditServiceImpl extends SqlBaseService implements AuditService
         }
     }
 
+    /**
+     * Stores given records in a single transaction. Used by the asynchronous writer.
+     * Repository entities are created for each attempt, as the ones from a rolled-back transaction are not usable.
+     */
+    void storeRecords(List<AuditEventRecord> records) {
+        final String operation = "auditBatch";
+        int attempt = 1;
+
+        while (true) {
+            try {
+                storeRecordsAttempt(records);
+                return;
+            } catch (RuntimeException ex) {
+                attempt = baseHelper.logOperationAttempt(null, operation, attempt, ex, null);
+            }
+        }
+    }
+
+    private void storeRecordsAttempt(List<AuditEventRecord> records) {
+        Session session = null;
+        try {
+            session = baseHelper.beginTransaction();
+            // inserts are sent in JDBC batches of hibernate.jdbc.batch_size
+            for (AuditEventRecord record : records) {
+                session.save(RAuditEventRecord.toRepo(record, getPrismContext()));
+            }
+            session.getTransaction().commit();
+        } catch (DtoTranslationException ex) {
+            baseHelper.handleGeneralCheckedException(ex, session, null);
+        } catch (RuntimeException ex) {
+            baseHelper.handleGeneralRuntimeException(ex, session, null);
+        } finally {
+            baseHelper.cleanupSessionAndResult(session, null);
+        }
+    }
+
     @Override
     public void cleanupAudit(CleanupPolicyType policy, OperationResult parentResult) {
         Validate.notNull(policy, "Cleanup policy must not be null.");
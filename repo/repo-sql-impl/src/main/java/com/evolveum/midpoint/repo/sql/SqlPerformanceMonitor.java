@@ -46,6 +46,9 @@ public class SqlPerformanceMonitor {
 
     private AtomicLong currentHandle = new AtomicLong();
 
+    private AtomicLong queryPlanCacheHits = new AtomicLong();
+    private AtomicLong queryPlanCacheMisses = new AtomicLong();
+
     private ConcurrentMap<Long,OperationRecord> outstandingOperations = new ConcurrentHashMap<Long, OperationRecord>();
     private List<OperationRecord> finishedOperations = Collections.synchronizedList(new ArrayList<OperationRecord>());
 
@@ -86,6 +89,8 @@ public class SqlPerformanceMonitor {
     public void initialize(SqlRepositoryFactory sqlRepositoryFactory) {
         outstandingOperations.clear();
         finishedOperations.clear();
+        queryPlanCacheHits.set(0);
+        queryPlanCacheMisses.set(0);
         this.sqlRepositoryFactory = sqlRepositoryFactory;
         this.level = sqlRepositoryFactory.getSqlConfiguration().getPerformanceStatisticsLevel();
         if (level >= LEVEL_NONE) {
@@ -170,10 +175,20 @@ public class SqlPerformanceMonitor {
             retval.append((i+1) + " attempt(s): " + perAttempts[i].dump() + "\n");
         }
         retval.append("Unfinished: " + unfinished.dump() + "\n");
-        retval.append("Outstanding: " + outstandingOperations.toString());
+        retval.append("Outstanding: " + outstandingOperations.toString() + "\n");
+        retval.append("Query plan cache: " + getQueryPlanCacheStatistics());
         return retval.toString();
     }
 
+    private String getQueryPlanCacheStatistics() {
+        long hits = queryPlanCacheHits.get();
+        long misses = queryPlanCacheMisses.get();
+        if (hits + misses == 0) {
+            return "no records";
+        }
+        return "Hits: " + hits + ", Misses: " + misses + ", Hit rate: " + (hits*100.0f/(hits+misses)) + "%";
+    }
+
     private String dump() {
         return "Finished operations: " + finishedOperations + "\nOutstanding operations: " + outstandingOperations;
     }
@@ -246,4 +261,20 @@ public class SqlPerformanceMonitor {
         operation.attempts = attempt;
     }
 
+    public void registerQueryPlanCacheHit() {
+        queryPlanCacheHits.incrementAndGet();
+    }
+
+    public void registerQueryPlanCacheMiss() {
+        queryPlanCacheMisses.incrementAndGet();
+    }
+
+    public long getQueryPlanCacheHits() {
+        return queryPlanCacheHits.get();
+    }
+
+    public long getQueryPlanCacheMisses() {
+        return queryPlanCacheMisses.get();
+    }
+
 }
@@ -42,6 +42,27 @@ public class SqlRepositoryConfiguration {
         H2, MYSQL, POSTGRESQL, SQLSERVER, ORACLE
     }
 
+    /**
+     * Format of the full object column. Objects are always read in either format (so both can coexist in
+     * the repository); this setting determines only the format used when writing. Existing objects can be
+     * converted to the current format by running the reindex task.
+     */
+    public enum FullObjectFormat {
+        XML, BINARY;
+
+        public static FullObjectFormat fromValue(String text) {
+            if (StringUtils.isEmpty(text)) {
+                return XML;
+            }
+            for (FullObjectFormat format : values()) {
+                if (format.name().equalsIgnoreCase(text)) {
+                    return format;
+                }
+            }
+            throw new IllegalArgumentException("Unknown full object format: " + text);
+        }
+    }
+
     public static final String PROPERTY_DATABASE = "database";
     public static final String PROPERTY_BASE_DIR = "baseDir";
     public static final String PROPERTY_DROP_IF_EXISTS = "dropIfExists";
@@ -58,6 +79,7 @@ public class SqlRepositoryConfiguration {
     public static final String PROPERTY_JDBC_URL = "jdbcUrl";
     public static final String PROPERTY_DATASOURCE = "dataSource";
     public static final String PROPERTY_USE_ZIP = "useZip";
+    public static final String PROPERTY_FULL_OBJECT_FORMAT = "fullObjectFormat";
     public static final String PROPERTY_MIN_POOL_SIZE = "minPoolSize";
     public static final String PROPERTY_MAX_POOL_SIZE = "maxPoolSize";
 
@@ -72,12 +94,16 @@ public class SqlRepositoryConfiguration {
     //other
     public static final String PROPERTY_ITERATIVE_SEARCH_BY_PAGING = "iterativeSearchByPaging";
     public static final String PROPERTY_ITERATIVE_SEARCH_BY_PAGING_BATCH_SIZE = "iterativeSearchByPagingBatchSize";
+    public static final String PROPERTY_USE_JSONB_EXTENSIONS = "useJsonbExtensions";
+    public static final String PROPERTY_QUERY_PLAN_CACHE_SIZE = "queryPlanCacheSize";
 
     //closure
     public static final String PROPERTY_IGNORE_ORG_CLOSURE = "ignoreOrgClosure";
     public static final String PROPERTY_ORG_CLOSURE_STARTUP_ACTION = "orgClosureStartupAction";
     public static final String PROPERTY_SKIP_ORG_CLOSURE_STRUCTURE_CHECK = "skipOrgClosureStructureCheck";
     public static final String PROPERTY_STOP_ON_ORG_CLOSURE_STARTUP_FAILURE = "stopOnOrgClosureStartupFailure";
+    public static final String PROPERTY_ORG_CLOSURE_LOCKING = "orgClosureLocking";
+    public static final String PROPERTY_ORG_CLOSURE_REBUILD_THREADS = "orgClosureRebuildThreads";
 
     private String database = Database.H2.name();
 
@@ -100,6 +126,7 @@ public class SqlRepositoryConfiguration {
     private int minPoolSize = 8;
     private int maxPoolSize = 20;
     private boolean useZip;
+    private FullObjectFormat fullObjectFormat = FullObjectFormat.XML;
 
     private TransactionIsolation transactionIsolation;
     private boolean lockForUpdateViaHibernate;
@@ -110,11 +137,15 @@ public class SqlRepositoryConfiguration {
 
     private boolean iterativeSearchByPaging;
     private int iterativeSearchByPagingBatchSize;
+    private boolean useJsonbExtensions;
+    private int queryPlanCacheSize = 1000;
 
     private boolean ignoreOrgClosure;
     private OrgClosureManager.StartupAction orgClosureStartupAction;
     private boolean skipOrgClosureStructureCheck;
     private boolean stopOnOrgClosureStartupFailure;
+    private OrgClosureManager.LockingMode orgClosureLocking;
+    private int orgClosureRebuildThreads;
 
     public SqlRepositoryConfiguration(Configuration configuration) {
         setDatabase(configuration.getString(PROPERTY_DATABASE, database));
@@ -138,6 +169,7 @@ public class SqlRepositoryConfiguration {
         setMinPoolSize(configuration.getInt(PROPERTY_MIN_POOL_SIZE, minPoolSize));
         setMaxPoolSize(configuration.getInt(PROPERTY_MAX_POOL_SIZE, maxPoolSize));
         setUseZip(configuration.getBoolean(PROPERTY_USE_ZIP, useZip));
+        setFullObjectFormat(configuration.getString(PROPERTY_FULL_OBJECT_FORMAT, fullObjectFormat.name()));
 
         computeDefaultConcurrencyParameters();
 
@@ -152,11 +184,15 @@ public class SqlRepositoryConfiguration {
 
         setIterativeSearchByPaging(configuration.getBoolean(PROPERTY_ITERATIVE_SEARCH_BY_PAGING, iterativeSearchByPaging));
         setIterativeSearchByPagingBatchSize(configuration.getInt(PROPERTY_ITERATIVE_SEARCH_BY_PAGING_BATCH_SIZE, iterativeSearchByPagingBatchSize));
+        setUseJsonbExtensions(configuration.getBoolean(PROPERTY_USE_JSONB_EXTENSIONS, false));
+        setQueryPlanCacheSize(configuration.getInt(PROPERTY_QUERY_PLAN_CACHE_SIZE, queryPlanCacheSize));
 
         setIgnoreOrgClosure(configuration.getBoolean(PROPERTY_IGNORE_ORG_CLOSURE, false));
         setOrgClosureStartupAction(configuration.getString(PROPERTY_ORG_CLOSURE_STARTUP_ACTION, OrgClosureManager.StartupAction.REBUILD_IF_NEEDED.toString()));
         setSkipOrgClosureStructureCheck(configuration.getBoolean(PROPERTY_SKIP_ORG_CLOSURE_STRUCTURE_CHECK, false));
         setStopOnOrgClosureStartupFailure(configuration.getBoolean(PROPERTY_STOP_ON_ORG_CLOSURE_STARTUP_FAILURE, true));
+        setOrgClosureLocking(configuration.getString(PROPERTY_ORG_CLOSURE_LOCKING, OrgClosureManager.LockingMode.TABLE.toString()));
+        setOrgClosureRebuildThreads(configuration.getInt(PROPERTY_ORG_CLOSURE_REBUILD_THREADS, 0));
     }
 
     private void computeDefaultDatabaseParameters() {
@@ -274,6 +310,14 @@ public class SqlRepositoryConfiguration {
         if (getMinPoolSize() > getMaxPoolSize()) {
             throw new RepositoryServiceFactoryException("Max. pool size must be greater than min. pool size.");
         }
+
+        if (isUseJsonbExtensions() && !isUsingPostgreSQL()) {
+            throw new RepositoryServiceFactoryException("Storing extensions as JSONB is supported only on PostgreSQL.");
+        }
+
+        if (getQueryPlanCacheSize() < 0) {
+            throw new RepositoryServiceFactoryException("Query plan cache size must not be negative.");
+        }
     }
 
     private void notNull(String value, String message) throws RepositoryServiceFactoryException {
@@ -496,6 +540,30 @@ public class SqlRepositoryConfiguration {
         this.iterativeSearchByPagingBatchSize = iterativeSearchByPagingBatchSize;
     }
 
+    /**
+     * If true, indexed values of object extensions are stored in a JSONB column (m_object.ext) instead of
+     * m_object_ext_* rows, and extension filters are translated to JSONB operators. PostgreSQL only.
+     * Shadow attributes and assignment extensions are stored in rows as before.
+     */
+    public boolean isUseJsonbExtensions() {
+        return useJsonbExtensions;
+    }
+
+    public void setUseJsonbExtensions(boolean useJsonbExtensions) {
+        this.useJsonbExtensions = useJsonbExtensions;
+    }
+
+    /**
+     * Maximal number of query shapes whose interpreted HQL is kept by QueryPlanCache; 0 disables the cache.
+     */
+    public int getQueryPlanCacheSize() {
+        return queryPlanCacheSize;
+    }
+
+    public void setQueryPlanCacheSize(int queryPlanCacheSize) {
+        this.queryPlanCacheSize = queryPlanCacheSize;
+    }
+
     public String getDataSource() {
         return dataSource;
     }
@@ -528,6 +596,14 @@ public class SqlRepositoryConfiguration {
         this.useZip = useZip;
     }
 
+    public FullObjectFormat getFullObjectFormat() {
+        return fullObjectFormat;
+    }
+
+    public void setFullObjectFormat(String fullObjectFormat) {
+        this.fullObjectFormat = FullObjectFormat.fromValue(fullObjectFormat);
+    }
+
     public boolean isIgnoreOrgClosure() {
         return ignoreOrgClosure;
     }
@@ -544,6 +620,26 @@ public class SqlRepositoryConfiguration {
         this.orgClosureStartupAction = OrgClosureManager.StartupAction.fromValue(orgClosureStartupAction);
     }
 
+    public OrgClosureManager.LockingMode getOrgClosureLocking() {
+        return orgClosureLocking;
+    }
+
+    public void setOrgClosureLocking(String orgClosureLocking) {
+        this.orgClosureLocking = OrgClosureManager.LockingMode.fromValue(orgClosureLocking);
+    }
+
+    /**
+     * Number of threads used to compute org closure when it is rebuilt or thoroughly checked.
+     * Zero means the original (sequential, incremental) algorithm.
+     */
+    public int getOrgClosureRebuildThreads() {
+        return orgClosureRebuildThreads;
+    }
+
+    public void setOrgClosureRebuildThreads(int orgClosureRebuildThreads) {
+        this.orgClosureRebuildThreads = orgClosureRebuildThreads;
+    }
+
     public boolean isUsingH2() {
         if (hibernateDialect == null) {
             return true;
@@ -20,6 +20,7 @@ import com.evolveum.midpoint.repo.api.RepositoryService;
 import com.evolveum.midpoint.repo.api.RepositoryServiceFactory;
 import com.evolveum.midpoint.repo.api.RepositoryServiceFactoryException;
 import com.evolveum.midpoint.repo.sql.query.QueryDefinitionRegistry;
+import com.evolveum.midpoint.repo.sql.query2.QueryPlanCache;
 import com.evolveum.midpoint.util.logging.Trace;
 import com.evolveum.midpoint.util.logging.TraceManager;
 
@@ -54,6 +55,7 @@ public class SqlRepositoryFactory implements RepositoryServiceFactory {
     private Server server;
 
     private SqlPerformanceMonitor performanceMonitor;
+    private QueryPlanCache queryPlanCache;
 
     public SqlRepositoryConfiguration getSqlConfiguration() {
         Validate.notNull(sqlConfiguration, "Sql repository configuration not available (null).");
@@ -145,6 +147,10 @@ public class SqlRepositoryFactory implements RepositoryServiceFactory {
         performanceMonitor = new SqlPerformanceMonitor();
         performanceMonitor.initialize(this);
 
+        if (sqlConfiguration.getQueryPlanCacheSize() > 0) {
+            queryPlanCache = new QueryPlanCache(sqlConfiguration.getQueryPlanCacheSize(), performanceMonitor);
+        }
+
         LOGGER.info("Repository initialization finished.");
 
         initialized = true;
@@ -396,4 +402,8 @@ public class SqlRepositoryFactory implements RepositoryServiceFactory {
     public SqlPerformanceMonitor getPerformanceMonitor() {
         return performanceMonitor;
     }
+
+    public QueryPlanCache getQueryPlanCache() {
+        return queryPlanCache;
+    }
 }
@@ -23,6 +23,7 @@ import com.evolveum.midpoint.prism.PrismObject;
 import com.evolveum.midpoint.prism.PrismProperty;
 import com.evolveum.midpoint.prism.PrismPropertyValue;
 import com.evolveum.midpoint.prism.delta.ItemDelta;
+import com.evolveum.midpoint.prism.delta.ObjectDelta;
 import com.evolveum.midpoint.prism.delta.PropertyDelta;
 import com.evolveum.midpoint.prism.path.ItemPath;
 import com.evolveum.midpoint.prism.polystring.PolyString;
@@ -50,6 +51,7 @@ import com.evolveum.midpoint.xml.ns._public.common.common_3.ObjectType;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.ShadowType;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.UserType;
 import com.evolveum.prism.xml.ns._public.types_3.PolyStringType;
+import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang.Validate;
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
@@ -69,6 +71,7 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.Enumeration;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 
 /**
@@ -365,6 +368,76 @@ public class SqlRepositoryServiceImpl extends SqlBaseService implements Reposito
         }
     }
 
+    @Override
+    public List<OperationResult> addObjects(List<PrismObject<? extends ObjectType>> objects, RepoAddOptions options,
+                                            OperationResult result) {
+        Validate.notNull(objects, "Objects must not be null.");
+        Validate.notNull(result, "Operation result must not be null.");
+
+        if (options == null) {
+            options = new RepoAddOptions();
+        }
+
+        LOGGER.debug("Adding {} objects, overwrite={}", objects.size(), options.isOverwrite());
+
+        OperationResult subResult = result.createSubresult(ADD_OBJECTS);
+        subResult.addParam("count", objects.size());
+        subResult.addParam("options", options);
+
+        SqlPerformanceMonitor pm = getPerformanceMonitor();
+        long opHandle = pm.registerOperationStart("addObjects");
+
+        List<OperationResult> objectResults = new ArrayList<>(objects.size());
+        try {
+            if (objects.size() > 1 && !options.isOverwrite() && checkObjectsToAdd(objects, options)
+                    && objectUpdater.addObjectsAttempt(objects, subResult)) {
+                for (PrismObject<? extends ObjectType> object : objects) {
+                    OperationResult objectResult = subResult.createSubresult(ADD_OBJECT);
+                    objectResult.addParam("object", object);
+                    objectResult.recordSuccess();
+                    objectResults.add(objectResult);
+                }
+            } else {
+                // one by one, so that each object gets its own (precise) result
+                for (PrismObject<? extends ObjectType> object : objects) {
+                    OperationResult objectResult = subResult.createSubresult(ADD_OBJECTS + ".object");
+                    try {
+                        addObject(object, options, objectResult);
+                        objectResult.computeStatus();
+                    } catch (ObjectAlreadyExistsException | SchemaException | RuntimeException ex) {
+                        objectResult.recordFatalError(ex);
+                    }
+                    objectResults.add(objectResult);
+                }
+            }
+        } finally {
+            pm.registerOperationFinish(opHandle, 1);
+            subResult.computeStatus();
+        }
+        return objectResults;
+    }
+
+    // the same checks as in addObject; returns false if any of the objects does not pass them
+    private boolean checkObjectsToAdd(List<PrismObject<? extends ObjectType>> objects, RepoAddOptions options) {
+        try {
+            for (PrismObject<? extends ObjectType> object : objects) {
+                validateName(object);
+                if (InternalsConfig.encryptionChecks && !RepoAddOptions.isAllowUnencryptedValues(options)) {
+                    CryptoUtil.checkEncrypted(object);
+                }
+                if (InternalsConfig.consistencyChecks) {
+                    object.checkConsistence(ConsistencyCheckScope.THOROUGH);
+                } else {
+                    object.checkConsistence(ConsistencyCheckScope.MANDATORY_CHECKS_ONLY);
+                }
+            }
+            return true;
+        } catch (SchemaException | RuntimeException ex) {
+            LOGGER.debug("Objects couldn't be added at once, they will be added one by one: {}", ex.getMessage(), ex);
+            return false;
+        }
+    }
+
     private void validateName(PrismObject object) throws SchemaException {
         PrismProperty name = object.findProperty(ObjectType.F_NAME);
         if (name == null || ((PolyString) name.getRealValue()).isEmpty()) {
@@ -519,6 +592,76 @@ public class SqlRepositoryServiceImpl extends SqlBaseService implements Reposito
 
     }
 
+    @Override
+    public List<OperationResult> modifyObjects(List<ObjectDelta<? extends ObjectType>> deltas,
+                                               RepoModifyOptions options, OperationResult result) {
+        Validate.notNull(deltas, "Deltas must not be null.");
+        Validate.notNull(result, "Operation result must not be null.");
+
+        LOGGER.debug("Modifying {} objects", deltas.size());
+
+        OperationResult subResult = result.createSubresult(MODIFY_OBJECTS);
+        subResult.addParam("count", deltas.size());
+
+        SqlPerformanceMonitor pm = getPerformanceMonitor();
+        long opHandle = pm.registerOperationStart("modifyObjects");
+
+        List<OperationResult> objectResults = new ArrayList<>(deltas.size());
+        try {
+            if (deltas.size() > 1 && checkDeltasToExecute(deltas) && objectUpdater.modifyObjectsAttempt(deltas, subResult)) {
+                for (ObjectDelta<? extends ObjectType> delta : deltas) {
+                    OperationResult objectResult = subResult.createSubresult(MODIFY_OBJECT);
+                    objectResult.addParam("type", delta.getObjectTypeClass().getName());
+                    objectResult.addParam("oid", delta.getOid());
+                    objectResult.recordSuccess();
+                    objectResults.add(objectResult);
+                }
+            } else {
+                // one by one, so that each object gets its own (precise) result
+                for (ObjectDelta<? extends ObjectType> delta : deltas) {
+                    OperationResult objectResult = subResult.createSubresult(MODIFY_OBJECTS + ".object");
+                    try {
+                        Validate.isTrue(delta.isModify(), "Only MODIFY deltas are supported: " + delta);
+                        modifyObject(delta.getObjectTypeClass(), delta.getOid(), delta.getModifications(), options, objectResult);
+                        objectResult.computeStatus();
+                    } catch (ObjectNotFoundException | SchemaException | ObjectAlreadyExistsException | RuntimeException ex) {
+                        objectResult.recordFatalError(ex);
+                    }
+                    objectResults.add(objectResult);
+                }
+            }
+        } finally {
+            pm.registerOperationFinish(opHandle, 1);
+            subResult.computeStatus();
+        }
+        return objectResults;
+    }
+
+    // the same checks as in modifyObject; returns false if any of the deltas does not pass them
+    // (or if it is empty, as empty deltas are treated specially)
+    private boolean checkDeltasToExecute(List<ObjectDelta<? extends ObjectType>> deltas) {
+        try {
+            for (ObjectDelta<? extends ObjectType> delta : deltas) {
+                if (!delta.isModify() || delta.getObjectTypeClass() == null || StringUtils.isEmpty(delta.getOid())
+                        || delta.getModifications().isEmpty()) {
+                    return false;
+                }
+                if (InternalsConfig.encryptionChecks) {
+                    CryptoUtil.checkEncrypted(delta.getModifications());
+                }
+                if (InternalsConfig.consistencyChecks) {
+                    ItemDelta.checkConsistence(delta.getModifications(), ConsistencyCheckScope.THOROUGH);
+                } else {
+                    ItemDelta.checkConsistence(delta.getModifications(), ConsistencyCheckScope.MANDATORY_CHECKS_ONLY);
+                }
+            }
+            return true;
+        } catch (RuntimeException ex) {
+            LOGGER.debug("Deltas couldn't be executed at once, they will be executed one by one: {}", ex.getMessage(), ex);
+            return false;
+        }
+    }
+
     @Override
     public <T extends ShadowType> List<PrismObject<T>> listResourceObjectShadows(String resourceOid,
                                                                                  Class<T> resourceObjectShadowType,
@@ -718,6 +861,67 @@ public class SqlRepositoryServiceImpl extends SqlBaseService implements Reposito
         }
     }
 
+    @Override
+    public <T extends ObjectType> Map<String, String> getVersions(Class<T> type, Collection<String> oids,
+                                                                  OperationResult parentResult) {
+        Validate.notNull(type, "Object type must not be null.");
+        Validate.notNull(oids, "Object oids must not be null.");
+        Validate.notNull(parentResult, "Operation result must not be null.");
+
+        LOGGER.debug("Getting versions of {} object(s) of type {}.", oids.size(), type.getSimpleName());
+
+        OperationResult subResult = parentResult.createMinorSubresult(GET_VERSIONS);
+        subResult.addParam("type", type.getName());
+        subResult.addParam("count", oids.size());
+
+        SqlPerformanceMonitor pm = getPerformanceMonitor();
+        long opHandle = pm.registerOperationStart(GET_VERSIONS);
+
+        final String operation = "getting versions";
+        int attempt = 1;
+        try {
+            while (true) {
+                try {
+                    return objectRetriever.getVersionsAttempt(type, oids, subResult);
+                } catch (RuntimeException ex) {
+                    attempt = baseHelper.logOperationAttempt(null, operation, attempt, ex, subResult);
+                    pm.registerOperationNewTrial(opHandle, attempt);
+                }
+            }
+        } finally {
+            pm.registerOperationFinish(opHandle, attempt);
+        }
+    }
+
+    @Override
+    public <T extends ObjectType> String getChangeMarker(Class<T> type, OperationResult parentResult) {
+        Validate.notNull(type, "Object type must not be null.");
+        Validate.notNull(parentResult, "Operation result must not be null.");
+
+        LOGGER.debug("Getting change marker for objects of type {}.", type.getSimpleName());
+
+        OperationResult subResult = parentResult.createMinorSubresult(GET_CHANGE_MARKER);
+        subResult.addParam("type", type.getName());
+
+        SqlPerformanceMonitor pm = getPerformanceMonitor();
+        long opHandle = pm.registerOperationStart(GET_CHANGE_MARKER);
+
+        final String operation = "getting change marker";
+        int attempt = 1;
+        try {
+            while (true) {
+                try {
+                    return objectRetriever.getChangeMarkerAttempt(type, subResult);
+                } catch (RuntimeException ex) {
+                    attempt = baseHelper.logOperationAttempt(null, operation, attempt, ex, subResult);
+                    pm.registerOperationNewTrial(opHandle, attempt);
+                }
+            }
+        } finally {
+            pm.registerOperationFinish(opHandle, attempt);
+        }
+    }
+
     @Override
     public <T extends ObjectType> SearchResultMetadata searchObjectsIterative(Class<T> type, ObjectQuery query,
                                                                               ResultHandler<T> handler,
@@ -185,6 +185,8 @@ public abstract class RObject<T extends ObjectType> implements Metadata<RObjectR
     private Set<ROExtReference> references;
     private Set<ROExtPolyString> polys;
     private Set<ROExtBoolean> booleans;
+    //extension values kept in a JSONB column (if configured so) instead of the rows above
+    private String extensionJson;
 
     @Id
     @GeneratedValue(generator = "ObjectOidGenerator")
@@ -425,6 +427,18 @@ public abstract class RObject<T extends ObjectType> implements Metadata<RObjectR
         return trans;
     }
 
+    /**
+     * Indexed extension values in JSON form; set only if extensions are stored as JSONB (see ExtensionJsonHelper).
+     */
+    @Transient
+    public String getExtensionJson() {
+        return extensionJson;
+    }
+
+    public void setExtensionJson(String extensionJson) {
+        this.extensionJson = extensionJson;
+    }
+
     public String getLifecycleState() {
         return lifecycleState;
     }
@@ -0,0 +1,206 @@
+/*
+ * Copyright (c) 2010-2016 Evolveum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.evolveum.midpoint.repo.sql.data.common.any;
+
+import org.apache.commons.lang.time.FastDateFormat;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.TreeMap;
+
+/**
+ * Converts indexed extension values (as produced by {@link RAnyConverter}) to the JSON form stored in m_object.ext
+ * column (PostgreSQL JSONB), and query values to JSON fragments that can be tested for containment.
+ *
+ * The document contains one array per item, keyed by the item name (as stored in eName column of m_object_ext_*):
+ *
+ *   {"http://example.com/p#costCenter": ["CC100"], "http://example.com/p#badge": [42, 43], ...}
+ *
+ * Strings, longs and booleans are stored as JSON scalars, dates as strings in UTC (so they can be compared
+ * as text), polystrings as {"o": orig, "n": norm} and references as {"t": oid, "r": relation, "y": type}.
+ *
+ * @author mederly
+ */
+public final class ExtensionJsonConverter {
+
+    public static final String POLY_ORIG = "o";
+    public static final String POLY_NORM = "n";
+    public static final String REF_TARGET_OID = "t";
+    public static final String REF_RELATION = "r";
+    public static final String REF_TARGET_TYPE = "y";
+
+    private static final FastDateFormat DATE_FORMAT =
+            FastDateFormat.getInstance("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'", TimeZone.getTimeZone("UTC"));
+
+    private ExtensionJsonConverter() {
+    }
+
+    /**
+     * Returns JSON document for given values, or null if there are none.
+     */
+    public static String toJson(Collection<? extends RAnyValue> values) {
+        if (values.isEmpty()) {
+            return null;
+        }
+        Map<String, List<String>> items = new TreeMap<>();
+        for (RAnyValue value : values) {
+            List<String> itemValues = items.get(value.getName());
+            if (itemValues == null) {
+                itemValues = new ArrayList<>();
+                items.put(value.getName(), itemValues);
+            }
+            itemValues.add(valueToJson(value));
+        }
+
+        StringBuilder sb = new StringBuilder("{");
+        Iterator<Map.Entry<String, List<String>>> iterator = items.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, List<String>> entry = iterator.next();
+            appendString(sb, entry.getKey());
+            sb.append(":[");
+            appendJoined(sb, entry.getValue());
+            sb.append(']');
+            if (iterator.hasNext()) {
+                sb.append(',');
+            }
+        }
+        return sb.append('}').toString();
+    }
+
+    /**
+     * Returns a document containing given item value, e.g. {"name":["value"]}, to be used with JSONB containment
+     * operator (@>). If the value is null, it returns {"name":[]} that is contained in any document having the item.
+     */
+    public static String createContainmentJson(String itemName, String valueJson) {
+        StringBuilder sb = new StringBuilder("{");
+        appendString(sb, itemName);
+        sb.append(":[");
+        if (valueJson != null) {
+            sb.append(valueJson);
+        }
+        return sb.append("]}").toString();
+    }
+
+    /**
+     * Converts aggregated repo value (see {@link RAnyConverter#getAggregatedRepoObject(Object)}) to JSON.
+     */
+    public static String scalarToJson(Object value) {
+        if (value == null) {
+            return "null";
+        } else if (value instanceof Long || value instanceof Boolean) {
+            return value.toString();
+        } else if (value instanceof Date) {
+            return quote(formatDate((Date) value));
+        } else {
+            return quote(value.toString());
+        }
+    }
+
+    /**
+     * Converts polystring to JSON; orig or norm can be null (meaning "any") when used for containment queries.
+     */
+    public static String polyStringToJson(String orig, String norm) {
+        StringBuilder sb = new StringBuilder("{");
+        if (orig != null) {
+            appendString(sb, POLY_ORIG);
+            sb.append(':');
+            appendString(sb, orig);
+        }
+        if (norm != null) {
+            if (orig != null) {
+                sb.append(',');
+            }
+            appendString(sb, POLY_NORM);
+            sb.append(':');
+            appendString(sb, norm);
+        }
+        return sb.append('}').toString();
+    }
+
+    public static String formatDate(Date date) {
+        return DATE_FORMAT.format(date);
+    }
+
+    private static String valueToJson(RAnyValue value) {
+        if (value instanceof ROExtPolyString) {
+            ROExtPolyString poly = (ROExtPolyString) value;
+            return polyStringToJson(poly.getValue(), poly.getNorm());
+        } else if (value instanceof ROExtReference) {
+            ROExtReference ref = (ROExtReference) value;
+            StringBuilder sb = new StringBuilder("{");
+            appendString(sb, REF_TARGET_OID);
+            sb.append(':');
+            appendString(sb, ref.getValue());
+            if (ref.getRelation() != null) {
+                sb.append(',');
+                appendString(sb, REF_RELATION);
+                sb.append(':');
+                appendString(sb, ref.getRelation());
+            }
+            if (ref.getTargetType() != null) {
+                sb.append(',');
+                appendString(sb, REF_TARGET_TYPE);
+                sb.append(':');
+                appendString(sb, ref.getTargetType().name());
+            }
+            return sb.append('}').toString();
+        } else {
+            return scalarToJson(value.getValue());
+        }
+    }
+
+    private static void appendJoined(StringBuilder sb, List<String> values) {
+        for (int i = 0; i < values.size(); i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(values.get(i));
+        }
+    }
+
+    private static String quote(String value) {
+        StringBuilder sb = new StringBuilder(value.length() + 2);
+        appendString(sb, value);
+        return sb.toString();
+    }
+
+    private static void appendString(StringBuilder sb, String value) {
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"': sb.append("\\\""); break;
+                case '\\': sb.append("\\\\"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                case '\t': sb.append("\\t"); break;
+                default:
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        sb.append('"');
+    }
+}
@@ -17,6 +17,7 @@
 package com.evolveum.midpoint.repo.sql.helpers;
 
 import com.evolveum.midpoint.repo.sql.*;
+import com.evolveum.midpoint.repo.sql.query2.QueryPlanCache;
 import com.evolveum.midpoint.repo.sql.util.RUtil;
 import com.evolveum.midpoint.schema.result.OperationResult;
 import com.evolveum.midpoint.util.exception.SystemException;
@@ -116,6 +117,10 @@ public class BaseHelper {
 		return repositoryFactory.getSqlConfiguration();
 	}
 
+	public QueryPlanCache getQueryPlanCache() {
+		return repositoryFactory.getQueryPlanCache();
+	}
+
 	public void rollbackTransaction(Session session) {
 		rollbackTransaction(session, null, null, false);
 	}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2010-2016 Evolveum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.evolveum.midpoint.repo.sql.helpers;
+
+import com.evolveum.midpoint.repo.sql.data.common.RObject;
+import com.evolveum.midpoint.repo.sql.data.common.any.ExtensionJsonConverter;
+import com.evolveum.midpoint.repo.sql.data.common.any.ROExtValue;
+import com.evolveum.midpoint.repo.sql.data.common.type.RObjectExtensionType;
+import com.evolveum.midpoint.util.logging.Trace;
+import com.evolveum.midpoint.util.logging.TraceManager;
+import org.hibernate.Session;
+import org.hibernate.jdbc.Work;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Takes care of storing object extensions in m_object.ext JSONB column, if configured so
+ * (see SqlRepositoryConfiguration.isUseJsonbExtensions).
+ *
+ * Extension values are taken out of the m_object_ext_* collections of the RObject before it is saved or merged,
+ * so the rows are not created (and existing ones are removed on the next modification of the object).
+ * The JSON document is written by a plain SQL update after the object row is flushed, because the column
+ * is not mapped by hibernate (it exists in the PostgreSQL schema only).
+ *
+ * @author mederly
+ */
+@Component
+public class ExtensionJsonHelper {
+
+    private static final Trace LOGGER = TraceManager.getTrace(ExtensionJsonHelper.class);
+
+    private static final String UPDATE_EXTENSION = "update m_object set ext = cast(? as jsonb) where oid = ?";
+
+    @Autowired
+    private BaseHelper baseHelper;
+
+    public boolean isEnabled() {
+        return baseHelper.getConfiguration().isUseJsonbExtensions();
+    }
+
+    /**
+     * Moves object extension values (not shadow attributes) from repo collections to the JSON document.
+     */
+    public void extractExtension(RObject<?> rObject) {
+        if (!isEnabled()) {
+            return;
+        }
+        List<ROExtValue> values = new ArrayList<>();
+        removeExtensionValues(rObject.getStrings(), values);
+        removeExtensionValues(rObject.getLongs(), values);
+        removeExtensionValues(rObject.getDates(), values);
+        removeExtensionValues(rObject.getReferences(), values);
+        removeExtensionValues(rObject.getPolys(), values);
+        removeExtensionValues(rObject.getBooleans(), values);
+
+        rObject.setStringsCount((short) rObject.getStrings().size());
+        rObject.setLongsCount((short) rObject.getLongs().size());
+        rObject.setDatesCount((short) rObject.getDates().size());
+        rObject.setReferencesCount((short) rObject.getReferences().size());
+        rObject.setPolysCount((short) rObject.getPolys().size());
+        rObject.setBooleansCount((short) rObject.getBooleans().size());
+
+        rObject.setExtensionJson(ExtensionJsonConverter.toJson(values));
+    }
+
+    private void removeExtensionValues(Set<? extends ROExtValue> set, List<ROExtValue> removed) {
+        Iterator<? extends ROExtValue> iterator = set.iterator();
+        while (iterator.hasNext()) {
+            ROExtValue value = iterator.next();
+            if (value.getOwnerType() == RObjectExtensionType.EXTENSION) {
+                removed.add(value);
+                iterator.remove();
+            }
+        }
+    }
+
+    public void storeExtension(Session session, String oid, RObject<?> rObject) {
+        storeExtensions(session, Collections.singletonMap(oid, rObject.getExtensionJson()));
+    }
+
+    /**
+     * Writes extension documents (oid -> JSON) of objects that were saved or merged in the session.
+     */
+    public void storeExtensions(Session session, final Map<String, String> extensions) {
+        if (!isEnabled() || extensions.isEmpty()) {
+            return;
+        }
+        session.flush();        // object rows have to exist before they are updated
+        session.doWork(new Work() {
+            @Override
+            public void execute(Connection connection) throws SQLException {
+                try (PreparedStatement statement = connection.prepareStatement(UPDATE_EXTENSION)) {
+                    for (Map.Entry<String, String> entry : extensions.entrySet()) {
+                        statement.setString(1, entry.getValue());
+                        statement.setString(2, entry.getKey());
+                        statement.addBatch();
+                    }
+                    statement.executeBatch();
+                }
+            }
+        });
+        LOGGER.trace("Stored extensions of {} object(s) as JSONB", extensions.size());
+    }
+}
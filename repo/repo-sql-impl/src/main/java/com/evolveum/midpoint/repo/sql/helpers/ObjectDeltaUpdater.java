@@ -0,0 +1,408 @@
+/*
+ * Copyright (c) 2010-2016 Evolveum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.evolveum.midpoint.repo.sql.helpers;
+
+import com.evolveum.midpoint.prism.PrismContainer;
+import com.evolveum.midpoint.prism.PrismContainerValue;
+import com.evolveum.midpoint.prism.PrismObject;
+import com.evolveum.midpoint.prism.PrismValue;
+import com.evolveum.midpoint.prism.delta.ContainerDelta;
+import com.evolveum.midpoint.prism.delta.ItemDelta;
+import com.evolveum.midpoint.prism.path.IdItemPathSegment;
+import com.evolveum.midpoint.prism.path.ItemPath;
+import com.evolveum.midpoint.prism.path.ItemPathSegment;
+import com.evolveum.midpoint.prism.path.NameItemPathSegment;
+import com.evolveum.midpoint.repo.api.RepoModifyOptions;
+import com.evolveum.midpoint.repo.sql.data.common.RFocus;
+import com.evolveum.midpoint.repo.sql.data.common.RObject;
+import com.evolveum.midpoint.repo.sql.data.common.RObjectReference;
+import com.evolveum.midpoint.repo.sql.data.common.any.ROExtValue;
+import com.evolveum.midpoint.repo.sql.data.common.container.RAssignment;
+import com.evolveum.midpoint.repo.sql.data.common.id.RContainerId;
+import com.evolveum.midpoint.repo.sql.query.QueryException;
+import com.evolveum.midpoint.repo.sql.query2.QueryDefinitionRegistry2;
+import com.evolveum.midpoint.repo.sql.query2.definition.JpaAnyPropertyDefinition;
+import com.evolveum.midpoint.repo.sql.query2.definition.JpaDataNodeDefinition;
+import com.evolveum.midpoint.repo.sql.query2.definition.JpaEntityDefinition;
+import com.evolveum.midpoint.repo.sql.query2.definition.JpaLinkDefinition;
+import com.evolveum.midpoint.repo.sql.query2.definition.JpaPropertyDefinition;
+import com.evolveum.midpoint.repo.sql.query2.definition.JpaReferenceDefinition;
+import com.evolveum.midpoint.repo.sql.query2.resolution.DataSearchResult;
+import com.evolveum.midpoint.util.QNameUtil;
+import com.evolveum.midpoint.util.logging.Trace;
+import com.evolveum.midpoint.util.logging.TraceManager;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.AbstractRoleType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.FocusType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ObjectType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ShadowType;
+import org.hibernate.Hibernate;
+import org.hibernate.Session;
+import org.hibernate.metadata.ClassMetadata;
+import org.hibernate.type.Type;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.xml.namespace.QName;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Executes object modification by updating only the affected rows, instead of merging the whole object graph
+ * (which makes Hibernate load and compare all assignments, references and extension values of the object).
+ *
+ * The modifications are applied to the prism object and the object is translated into RObject as usual.
+ * Then the persistent (already loaded) entity is updated like this:
+ * <ul>
+ *     <li>scalar properties, including embedded ones, version and full object, are copied if they differ;</li>
+ *     <li>assignments and inducements are inserted, merged or deleted one by one, according to container IDs;</li>
+ *     <li>collections of extension/attributes values, references and simple values that are affected by
+ *     the modifications are compared with the new state and only the differences are deleted/inserted.</li>
+ * </ul>
+ * Modifications that cannot be treated this way (e.g. modifications of other containers, or of whole containers
+ * that contain collections, like metadata with approver references) are executed using merge.
+ *
+ * @author mederly
+ */
+@Component
+public class ObjectDeltaUpdater {
+
+    private static final Trace LOGGER = TraceManager.getTrace(ObjectDeltaUpdater.class);
+
+    private static final List<String> EXTENSION_COLLECTIONS = Arrays.asList(
+            "strings", "longs", "dates", "references", "polys", "booleans");
+
+    @Autowired
+    private BaseHelper baseHelper;
+
+    /**
+     * What is to be updated. Created from the modifications before they are applied to the object.
+     */
+    public static class Context {
+        private final Set<String> collections = new HashSet<>();
+        private boolean containersModified;
+        private final Set<Integer> originalContainerIds = new HashSet<>();
+        private final Set<Integer> modifiedContainerIds = new HashSet<>();
+    }
+
+    public <T extends ObjectType> Context prepare(PrismObject<T> object, Collection<? extends ItemDelta> modifications) {
+        return prepare(object, modifications, null);
+    }
+
+    /**
+     * Returns null if the modifications cannot be executed by partial update.
+     * Must be called before the modifications are applied to the object.
+     *
+     * Empty modifications (or "execute if no changes" option) mean reindex - all the rows have to be rebuilt,
+     * so the object is merged as a whole.
+     */
+    public <T extends ObjectType> Context prepare(PrismObject<T> object, Collection<? extends ItemDelta> modifications,
+            RepoModifyOptions modifyOptions) {
+        if (modifications.isEmpty() || RepoModifyOptions.isExecuteIfNoChanges(modifyOptions)) {
+            LOGGER.trace("No modifications or 'execute if no changes' requested, partial update is not applicable");
+            return null;
+        }
+        JpaEntityDefinition entityDefinition;
+        try {
+            entityDefinition = QueryDefinitionRegistry2.getInstance().findEntityDefinition(object.getCompileTimeClass());
+        } catch (QueryException e) {
+            LOGGER.trace("No entity definition for {}, partial update is not possible", object, e);
+            return null;
+        }
+
+        Context ctx = new Context();
+        for (ItemDelta<?, ?> modification : modifications) {
+            if (!prepareModification(ctx, entityDefinition, modification)) {
+                LOGGER.trace("Modification of {} cannot be executed by partial update", modification.getPath());
+                return null;
+            }
+        }
+        if (ctx.containersModified) {
+            if (!collectContainerIds(object.findContainer(FocusType.F_ASSIGNMENT), ctx.originalContainerIds)
+                    || !collectContainerIds(object.findContainer(AbstractRoleType.F_INDUCEMENT), ctx.originalContainerIds)) {
+                return null;
+            }
+        }
+        return ctx;
+    }
+
+    private boolean prepareModification(Context ctx, JpaEntityDefinition entityDefinition, ItemDelta<?, ?> modification) {
+        ItemPath path = modification.getPath();
+        if (ItemPath.isNullOrEmpty(path) || !(path.first() instanceof NameItemPathSegment)) {
+            return false;
+        }
+        QName name = ((NameItemPathSegment) path.first()).getName();
+        if (QNameUtil.match(name, ObjectType.F_EXTENSION) || QNameUtil.match(name, ShadowType.F_ATTRIBUTES)) {
+            ctx.collections.addAll(EXTENSION_COLLECTIONS);
+            return true;
+        }
+        if (QNameUtil.match(name, FocusType.F_ASSIGNMENT) || QNameUtil.match(name, AbstractRoleType.F_INDUCEMENT)) {
+            ctx.containersModified = true;
+            if (path.size() == 1) {
+                // added and deleted values are found by comparing IDs; values with known IDs may have been changed
+                addContainerIds(modification.getValuesToAdd(), ctx.modifiedContainerIds);
+                addContainerIds(modification.getValuesToReplace(), ctx.modifiedContainerIds);
+                return true;
+            }
+            ItemPathSegment second = path.getSegments().get(1);
+            if (second instanceof IdItemPathSegment && ((IdItemPathSegment) second).getId() != null) {
+                ctx.modifiedContainerIds.add(((IdItemPathSegment) second).getId().intValue());
+                return true;
+            }
+            return false;
+        }
+
+        // Items not known to the query registry are not mapped to any collection (only to scalar columns, if at all);
+        // scalar columns are compared anyway. Collections are allowed only at the end of the path.
+        final List<JpaLinkDefinition> links = new ArrayList<>();
+        DataSearchResult<JpaDataNodeDefinition> result;
+        try {
+            result = entityDefinition.findDataNodeDefinition(path, null, JpaDataNodeDefinition.class,
+                    new JpaEntityDefinition.LinkDefinitionHandler() {
+                        @Override
+                        public void handle(JpaLinkDefinition linkDefinition) {
+                            links.add(linkDefinition);
+                        }
+                    });
+        } catch (QueryException e) {
+            LOGGER.trace("Couldn't resolve {}", path, e);
+            return false;
+        }
+        for (int i = 0; i < links.size(); i++) {
+            JpaLinkDefinition link = links.get(i);
+            if (!link.isMultivalued()) {
+                continue;
+            }
+            JpaDataNodeDefinition target = link.getTargetDefinition();
+            boolean simpleCollection = target instanceof JpaReferenceDefinition
+                    || (target instanceof JpaPropertyDefinition && !(target instanceof JpaAnyPropertyDefinition));
+            if (result == null || i != links.size() - 1 || !simpleCollection || !link.hasJpaRepresentation()) {
+                return false;
+            }
+            ctx.collections.add(link.getJpaName());
+        }
+        // A whole container value can contain collections that are not on the resolved link path
+        // (e.g. metadata is a self-pointing link, while its approver references are separate links of the entity).
+        if (modification instanceof ContainerDelta && entityDefinition.containsCollection(path.namedSegmentsOnly())) {
+            return false;
+        }
+        return true;
+    }
+
+    private void addContainerIds(Collection<? extends PrismValue> values, Set<Integer> ids) {
+        if (values == null) {
+            return;
+        }
+        for (PrismValue value : values) {
+            if (value instanceof PrismContainerValue && ((PrismContainerValue<?>) value).getId() != null) {
+                ids.add(((PrismContainerValue<?>) value).getId().intValue());
+            }
+        }
+    }
+
+    private boolean collectContainerIds(PrismContainer<?> container, Set<Integer> ids) {
+        if (container == null) {
+            return true;
+        }
+        for (PrismContainerValue<?> value : container.getValues()) {
+            if (value.getId() == null) {
+                return false;
+            }
+            ids.add(value.getId().intValue());
+        }
+        return true;
+    }
+
+    /**
+     * Updates the persistent entity according to the new state (rObject). Returns false if this is not possible;
+     * in that case nothing was changed.
+     */
+    public boolean update(Context ctx, Session session, RObject<?> rObject) {
+        ClassMetadata metadata = baseHelper.getSessionFactory().getClassMetadata(rObject.getClass());
+        RObject<?> persistent = (RObject<?>) session.get(rObject.getClass(), rObject.getOid());
+        if (metadata == null || persistent == null) {
+            return false;
+        }
+
+        // 1. finding out the changes; nothing is modified here
+        List<CollectionChange> collectionChanges = new ArrayList<>();
+        for (String collectionName : ctx.collections) {
+            Collection<Object> current = (Collection<Object>) metadata.getPropertyValue(persistent, collectionName);
+            Collection<Object> updated = (Collection<Object>) metadata.getPropertyValue(rObject, collectionName);
+            if (current == null) {
+                LOGGER.trace("Collection {} is not present in {}", collectionName, persistent);
+                return false;
+            }
+            CollectionChange change = new CollectionChange(current, updated);
+            if (!change.isEmpty()) {
+                collectionChanges.add(change);
+            }
+        }
+
+        Map<Integer, RAssignment> updatedContainers = new HashMap<>();
+        if (ctx.containersModified) {
+            if (!(rObject instanceof RFocus) || Hibernate.isInitialized(((RFocus<?>) persistent).getAssignments())) {
+                // initialized collection would be re-saved on flush, so we wouldn't be able to delete its members
+                return false;
+            }
+            for (RAssignment assignment : ((RFocus<?>) rObject).getAssignments()) {
+                updatedContainers.put(assignment.getId(), assignment);
+            }
+        }
+        Set<Integer> deletedIds = new HashSet<>(ctx.originalContainerIds);
+        deletedIds.removeAll(updatedContainers.keySet());
+        Set<Integer> addedIds = new HashSet<>(updatedContainers.keySet());
+        addedIds.removeAll(ctx.originalContainerIds);
+        Set<Integer> modifiedIds = new HashSet<>(ctx.modifiedContainerIds);
+        modifiedIds.retainAll(ctx.originalContainerIds);
+        modifiedIds.retainAll(updatedContainers.keySet());
+
+        LOGGER.trace("Partial update of {}: collection changes: {}, containers added: {}, modified: {}, deleted: {}",
+                rObject.getOid(), collectionChanges, addedIds, modifiedIds, deletedIds);
+
+        // 2. deleting rows; flushed before inserting, as new rows can have the same keys as the deleted ones
+        // (and Hibernate executes inserts before deletes)
+        for (Integer id : deletedIds) {
+            Object assignment = session.get(RAssignment.class, new RContainerId(id, rObject.getOid()));
+            if (assignment != null) {
+                session.delete(assignment);
+            }
+        }
+        for (CollectionChange change : collectionChanges) {
+            change.deleteRows();
+        }
+        if (!deletedIds.isEmpty() || !collectionChanges.isEmpty()) {
+            session.flush();
+        }
+
+        // 3. inserting and updating rows
+        for (Integer id : addedIds) {
+            RAssignment assignment = updatedContainers.get(id);
+            assignment.setOwner(persistent);
+            session.save(assignment);
+        }
+        for (Integer id : modifiedIds) {
+            RAssignment assignment = updatedContainers.get(id);
+            assignment.setOwner(persistent);
+            session.merge(assignment);
+        }
+        for (CollectionChange change : collectionChanges) {
+            change.insertRows(persistent);
+        }
+
+        String[] propertyNames = metadata.getPropertyNames();
+        Type[] propertyTypes = metadata.getPropertyTypes();
+        for (int i = 0; i < propertyNames.length; i++) {
+            if (propertyTypes[i].isCollectionType()) {
+                continue;
+            }
+            Object currentValue = metadata.getPropertyValue(persistent, propertyNames[i]);
+            Object updatedValue = metadata.getPropertyValue(rObject, propertyNames[i]);
+            if (!propertyTypes[i].isEqual(currentValue, updatedValue)) {
+                metadata.setPropertyValue(persistent, propertyNames[i], updatedValue);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Differences between persistent and updated collection of references, extension values or simple values.
+     */
+    private static class CollectionChange {
+
+        private final Collection<Object> current;
+        private final List<Object> toDelete = new ArrayList<>();
+        private final List<Object> toInsert = new ArrayList<>();
+
+        CollectionChange(Collection<Object> current, Collection<Object> updated) {
+            this.current = current;
+            if (updated == null) {
+                updated = Collections.emptySet();
+            }
+            Set<Object> currentKeys = new HashSet<>();
+            Set<Object> updatedKeys = new HashSet<>();
+            for (Object value : updated) {
+                updatedKeys.add(getKey(value));
+            }
+            for (Object value : current) {
+                Object key = getKey(value);
+                currentKeys.add(key);
+                if (!updatedKeys.contains(key)) {
+                    toDelete.add(value);
+                }
+            }
+            for (Object value : updated) {
+                if (!currentKeys.contains(getKey(value))) {
+                    toInsert.add(value);
+                }
+            }
+        }
+
+        // equals() of the entities does not cover all the columns, so we compare them explicitly
+        private static Object getKey(Object value) {
+            if (value instanceof RObjectReference) {
+                RObjectReference<?> ref = (RObjectReference<?>) value;
+                return Arrays.asList(ref.getReferenceType(), ref.getRelation(), ref.getTargetOid(), ref.getType());
+            } else if (value instanceof ROExtValue) {
+                ROExtValue ext = (ROExtValue) value;
+                return Arrays.asList(ext.getClass(), ext.getOwnerType(), ext.getName(), ext.getType(),
+                        ext.getValueType(), ext.isDynamic(), ext.getValue());
+            } else {
+                return value;
+            }
+        }
+
+        boolean isEmpty() {
+            return toDelete.isEmpty() && toInsert.isEmpty();
+        }
+
+        void deleteRows() {
+            // removing by identity; entities' equals() is too loose for this
+            Set<Object> deleted = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+            deleted.addAll(toDelete);
+            for (Iterator<Object> iterator = current.iterator(); iterator.hasNext(); ) {
+                if (deleted.contains(iterator.next())) {
+                    iterator.remove();
+                }
+            }
+        }
+
+        void insertRows(RObject<?> owner) {
+            for (Object value : toInsert) {
+                if (value instanceof RObjectReference) {
+                    ((RObjectReference<?>) value).setOwner(owner);
+                } else if (value instanceof ROExtValue) {
+                    ((ROExtValue) value).setOwner(owner);
+                }
+                current.add(value);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "-" + toDelete.size() + "/+" + toInsert.size();
+        }
+    }
+}
@@ -23,11 +23,11 @@ import com.evolveum.midpoint.prism.path.ItemPath;
 import com.evolveum.midpoint.prism.query.ExistsFilter;
 import com.evolveum.midpoint.prism.query.ObjectFilter;
 import com.evolveum.midpoint.prism.query.ObjectPaging;
+import com.evolveum.midpoint.prism.query.ObjectPagingAfterOid;
 import com.evolveum.midpoint.prism.query.ObjectQuery;
 import com.evolveum.midpoint.prism.query.ValueFilter;
 import com.evolveum.midpoint.prism.query.Visitor;
 import com.evolveum.midpoint.repo.api.RepositoryService;
-import com.evolveum.midpoint.repo.sql.ObjectPagingAfterOid;
 import com.evolveum.midpoint.repo.sql.SqlRepositoryConfiguration;
 import com.evolveum.midpoint.repo.sql.SqlRepositoryServiceImpl;
 import com.evolveum.midpoint.repo.sql.data.common.RObject;
@@ -86,6 +86,8 @@ public class ObjectRetriever {
     private static final Trace LOGGER = TraceManager.getTrace(ObjectRetriever.class);
     private static final Trace LOGGER_PERFORMANCE = TraceManager.getTrace(SqlRepositoryServiceImpl.PERFORMANCE_LOG_NAME);
 
+    private static final int MAX_OIDS_IN_VERSIONS_QUERY = 500;
+
     @Autowired
     @Qualifier("repositoryService")
     private RepositoryService repositoryService;
@@ -335,7 +337,7 @@ public class ObjectRetriever {
             } else {
                 RQuery rQuery;
                 if (isUseNewQueryInterpreter(query)) {
-                    QueryEngine2 engine = new QueryEngine2(getConfiguration(), prismContext);
+                    QueryEngine2 engine = new QueryEngine2(getConfiguration(), prismContext, baseHelper.getQueryPlanCache());
                     rQuery = engine.interpret(query, type, null, true, session);
                 } else {
                     QueryEngine engine = new QueryEngine(getConfiguration(), prismContext);
@@ -368,7 +370,7 @@ public class ObjectRetriever {
             RQuery rQuery;
 
             if (isUseNewQueryInterpreter(query)) {
-                QueryEngine2 engine = new QueryEngine2(getConfiguration(), prismContext);
+                QueryEngine2 engine = new QueryEngine2(getConfiguration(), prismContext, baseHelper.getQueryPlanCache());
                 rQuery = engine.interpret(query, type, options, false, session);
             } else {
                 QueryEngine engine = new QueryEngine(getConfiguration(), prismContext);
@@ -418,7 +420,7 @@ public class ObjectRetriever {
         try {
             session = baseHelper.beginReadOnlyTransaction();
 
-            QueryEngine2 engine = new QueryEngine2(getConfiguration(), prismContext);
+            QueryEngine2 engine = new QueryEngine2(getConfiguration(), prismContext, baseHelper.getQueryPlanCache());
             RQuery rQuery = engine.interpret(query, type, options, false, session);
 
             List<GetContainerableResult> items = rQuery.list();
@@ -447,12 +449,11 @@ public class ObjectRetriever {
     		String oid, Collection<SelectorOptions<GetOperationOptions>> options,
 			Session session, OperationResult operationResult) throws SchemaException {
 
-        String xml = RUtil.getXmlFromByteArray(result.getFullObject(), getConfiguration().isUseZip());
         PrismObject<T> prismObject;
         try {
             // "Postel mode": be tolerant what you read. We need this to tolerate (custom) schema changes
 			ParsingContext parsingContext = ParsingContext.forMode(XNodeProcessorEvaluationMode.COMPAT);
-            prismObject = prismContext.parserFor(xml).context(parsingContext).parse();
+            prismObject = RUtil.createFullObjectParser(result.getFullObject(), prismContext).context(parsingContext).parse();
 			// TODO enable if needed
 //			if (parsingContext.hasWarnings()) {
 //				for (String warning : parsingContext.getWarnings()) {
@@ -463,7 +464,8 @@ public class ObjectRetriever {
         	// This is a serious thing. We have corrupted XML in the repo. This may happen even
         	// during system init. We want really loud and detailed error here.
             LOGGER.error("Couldn't parse object {} {}: {}: {}\n{}", 
-            		type.getSimpleName(), oid, e.getClass().getName(), e.getMessage(), xml, e);
+            		type.getSimpleName(), oid, e.getClass().getName(), e.getMessage(),
+                    RUtil.getFullObjectForDiagnostics(result.getFullObject()), e);
             throw e;
         }
 
@@ -621,6 +623,66 @@ public class ObjectRetriever {
         return version;
     }
 
+    public <T extends ObjectType> Map<String, String> getVersionsAttempt(Class<T> type, Collection<String> oids,
+                                                                         OperationResult result) {
+        LOGGER_PERFORMANCE.debug("> get versions {}, {} object(s)", type.getSimpleName(), oids.size());
+
+        Map<String, String> versions = new HashMap<>();
+        if (oids.isEmpty()) {
+            return versions;
+        }
+        Session session = null;
+        try {
+            Class<? extends RObject> hqlType = ClassMapper.getHQLTypeClass(type);
+
+            session = baseHelper.beginReadOnlyTransaction();
+            Query query = session.createQuery("select o.oid, o.version from " + hqlType.getSimpleName()
+                    + " o where o.oid in (:oids)");
+            List<String> oidList = new ArrayList<>(oids);
+            // keeps the number of query parameters within limits of all supported databases
+            for (int from = 0; from < oidList.size(); from += MAX_OIDS_IN_VERSIONS_QUERY) {
+                int to = Math.min(from + MAX_OIDS_IN_VERSIONS_QUERY, oidList.size());
+                query.setParameterList("oids", oidList.subList(from, to));
+                List<Object[]> rows = query.list();
+                for (Object[] row : rows) {
+                    versions.put((String) row[0], String.valueOf(row[1]));
+                }
+            }
+            session.getTransaction().commit();
+        } catch (RuntimeException ex) {
+            baseHelper.handleGeneralRuntimeException(ex, session, result);
+        } finally {
+            baseHelper.cleanupSessionAndResult(session, result);
+        }
+
+        return versions;
+    }
+
+    public <T extends ObjectType> String getChangeMarkerAttempt(Class<T> type, OperationResult result) {
+        LOGGER_PERFORMANCE.debug("> get change marker {}", type.getSimpleName());
+
+        String marker = null;
+        Session session = null;
+        try {
+            Class<? extends RObject> hqlType = ClassMapper.getHQLTypeClass(type);
+
+            session = baseHelper.beginReadOnlyTransaction();
+            // Each modification increments the version, so the sum of versions changes; additions and deletions
+            // change the count. Max creation timestamp catches deletion of an unmodified object followed by an addition.
+            Query query = session.createQuery("select count(o), sum(o.version), max(o.createTimestamp) from "
+                    + hqlType.getSimpleName() + " o");
+            Object[] row = (Object[]) query.uniqueResult();
+            marker = row[0] + ":" + row[1] + ":" + row[2];
+            session.getTransaction().commit();
+        } catch (RuntimeException ex) {
+            baseHelper.handleGeneralRuntimeException(ex, session, result);
+        } finally {
+            baseHelper.cleanupSessionAndResult(session, result);
+        }
+
+        return marker;
+    }
+
     public <T extends ObjectType> void searchObjectsIterativeAttempt(Class<T> type, ObjectQuery query,
                                                                      ResultHandler<T> handler,
                                                                      Collection<SelectorOptions<GetOperationOptions>> options,
@@ -630,7 +692,7 @@ public class ObjectRetriever {
             session = baseHelper.beginReadOnlyTransaction();
             RQuery rQuery;
             if (isUseNewQueryInterpreter(query)) {
-                QueryEngine2 engine = new QueryEngine2(getConfiguration(), prismContext);
+                QueryEngine2 engine = new QueryEngine2(getConfiguration(), prismContext, baseHelper.getQueryPlanCache());
                 rQuery = engine.interpret(query, type, options, false, session);
             } else {
                 QueryEngine engine = new QueryEngine(getConfiguration(), prismContext);
@@ -20,6 +20,7 @@ import com.evolveum.midpoint.prism.PrismContext;
 import com.evolveum.midpoint.prism.PrismObject;
 import com.evolveum.midpoint.prism.PrismObjectDefinition;
 import com.evolveum.midpoint.prism.PrismReference;
+import com.evolveum.midpoint.prism.SerializationOptions;
 import com.evolveum.midpoint.prism.delta.ItemDelta;
 import com.evolveum.midpoint.prism.delta.ObjectDelta;
 import com.evolveum.midpoint.prism.delta.ReferenceDelta;
@@ -41,6 +42,7 @@ import com.evolveum.midpoint.schema.GetOperationOptions;
 import com.evolveum.midpoint.schema.RetrieveOption;
 import com.evolveum.midpoint.schema.SelectorOptions;
 import com.evolveum.midpoint.schema.result.OperationResult;
+import com.evolveum.midpoint.util.DOMUtil;
 import com.evolveum.midpoint.util.DebugUtil;
 import com.evolveum.midpoint.util.exception.ObjectAlreadyExistsException;
 import com.evolveum.midpoint.util.exception.ObjectNotFoundException;
@@ -51,6 +53,7 @@ import com.evolveum.midpoint.xml.ns._public.common.common_3.AccessCertificationC
 import com.evolveum.midpoint.xml.ns._public.common.common_3.FocusType;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.LookupTableType;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.ObjectType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.OrgType;
 import org.apache.commons.lang.StringUtils;
 import org.hibernate.Criteria;
 import org.hibernate.Query;
@@ -61,7 +64,9 @@ import org.hibernate.exception.ConstraintViolationException;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Component;
+import org.w3c.dom.Element;
 
+import javax.xml.namespace.QName;
 import java.lang.reflect.Method;
 import java.sql.SQLException;
 import java.util.*;
@@ -95,6 +100,12 @@ public class ObjectUpdater {
     @Autowired
     private OrgClosureManager closureManager;
 
+    @Autowired
+    private ObjectDeltaUpdater objectDeltaUpdater;
+
+    @Autowired
+    private ExtensionJsonHelper extensionJsonHelper;
+
     @Autowired
     private PrismContext prismContext;
 
@@ -198,6 +209,7 @@ public class ObjectUpdater {
 
         updateFullObject(rObject, object);
         RObject merged = (RObject) session.merge(rObject);
+        extensionJsonHelper.storeExtension(session, merged.getOid(), rObject);
         lookupTableHelper.addLookupTableRows(session, rObject, oldObject != null);
         caseHelper.addCertificationCampaignCases(session, rObject, oldObject != null);
 
@@ -233,31 +245,44 @@ public class ObjectUpdater {
         LOGGER.debug("Updating full object xml column start.");
         savedObject.setVersion(Integer.toString(object.getVersion()));
 
-        // Deep cloning for object transformation - we don't want to return object "changed" by save.
-        // Its' because we're removing some properties during save operation and if save fails,
-        // overwrite attempt (for example using object importer) might try to delete existing object
-        // and then try to save this object one more time.
-        String xml = prismContext.serializeObjectToString(savedObject, PrismContext.LANG_XML);
-        savedObject = prismContext.parseObject(xml);
-
-        if (FocusType.class.isAssignableFrom(savedObject.getCompileTimeClass())) {
-            savedObject.removeProperty(FocusType.F_JPEG_PHOTO);
-        } else if (LookupTableType.class.equals(savedObject.getCompileTimeClass())) {
-            savedObject.removeContainer(LookupTableType.F_ROW);
-        } else if (AccessCertificationCampaignType.class.equals(savedObject.getCompileTimeClass())) {
-            savedObject.removeContainer(AccessCertificationCampaignType.F_CASE);
+        // Items that are stored separately (photo, lookup table rows, certification cases) are skipped directly
+        // by the serializer. This way we don't need to clone (serialize+parse) the object in order not to change
+        // the object "changed" by save - e.g. if save fails, overwrite attempt (for example using object importer)
+        // might try to delete existing object and then try to save this object one more time.
+        SerializationOptions options = SerializationOptions.createSkipItems(getItemsNotStoredInFullObject(savedObject.getCompileTimeClass()));
+        byte[] fullObject;
+        if (getConfiguration().getFullObjectFormat() == SqlRepositoryConfiguration.FullObjectFormat.BINARY) {
+            byte[] data = prismContext.binarySerializer().options(options).serialize(savedObject);
+            fullObject = RUtil.getByteArrayFromBinary(data, getConfiguration().isUseZip());
+            if (LOGGER.isTraceEnabled()) {
+                LOGGER.trace("Storing full object ({} bytes in binary format)\n{}", data.length,
+                        prismContext.xmlSerializer().options(options).serialize(savedObject));
+            }
+        } else {
+            Element element = prismContext.domSerializer().options(options).serialize(savedObject);
+            fullObject = RUtil.getByteArrayFromElement(element, getConfiguration().isUseZip());
+            if (LOGGER.isTraceEnabled()) {
+                LOGGER.trace("Storing full object\n{}", DOMUtil.serializeDOMToString(element));
+            }
         }
 
-        xml = prismContext.serializeObjectToString(savedObject, PrismContext.LANG_XML);
-        byte[] fullObject = RUtil.getByteArrayFromXml(xml, getConfiguration().isUseZip());
-
-        LOGGER.trace("Storing full object\n{}", xml);
-
         object.setFullObject(fullObject);
 
         LOGGER.debug("Updating full object xml column finish.");
     }
 
+    private QName[] getItemsNotStoredInFullObject(Class<? extends ObjectType> type) {
+        if (FocusType.class.isAssignableFrom(type)) {
+            return new QName[] { FocusType.F_JPEG_PHOTO };
+        } else if (LookupTableType.class.equals(type)) {
+            return new QName[] { LookupTableType.F_ROW };
+        } else if (AccessCertificationCampaignType.class.equals(type)) {
+            return new QName[] { AccessCertificationCampaignType.F_CASE };
+        } else {
+            return new QName[0];
+        }
+    }
+
     protected SqlRepositoryConfiguration getConfiguration() {
         return baseHelper.getConfiguration();
     }
@@ -286,6 +311,7 @@ public class ObjectUpdater {
 
         LOGGER.trace("Saving object (non overwrite).");
         String oid = (String) session.save(rObject);
+        extensionJsonHelper.storeExtension(session, oid, rObject);
         lookupTableHelper.addLookupTableRows(session, rObject, false);
         caseHelper.addCertificationCampaignCases(session, rObject, false);
 
@@ -299,6 +325,124 @@ public class ObjectUpdater {
     }
 
 
+    /**
+     * Tries to add all the objects in a single transaction. Rows are sent to the database in JDBC batches
+     * (see hibernate.jdbc.batch_size); therefore, unlike addObjectAttempt, OID uniqueness is not checked upfront
+     * but left on the database constraints.
+     *
+     * Returns false if the objects cannot be added this way (e.g. orgs, because of org closure maintenance)
+     * or if the batch failed (e.g. on a conflict). In that case nothing was stored and the caller should
+     * add the objects one by one, in order to get correct results for individual objects.
+     */
+    public boolean addObjectsAttempt(List<PrismObject<? extends ObjectType>> objects, OperationResult result) {
+        for (PrismObject<? extends ObjectType> object : objects) {
+            if (OrgType.class.isAssignableFrom(object.getCompileTimeClass())) {
+                LOGGER.trace("Batch contains an org ({}), objects will be added one by one", object);
+                return false;
+            }
+        }
+
+        LOGGER_PERFORMANCE.debug("> add objects: {} object(s)", objects.size());
+        Session session = null;
+        try {
+            List<RObject> rObjects = new ArrayList<>(objects.size());
+            for (PrismObject<? extends ObjectType> object : objects) {
+                RObject rObject = createDataObjectFromJAXB(object, PrismIdentifierGenerator.Operation.ADD);
+                updateFullObject(rObject, object);
+                rObjects.add(rObject);
+            }
+
+            session = baseHelper.beginTransaction();
+            List<String> oids = new ArrayList<>(objects.size());
+            Map<String, String> extensions = new HashMap<>();
+            for (RObject rObject : rObjects) {
+                String oid = (String) session.save(rObject);
+                oids.add(oid);
+                extensions.put(oid, rObject.getExtensionJson());
+                lookupTableHelper.addLookupTableRows(session, rObject, false);
+                caseHelper.addCertificationCampaignCases(session, rObject, false);
+            }
+            extensionJsonHelper.storeExtensions(session, extensions);
+            session.getTransaction().commit();
+
+            for (int i = 0; i < objects.size(); i++) {
+                objects.get(i).setOid(oids.get(i));
+            }
+            LOGGER.trace("Saved {} object(s) in a single transaction", objects.size());
+            return true;
+        } catch (SchemaException | DtoTranslationException | RuntimeException ex) {
+            LOGGER.debug("Couldn't add {} objects in a single transaction, they will be added one by one", objects.size(), ex);
+            baseHelper.rollbackTransaction(session, ex, result, false);
+            return false;
+        } finally {
+            baseHelper.cleanupSessionAndResult(session, null);
+        }
+    }
+
+    /**
+     * Tries to apply all the (MODIFY) deltas in a single transaction. Objects are read and locked first, then
+     * the modified rows are merged; the resulting statements are sent to the database in JDBC batches on commit.
+     *
+     * Returns false if the deltas cannot be executed this way (orgs, lookup tables, certification campaigns,
+     * photo modifications, more deltas for one object) or if the batch failed. In that case nothing was stored
+     * and the caller should execute the deltas one by one.
+     */
+    public boolean modifyObjectsAttempt(List<ObjectDelta<? extends ObjectType>> deltas, OperationResult result) {
+        Set<String> oids = new HashSet<>();
+        for (ObjectDelta<? extends ObjectType> delta : deltas) {
+            if (!oids.add(delta.getOid())) {
+                LOGGER.trace("Batch contains more deltas for {}, deltas will be executed one by one", delta.getOid());
+                return false;
+            }
+            Class<? extends ObjectType> type = delta.getObjectTypeClass();
+            if (OrgType.class.isAssignableFrom(type) || LookupTableType.class.isAssignableFrom(type)
+                    || AccessCertificationCampaignType.class.isAssignableFrom(type)
+                    || (FocusType.class.isAssignableFrom(type) && containsPhotoModification(delta.getModifications()))) {
+                LOGGER.trace("Batch contains delta that needs special treatment ({}), deltas will be executed one by one", delta);
+                return false;
+            }
+        }
+
+        LOGGER_PERFORMANCE.debug("> modify objects: {} object(s)", deltas.size());
+        Session session = null;
+        try {
+            session = baseHelper.beginTransaction();
+
+            List<PrismObject<? extends ObjectType>> prismObjects = new ArrayList<>(deltas.size());
+            for (ObjectDelta<? extends ObjectType> delta : deltas) {
+                prismObjects.add(objectRetriever.getObjectInternal(session, delta.getObjectTypeClass(), delta.getOid(), null, true, result));
+            }
+
+            Map<String, String> extensions = new HashMap<>();
+            for (int i = 0; i < deltas.size(); i++) {
+                // clone - for the same reasons as in modifyObjectAttempt
+                Collection<? extends ItemDelta> modifications = CloneUtil.cloneCollectionMembers(deltas.get(i).getModifications());
+                PrismObject<? extends ObjectType> prismObject = prismObjects.get(i);
+                ObjectDeltaUpdater.Context partialUpdateContext = objectDeltaUpdater.prepare(prismObject, modifications);
+                ItemDelta.applyTo(modifications, prismObject);
+
+                RObject rObject = createDataObjectFromJAXB(prismObject, PrismIdentifierGenerator.Operation.MODIFY);
+                rObject.setVersion(rObject.getVersion() + 1);
+                updateFullObject(rObject, prismObject);
+                if (partialUpdateContext == null || !objectDeltaUpdater.update(partialUpdateContext, session, rObject)) {
+                    session.merge(rObject);
+                }
+                extensions.put(rObject.getOid(), rObject.getExtensionJson());
+            }
+            extensionJsonHelper.storeExtensions(session, extensions);
+
+            session.getTransaction().commit();
+            LOGGER.trace("Modified {} object(s) in a single transaction", deltas.size());
+            return true;
+        } catch (ObjectNotFoundException | SchemaException | DtoTranslationException | RuntimeException ex) {
+            LOGGER.debug("Couldn't modify {} objects in a single transaction, they will be modified one by one", deltas.size(), ex);
+            baseHelper.rollbackTransaction(session, ex, result, false);
+            return false;
+        } finally {
+            baseHelper.cleanupSessionAndResult(session, null);
+        }
+    }
+
     public <T extends ObjectType> void deleteObjectAttempt(Class<T> type, String oid, OperationResult result)
             throws ObjectNotFoundException {
         LOGGER_PERFORMANCE.debug("> delete object {}, oid={}", new Object[]{type.getSimpleName(), oid});
@@ -397,6 +541,10 @@ public class ObjectUpdater {
                 if (closureManager.isEnabled()) {
                     originalObject = prismObject.clone();
                 }
+                ObjectDeltaUpdater.Context partialUpdateContext = null;
+                if (isPartialUpdateApplicable(type) && !containsFocusPhotoModification) {
+                    partialUpdateContext = objectDeltaUpdater.prepare(prismObject, modifications, modifyOptions);
+                }
                 ItemDelta.applyTo(modifications, prismObject);
                 if (LOGGER.isTraceEnabled()) {
                     LOGGER.trace("OBJECT after:\n{}", prismObject.debugDump());
@@ -411,8 +559,13 @@ public class ObjectUpdater {
                 rObject.setVersion(rObject.getVersion() + 1);
 
                 updateFullObject(rObject, prismObject);
-                LOGGER.trace("Starting merge.");
-                session.merge(rObject);
+                if (partialUpdateContext != null && objectDeltaUpdater.update(partialUpdateContext, session, rObject)) {
+                    LOGGER.trace("Object updated using partial update.");
+                } else {
+                    LOGGER.trace("Starting merge.");
+                    session.merge(rObject);
+                }
+                extensionJsonHelper.storeExtension(session, oid, rObject);
                 if (closureManager.isEnabled()) {
                     closureManager.updateOrgClosure(originalObject, modifications, session, oid, type, OrgClosureManager.Operation.MODIFY, closureContext);
                 }
@@ -462,6 +615,12 @@ public class ObjectUpdater {
         }
     }
 
+    // orgs (closure), lookup tables and certification campaigns (rows maintained by their helpers) are always merged
+    private boolean isPartialUpdateApplicable(Class<? extends ObjectType> type) {
+        return !OrgType.class.isAssignableFrom(type) && !LookupTableType.class.isAssignableFrom(type)
+                && !AccessCertificationCampaignType.class.isAssignableFrom(type);
+    }
+
     private <T extends ObjectType> boolean containsPhotoModification(Collection<? extends ItemDelta> modifications) {
         ItemPath photoPath = new ItemPath(FocusType.F_JPEG_PHOTO);
         for (ItemDelta delta : modifications) {
@@ -543,6 +702,7 @@ public class ObjectUpdater {
             }
             throw new SchemaException(message, ex);
         }
+        extensionJsonHelper.extractExtension(rObject);
 
         return rObject;
     }
@@ -75,6 +75,12 @@ import java.util.*;
  * namely from Chapter 6 (http://vadimtropashko.files.wordpress.com/2014/01/book_sql_chap6_v1.pdf).
  * SQL queries were then optimized by hand for various database engines.
  *
+ * Concurrent modifications of the closure are serialized either by locking the whole closure table (the default),
+ * or - in SUBTREE locking mode - by locking only the closure rows of the orgs that are affected by the operation,
+ * i.e. ancestors of the parents and descendants of the children of the edges being added or removed.
+ * In the SUBTREE mode on PostgreSQL the closure is also updated directly by set-based statements,
+ * without materializing temporary delta tables. See {@link LockingMode}.
+ *
  * @author lazyman
  * @author mederly
  */
@@ -95,6 +101,8 @@ public class OrgClosureManager {
     private static final boolean COUNT_CLOSURE_RECORDS = false;
     static final String CLOSURE_TABLE_NAME = "m_org_closure";
     public static final String TEMP_DELTA_TABLE_NAME_FOR_ORACLE = "m_org_closure_temp_delta";
+    private static final int LOCK_BATCH_SIZE = 1000;              // Oracle does not allow more items in IN clause
+    private static final int MAX_SUBTREE_LOCKING_ATTEMPTS = 5;
 
     // only for single-thread performance testing
     long lastOperationDuration;
@@ -186,12 +194,13 @@ public class OrgClosureManager {
     }
 
     private Context onBeginTransaction(Session session) {
-        // table locking
-        if (isH2() || isOracle() || isSQLServer()) {
+        // table locking (in subtree locking mode the rows are locked later, when we know the edges being changed)
+        Context ctx = new Context();
+        if (!isSubtreeLocking() && (isH2() || isOracle() || isSQLServer())) {
             lockClosureTable(session);
+            ctx.closureTableLocked = true;
         }
         // other
-        Context ctx = new Context();
         if (isH2()) {
             ctx.temporaryTableName = generateDeltaTempTableName();
             String createTableQueryText = "create temporary table " + ctx.temporaryTableName + " (\n" +
@@ -381,6 +390,11 @@ public class OrgClosureManager {
             if (rebuild || (check && !quickCheckOnly)) {
                 // thorough check requires the temporary table as well
                 context = onBeginTransaction(session);
+                if (!context.closureTableLocked && isSubtreeLocking()) {
+                    // rebuilding touches the whole table, so there is no point in locking individual subtrees
+                    lockClosureTable(session);
+                    context.closureTableLocked = true;
+                }
             }
 
             if (quickCheckOnly) {
@@ -442,6 +456,12 @@ public class OrgClosureManager {
     // "check" here means "thorough check" (i.e. comparing with recomputed closure)
     private void rebuild(boolean check, boolean rebuild, boolean stopOnFailure, final Context context, final Session session, OperationResult result) throws SchemaException {
 
+        int threads = baseHelper.getConfiguration().getOrgClosureRebuildThreads();
+        if (threads > 0) {
+            rebuildInParallel(check, rebuild, threads, session, result);
+            return;
+        }
+
         List existingEntries = null;
         if (check) {
             LOGGER.info("Reading from existing org closure table");
@@ -493,10 +513,44 @@ public class OrgClosureManager {
         }
     }
 
+    // Unlike the sequential variant, check-only mode does not touch the closure table at all,
+    // and the tables are compared by streaming them into digests, not by loading them into memory.
+    private void rebuildInParallel(boolean check, boolean rebuild, int threads, Session session, OperationResult result) {
+        OrgClosureRebuilder rebuilder = new OrgClosureRebuilder(session, threads);
+
+        OrgClosureRebuilder.Digest existing = null;
+        if (check) {
+            LOGGER.info("Reading from existing org closure table");
+            existing = rebuilder.computeTableDigest();
+        }
+
+        OrgClosureRebuilder.Digest recomputed;
+        if (rebuild) {
+            LOGGER.info("Computing org closure table from scratch using {} thread(s)", threads);
+            Query deleteQuery = session.createSQLQuery("delete from " + CLOSURE_TABLE_NAME);
+            deleteQuery.executeUpdate();
+            LOGGER.trace("Closure table content deleted");
+            recomputed = rebuilder.compute(true);
+            LOGGER.info("Org closure table was successfully recomputed (not committed yet)");
+        } else {
+            recomputed = rebuilder.compute(false);
+        }
+
+        if (check) {
+            compareOrgClosureTables(existing.matches(recomputed), recomputed.getCount(), existing.getCount(), rebuild, result);
+        } else {
+            result.recordSuccess();
+        }
+    }
+
     private void compareOrgClosureTables(List existingEntries, List recomputedEntries, boolean rebuild, OperationResult result) {
         Set<List> existing = convertEntries(existingEntries);
         Set<List> recomputed = convertEntries(recomputedEntries);
-        if (!existing.equals(recomputed)) {
+        compareOrgClosureTables(existing.equals(recomputed), recomputed.size(), existing.size(), rebuild, result);
+    }
+
+    private void compareOrgClosureTables(boolean equal, long recomputedSize, long existingSize, boolean rebuild, OperationResult result) {
+        if (!equal) {
             String addendum;
             OperationResultStatus status;
             if (rebuild) {
@@ -506,11 +560,11 @@ public class OrgClosureManager {
                 status = OperationResultStatus.FATAL_ERROR;
                 addendum = " Please recompute the table as soon as possible.";
             }
-            String m = "Closure table is not consistent with the repository. Expected size: " + recomputed.size() + " actual size: " + existing.size() + "." + addendum;
+            String m = "Closure table is not consistent with the repository. Expected size: " + recomputedSize + " actual size: " + existingSize + "." + addendum;
             result.recordStatus(status, m);
             LOGGER.info(m);
         } else {
-            String m = "Closure table is OK (" + existing.size() + " entries)";
+            String m = "Closure table is OK (" + existingSize + " entries)";
             result.recordStatus(OperationResultStatus.SUCCESS, m);
             LOGGER.info(m);
         }
@@ -553,12 +607,15 @@ public class OrgClosureManager {
 
         List<String> livingChildren = getChildren(oid, session);        // no need to check existence of these oids, as owner is a FK pointing to RObject in RParentRef
         LOGGER.trace("Living children = {}", livingChildren);
-        addChildrenEdges(oid, livingChildren, context, session);
 
         // all parents are "new", so we should just select which do really exist at this moment
         Collection<String> livingParents = retainExistingOids(parents, session);
         LOGGER.trace("Living parents = {} (parents = {})", livingParents, parents);
 
+        lockAffectedSubtrees(oid, childrenToEdges(oid, livingChildren), parentsToEdges(oid, livingParents), context, session);
+
+        addChildrenEdges(oid, livingChildren, context, session);
+
         if (livingParents.size() <= 1 && (livingChildren == null || livingChildren.isEmpty())) {
             String parent;
             if (livingParents.isEmpty()) {
@@ -657,6 +714,10 @@ public class OrgClosureManager {
     private void addIndependentEdgesInternal(List<Edge> edges, Context context, Session session) {
 
         checkForCycles(edges, session);
+        if (isSubtreeLocking() && isPostgreSQL()) {
+            addIndependentEdgesSetBased(edges, session);
+            return;
+        }
         String deltaTempTableName = computeDeltaTable(edges, context, session);
         try {
             int count;
@@ -828,16 +889,19 @@ public class OrgClosureManager {
 
         List<String> livingChildren = getChildren(oid, session);
         if (livingChildren.isEmpty()) {
+            lockAffectedSubtrees(oid, Collections.<Edge>emptyList(), Collections.<Edge>emptyList(), context, session);
             handleDeleteLeaf(oid, session);
             return;
         }
 
+        List<String> livingParents = retainExistingOids(getParents(oid, session), session);
+        lockAffectedSubtrees(oid, childrenToEdges(oid, livingChildren), parentsToEdges(oid, livingParents), context, session);
+
         // delete all edges "<child> -> OID" from the closure
         removeChildrenEdges(oid, livingChildren, context, session);
         if (LOGGER.isTraceEnabled()) LOGGER.trace("Deleted {} 'child' links.", livingChildren.size());
 
         // delete all edges "OID -> <parent>" from the closure
-        List<String> livingParents = retainExistingOids(getParents(oid, session), session);
         removeParentEdges(oid, livingParents, context, session);
         if (LOGGER.isTraceEnabled()) LOGGER.trace("Deleted {} 'parent' links.", livingParents.size());
 
@@ -890,6 +954,10 @@ public class OrgClosureManager {
 
     private void removeIndependentEdgesInternal(List<Edge> edges, Context context, Session session) {
 
+        if (isSubtreeLocking() && isPostgreSQL()) {
+            removeIndependentEdgesSetBased(edges, session);
+            return;
+        }
         String deltaTempTableName = computeDeltaTable(edges, context, session);
         try {
             int count;
@@ -962,6 +1030,44 @@ public class OrgClosureManager {
     }
     //endregion
 
+    //region Set-based updates (PostgreSQL, subtree locking mode)
+
+    // Delta is computed in a common table expression, so no temporary table (and index on it) has to be created.
+    // Note that all parts of the statement see the same snapshot of the closure table, so the rows to be inserted
+    // are determined using the rows reported by the update part.
+    private void addIndependentEdgesSetBased(List<Edge> edges, Session session) {
+        long start = System.currentTimeMillis();
+        String queryText = "with delta as (" + getDeltaSelectClause(edges) + "), " +
+                "upd as (update " + CLOSURE_TABLE_NAME + " cl set val = cl.val + delta.val from delta " +
+                "where cl.descendant_oid = delta.descendant_oid and cl.ancestor_oid = delta.ancestor_oid " +
+                "returning cl.descendant_oid, cl.ancestor_oid) " +
+                "insert into " + CLOSURE_TABLE_NAME + " (descendant_oid, ancestor_oid, val) " +
+                "select delta.descendant_oid, delta.ancestor_oid, delta.val from delta " +
+                "where not exists (select 1 from upd where upd.descendant_oid = delta.descendant_oid and upd.ancestor_oid = delta.ancestor_oid)";
+        int count = session.createSQLQuery(queryText).executeUpdate();
+        if (LOGGER.isTraceEnabled())
+            LOGGER.trace("Added {} records to closure table, set-based ({} ms)", count, System.currentTimeMillis() - start);
+        if (DUMP_TABLES) dumpOrgClosureTypeTable(session, CLOSURE_TABLE_NAME);
+    }
+
+    // Rows whose value drops to zero are deleted, others are updated; the two sets are disjoint, so they can be
+    // modified by one statement.
+    private void removeIndependentEdgesSetBased(List<Edge> edges, Session session) {
+        long start = System.currentTimeMillis();
+        String queryText = "with delta as (" + getDeltaSelectClause(edges) + "), " +
+                "del as (delete from " + CLOSURE_TABLE_NAME + " cl using delta " +
+                "where cl.descendant_oid = delta.descendant_oid and cl.ancestor_oid = delta.ancestor_oid and cl.val = delta.val " +
+                "returning cl.descendant_oid) " +
+                "update " + CLOSURE_TABLE_NAME + " cl set val = cl.val - delta.val from delta " +
+                "where cl.descendant_oid = delta.descendant_oid and cl.ancestor_oid = delta.ancestor_oid and cl.val <> delta.val";
+        int count = session.createSQLQuery(queryText).executeUpdate();
+        if (LOGGER.isTraceEnabled())
+            LOGGER.trace("Updated {} records in closure table, set-based ({} ms)", count, System.currentTimeMillis() - start);
+        if (DUMP_TABLES) dumpOrgClosureTypeTable(session, CLOSURE_TABLE_NAME);
+    }
+
+    //endregion
+
     //region Handling MODIFY
 
     private void handleModify(String oid, Collection<? extends ItemDelta> modifications,
@@ -978,6 +1084,8 @@ public class OrgClosureManager {
 
         parentsToDelete.removeAll(parentsToAdd);            // if something is deleted and the re-added we can skip this operation
 
+        lockAffectedSubtrees(oid, parentsToEdges(oid, livingParentsToDelete), parentsToEdges(oid, livingParentsToAdd), context, session);
+
         removeParentEdges(oid, livingParentsToDelete, context, session);
         addParentEdges(oid, livingParentsToAdd, context, session);
     }
@@ -1007,6 +1115,87 @@ public class OrgClosureManager {
 
     }
 
+    /**
+     * In SUBTREE locking mode, locks closure self-records ([X,X,1]) of all orgs whose closure rows can be read or written
+     * when the edges are added or removed: the object itself, descendants of edge tails and ancestors of edge heads.
+     * Any two operations that would touch the same closure rows have at least one such org in common, so they
+     * are serialized; operations in unrelated parts of the org structure can run in parallel.
+     *
+     * As the set of affected orgs can be changed by a concurrent transaction before our locks are acquired,
+     * it is re-computed after locking and any newly affected orgs are locked as well.
+     */
+    private void lockAffectedSubtrees(String oid, List<Edge> edgesToRemove, List<Edge> edgesToAdd, Context context, Session session) {
+        if (!isSubtreeLocking() || context == null || context.closureTableLocked) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        List<Edge> edges = new ArrayList<>(edgesToRemove);
+        edges.addAll(edgesToAdd);
+        for (int attempt = 1; ; attempt++) {
+            Set<String> toLock = getAffectedOids(edges, session);
+            toLock.add(oid);
+            toLock.removeAll(context.lockedOids);
+            if (toLock.isEmpty()) {
+                break;
+            }
+            if (attempt > MAX_SUBTREE_LOCKING_ATTEMPTS) {
+                LOGGER.debug("Affected subtrees are still changing after {} attempts, locking the whole closure table", MAX_SUBTREE_LOCKING_ATTEMPTS);
+                lockClosureTable(session);
+                context.closureTableLocked = true;
+                break;
+            }
+            lockOids(toLock, session);
+            context.lockedOids.addAll(toLock);
+        }
+        LOGGER.trace("Affected subtrees ({} orgs) locked in {} ms", context.lockedOids.size(), System.currentTimeMillis() - start);
+    }
+
+    private Set<String> getAffectedOids(List<Edge> edges, Session session) {
+        Set<String> tails = new HashSet<>();
+        Set<String> heads = new HashSet<>();
+        for (Edge edge : edges) {
+            tails.add(edge.getTail());
+            heads.add(edge.getHead());
+        }
+        Set<String> rv = new TreeSet<>(tails);
+        rv.addAll(heads);
+        if (!tails.isEmpty()) {
+            Query query = session.createSQLQuery("select descendant_oid from " + CLOSURE_TABLE_NAME + " where ancestor_oid in (:tails)")
+                    .addScalar("descendant_oid", StringType.INSTANCE);
+            query.setParameterList("tails", tails);
+            rv.addAll(query.list());
+        }
+        if (!heads.isEmpty()) {
+            Query query = session.createSQLQuery("select ancestor_oid from " + CLOSURE_TABLE_NAME + " where descendant_oid in (:heads)")
+                    .addScalar("ancestor_oid", StringType.INSTANCE);
+            query.setParameterList("heads", heads);
+            rv.addAll(query.list());
+        }
+        return rv;
+    }
+
+    // locks are acquired in OID order to minimize the risk of deadlocks (these are retried by the repository service anyway)
+    private void lockOids(Set<String> oids, Session session) {
+        String queryText;
+        if (isSQLServer()) {
+            queryText = "select descendant_oid from " + CLOSURE_TABLE_NAME + " with (updlock, rowlock) " +
+                    "where descendant_oid = ancestor_oid and descendant_oid in (:oids) order by descendant_oid";
+        } else {
+            queryText = "select descendant_oid from " + CLOSURE_TABLE_NAME + " " +
+                    "where descendant_oid = ancestor_oid and descendant_oid in (:oids) order by descendant_oid for update";
+        }
+        List<String> sorted = new ArrayList<>(new TreeSet<>(oids));
+        for (int i = 0; i < sorted.size(); i += LOCK_BATCH_SIZE) {
+            Query query = session.createSQLQuery(queryText).addScalar("descendant_oid", StringType.INSTANCE);
+            query.setParameterList("oids", sorted.subList(i, Math.min(i + LOCK_BATCH_SIZE, sorted.size())));
+            query.list();
+        }
+    }
+
+    private boolean isSubtreeLocking() {
+        return baseHelper.getConfiguration().getOrgClosureLocking() == LockingMode.SUBTREE;
+    }
+
     // returns table name
     private String computeDeltaTable(List<Edge> edges, Context context, Session session) {
 
@@ -1033,11 +1222,7 @@ public class OrgClosureManager {
         long start;
         int count;
 
-        String selectClause = "select t1.descendant_oid as descendant_oid, t2.ancestor_oid as ancestor_oid, " +
-                "sum(t1.val*t2.val) as val " +
-                "from " + CLOSURE_TABLE_NAME + " t1, " + CLOSURE_TABLE_NAME + " t2 " +
-                "where " + getWhereClause(edges) + " " +
-                "group by t1.descendant_oid, t2.ancestor_oid";
+        String selectClause = getDeltaSelectClause(edges);
 
         if (isSQLServer()) {
             // we create the table manually, because we want to have an index on it, and
@@ -1109,6 +1294,14 @@ public class OrgClosureManager {
         return deltaTempTableName;
     }
 
+    private String getDeltaSelectClause(List<Edge> edges) {
+        return "select t1.descendant_oid as descendant_oid, t2.ancestor_oid as ancestor_oid, " +
+                "sum(t1.val*t2.val) as val " +
+                "from " + CLOSURE_TABLE_NAME + " t1, " + CLOSURE_TABLE_NAME + " t2 " +
+                "where " + getWhereClause(edges) + " " +
+                "group by t1.descendant_oid, t2.ancestor_oid";
+    }
+
     private String generateDeltaTempTableName() {
         String deltaTempTableName;
         deltaTempTableName =
@@ -1414,8 +1607,45 @@ public class OrgClosureManager {
         }
     }
 
+    /**
+     * How concurrent closure updates are serialized.
+     *
+     * TABLE: the whole closure table is locked for each operation that might change the closure (on H2, Oracle
+     * and SQL Server; PostgreSQL and MySQL rely on transaction isolation only).
+     *
+     * SUBTREE: only closure rows of the affected orgs are locked (see lockAffectedSubtrees). On PostgreSQL the closure
+     * is then updated by set-based statements without temporary delta tables. H2 (without MVCC) locks the whole
+     * table on "select ... for update" anyway, so there the mode brings no parallelism; it is usable mainly for tests.
+     */
+    public static enum LockingMode {
+
+        TABLE("table"), SUBTREE("subtree");
+
+        private String value;
+
+        LockingMode(String value) {
+            this.value = value;
+        }
+
+        @Override
+        public String toString() {
+            return value;
+        }
+
+        public static LockingMode fromValue(String v) {
+            for (LockingMode m : LockingMode.values()) {
+                if (m.value.equals(v)) {
+                    return m;
+                }
+            }
+            throw new IllegalArgumentException(v);
+        }
+    }
+
     public static class Context {
         String temporaryTableName;
+        boolean closureTableLocked;
+        Set<String> lockedOids = new HashSet<>();           // used in SUBTREE locking mode
     }
     //endregion
 
@@ -0,0 +1,357 @@
+/*
+ * Copyright (c) 2010-2016 Evolveum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.evolveum.midpoint.repo.sql.helpers;
+
+import com.evolveum.midpoint.repo.sql.data.common.other.RObjectType;
+import com.evolveum.midpoint.util.exception.SystemException;
+import com.evolveum.midpoint.util.logging.Trace;
+import com.evolveum.midpoint.util.logging.TraceManager;
+import org.hibernate.Query;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
+import org.hibernate.jdbc.Work;
+import org.hibernate.type.IntegerType;
+import org.hibernate.type.StringType;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Computes the org closure from scratch, in parallel.
+ *
+ * The org graph (orgs and their parentOrgRef links) is read into memory and split into connected components,
+ * i.e. parts of the forest that do not share any org (typically one component per root, unless there are
+ * orgs with parents in more trees). Components are processed by worker threads: each worker computes
+ * closure rows for its component and passes them in batches to the calling thread, that inserts them
+ * into the closure table using JDBC batches (so the whole rebuild is done in the caller's transaction).
+ *
+ * For checking, closure rows are not stored anywhere: both the computed rows and the rows streamed from
+ * the closure table are reduced to a {@link Digest} (row count plus order-independent sum of row hashes).
+ *
+ * @author mederly
+ */
+class OrgClosureRebuilder {
+
+    private static final Trace LOGGER = TraceManager.getTrace(OrgClosureRebuilder.class);
+
+    private static final int BATCH_SIZE = 500;
+    private static final int QUEUE_CAPACITY = 100;          // in batches
+
+    private final Session session;
+    private final int threads;
+
+    OrgClosureRebuilder(Session session, int threads) {
+        this.session = session;
+        this.threads = threads;
+    }
+
+    /**
+     * Number of rows and a commutative hash of their content. Equal digests mean (with high probability) equal tables.
+     */
+    static class Digest {
+        private long count;
+        private long hashSum;
+
+        void add(String descendant, String ancestor, int val) {
+            count++;
+            hashSum += hash(descendant, ancestor, val);
+        }
+
+        synchronized void add(Digest other) {
+            count += other.count;
+            hashSum += other.hashSum;
+        }
+
+        long getCount() {
+            return count;
+        }
+
+        boolean matches(Digest other) {
+            return count == other.count && hashSum == other.hashSum;
+        }
+
+        private static long hash(String descendant, String ancestor, int val) {
+            long h = descendant.hashCode();
+            h = h * 0x9E3779B97F4A7C15L + ancestor.hashCode();
+            h = h * 0x9E3779B97F4A7C15L + val;
+            // final mixing (from MurmurHash3) so that similar rows do not produce similar hashes
+            h ^= h >>> 33;
+            h *= 0xff51afd7ed558ccdL;
+            h ^= h >>> 33;
+            h *= 0xc4ceb93fe53f4cd3L;
+            h ^= h >>> 33;
+            return h;
+        }
+    }
+
+    private static class Row {
+        final String descendant;
+        final String ancestor;
+        final int val;
+
+        Row(String descendant, String ancestor, int val) {
+            this.descendant = descendant;
+            this.ancestor = ancestor;
+            this.val = val;
+        }
+    }
+
+    // marks the end of a worker's output
+    private static final List<Row> END = new ArrayList<>();
+
+    /**
+     * Streams the current content of the closure table.
+     */
+    Digest computeTableDigest() {
+        long start = System.currentTimeMillis();
+        Digest digest = new Digest();
+        Query query = session.createSQLQuery("select descendant_oid, ancestor_oid, val from " + OrgClosureManager.CLOSURE_TABLE_NAME)
+                .addScalar("descendant_oid", StringType.INSTANCE)
+                .addScalar("ancestor_oid", StringType.INSTANCE)
+                .addScalar("val", IntegerType.INSTANCE);
+        query.setFetchSize(BATCH_SIZE);
+        ScrollableResults results = query.scroll(ScrollMode.FORWARD_ONLY);
+        try {
+            while (results.next()) {
+                digest.add((String) results.get(0), (String) results.get(1), (Integer) results.get(2));
+            }
+        } finally {
+            results.close();
+        }
+        LOGGER.info("{} entries read from the org closure table in {} ms", digest.getCount(), System.currentTimeMillis() - start);
+        return digest;
+    }
+
+    /**
+     * Computes the closure from the org graph. If insert is true, rows are inserted into the closure table
+     * (that is expected to be empty). Returns the digest of the computed rows.
+     */
+    Digest compute(final boolean insert) {
+        long start = System.currentTimeMillis();
+        final Map<String, List<String>> parents = readOrgGraph();
+        final ConcurrentLinkedQueue<List<String>> components = new ConcurrentLinkedQueue<>(splitIntoComponents(parents));
+        int workers = Math.max(1, Math.min(threads, components.size()));
+        LOGGER.info("Computing org closure for {} orgs in {} component(s) using {} thread(s)", parents.size(), components.size(), workers);
+
+        final BlockingQueue<List<Row>> output = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        final Digest digest = new Digest();
+        final List<Throwable> failures = Collections.synchronizedList(new ArrayList<Throwable>());
+        for (int i = 0; i < workers; i++) {
+            Thread worker = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Digest localDigest = new Digest();
+                    try {
+                        List<String> component;
+                        while ((component = components.poll()) != null && failures.isEmpty()) {
+                            computeComponent(component, parents, localDigest, insert ? output : null);
+                        }
+                    } catch (Throwable t) {
+                        LOGGER.error("Couldn't compute org closure", t);
+                        failures.add(t);
+                    } finally {
+                        digest.add(localDigest);
+                        putQuietly(output, END);
+                    }
+                }
+            }, "OrgClosureRebuilder-" + i);
+            worker.setDaemon(true);
+            worker.start();
+        }
+
+        int finished = 0;
+        long inserted = 0;
+        try {
+            while (finished < workers) {
+                List<Row> batch = output.take();
+                if (batch == END) {
+                    finished++;
+                } else if (failures.isEmpty()) {
+                    // in case of failure we continue reading the queue, so the workers are not blocked
+                    try {
+                        insertBatch(batch);
+                    } catch (RuntimeException e) {
+                        failures.add(e);
+                        continue;
+                    }
+                    inserted += batch.size();
+                    if (inserted % (BATCH_SIZE * 100) < batch.size()) {
+                        LOGGER.info("{} org closure entries inserted", inserted);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SystemException("Interrupted while computing org closure", e);
+        }
+        if (!failures.isEmpty()) {
+            Throwable t = failures.get(0);
+            throw new SystemException("Couldn't compute org closure: " + t.getMessage(), t);
+        }
+        LOGGER.info("Org closure computed in {} ms: {} entries{}", System.currentTimeMillis() - start, digest.getCount(),
+                insert ? " inserted" : "");
+        return digest;
+    }
+
+    // org -> its parents (only parents that are existing orgs are considered)
+    private Map<String, List<String>> readOrgGraph() {
+        Query orgsQuery = session.createQuery("select o.oid from ROrg o");
+        Map<String, List<String>> parents = new HashMap<>();
+        for (Object oid : orgsQuery.list()) {
+            parents.put((String) oid, new ArrayList<String>());
+        }
+        Query edgesQuery = session.createQuery("select parentRef.ownerOid, parentRef.targetOid from RObjectReference as parentRef" +
+                " join parentRef.owner as owner where parentRef.referenceType=0 and owner.objectTypeClass = :orgType");
+        edgesQuery.setParameter("orgType", RObjectType.ORG);
+        for (Object o : edgesQuery.list()) {
+            Object[] edge = (Object[]) o;
+            List<String> parentsOfChild = parents.get((String) edge[0]);
+            String parent = (String) edge[1];
+            if (parentsOfChild != null && parents.containsKey(parent) && !parentsOfChild.contains(parent)) {
+                parentsOfChild.add(parent);
+            }
+        }
+        return parents;
+    }
+
+    // uses union-find; the largest components go first so that they do not end up being processed last
+    private List<List<String>> splitIntoComponents(Map<String, List<String>> parents) {
+        Map<String, String> representative = new HashMap<>();
+        for (String oid : parents.keySet()) {
+            representative.put(oid, oid);
+        }
+        for (Map.Entry<String, List<String>> entry : parents.entrySet()) {
+            for (String parent : entry.getValue()) {
+                String r1 = find(representative, entry.getKey());
+                String r2 = find(representative, parent);
+                if (!r1.equals(r2)) {
+                    representative.put(r1, r2);
+                }
+            }
+        }
+        Map<String, List<String>> components = new HashMap<>();
+        for (String oid : parents.keySet()) {
+            String r = find(representative, oid);
+            List<String> component = components.get(r);
+            if (component == null) {
+                component = new ArrayList<>();
+                components.put(r, component);
+            }
+            component.add(oid);
+        }
+        List<List<String>> rv = new ArrayList<>(components.values());
+        rv.sort((c1, c2) -> Integer.compare(c2.size(), c1.size()));
+        return rv;
+    }
+
+    private String find(Map<String, String> representative, String oid) {
+        String root = oid;
+        while (!representative.get(root).equals(root)) {
+            root = representative.get(root);
+        }
+        // path compression
+        while (!oid.equals(root)) {
+            String next = representative.get(oid);
+            representative.put(oid, root);
+            oid = next;
+        }
+        return root;
+    }
+
+    private void computeComponent(List<String> component, Map<String, List<String>> parents, Digest digest,
+                                  BlockingQueue<List<Row>> output) throws InterruptedException {
+        // ancestors (with number of paths) for each org in the component; the org itself is included with 1
+        Map<String, Map<String, Integer>> ancestors = new HashMap<>();
+        List<Row> batch = new ArrayList<>(BATCH_SIZE);
+        for (String oid : component) {
+            Map<String, Integer> ancestorsOfOrg = computeAncestors(oid, parents, ancestors, new HashSet<String>());
+            for (Map.Entry<String, Integer> entry : ancestorsOfOrg.entrySet()) {
+                digest.add(oid, entry.getKey(), entry.getValue());
+                if (output != null) {
+                    batch.add(new Row(oid, entry.getKey(), entry.getValue()));
+                    if (batch.size() >= BATCH_SIZE) {
+                        output.put(batch);
+                        batch = new ArrayList<>(BATCH_SIZE);
+                    }
+                }
+            }
+        }
+        if (output != null && !batch.isEmpty()) {
+            output.put(batch);
+        }
+    }
+
+    private Map<String, Integer> computeAncestors(String oid, Map<String, List<String>> parents,
+                                                  Map<String, Map<String, Integer>> ancestors, Set<String> inProgress) {
+        Map<String, Integer> rv = ancestors.get(oid);
+        if (rv != null) {
+            return rv;
+        }
+        if (!inProgress.add(oid)) {
+            throw new IllegalStateException("Cycle in org structure detected; it involves org " + oid);
+        }
+        rv = new HashMap<>();
+        rv.put(oid, 1);
+        for (String parent : parents.get(oid)) {
+            for (Map.Entry<String, Integer> entry : computeAncestors(parent, parents, ancestors, inProgress).entrySet()) {
+                Integer existing = rv.get(entry.getKey());
+                rv.put(entry.getKey(), existing != null ? existing + entry.getValue() : entry.getValue());
+            }
+        }
+        inProgress.remove(oid);
+        ancestors.put(oid, rv);
+        return rv;
+    }
+
+    private void insertBatch(final List<Row> batch) {
+        session.doWork(new Work() {
+            @Override
+            public void execute(Connection connection) throws SQLException {
+                try (PreparedStatement stmt = connection.prepareStatement("insert into " + OrgClosureManager.CLOSURE_TABLE_NAME +
+                        " (descendant_oid, ancestor_oid, val) values (?, ?, ?)")) {
+                    for (Row row : batch) {
+                        stmt.setString(1, row.descendant);
+                        stmt.setString(2, row.ancestor);
+                        stmt.setInt(3, row.val);
+                        stmt.addBatch();
+                    }
+                    stmt.executeBatch();
+                }
+            }
+        });
+    }
+
+    private void putQuietly(BlockingQueue<List<Row>> queue, List<Row> item) {
+        try {
+            queue.put(item);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -51,6 +51,9 @@ public class SequenceHelper {
     @Autowired
     private BaseHelper baseHelper;
 
+    @Autowired
+    private ExtensionJsonHelper extensionJsonHelper;
+
     private static final Trace LOGGER = TraceManager.getTrace(SqlRepositoryServiceImpl.class);
     private static final Trace LOGGER_PERFORMANCE = TraceManager.getTrace(SqlRepositoryServiceImpl.PERFORMANCE_LOG_NAME);
 
@@ -112,6 +115,7 @@ public class SequenceHelper {
 
             objectUpdater.updateFullObject(rObject, prismObject);
             session.merge(rObject);
+            extensionJsonHelper.storeExtension(session, oid, rObject);
 
             LOGGER.trace("Before commit...");
             session.getTransaction().commit();
@@ -173,6 +177,7 @@ public class SequenceHelper {
 
             objectUpdater.updateFullObject(rObject, prismObject);
             session.merge(rObject);
+            extensionJsonHelper.storeExtension(session, oid, rObject);
 
             LOGGER.trace("Before commit...");
             session.getTransaction().commit();
@@ -36,19 +36,43 @@ public class QueryEngine2 {
 
     private SqlRepositoryConfiguration repoConfiguration;
     private PrismContext prismContext;
+    private QueryPlanCache queryPlanCache;
 
     public QueryEngine2(SqlRepositoryConfiguration config, PrismContext prismContext) {
+        this(config, prismContext, null);
+    }
+
+    public QueryEngine2(SqlRepositoryConfiguration config, PrismContext prismContext, QueryPlanCache queryPlanCache) {
         this.repoConfiguration = config;
         this.prismContext = prismContext;
+        this.queryPlanCache = queryPlanCache;
     }
 
     public RQuery interpret(ObjectQuery query, Class<? extends Containerable> type,
                             Collection<SelectorOptions<GetOperationOptions>> options,
                             boolean countingObjects, Session session) throws QueryException {
 
+        QueryPlanCache.Shape shape = null;
+        if (queryPlanCache != null) {
+            shape = queryPlanCache.createShape(query, type, options, countingObjects);
+            if (shape != null) {
+                RQuery cached = queryPlanCache.getQuery(shape, session);
+                if (cached != null) {
+                    return cached;
+                }
+            }
+        }
+
         QueryInterpreter2 interpreter = new QueryInterpreter2(repoConfiguration);
         RootHibernateQuery hibernateQuery = interpreter.interpret(query, type, options, prismContext, countingObjects, session);
 
-        return new RQueryImpl(hibernateQuery.getAsHqlQuery(session), hibernateQuery);
+        if (shape == null) {
+            return new RQueryImpl(hibernateQuery.getAsHqlQuery(session), hibernateQuery);
+        }
+        String text = hibernateQuery.getAsHqlText(0);        // fills in the parameters
+        queryPlanCache.store(shape, text, hibernateQuery);
+        return new RQueryImpl(RootHibernateQuery.createHqlQuery(session, text, hibernateQuery.getParameters(),
+                hibernateQuery.getMaxResults(), hibernateQuery.getFirstResult(), hibernateQuery.getResultTransformer()),
+                hibernateQuery);
     }
 }
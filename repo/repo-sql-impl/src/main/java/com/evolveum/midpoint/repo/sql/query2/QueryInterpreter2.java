@@ -22,7 +22,6 @@ import com.evolveum.midpoint.prism.PrismContext;
 import com.evolveum.midpoint.prism.path.ItemPath;
 import com.evolveum.midpoint.prism.polystring.PolyString;
 import com.evolveum.midpoint.prism.query.*;
-import com.evolveum.midpoint.repo.sql.ObjectPagingAfterOid;
 import com.evolveum.midpoint.repo.sql.SqlRepositoryConfiguration;
 import com.evolveum.midpoint.repo.sql.data.common.embedded.RPolyString;
 import com.evolveum.midpoint.repo.sql.query.QueryException;
@@ -231,6 +230,11 @@ public class QueryInterpreter2 {
             }
             // TODO can't be unified?
             if (propDefRes.getTargetDefinition() instanceof JpaAnyPropertyDefinition) {
+                if (repoConfiguration != null && repoConfiguration.isUseJsonbExtensions()
+                        && ExtensionJsonRestriction.isApplicable(propDefRes.getLinkDefinition())) {
+                    return new ExtensionJsonRestriction(context, valFilter, propDefRes.getEntityDefinition(), parent,
+                            (JpaAnyPropertyLinkDefinition) propDefRes.getLinkDefinition());
+                }
                 return new AnyPropertyRestriction(context, valFilter, propDefRes.getEntityDefinition(), parent, propDefRes.getLinkDefinition());
             } else {
                 return new PropertyRestriction(context, valFilter, propDefRes.getEntityDefinition(), parent, propDefRes.getLinkDefinition());
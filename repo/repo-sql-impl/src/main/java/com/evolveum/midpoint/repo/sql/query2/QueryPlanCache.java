@@ -0,0 +1,693 @@
+/*
+ * Copyright (c) 2010-2016 Evolveum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.evolveum.midpoint.repo.sql.query2;
+
+import com.evolveum.midpoint.prism.Containerable;
+import com.evolveum.midpoint.prism.ItemDefinition;
+import com.evolveum.midpoint.prism.PrismConstants;
+import com.evolveum.midpoint.prism.PrismPropertyDefinition;
+import com.evolveum.midpoint.prism.PrismPropertyValue;
+import com.evolveum.midpoint.prism.PrismReferenceValue;
+import com.evolveum.midpoint.prism.PrismValue;
+import com.evolveum.midpoint.prism.path.IdItemPathSegment;
+import com.evolveum.midpoint.prism.path.ItemPath;
+import com.evolveum.midpoint.prism.path.ItemPathSegment;
+import com.evolveum.midpoint.prism.path.NameItemPathSegment;
+import com.evolveum.midpoint.prism.polystring.PolyString;
+import com.evolveum.midpoint.prism.query.AllFilter;
+import com.evolveum.midpoint.prism.query.ComparativeFilter;
+import com.evolveum.midpoint.prism.query.ExistsFilter;
+import com.evolveum.midpoint.prism.query.InOidFilter;
+import com.evolveum.midpoint.prism.query.NaryLogicalFilter;
+import com.evolveum.midpoint.prism.query.NoneFilter;
+import com.evolveum.midpoint.prism.query.NotFilter;
+import com.evolveum.midpoint.prism.query.ObjectFilter;
+import com.evolveum.midpoint.prism.query.ObjectOrdering;
+import com.evolveum.midpoint.prism.query.ObjectPaging;
+import com.evolveum.midpoint.prism.query.ObjectPagingAfterOid;
+import com.evolveum.midpoint.prism.query.ObjectQuery;
+import com.evolveum.midpoint.prism.query.OrgFilter;
+import com.evolveum.midpoint.prism.query.PropertyValueFilter;
+import com.evolveum.midpoint.prism.query.RefFilter;
+import com.evolveum.midpoint.prism.query.SubstringFilter;
+import com.evolveum.midpoint.prism.query.TypeFilter;
+import com.evolveum.midpoint.prism.query.UndefinedFilter;
+import com.evolveum.midpoint.repo.sql.SqlPerformanceMonitor;
+import com.evolveum.midpoint.repo.sql.data.common.any.RAnyConverter;
+import com.evolveum.midpoint.repo.sql.data.common.enums.SchemaEnum;
+import com.evolveum.midpoint.repo.sql.query.RQuery;
+import com.evolveum.midpoint.repo.sql.query2.hqm.QueryParameterValue;
+import com.evolveum.midpoint.repo.sql.query2.hqm.RootHibernateQuery;
+import com.evolveum.midpoint.repo.sql.util.ClassMapper;
+import com.evolveum.midpoint.repo.sql.util.RUtil;
+import com.evolveum.midpoint.schema.GetOperationOptions;
+import com.evolveum.midpoint.schema.SelectorOptions;
+import com.evolveum.midpoint.util.logging.Trace;
+import com.evolveum.midpoint.util.logging.TraceManager;
+import com.evolveum.prism.xml.ns._public.types_3.PolyStringType;
+import org.hibernate.Session;
+import org.hibernate.transform.ResultTransformer;
+
+import javax.xml.datatype.XMLGregorianCalendar;
+import javax.xml.namespace.QName;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Cache of interpreted queries, keyed by the structural shape of the query: object type, filter tree without values
+ * (but with value types and everything else that influences the shape of the HQL), paging without values and options.
+ * Searches that differ only in values (e.g. "name = X" issued repeatedly with different X) reuse the HQL text
+ * and only the parameters are computed again.
+ *
+ * The interpreter transforms values in various ways before they become query parameters (lowercasing, "like"
+ * patterns, polystring orig/norm, enum and QName conversions, ...). Instead of mirroring that logic, the cache
+ * learns for each parameter how it is derived from the values of the query (leaves): after a miss, each parameter
+ * gets a set of candidate explanations - a constant or a known transformation of some leaf - that match the observed
+ * value. A cached plan is used only if all values that changed were already seen changing in a query that was fully
+ * interpreted and the HQL text stayed the same, and if all remaining explanations of every parameter agree.
+ * Otherwise the query is interpreted as before and the explanations that do not fit are discarded. Shapes that
+ * cannot be explained (e.g. JSONB extension conditions) are marked as not cacheable.
+ *
+ * Note that hibernate caches translation of HQL to SQL by itself; what is saved here is the interpretation
+ * of the query and generation of the HQL text.
+ *
+ * @author mederly
+ */
+public class QueryPlanCache {
+
+    private static final Trace LOGGER = TraceManager.getTrace(QueryPlanCache.class);
+
+    private static final String MAX_RESULTS = "#maxResults";
+    private static final String FIRST_RESULT = "#firstResult";
+
+    private static final Object NOT_DERIVABLE = new Object();
+
+    private final Map<String, Entry> entries;
+    private final SqlPerformanceMonitor performanceMonitor;
+
+    public QueryPlanCache(final int maxSize, SqlPerformanceMonitor performanceMonitor) {
+        this.entries = Collections.synchronizedMap(new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxSize;
+            }
+        });
+        this.performanceMonitor = performanceMonitor;
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Returns shape of the query, or null if the query cannot be cached (e.g. it contains expressions).
+     */
+    public Shape createShape(ObjectQuery query, Class<? extends Containerable> type,
+                             Collection<SelectorOptions<GetOperationOptions>> options, boolean countingObjects) {
+        Shape shape = new Shape();
+        shape.key.append(type.getName()).append(countingObjects ? ";count;" : ";search;").append(options).append(';');
+        if (query != null) {
+            if (!shape.appendFilter(query.getFilter()) || !shape.appendPaging(query.getPaging())) {
+                return null;
+            }
+        }
+        return shape;
+    }
+
+    /**
+     * Returns query created from the cached plan, or null if there's none or it cannot be used for these values.
+     * In the latter case the caller has to interpret the query and call {@link #store}.
+     */
+    public RQuery getQuery(Shape shape, Session session) {
+        Entry entry = entries.get(shape.getKey());
+        Binding binding = null;
+        if (entry != null) {
+            synchronized (entry) {
+                binding = entry.bind(shape.leaves);
+            }
+        }
+        if (binding == null) {
+            registerMiss();
+            return null;
+        }
+        registerHit();
+        LOGGER.trace("Using cached query plan for {}:\n{}", shape.getKey(), entry.hqlText);
+        return new RQueryImpl(RootHibernateQuery.createHqlQuery(session, entry.hqlText, binding.parameters,
+                binding.maxResults, binding.firstResult, entry.resultTransformer), null);
+    }
+
+    /**
+     * Records the result of (full) interpretation of a query of given shape.
+     * The parameters of hibernateQuery must be already filled-in, i.e. its text must have been generated.
+     */
+    public void store(Shape shape, String hqlText, RootHibernateQuery hibernateQuery) {
+        Entry entry = entries.get(shape.getKey());
+        if (entry == null) {
+            entries.put(shape.getKey(), new Entry(shape.leaves, hqlText, hibernateQuery));
+        } else {
+            synchronized (entry) {
+                entry.learn(shape.leaves, hqlText, hibernateQuery);
+            }
+        }
+    }
+
+    private void registerHit() {
+        if (performanceMonitor != null) {
+            performanceMonitor.registerQueryPlanCacheHit();
+        }
+    }
+
+    private void registerMiss() {
+        if (performanceMonitor != null) {
+            performanceMonitor.registerQueryPlanCacheMiss();
+        }
+    }
+
+    /**
+     * Structural key of a query plus its values (leaves) in the order of appearance.
+     */
+    public static class Shape {
+
+        private final StringBuilder key = new StringBuilder();
+        private final List<Object> leaves = new ArrayList<>();
+        private String keyString;
+
+        public String getKey() {
+            if (keyString == null) {
+                keyString = key.toString();
+            }
+            return keyString;
+        }
+
+        private boolean appendFilter(ObjectFilter filter) {
+            if (filter == null) {
+                key.append('-');
+                return true;
+            }
+            key.append(filter.getClass().getSimpleName());
+            if (filter instanceof AllFilter || filter instanceof NoneFilter || filter instanceof UndefinedFilter) {
+                return true;
+            } else if (filter instanceof NaryLogicalFilter) {
+                key.append('(');
+                for (ObjectFilter condition : ((NaryLogicalFilter) filter).getConditions()) {
+                    if (!appendFilter(condition)) {
+                        return false;
+                    }
+                    key.append(',');
+                }
+                key.append(')');
+                return true;
+            } else if (filter instanceof NotFilter) {
+                key.append('(');
+                boolean rv = appendFilter(((NotFilter) filter).getFilter());
+                key.append(')');
+                return rv;
+            } else if (filter instanceof TypeFilter) {
+                TypeFilter typeFilter = (TypeFilter) filter;
+                key.append('[').append(typeFilter.getType()).append("](");
+                boolean rv = appendFilter(typeFilter.getFilter());
+                key.append(')');
+                return rv;
+            } else if (filter instanceof ExistsFilter) {
+                ExistsFilter existsFilter = (ExistsFilter) filter;
+                key.append('[');
+                appendPath(existsFilter.getFullPath());
+                appendDefinition(existsFilter.getDefinition());
+                key.append("](");
+                boolean rv = appendFilter(existsFilter.getFilter());
+                key.append(')');
+                return rv;
+            } else if (filter instanceof InOidFilter) {
+                InOidFilter inOidFilter = (InOidFilter) filter;
+                if (inOidFilter.getExpression() != null) {
+                    return false;
+                }
+                Collection<String> oids = inOidFilter.getOids();
+                key.append('[').append(inOidFilter.isConsiderOwner()).append(',');
+                if (oids == null || oids.isEmpty()) {
+                    key.append(oids == null ? "null" : "empty");
+                } else {
+                    key.append('?');
+                    leaves.add(oids);
+                }
+                key.append(']');
+                return true;
+            } else if (filter instanceof OrgFilter) {
+                OrgFilter orgFilter = (OrgFilter) filter;
+                key.append('[').append(orgFilter.getScope()).append(',').append(orgFilter.isRoot()).append(',');
+                PrismReferenceValue orgRef = orgFilter.getOrgRef();
+                if (orgRef == null || orgRef.getOid() == null) {
+                    key.append("null");
+                } else {
+                    key.append('?');
+                    leaves.add(orgRef.getOid());
+                }
+                key.append(']');
+                return true;
+            } else if (filter instanceof RefFilter) {
+                return appendRefFilter((RefFilter) filter);
+            } else if (filter instanceof PropertyValueFilter) {
+                return appendPropertyValueFilter((PropertyValueFilter) filter);
+            } else {
+                return false;
+            }
+        }
+
+        private boolean appendRefFilter(RefFilter filter) {
+            if (filter.getExpression() != null) {
+                return false;
+            }
+            key.append('[');
+            appendPath(filter.getFullPath());
+            appendDefinition(filter.getDefinition());
+            List<PrismReferenceValue> values = filter.getValues();
+            if (values == null) {
+                key.append(";null");
+            } else {
+                for (PrismReferenceValue value : values) {
+                    key.append(';');
+                    appendNullableLeaf(value.getOid());
+                    QName relation = value.getRelation();
+                    if (relation == null) {
+                        key.append("null");
+                    } else if (relation.equals(PrismConstants.Q_ANY)) {
+                        key.append("any");
+                    } else {
+                        key.append('?');
+                        leaves.add(relation);
+                    }
+                    appendNullableLeaf(value.getTargetType());
+                }
+            }
+            key.append(']');
+            return true;
+        }
+
+        private boolean appendPropertyValueFilter(PropertyValueFilter<?> filter) {
+            if (filter.getExpression() != null) {
+                return false;
+            }
+            key.append('[');
+            appendPath(filter.getFullPath());
+            appendDefinition(filter.getDefinition());
+            key.append(';').append(filter.getMatchingRule());
+            if (filter.getRightHandSidePath() != null) {
+                key.append(";rhs:");
+                appendPath(filter.getRightHandSidePath());
+                appendDefinition(filter.getRightHandSideDefinition());
+            }
+            if (filter instanceof ComparativeFilter) {
+                key.append(';').append(((ComparativeFilter) filter).isEquals());
+            }
+            if (filter instanceof SubstringFilter) {
+                SubstringFilter substringFilter = (SubstringFilter) filter;
+                key.append(';').append(substringFilter.isAnchorStart()).append(',').append(substringFilter.isAnchorEnd());
+            }
+            List<? extends PrismValue> values = filter.getValues();
+            if (values == null) {
+                key.append(";null");
+            } else {
+                for (PrismValue value : values) {
+                    if (!(value instanceof PrismPropertyValue) || ((PrismPropertyValue) value).isRaw()) {
+                        return false;
+                    }
+                    Object realValue = ((PrismPropertyValue) value).getValue();
+                    if (!isSupportedValue(realValue)) {
+                        return false;
+                    }
+                    key.append(';').append(realValue.getClass().getName());
+                    if (realValue instanceof PolyString) {
+                        PolyString poly = (PolyString) realValue;
+                        key.append(',').append(poly.getOrig() != null).append(',').append(poly.getNorm() != null);
+                    } else if (realValue instanceof PolyStringType) {
+                        PolyStringType poly = (PolyStringType) realValue;
+                        key.append(',').append(poly.getOrig() != null).append(',').append(poly.getNorm() != null);
+                    }
+                    leaves.add(realValue);
+                }
+            }
+            key.append(']');
+            return true;
+        }
+
+        private boolean isSupportedValue(Object value) {
+            return value instanceof String || value instanceof PolyString || value instanceof PolyStringType
+                    || value instanceof QName || value instanceof Number || value instanceof Boolean
+                    || value instanceof Enum || value instanceof XMLGregorianCalendar || value instanceof Date;
+        }
+
+        private boolean appendPaging(ObjectPaging paging) {
+            if (paging == null) {
+                return true;
+            }
+            key.append(";paging:").append(paging.getClass().getSimpleName());
+            if (paging instanceof ObjectPagingAfterOid) {
+                key.append(',');
+                appendNullableLeaf(((ObjectPagingAfterOid) paging).getOidGreaterThan());
+            }
+            key.append(',');
+            appendNullableLeaf(paging.getOffset());
+            key.append(',');
+            appendNullableLeaf(paging.getMaxSize());
+            if (paging.getOrderingInstructions() != null) {
+                for (ObjectOrdering ordering : paging.getOrderingInstructions()) {
+                    key.append(',');
+                    appendPath(ordering.getOrderBy());
+                    key.append(' ').append(ordering.getDirection());
+                }
+            }
+            return true;
+        }
+
+        private void appendNullableLeaf(Object value) {
+            if (value == null) {
+                key.append("null");
+            } else {
+                key.append('?');
+                leaves.add(value);
+            }
+        }
+
+        // ItemPath.toString abbreviates namespaces, so we need our own (unambiguous) representation
+        private void appendPath(ItemPath path) {
+            if (path == null) {
+                key.append("null");
+                return;
+            }
+            for (ItemPathSegment segment : path.getSegments()) {
+                key.append('/');
+                if (segment instanceof NameItemPathSegment) {
+                    NameItemPathSegment nameSegment = (NameItemPathSegment) segment;
+                    key.append(nameSegment.isVariable() ? "$" : "").append(nameSegment.getName());
+                } else if (segment instanceof IdItemPathSegment) {
+                    key.append('#').append(((IdItemPathSegment) segment).getId());
+                } else {
+                    key.append(segment.getClass().getSimpleName());
+                }
+            }
+        }
+
+        private void appendDefinition(ItemDefinition definition) {
+            if (definition == null) {
+                return;
+            }
+            key.append('{').append(definition.getName()).append(',').append(definition.getTypeName())
+                    .append(',').append(definition.getMaxOccurs());
+            if (definition instanceof PrismPropertyDefinition) {
+                key.append(',').append(((PrismPropertyDefinition) definition).isIndexed());
+            }
+            key.append('}');
+        }
+    }
+
+    private static class Binding {
+        private final Map<String, QueryParameterValue> parameters = new HashMap<>();
+        private Integer maxResults;
+        private Integer firstResult;
+    }
+
+    private static class Entry {
+
+        private boolean cacheable = true;
+        private final String hqlText;
+        private final List<Object> leaves;
+        private final boolean[] varying;
+        private final Map<String, QueryParameterValue> parameters;
+        private final ResultTransformer resultTransformer;
+        private final Map<String, List<Derivation>> derivations = new HashMap<>();
+
+        private Entry(List<Object> leaves, String hqlText, RootHibernateQuery hibernateQuery) {
+            this.hqlText = hqlText;
+            this.leaves = leaves;
+            this.varying = new boolean[leaves.size()];
+            this.parameters = new HashMap<>(hibernateQuery.getParameters());
+            this.resultTransformer = hibernateQuery.getResultTransformer();
+            for (Map.Entry<String, QueryParameterValue> parameter : parameters.entrySet()) {
+                derivations.put(parameter.getKey(), findDerivations(parameter.getValue().getValue()));
+            }
+            derivations.put(MAX_RESULTS, findDerivations(hibernateQuery.getMaxResults()));
+            derivations.put(FIRST_RESULT, findDerivations(hibernateQuery.getFirstResult()));
+        }
+
+        private List<Derivation> findDerivations(Object value) {
+            List<Derivation> rv = new ArrayList<>();
+            rv.add(new Derivation(value));
+            for (int i = 0; i < leaves.size(); i++) {
+                for (Base base : Base.values()) {
+                    for (Form form : Form.values()) {
+                        Derivation derivation = new Derivation(i, base, form, value != null ? value.getClass() : null);
+                        if (derivation.matches(leaves, value)) {
+                            rv.add(derivation);
+                        }
+                    }
+                }
+            }
+            return rv;
+        }
+
+        private Binding bind(List<Object> currentLeaves) {
+            if (!cacheable) {
+                return null;
+            }
+            for (int i = 0; i < leaves.size(); i++) {
+                if (!varying[i] && !Objects.equals(leaves.get(i), currentLeaves.get(i))) {
+                    return null;        // not seen changing yet, so we have to check it
+                }
+            }
+            Binding binding = new Binding();
+            for (Map.Entry<String, List<Derivation>> entry : derivations.entrySet()) {
+                Object value = NOT_DERIVABLE;
+                for (Derivation derivation : entry.getValue()) {
+                    Object derived = derivation.derive(currentLeaves);
+                    if (derived == NOT_DERIVABLE || (value != NOT_DERIVABLE && !Objects.equals(value, derived))) {
+                        return null;    // ambiguous
+                    }
+                    value = derived;
+                }
+                if (MAX_RESULTS.equals(entry.getKey())) {
+                    binding.maxResults = (Integer) value;
+                } else if (FIRST_RESULT.equals(entry.getKey())) {
+                    binding.firstResult = (Integer) value;
+                } else {
+                    binding.parameters.put(entry.getKey(), new QueryParameterValue(value, parameters.get(entry.getKey()).getType()));
+                }
+            }
+            return binding;
+        }
+
+        private void learn(List<Object> currentLeaves, String currentHqlText, RootHibernateQuery hibernateQuery) {
+            if (!cacheable) {
+                return;
+            }
+            Map<String, QueryParameterValue> currentParameters = hibernateQuery.getParameters();
+            if (!hqlText.equals(currentHqlText) || !parameters.keySet().equals(currentParameters.keySet())) {
+                markNotCacheable("HQL text differs");
+                return;
+            }
+            for (Map.Entry<String, QueryParameterValue> parameter : currentParameters.entrySet()) {
+                if (!Objects.equals(parameters.get(parameter.getKey()).getType(), parameter.getValue().getType())
+                        || !prune(parameter.getKey(), currentLeaves, parameter.getValue().getValue())) {
+                    return;
+                }
+            }
+            if (!prune(MAX_RESULTS, currentLeaves, hibernateQuery.getMaxResults())
+                    || !prune(FIRST_RESULT, currentLeaves, hibernateQuery.getFirstResult())) {
+                return;
+            }
+            for (int i = 0; i < leaves.size(); i++) {
+                if (!Objects.equals(leaves.get(i), currentLeaves.get(i))) {
+                    varying[i] = true;
+                }
+            }
+        }
+
+        private boolean prune(String name, List<Object> currentLeaves, Object value) {
+            List<Derivation> candidates = derivations.get(name);
+            List<Derivation> remaining = new ArrayList<>(candidates.size());
+            for (Derivation derivation : candidates) {
+                if (derivation.matches(currentLeaves, value)) {
+                    remaining.add(derivation);
+                }
+            }
+            if (remaining.isEmpty()) {
+                markNotCacheable("value of '" + name + "' cannot be derived from the query");
+                return false;
+            }
+            derivations.put(name, remaining);
+            return true;
+        }
+
+        private void markNotCacheable(String reason) {
+            LOGGER.debug("Query plan will not be cached ({}):\n{}", reason, hqlText);
+            cacheable = false;
+            derivations.clear();
+        }
+    }
+
+    /**
+     * Explanation of a parameter value: either a constant or a transformation of a leaf value.
+     */
+    private static class Derivation {
+
+        private final Object constant;
+        private final int leafIndex;
+        private final Base base;
+        private final Form form;
+        private final Class<?> targetClass;
+
+        private Derivation(Object constant) {
+            this(constant, -1, null, null, null);
+        }
+
+        private Derivation(int leafIndex, Base base, Form form, Class<?> targetClass) {
+            this(null, leafIndex, base, form, targetClass);
+        }
+
+        private Derivation(Object constant, int leafIndex, Base base, Form form, Class<?> targetClass) {
+            this.constant = constant;
+            this.leafIndex = leafIndex;
+            this.base = base;
+            this.form = form;
+            this.targetClass = targetClass;
+        }
+
+        private Object derive(List<Object> leaves) {
+            if (leafIndex < 0) {
+                return constant;
+            }
+            try {
+                Object value = base.apply(leaves.get(leafIndex), targetClass);
+                if (value == NOT_DERIVABLE || form == Form.AS_IS) {
+                    return value;
+                }
+                return value instanceof String ? form.apply((String) value) : NOT_DERIVABLE;
+            } catch (RuntimeException e) {
+                return NOT_DERIVABLE;
+            }
+        }
+
+        private boolean matches(List<Object> leaves, Object value) {
+            Object derived = derive(leaves);
+            return derived != NOT_DERIVABLE && Objects.equals(derived, value);
+        }
+    }
+
+    /**
+     * Conversions of values done by restrictions (PropertyRestriction, ReferenceRestriction, AnyPropertyRestriction, ...).
+     */
+    private enum Base {
+        IDENTITY {
+            @Override
+            Object apply(Object leaf, Class<?> targetClass) {
+                return leaf;
+            }
+        },
+        ORIG {
+            @Override
+            Object apply(Object leaf, Class<?> targetClass) {
+                if (leaf instanceof PolyString) {
+                    return ((PolyString) leaf).getOrig();
+                } else if (leaf instanceof PolyStringType) {
+                    return ((PolyStringType) leaf).getOrig();
+                } else {
+                    return NOT_DERIVABLE;
+                }
+            }
+        },
+        NORM {
+            @Override
+            Object apply(Object leaf, Class<?> targetClass) {
+                if (leaf instanceof PolyString) {
+                    return ((PolyString) leaf).getNorm();
+                } else if (leaf instanceof PolyStringType) {
+                    return ((PolyStringType) leaf).getNorm();
+                } else {
+                    return NOT_DERIVABLE;
+                }
+            }
+        },
+        QNAME_TO_STRING {
+            @Override
+            Object apply(Object leaf, Class<?> targetClass) {
+                return leaf instanceof QName ? RUtil.qnameToString((QName) leaf) : NOT_DERIVABLE;
+            }
+        },
+        HQL_TYPE {
+            @Override
+            Object apply(Object leaf, Class<?> targetClass) {
+                return leaf instanceof QName ? ClassMapper.getHQLTypeForQName((QName) leaf) : NOT_DERIVABLE;
+            }
+        },
+        AGGREGATED {
+            @Override
+            Object apply(Object leaf, Class<?> targetClass) {
+                return RAnyConverter.getAggregatedRepoObject(leaf);
+            }
+        },
+        REPO_ENUM {
+            @Override
+            @SuppressWarnings("unchecked")
+            Object apply(Object leaf, Class<?> targetClass) {
+                if (!(leaf instanceof Enum) || targetClass == null || !targetClass.isEnum()) {
+                    return NOT_DERIVABLE;
+                }
+                if (SchemaEnum.class.isAssignableFrom(targetClass)) {
+                    return RUtil.getRepoEnumValue(leaf, (Class) targetClass);
+                }
+                for (Object constant : targetClass.getEnumConstants()) {
+                    if (((Enum) constant).name().equals(((Enum) leaf).name())) {
+                        return constant;
+                    }
+                }
+                return NOT_DERIVABLE;
+            }
+        };
+
+        abstract Object apply(Object leaf, Class<?> targetClass);
+    }
+
+    /**
+     * Transformations of string values done by matchers and conditions (ignore case, "like" patterns).
+     */
+    private enum Form {
+        AS_IS, LOWER, ANYWHERE, START, END, LOWER_ANYWHERE, LOWER_START, LOWER_END;
+
+        String apply(String value) {
+            switch (this) {
+                case LOWER: return value.toLowerCase();
+                case ANYWHERE: return "%" + value + "%";
+                case START: return value + "%";
+                case END: return "%" + value;
+                case LOWER_ANYWHERE: return ("%" + value + "%").toLowerCase();
+                case LOWER_START: return (value + "%").toLowerCase();
+                case LOWER_END: return ("%" + value).toLowerCase();
+                default: return value;
+            }
+        }
+    }
+}
@@ -131,6 +131,38 @@ public class JpaEntityDefinition extends JpaDataNodeDefinition implements DebugD
         }
     }
 
+    /**
+     * Returns true if any item at or under given path (relative to this entity) is stored in a collection,
+     * i.e. outside the entity's own row.
+     *
+     * Self-pointing links (metadata, construction, ...) are not followed, as the items they contain are
+     * described by links of this entity itself (e.g. metadata/createApproverRef).
+     *
+     * @param path Path without ID segments. Empty path means the whole entity.
+     */
+    public boolean containsCollection(ItemPath path) {
+        for (JpaLinkDefinition<?> link : definitions) {
+            ItemPath linkPath = link.getItemPath();
+            ItemPath remainder;
+            if (linkPath.startsWith(path)) {            // link is at or under the path
+                remainder = ItemPath.EMPTY_PATH;
+            } else if (path.startsWith(linkPath)) {     // path goes through the link
+                remainder = path.tail(linkPath.size());
+            } else {
+                continue;
+            }
+            JpaDataNodeDefinition target = link.getTargetDefinition();
+            if (link.isMultivalued() || target instanceof JpaAnyContainerDefinition) {
+                return true;
+            }
+            if (link.hasJpaRepresentation() && target instanceof JpaEntityDefinition
+                    && ((JpaEntityDefinition) target).containsCollection(remainder)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     public void setSuperclassDefinition(JpaEntityDefinition superclassDefinition) {
         this.superclassDefinition = superclassDefinition;
     }
@@ -83,6 +83,15 @@ public class RootHibernateQuery extends HibernateQuery {
     public Query getAsHqlQuery(Session session) {
         String text = getAsHqlText(0);
         LOGGER.trace("HQL text generated:\n{}", text);
+        return createHqlQuery(session, text, parameters, maxResults, firstResult, resultTransformer);
+    }
+
+    /**
+     * Creates hibernate query from HQL text and parameters that were produced by getAsHqlText.
+     * (Beware: the parameters are registered while the text is being generated.)
+     */
+    public static Query createHqlQuery(Session session, String text, Map<String, QueryParameterValue> parameters,
+                                       Integer maxResults, Integer firstResult, ResultTransformer resultTransformer) {
         Query query = session.createQuery(text);
         for (Map.Entry<String,QueryParameterValue> parameter : parameters.entrySet()) {
             String name = parameter.getKey();
@@ -128,6 +137,18 @@ public class RootHibernateQuery extends HibernateQuery {
         this.firstResult = offset;
     }
 
+    public Integer getMaxResults() {
+        return maxResults;
+    }
+
+    public Integer getFirstResult() {
+        return firstResult;
+    }
+
+    public ResultTransformer getResultTransformer() {
+        return resultTransformer;
+    }
+
     public void setResultTransformer(ResultTransformer resultTransformer) {
         this.resultTransformer = resultTransformer;
     }
@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2010-2016 Evolveum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.evolveum.midpoint.repo.sql.query2.hqm.condition;
+
+import com.evolveum.midpoint.repo.sql.query2.hqm.HibernateQuery;
+import com.evolveum.midpoint.repo.sql.query2.hqm.RootHibernateQuery;
+import org.apache.commons.lang.Validate;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Condition on object extension stored as JSONB, evaluated by one of the functions registered
+ * in MidPointPostgreSQLDialect, e.g. "mp_ext_contains(u.oid, :ext) = true".
+ *
+ * @author mederly
+ */
+public class ExtensionJsonCondition extends Condition {
+
+    private final String function;
+    private final String oidPath;
+    private final List<Object> arguments;
+    private final boolean expectedResult;
+
+    public ExtensionJsonCondition(RootHibernateQuery rootHibernateQuery, String function, String oidPath,
+                                  boolean expectedResult, Object... arguments) {
+        super(rootHibernateQuery);
+        Validate.notNull(function, "function");
+        Validate.notNull(oidPath, "oidPath");
+        this.function = function;
+        this.oidPath = oidPath;
+        this.arguments = Arrays.asList(arguments);
+        this.expectedResult = expectedResult;
+    }
+
+    @Override
+    public void dumpToHql(StringBuilder sb, int indent) {
+        HibernateQuery.indent(sb, indent);
+        sb.append(function).append("(").append(oidPath);
+        for (Object argument : arguments) {
+            String parameterName = rootHibernateQuery.addParameter("ext", argument);
+            sb.append(", :").append(parameterName);
+        }
+        sb.append(") = ").append(expectedResult);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        ExtensionJsonCondition that = (ExtensionJsonCondition) o;
+
+        if (expectedResult != that.expectedResult) return false;
+        if (!function.equals(that.function)) return false;
+        if (!oidPath.equals(that.oidPath)) return false;
+        return arguments.equals(that.arguments);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = function.hashCode();
+        result = 31 * result + oidPath.hashCode();
+        result = 31 * result + arguments.hashCode();
+        result = 31 * result + (expectedResult ? 1 : 0);
+        return result;
+    }
+}
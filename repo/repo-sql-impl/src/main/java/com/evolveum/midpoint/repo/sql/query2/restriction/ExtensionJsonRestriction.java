@@ -0,0 +1,220 @@
+/*
+ * Copyright (c) 2010-2016 Evolveum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.evolveum.midpoint.repo.sql.query2.restriction;
+
+import com.evolveum.midpoint.prism.path.ItemPath;
+import com.evolveum.midpoint.prism.polystring.PolyString;
+import com.evolveum.midpoint.prism.query.PropertyValueFilter;
+import com.evolveum.midpoint.repo.sql.data.common.any.ExtensionJsonConverter;
+import com.evolveum.midpoint.repo.sql.data.common.any.RAnyConverter;
+import com.evolveum.midpoint.repo.sql.data.common.type.RObjectExtensionType;
+import com.evolveum.midpoint.repo.sql.query.QueryException;
+import com.evolveum.midpoint.repo.sql.query2.InterpretationContext;
+import com.evolveum.midpoint.repo.sql.query2.definition.JpaAnyPropertyLinkDefinition;
+import com.evolveum.midpoint.repo.sql.query2.definition.JpaEntityDefinition;
+import com.evolveum.midpoint.repo.sql.query2.definition.JpaLinkDefinition;
+import com.evolveum.midpoint.repo.sql.query2.hqm.RootHibernateQuery;
+import com.evolveum.midpoint.repo.sql.query2.hqm.condition.AndCondition;
+import com.evolveum.midpoint.repo.sql.query2.hqm.condition.Condition;
+import com.evolveum.midpoint.repo.sql.query2.hqm.condition.ExtensionJsonCondition;
+import com.evolveum.midpoint.repo.sql.query2.matcher.PolyStringMatcher;
+import com.evolveum.midpoint.repo.sql.query2.matcher.StringMatcher;
+import com.evolveum.midpoint.repo.sql.query2.resolution.HqlDataInstance;
+import com.evolveum.midpoint.repo.sql.util.MidPointPostgreSQLDialect;
+import com.evolveum.midpoint.repo.sql.util.RUtil;
+import org.apache.commons.lang.StringUtils;
+
+import java.util.Date;
+
+/**
+ * Restriction on object extension item that is stored in m_object.ext JSONB column
+ * (see SqlRepositoryConfiguration.isUseJsonbExtensions). Instead of joining m_object_ext_* tables, the value
+ * is tested by functions registered in MidPointPostgreSQLDialect. Equality is translated to JSONB containment
+ * (indexed), other comparisons and substring matching to a test of individual values of the item.
+ *
+ * @author mederly
+ */
+public class ExtensionJsonRestriction extends ItemValueRestriction<PropertyValueFilter> {
+
+    private static final String SCALAR = "{}";
+    private static final String POLY_ORIG = "{" + ExtensionJsonConverter.POLY_ORIG + "}";
+    private static final String POLY_NORM = "{" + ExtensionJsonConverter.POLY_NORM + "}";
+
+    private final JpaAnyPropertyLinkDefinition linkDefinition;
+
+    public ExtensionJsonRestriction(InterpretationContext context, PropertyValueFilter filter, JpaEntityDefinition baseEntityDefinition,
+                                    Restriction parent, JpaAnyPropertyLinkDefinition linkDefinition) {
+        super(context, filter, baseEntityDefinition, parent);
+        this.linkDefinition = linkDefinition;
+    }
+
+    public static boolean isApplicable(JpaLinkDefinition linkDefinition) {
+        return linkDefinition instanceof JpaAnyPropertyLinkDefinition
+                && ((JpaAnyPropertyLinkDefinition) linkDefinition).getOwnerType() == RObjectExtensionType.EXTENSION;
+    }
+
+    @Override
+    public Condition interpret() throws QueryException {
+        // extension values are not joined; we only need the object carrying the extension
+        ItemPath objectPath = getItemPath().allExceptLast().allExceptLast();
+        HqlDataInstance objectInstance;
+        if (ItemPath.isNullOrEmpty(objectPath)) {
+            objectInstance = getBaseHqlEntity();
+        } else {
+            objectInstance = getItemPathResolver().resolveItemPath(objectPath, null, getBaseHqlEntity(), false);
+        }
+        setHqlDataInstance(objectInstance);
+        return interpretInternal();
+    }
+
+    @Override
+    public Condition interpretInternal() throws QueryException {
+        if (filter.getRightHandSidePath() != null) {
+            throw new QueryException("Comparing extension items with other items is not supported when extensions are stored as JSONB: " + filter);
+        }
+
+        String oidPath = getHqlDataInstance().getHqlPath() + ".oid";
+        String itemName = RUtil.qnameToString(itemDefinition != null ? itemDefinition.getName() : linkDefinition.getItemName());
+        ItemRestrictionOperation operation = findOperationForFilter(filter);
+        Object value = RAnyConverter.getAggregatedRepoObject(getValue(filter));
+        String matchingRule = filter.getMatchingRule() != null ? filter.getMatchingRule().getLocalPart() : null;
+        RootHibernateQuery hibernateQuery = getContext().getHibernateQuery();
+
+        if (value == null) {
+            if (operation != ItemRestrictionOperation.EQ) {
+                throw new QueryException("Null value is supported only for equality of extension items: " + filter);
+            }
+            // no value present
+            return new ExtensionJsonCondition(hibernateQuery, MidPointPostgreSQLDialect.EXT_CONTAINS, oidPath, false,
+                    ExtensionJsonConverter.createContainmentJson(itemName, null));
+        }
+
+        if (value instanceof PolyString) {
+            return createPolyStringCondition(hibernateQuery, oidPath, itemName, operation, (PolyString) value, matchingRule);
+        } else if (value instanceof String) {
+            boolean ignoreCase = StringMatcher.IGNORE_CASE.equalsIgnoreCase(matchingRule);
+            if (operation == ItemRestrictionOperation.EQ && !ignoreCase) {
+                return createContains(hibernateQuery, oidPath, itemName, ExtensionJsonConverter.scalarToJson(value));
+            }
+            return createComparison(hibernateQuery, oidPath, itemName, operation, SCALAR, (String) value, ignoreCase);
+        } else if (value instanceof Date) {
+            String text = ExtensionJsonConverter.formatDate((Date) value);
+            if (operation == ItemRestrictionOperation.EQ) {
+                return createContains(hibernateQuery, oidPath, itemName, ExtensionJsonConverter.scalarToJson(value));
+            }
+            checkComparison(operation);
+            return createComparison(hibernateQuery, oidPath, itemName, operation, SCALAR, text, false);
+        } else if (value instanceof Long) {
+            if (operation == ItemRestrictionOperation.EQ) {
+                return createContains(hibernateQuery, oidPath, itemName, ExtensionJsonConverter.scalarToJson(value));
+            }
+            checkComparison(operation);
+            return new ExtensionJsonCondition(hibernateQuery,
+                    MidPointPostgreSQLDialect.getExtensionComparisonFunction(operation.symbol(), true, false),
+                    oidPath, true, itemName, SCALAR, value);
+        } else if (value instanceof Boolean) {
+            if (operation != ItemRestrictionOperation.EQ) {
+                throw new QueryException("Only equality is supported for boolean extension items: " + filter);
+            }
+            return createContains(hibernateQuery, oidPath, itemName, ExtensionJsonConverter.scalarToJson(value));
+        } else {
+            throw new QueryException("Unsupported value of extension item when extensions are stored as JSONB: "
+                    + value.getClass() + " in " + filter);
+        }
+    }
+
+    private Condition createPolyStringCondition(RootHibernateQuery hibernateQuery, String oidPath, String itemName,
+                                                ItemRestrictionOperation operation, PolyString value, String matchingRule)
+            throws QueryException {
+        boolean orig;
+        boolean norm;
+        if (StringUtils.isEmpty(matchingRule) || PolyStringMatcher.STRICT.equals(matchingRule)
+                || PolyStringMatcher.STRICT_IGNORE_CASE.equals(matchingRule)) {
+            orig = norm = true;
+        } else if (PolyStringMatcher.ORIG.equals(matchingRule) || PolyStringMatcher.ORIG_IGNORE_CASE.equals(matchingRule)) {
+            orig = true;
+            norm = false;
+        } else if (PolyStringMatcher.NORM.equals(matchingRule) || PolyStringMatcher.NORM_IGNORE_CASE.equals(matchingRule)) {
+            orig = false;
+            norm = true;
+        } else {
+            throw new QueryException("Unknown matcher '" + matchingRule + "'.");
+        }
+        boolean ignoreCase = PolyStringMatcher.STRICT_IGNORE_CASE.equals(matchingRule)
+                || PolyStringMatcher.ORIG_IGNORE_CASE.equals(matchingRule)
+                || PolyStringMatcher.NORM_IGNORE_CASE.equals(matchingRule);
+
+        if (operation == ItemRestrictionOperation.EQ && !ignoreCase) {
+            return createContains(hibernateQuery, oidPath, itemName, ExtensionJsonConverter.polyStringToJson(
+                    orig ? value.getOrig() : null, norm ? value.getNorm() : null));
+        }
+        // like the row-based variant, orig and norm are tested separately (not necessarily in the same value)
+        AndCondition conjunction = hibernateQuery.createAnd();
+        if (orig) {
+            conjunction.add(createComparison(hibernateQuery, oidPath, itemName, operation, POLY_ORIG, value.getOrig(), ignoreCase));
+        }
+        if (norm) {
+            conjunction.add(createComparison(hibernateQuery, oidPath, itemName, operation, POLY_NORM, value.getNorm(), ignoreCase));
+        }
+        return conjunction;
+    }
+
+    private Condition createContains(RootHibernateQuery hibernateQuery, String oidPath, String itemName, String valueJson) {
+        return new ExtensionJsonCondition(hibernateQuery, MidPointPostgreSQLDialect.EXT_CONTAINS, oidPath, true,
+                ExtensionJsonConverter.createContainmentJson(itemName, valueJson));
+    }
+
+    private Condition createComparison(RootHibernateQuery hibernateQuery, String oidPath, String itemName,
+                                       ItemRestrictionOperation operation, String valuePath, String value, boolean ignoreCase)
+            throws QueryException {
+        String operator;
+        switch (operation) {
+            case EQ: case GT: case GE: case LT: case LE:
+                operator = operation.symbol();
+                break;
+            case STARTS_WITH:
+                operator = "like";
+                value = value + "%";
+                break;
+            case ENDS_WITH:
+                operator = "like";
+                value = "%" + value;
+                break;
+            case SUBSTRING:
+                operator = "like";
+                value = "%" + value + "%";
+                break;
+            default:
+                throw new QueryException("Unsupported operation '" + operation + "' for extension item in " + filter);
+        }
+        if (ignoreCase) {
+            value = value.toLowerCase();
+        }
+        return new ExtensionJsonCondition(hibernateQuery,
+                MidPointPostgreSQLDialect.getExtensionComparisonFunction(operator, false, ignoreCase),
+                oidPath, true, itemName, valuePath, value);
+    }
+
+    private void checkComparison(ItemRestrictionOperation operation) throws QueryException {
+        switch (operation) {
+            case GT: case GE: case LT: case LE:
+                return;
+            default:
+                throw new QueryException("Unsupported operation '" + operation + "' for extension item in " + filter);
+        }
+    }
+}
@@ -17,6 +17,8 @@
 package com.evolveum.midpoint.repo.sql.util;
 
 import org.hibernate.dialect.PostgresPlusDialect;
+import org.hibernate.dialect.function.SQLFunctionTemplate;
+import org.hibernate.type.StandardBasicTypes;
 import org.hibernate.type.descriptor.sql.LongVarbinaryTypeDescriptor;
 import org.hibernate.type.descriptor.sql.SqlTypeDescriptor;
 
@@ -27,8 +29,50 @@ import java.sql.Types;
  */
 public class MidPointPostgreSQLDialect extends PostgresPlusDialect {
 
+    /**
+     * Functions for querying extension values stored in m_object.ext JSONB column (see ExtensionJsonHelper).
+     * The first argument is object OID. EXT_CONTAINS(oid, json) tests containment of given JSON document,
+     * so it can use GIN index on the column. Comparison functions (see getExtensionComparisonFunction) take
+     * item name, path within the value (text[], '{}' for scalars, '{o}' or '{n}' for polystrings) and the value
+     * to compare with; they test whether any value of the item matches.
+     */
+    public static final String EXT_CONTAINS = "mp_ext_contains";
+    private static final String EXT_COMPARISON_PREFIX = "mp_ext_";
+
+    private static final String[][] EXT_OPERATORS = {
+            {"eq", "="}, {"gt", ">"}, {"ge", ">="}, {"lt", "<"}, {"le", "<="}, {"like", "like"}};
+
     public MidPointPostgreSQLDialect() {
         registerColumnType(Types.BLOB, "bytea");
+
+        registerFunction(EXT_CONTAINS, new SQLFunctionTemplate(StandardBasicTypes.BOOLEAN,
+                "exists (select 1 from m_object ext_ where ext_.oid = ?1 and ext_.ext @> cast(?2 as jsonb))"));
+        for (String[] operator : EXT_OPERATORS) {
+            registerExtensionComparison(operator[0], operator[1], "text", "(extv_ #>> cast(?3 as text[]))");
+            registerExtensionComparison(operator[0], operator[1], "ci", "lower(extv_ #>> cast(?3 as text[]))");
+            registerExtensionComparison(operator[0], operator[1], "num", "cast(extv_ #>> cast(?3 as text[]) as numeric)");
+        }
+    }
+
+    private void registerExtensionComparison(String operatorName, String operator, String kind, String valueExpression) {
+        registerFunction(EXT_COMPARISON_PREFIX + kind + "_" + operatorName, new SQLFunctionTemplate(StandardBasicTypes.BOOLEAN,
+                "exists (select 1 from m_object ext_, jsonb_array_elements(ext_.ext -> ?2) extv_ where ext_.oid = ?1 and "
+                        + valueExpression + " " + operator + " ?4)"));
+    }
+
+    /**
+     * @param operator SQL operator: =, >, >=, <, <= or like
+     * @param numeric whether values are compared as numbers
+     * @param ignoreCase whether values are compared case-insensitively (the value to compare with has to be lowercase)
+     */
+    public static String getExtensionComparisonFunction(String operator, boolean numeric, boolean ignoreCase) {
+        String kind = numeric ? "num" : (ignoreCase ? "ci" : "text");
+        for (String[] op : EXT_OPERATORS) {
+            if (op[1].equals(operator)) {
+                return EXT_COMPARISON_PREFIX + kind + "_" + op[0];
+            }
+        }
+        throw new IllegalArgumentException("Unsupported operator for extension values: " + operator);
     }
 
     @Override
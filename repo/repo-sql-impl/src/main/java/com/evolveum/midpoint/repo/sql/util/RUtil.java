@@ -19,6 +19,8 @@ package com.evolveum.midpoint.repo.sql.util;
 import com.evolveum.midpoint.prism.ItemDefinition;
 import com.evolveum.midpoint.prism.Objectable;
 import com.evolveum.midpoint.prism.PrismContext;
+import com.evolveum.midpoint.prism.PrismParserNoIO;
+import com.evolveum.midpoint.prism.lex.binary.BinaryLexicalProcessor;
 import com.evolveum.midpoint.prism.query.LogicalFilter;
 import com.evolveum.midpoint.prism.query.ObjectFilter;
 import com.evolveum.midpoint.prism.query.ObjectQuery;
@@ -62,6 +64,7 @@ import javax.xml.namespace.QName;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.UnsupportedEncodingException;
 import java.lang.reflect.Field;
 import java.util.ArrayList;
 import java.util.HashSet;
@@ -437,6 +440,30 @@ public final class RUtil {
         return array;
     }
 
+    /**
+     * Serializes the element directly into (optionally gzipped) byte array, i.e. without creating intermediate String.
+     */
+    public static byte[] getByteArrayFromElement(Element element, boolean compress) {
+        GZIPOutputStream gzip = null;
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            if (compress) {
+                gzip = new GZIPOutputStream(out);
+                DOMUtil.serializeDOMToStream(element, gzip);
+                gzip.close();
+            } else {
+                DOMUtil.serializeDOMToStream(element, out);
+            }
+            out.close();
+
+            return out.toByteArray();
+        } catch (Exception ex) {
+            throw new SystemException("Couldn't save full xml object, reason: " + ex.getMessage(), ex);
+        } finally {
+            IOUtils.closeQuietly(gzip);
+        }
+    }
+
     public static String getXmlFromByteArray(byte[] array, boolean compressed) {
         String xml;
 
@@ -459,6 +486,79 @@ public final class RUtil {
         return xml;
     }
 
+    public static byte[] getByteArrayFromBinary(byte[] data, boolean compress) {
+        if (!compress) {
+            return data;
+        }
+
+        GZIPOutputStream gzip = null;
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            gzip = new GZIPOutputStream(out);
+            gzip.write(data);
+            gzip.close();
+            out.close();
+
+            return out.toByteArray();
+        } catch (Exception ex) {
+            throw new SystemException("Couldn't save full object, reason: " + ex.getMessage(), ex);
+        } finally {
+            IOUtils.closeQuietly(gzip);
+        }
+    }
+
+    /**
+     * Creates parser for the full object column content. Both XML and binary format are supported,
+     * compressed or not (detected from the data itself), so rows written with different repository
+     * settings can be read side by side.
+     */
+    public static PrismParserNoIO createFullObjectParser(byte[] array, PrismContext prismContext) {
+        byte[] data = isGzipped(array) ? uncompress(array) : array;
+        if (BinaryLexicalProcessor.isBinary(data)) {
+            return prismContext.parserFor(data);
+        }
+        try {
+            return prismContext.parserFor(new String(data, "utf-8"));
+        } catch (UnsupportedEncodingException ex) {
+            throw new SystemException(ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Returns textual form of the full object column content suitable for diagnostics (e.g. error logging).
+     */
+    public static String getFullObjectForDiagnostics(byte[] array) {
+        byte[] data = isGzipped(array) ? uncompress(array) : array;
+        if (BinaryLexicalProcessor.isBinary(data)) {
+            return "(binary data, " + data.length + " bytes)";
+        }
+        try {
+            return new String(data, "utf-8");
+        } catch (UnsupportedEncodingException ex) {
+            throw new SystemException(ex.getMessage(), ex);
+        }
+    }
+
+    private static boolean isGzipped(byte[] array) {
+        return array != null && array.length >= 2
+                && array[0] == (byte) GZIPInputStream.GZIP_MAGIC
+                && array[1] == (byte) (GZIPInputStream.GZIP_MAGIC >> 8);
+    }
+
+    private static byte[] uncompress(byte[] array) {
+        GZIPInputStream gzip = null;
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            gzip = new GZIPInputStream(new ByteArrayInputStream(array));
+            IOUtils.copy(gzip, out);
+            return out.toByteArray();
+        } catch (Exception ex) {
+            throw new SystemException("Couldn't read data from full object column, reason: " + ex.getMessage(), ex);
+        } finally {
+            IOUtils.closeQuietly(gzip);
+        }
+    }
+
     public static OrgFilter findOrgFilter(ObjectQuery query) {
         return query != null ? findOrgFilter(query.getFilter()) : null;
     }
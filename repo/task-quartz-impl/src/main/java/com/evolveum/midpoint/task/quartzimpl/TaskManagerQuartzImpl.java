@@ -26,6 +26,7 @@ import com.evolveum.midpoint.prism.query.ObjectQuery;
 import com.evolveum.midpoint.prism.query.builder.QueryBuilder;
 import com.evolveum.midpoint.prism.query.builder.S_AtomicFilterEntry;
 import com.evolveum.midpoint.prism.xml.XmlTypeConverter;
+import com.evolveum.midpoint.repo.api.CacheDispatcher;
 import com.evolveum.midpoint.repo.api.RepositoryService;
 import com.evolveum.midpoint.schema.GetOperationOptions;
 import com.evolveum.midpoint.schema.SearchResultList;
@@ -149,6 +150,9 @@ public class TaskManagerQuartzImpl implements TaskManager, BeanFactoryAware {
     @Autowired(required=true)
 	private RepositoryService repositoryService;
 
+    @Autowired(required=false)
+    private CacheDispatcher cacheDispatcher;
+
     @Autowired(required=true)
 	private LightweightIdentifierGenerator lightweightIdentifierGenerator;
 	
@@ -1425,6 +1429,10 @@ public class TaskManagerQuartzImpl implements TaskManager, BeanFactoryAware {
     public RepositoryService getRepositoryService() {
         return repositoryService;
     }
+
+    public CacheDispatcher getCacheDispatcher() {
+        return cacheDispatcher;
+    }
     
     public void setConfiguration(TaskManagerConfiguration configuration) {
         this.configuration = configuration;
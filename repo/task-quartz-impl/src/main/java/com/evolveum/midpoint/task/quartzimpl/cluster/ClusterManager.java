@@ -21,6 +21,7 @@ import com.evolveum.midpoint.common.SystemConfigurationHolder;
 import com.evolveum.midpoint.common.configuration.api.MidpointConfiguration;
 import com.evolveum.midpoint.prism.PrismObject;
 import com.evolveum.midpoint.prism.query.ObjectQuery;
+import com.evolveum.midpoint.repo.api.CacheDispatcher;
 import com.evolveum.midpoint.repo.api.RepositoryService;
 import com.evolveum.midpoint.schema.result.OperationResult;
 import com.evolveum.midpoint.schema.util.ObjectQueryUtil;
@@ -32,12 +33,13 @@ import com.evolveum.midpoint.util.exception.SystemException;
 import com.evolveum.midpoint.util.logging.LoggingUtils;
 import com.evolveum.midpoint.util.logging.Trace;
 import com.evolveum.midpoint.util.logging.TraceManager;
-import com.evolveum.midpoint.xml.ns._public.common.common_3.LoggingConfigurationType;
-import com.evolveum.midpoint.xml.ns._public.common.common_3.NodeType;
-import com.evolveum.midpoint.xml.ns._public.common.common_3.SystemConfigurationType;
-import com.evolveum.midpoint.xml.ns._public.common.common_3.SystemObjectsType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.*;
 
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.configuration.Configuration;
 
@@ -54,6 +56,15 @@ public class ClusterManager {
     private static final String CLASS_DOT = ClusterManager.class.getName() + ".";
     private static final String CHECK_SYSTEM_CONFIGURATION_CHANGED = CLASS_DOT + "checkSystemConfigurationChanged";
     private static final String CHECK_WAITING_TASKS = CLASS_DOT + "checkWaitingTasks";
+    private static final String CHECK_CACHED_OBJECTS_CHANGED = CLASS_DOT + "checkCachedObjectsChanged";
+
+    /**
+     * Types of objects that are cached (by repository cache, resource cache, system object cache)
+     * in a way that needs invalidation when they are changed on another node.
+     */
+    private static final List<Class<? extends ObjectType>> CACHED_OBJECT_TYPES = Arrays.asList(
+            SystemConfigurationType.class, ResourceType.class, RoleType.class, OrgType.class, ServiceType.class,
+            ObjectTemplateType.class, SecurityPolicyType.class, ValuePolicyType.class);
 
     private TaskManagerQuartzImpl taskManager;
 
@@ -135,6 +146,12 @@ public class ClusterManager {
 
                     checkSystemConfigurationChanged(result);
 
+                    try {
+                        checkCachedObjectsChanged(result);
+                    } catch (Throwable t) {
+                        LoggingUtils.logUnexpectedException(LOGGER, "Unexpected exception while checking changes of cached objects; continuing execution.", t);
+                    }
+
                     // these checks are separate in order to prevent a failure in one method blocking execution of others
                     try {
                         checkClusterConfiguration(result);                          // if error, the scheduler will be stopped
@@ -318,6 +335,77 @@ public class ClusterManager {
     }
 
 
+    /**
+     * Change markers of cached object types as seen by the last check.
+     */
+    private final Map<Class<? extends ObjectType>, String> changeMarkers = new ConcurrentHashMap<>();
+
+    /**
+     * Versions of cached objects (indexed by OID) as seen by the last check, for each cached object type.
+     * Only objects that were cached at the time of the check are here.
+     */
+    private final Map<Class<? extends ObjectType>, Map<String, String>> cachedObjectVersions = new ConcurrentHashMap<>();
+
+    /**
+     * Looks for cached objects that were modified or deleted since the last check (on any node,
+     * or directly in the repository) and invalidates them in local caches.
+     *
+     * For each cached object type, only a cheap change marker is read. Versions are read only if the marker
+     * has changed, and only for objects that are actually cached.
+     */
+    public void checkCachedObjectsChanged(OperationResult parentResult) {
+        CacheDispatcher cacheDispatcher = taskManager.getCacheDispatcher();
+        if (cacheDispatcher == null) {
+            return;
+        }
+        OperationResult result = parentResult.createMinorSubresult(CHECK_CACHED_OBJECTS_CHANGED);
+        try {
+            for (Class<? extends ObjectType> type : CACHED_OBJECT_TYPES) {
+                // cached OIDs are determined before reading the marker, so objects cached later are checked next time
+                Set<String> cachedOids = cacheDispatcher.getCachedOids(type);
+                String marker = getRepositoryService().getChangeMarker(type, result);
+                String previousMarker = changeMarkers.get(type);
+                Map<String, String> previousVersions = cachedObjectVersions.get(type);
+                if (previousMarker == null) {
+                    // in the first check there is nothing to compare with (and the cached data were loaded after the start anyway)
+                    cachedObjectVersions.put(type, getRepositoryService().getVersions(type, cachedOids, result));
+                } else if (marker.equals(previousMarker)) {
+                    // nothing has changed; we only forget objects that are no longer cached
+                    previousVersions.keySet().retainAll(cachedOids);
+                } else {
+                    Map<String, String> versions = getRepositoryService().getVersions(type, cachedOids, result);
+                    cachedObjectVersions.put(type, versions);
+                    invalidateChangedObjects(type, cachedOids, previousVersions, versions, cacheDispatcher);
+                }
+                // stored only after the changes were processed, so a failed check is repeated next time
+                changeMarkers.put(type, marker);
+            }
+            result.computeStatusIfUnknown();
+        } catch (RuntimeException e) {
+            LoggingUtils.logUnexpectedException(LOGGER, "Couldn't check changes of cached objects", e);
+            result.recordFatalError("Couldn't check changes of cached objects: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Objects cached after the previous check have no previous version. As we cannot tell whether they were
+     * loaded before or after the change, they are invalidated as well.
+     */
+    private void invalidateChangedObjects(Class<? extends ObjectType> type, Set<String> cachedOids,
+            Map<String, String> previousVersions, Map<String, String> versions, CacheDispatcher cacheDispatcher) {
+        for (String oid : cachedOids) {
+            String version = versions.get(oid);
+            if (version == null) {
+                LOGGER.debug("Invalidating cached {} {} because it was deleted from repository", type.getSimpleName(), oid);
+                cacheDispatcher.dispatch(type, oid);
+            } else if (!version.equals(previousVersions.get(oid))) {
+                LOGGER.debug("Invalidating cached {} {} because it was (or could have been) changed in repository",
+                        type.getSimpleName(), oid);
+                cacheDispatcher.dispatch(type, oid);
+            }
+        }
+    }
+
     private long lastCheckedWaitingTasks = 0L;
 
     public void checkWaitingTasks(OperationResult result) throws SchemaException {
@@ -346,4 +434,4 @@ public class ClusterManager {
             LOGGER.info("Previous configuration error was not resolved. Please check your cluster configuration.");
             return false;
         }
-*/
\ No newline at end of file
+*/
\ No newline at end of file
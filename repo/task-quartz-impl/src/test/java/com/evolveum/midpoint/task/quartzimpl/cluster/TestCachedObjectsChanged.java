@@ -0,0 +1,199 @@
+/*
+ * Copyright (c) 2010-2016 Evolveum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.evolveum.midpoint.task.quartzimpl.cluster;
+
+import com.evolveum.midpoint.prism.PrismContext;
+import com.evolveum.midpoint.prism.delta.ItemDelta;
+import com.evolveum.midpoint.prism.delta.builder.DeltaBuilder;
+import com.evolveum.midpoint.repo.api.CacheDispatcher;
+import com.evolveum.midpoint.repo.api.CacheListener;
+import com.evolveum.midpoint.repo.api.RepositoryService;
+import com.evolveum.midpoint.schema.result.OperationResult;
+import com.evolveum.midpoint.task.quartzimpl.TaskManagerQuartzImpl;
+import com.evolveum.midpoint.test.util.TestUtil;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ObjectType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.RoleType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.UserType;
+import com.evolveum.prism.xml.ns._public.types_3.PolyStringType;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.testng.AbstractTestNGSpringContextTests;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertTrue;
+
+/**
+ * Tests that changes of cached objects made directly in the repository (e.g. by another node) are detected
+ * by the cluster manager and dispatched to the caches.
+ *
+ * @author mederly
+ */
+@ContextConfiguration(locations = {"classpath:ctx-task.xml",
+        "classpath:ctx-task-test.xml",
+        "classpath:ctx-repo-cache.xml",
+        "classpath*:ctx-repository-test.xml",
+        "classpath:ctx-audit.xml",
+        "classpath:ctx-security.xml",
+        "classpath:ctx-common.xml",
+        "classpath:ctx-configuration-test.xml"})
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_CLASS)
+public class TestCachedObjectsChanged extends AbstractTestNGSpringContextTests {
+
+    @Autowired
+    private TaskManagerQuartzImpl taskManager;
+    @Autowired
+    private RepositoryService repositoryService;
+    @Autowired
+    private CacheDispatcher cacheDispatcher;
+    @Autowired
+    private PrismContext prismContext;
+
+    private final Set<String> invalidated = ConcurrentHashMap.newKeySet();
+    private final Set<String> cachedRoleOids = ConcurrentHashMap.newKeySet();
+    private String roleOid;
+    private String otherRoleOid;
+
+    private final CacheListener listener = new CacheListener() {
+        @Override
+        public <O extends ObjectType> void invalidateCache(Class<O> type, String oid) {
+            invalidated.add(type.getSimpleName() + ":" + oid);
+        }
+
+        @Override
+        public <O extends ObjectType> Collection<String> getCachedOids(Class<O> type) {
+            return RoleType.class.equals(type) ? cachedRoleOids : Collections.<String>emptySet();
+        }
+    };
+
+    @BeforeClass
+    public void registerListener() {
+        cacheDispatcher.registerCacheListener(listener);
+    }
+
+    @AfterClass
+    public void unregisterListener() {
+        cacheDispatcher.unregisterCacheListener(listener);
+    }
+
+    @Test
+    public void test010NoChange() throws Exception {
+        final String TEST_NAME = "test010NoChange";
+        TestUtil.displayTestTile(this, TEST_NAME);
+        OperationResult result = new OperationResult(TEST_NAME);
+
+        RoleType role = new RoleType(prismContext);
+        role.setName(new PolyStringType("cached-role"));
+        roleOid = repositoryService.addObject(role.asPrismObject(), null, result);
+        cachedRoleOids.add(roleOid);
+        RoleType otherRole = new RoleType(prismContext);
+        otherRole.setName(new PolyStringType("not-cached-role"));
+        otherRoleOid = repositoryService.addObject(otherRole.asPrismObject(), null, result);
+        checkCachedObjectsChanged(result);          // the first check only records the versions
+        invalidated.clear();
+
+        // WHEN
+        checkCachedObjectsChanged(result);
+
+        // THEN
+        assertFalse("Unchanged role was invalidated", invalidated.contains("RoleType:" + roleOid));
+    }
+
+    @Test
+    public void test020ModifiedInRepository() throws Exception {
+        final String TEST_NAME = "test020ModifiedInRepository";
+        TestUtil.displayTestTile(this, TEST_NAME);
+        OperationResult result = new OperationResult(TEST_NAME);
+        invalidated.clear();
+
+        // WHEN
+        List<ItemDelta<?, ?>> modifications = DeltaBuilder.deltaFor(RoleType.class, prismContext)
+                .item(RoleType.F_DESCRIPTION).replace("changed directly in repository")
+                .asItemDeltas();
+        repositoryService.modifyObject(RoleType.class, roleOid, modifications, result);
+        checkCachedObjectsChanged(result);
+
+        // THEN
+        assertTrue("Modified role was not invalidated", invalidated.contains("RoleType:" + roleOid));
+    }
+
+    @Test
+    public void test025ModifiedNotCachedRole() throws Exception {
+        final String TEST_NAME = "test025ModifiedNotCachedRole";
+        TestUtil.displayTestTile(this, TEST_NAME);
+        OperationResult result = new OperationResult(TEST_NAME);
+        checkCachedObjectsChanged(result);          // nothing should be pending from the previous test
+        invalidated.clear();
+
+        // WHEN
+        List<ItemDelta<?, ?>> modifications = DeltaBuilder.deltaFor(RoleType.class, prismContext)
+                .item(RoleType.F_DESCRIPTION).replace("changed directly in repository")
+                .asItemDeltas();
+        repositoryService.modifyObject(RoleType.class, otherRoleOid, modifications, result);
+        checkCachedObjectsChanged(result);
+
+        // THEN
+        assertFalse("Role that is not cached was invalidated", invalidated.contains("RoleType:" + otherRoleOid));
+        assertFalse("Unchanged cached role was invalidated", invalidated.contains("RoleType:" + roleOid));
+    }
+
+    @Test
+    public void test030AddedNotCachedType() throws Exception {
+        final String TEST_NAME = "test030AddedNotCachedType";
+        TestUtil.displayTestTile(this, TEST_NAME);
+        OperationResult result = new OperationResult(TEST_NAME);
+        invalidated.clear();
+
+        // WHEN
+        UserType user = new UserType(prismContext);
+        user.setName(new PolyStringType("not-cached-user"));
+        String userOid = repositoryService.addObject(user.asPrismObject(), null, result);
+        checkCachedObjectsChanged(result);
+
+        // THEN
+        assertFalse("User (not a cached type) was invalidated", invalidated.contains("UserType:" + userOid));
+    }
+
+    @Test
+    public void test040DeletedInRepository() throws Exception {
+        final String TEST_NAME = "test040DeletedInRepository";
+        TestUtil.displayTestTile(this, TEST_NAME);
+        OperationResult result = new OperationResult(TEST_NAME);
+        invalidated.clear();
+
+        // WHEN
+        repositoryService.deleteObject(RoleType.class, roleOid, result);
+        checkCachedObjectsChanged(result);
+
+        // THEN
+        assertTrue("Deleted role was not invalidated", invalidated.contains("RoleType:" + roleOid));
+    }
+
+    private void checkCachedObjectsChanged(OperationResult result) {
+        taskManager.getClusterManager().checkCachedObjectsChanged(result);
+        result.computeStatus();
+        TestUtil.assertSuccess(result);
+    }
+}